@@ -0,0 +1,238 @@
+package com.alphaweb.instadrive.config;
+
+import com.alphaweb.instadrive.util.LatencyHistogram;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Resizes the connection pools within bounds, enabled by datasource.adaptive.enabled
+ * The pools are the primary and, when read/write splitting is on, each read replica
+ * A pool grows while requests wait for connections and the database still answers as fast as it did
+ * with fewer connections, and shrinks when the database slows down under the extra concurrency or
+ * most connections sit idle. With virtual threads nothing else limits how many requests queue for a
+ * connection, so the pool size is what caps the load on the database.
+ * Database latency is taken from the repository timings, each method against its own baseline, rather than
+ * from how long connections are held, which also counts whatever the application does in between queries.
+ * Repository timings are not split by pool, so every pool reacts to the latency of the database as a whole
+ */
+@Component
+public class AdaptivePoolSizer {
+
+    private static final int MAX_DECISIONS = 50;
+
+    private final DatabaseMetrics databaseMetrics;
+    private final ObjectProvider<HikariDataSource> dataSources;
+    private final ObjectProvider<ReplicaRoutingDataSource> replicaRoutingDataSource;
+    private final boolean enabled;
+    private final int minSize;
+    private final int maxSize;
+    private final double targetAcquireMillis;
+    private final double latencyTolerance;
+    private final long minSamples;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> decisions = new ArrayDeque<>();
+
+    /**
+     * What a pool recorded up to the previous check, and the repository latencies seen when uncontended
+     */
+    static class Window {
+        LatencyHistogram.Snapshot acquire;
+        LatencyHistogram.Snapshot usage;
+        Map<String, LatencyHistogram.Snapshot> repositoryTimings;
+        long timeouts;
+        long checkedAt;
+        final Map<String, Double> baselineMillis = new HashMap<>();
+    }
+
+    /**
+     * The outcome of one check
+     *
+     * @param size The new maximum pool size
+     * @param reason Why the size changed or stayed
+     */
+    record Decision(int size, String reason) {
+    }
+
+    public AdaptivePoolSizer(DatabaseMetrics databaseMetrics,
+                             ObjectProvider<HikariDataSource> dataSources,
+                             ObjectProvider<ReplicaRoutingDataSource> replicaRoutingDataSource,
+                             @Value("${datasource.adaptive.enabled:false}") boolean enabled,
+                             @Value("${datasource.adaptive.min-size:5}") int minSize,
+                             @Value("${datasource.adaptive.max-size:40}") int maxSize,
+                             @Value("${datasource.adaptive.target-acquire-ms:5}") double targetAcquireMillis,
+                             @Value("${datasource.adaptive.latency-tolerance:1.5}") double latencyTolerance,
+                             @Value("${datasource.adaptive.min-samples:50}") long minSamples) {
+        this.databaseMetrics = databaseMetrics;
+        this.dataSources = dataSources;
+        this.replicaRoutingDataSource = replicaRoutingDataSource;
+        this.enabled = enabled;
+        this.minSize = minSize;
+        this.maxSize = Math.max(minSize, maxSize);
+        this.targetAcquireMillis = targetAcquireMillis;
+        this.latencyTolerance = latencyTolerance;
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Check every started pool against what it recorded since the last check
+     */
+    @Scheduled(fixedDelayString = "${datasource.adaptive.interval-ms:10000}")
+    public void adjust() {
+        if (!enabled) {
+            return;
+        }
+        // Replica pools are created by the routing DataSource rather than registered as beans
+        Stream<HikariDataSource> replicas = replicaRoutingDataSource.stream()
+                .flatMap(routing -> routing.getReplicaDataSources().stream())
+                .filter(HikariDataSource.class::isInstance)
+                .map(HikariDataSource.class::cast);
+        Stream.concat(dataSources.orderedStream(), replicas).forEach(dataSource -> {
+            DatabaseMetrics.PoolMetrics metrics = databaseMetrics.getPool(dataSource.getPoolName());
+            if (metrics == null || dataSource.getHikariPoolMXBean() == null) {
+                return;
+            }
+            HikariConfigMXBean config = dataSource.getHikariConfigMXBean();
+            int size = config.getMaximumPoolSize();
+            Decision decision = decide(windows.computeIfAbsent(metrics.getName(), k -> new Window()), metrics, size,
+                    System.currentTimeMillis());
+            if (decision == null || decision.size() == size) {
+                return;
+            }
+
+            if (config.getMinimumIdle() > decision.size()) {
+                config.setMinimumIdle(decision.size());
+            }
+            config.setMaximumPoolSize(decision.size());
+            System.out.println("Connection pool " + metrics.getName() + " resized from " + size + " to "
+                    + decision.size() + ": " + decision.reason());
+            record(metrics.getName(), size, decision);
+        });
+    }
+
+    /**
+     * Decide the size of a pool from what it recorded since the previous check
+     *
+     * @return The decision, or null on the first check of a pool or when there are too few samples
+     */
+    Decision decide(Window window, DatabaseMetrics.PoolMetrics metrics, int size, long now) {
+        LatencyHistogram.Snapshot acquireTotal = metrics.getAcquire().snapshot();
+        LatencyHistogram.Snapshot usageTotal = metrics.getUsage().snapshot();
+        Map<String, LatencyHistogram.Snapshot> repositoryTotal = databaseMetrics.getRepositoryTimings();
+        long timeoutsTotal = metrics.getTimeouts();
+        if (window.acquire == null) {
+            window.acquire = acquireTotal;
+            window.usage = usageTotal;
+            window.repositoryTimings = repositoryTotal;
+            window.timeouts = timeoutsTotal;
+            window.checkedAt = now;
+            return null;
+        }
+
+        LatencyHistogram.Snapshot acquire = acquireTotal.since(window.acquire);
+        LatencyHistogram.Snapshot usage = usageTotal.since(window.usage);
+        long timeouts = timeoutsTotal - window.timeouts;
+        long elapsed = Math.max(1, now - window.checkedAt);
+        if (acquire.getCount() < minSamples && timeouts == 0) {
+            // Too quiet to judge; keep accumulating into the same window
+            return null;
+        }
+        double slowdown = slowdown(window, repositoryTotal);
+        window.acquire = acquireTotal;
+        window.usage = usageTotal;
+        window.repositoryTimings = repositoryTotal;
+        window.timeouts = timeoutsTotal;
+        window.checkedAt = now;
+
+        double acquireP95 = acquire.percentileMillis(95);
+        // Little's law: connections busy on average over the window
+        double busy = usage.getCount() * usage.meanMillis() / elapsed;
+        boolean waiting = acquireP95 > targetAcquireMillis || timeouts > 0 || metrics.getPendingThreads() > 0;
+        boolean databaseSlowed = slowdown > latencyTolerance;
+
+        String measured = String.format("acquire p95 %.1f ms, repository calls %.2fx their baseline, %.1f busy, %d timeouts",
+                acquireP95, slowdown, busy, timeouts);
+        if (waiting && !databaseSlowed && size < maxSize) {
+            return new Decision(Math.min(maxSize, size + Math.max(1, size / 4)),
+                    "requests wait for connections while the database keeps up; " + measured);
+        }
+        if (waiting && databaseSlowed && size > minSize) {
+            return new Decision(Math.max(minSize, size - Math.max(1, size / 10)),
+                    "the database slows down with more connections, queue in the pool instead; " + measured);
+        }
+        if (!waiting && busy < size / 2.0 && size > minSize) {
+            return new Decision(size - 1, "most connections are idle; " + measured);
+        }
+        return new Decision(size, measured);
+    }
+
+    /**
+     * Compare each repository method's mean time since the previous check with its baseline
+     * Comparing per method keeps a shift towards slower queries from passing for a slower database
+     *
+     * @return The call-weighted ratio of mean time to baseline, or 1 if no repository calls were made
+     */
+    private double slowdown(Window window, Map<String, LatencyHistogram.Snapshot> repositoryTotal) {
+        double weightedRatio = 0;
+        long calls = 0;
+        for (Map.Entry<String, LatencyHistogram.Snapshot> method : repositoryTotal.entrySet()) {
+            LatencyHistogram.Snapshot timing = method.getValue().since(window.repositoryTimings.get(method.getKey()));
+            if (timing.getCount() == 0) {
+                continue;
+            }
+            double mean = timing.meanMillis();
+            // The baseline follows the fastest latency seen, drifting up slowly so it tracks lasting changes
+            double baseline = window.baselineMillis.merge(method.getKey(), mean,
+                    (previous, current) -> Math.min(current, previous * 1.05));
+            weightedRatio += timing.getCount() * mean / Math.max(baseline, 0.001);
+            calls += timing.getCount();
+        }
+        return calls == 0 ? 1 : weightedRatio / calls;
+    }
+
+    private void record(String pool, int previousSize, Decision decision) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("pool", pool);
+        entry.put("at", LocalDateTime.now().toString());
+        entry.put("from", previousSize);
+        entry.put("to", decision.size());
+        entry.put("reason", decision.reason());
+        synchronized (decisions) {
+            decisions.addFirst(entry);
+            if (decisions.size() > MAX_DECISIONS) {
+                decisions.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Get adaptive sizing statistics for monitoring
+     *
+     * @return Whether sizing is enabled, its bounds and the most recent resizes
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("minSize", minSize);
+        stats.put("maxSize", maxSize);
+        stats.put("targetAcquireMs", targetAcquireMillis);
+        synchronized (decisions) {
+            stats.put("decisions", new ArrayList<>(decisions));
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,215 @@
+package com.alphaweb.instadrive.config;
+
+import com.alphaweb.instadrive.util.LatencyHistogram;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connection pool and repository timings, in place of logging every statement
+ * Every Hikari pool reports connection acquire, usage and creation times here, and every Spring Data
+ * repository is wrapped so each of its methods is timed. Replica pools copy the primary's settings,
+ * so they report here as well. Repository timings leave out the time the call waited for a connection,
+ * so they follow the database rather than the pool
+ */
+@Component
+public class DatabaseMetrics implements BeanPostProcessor, MetricsTrackerFactory {
+
+    private final Map<String, PoolMetrics> pools = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> repositoryMethods = new ConcurrentHashMap<>();
+
+    // Time each thread has spent waiting for connections; Hikari reports acquires on the acquiring thread
+    private static final ThreadLocal<long[]> ACQUIRE_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * The timings of one connection pool
+     */
+    public static class PoolMetrics implements IMetricsTracker {
+        private final String name;
+        private final PoolStats poolStats;
+        private final LatencyHistogram acquire = new LatencyHistogram();
+        private final LatencyHistogram usage = new LatencyHistogram();
+        private final LatencyHistogram creation = new LatencyHistogram();
+        private final AtomicLong timeouts = new AtomicLong();
+
+        PoolMetrics(String name, PoolStats poolStats) {
+            this.name = name;
+            this.poolStats = poolStats;
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            acquire.recordNanos(elapsedAcquiredNanos);
+            ACQUIRE_NANOS.get()[0] += elapsedAcquiredNanos;
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            usage.recordMillis(elapsedBorrowedMillis);
+        }
+
+        @Override
+        public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+            creation.recordMillis(connectionCreatedMillis);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.incrementAndGet();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Time spent waiting for a connection
+         */
+        public LatencyHistogram getAcquire() {
+            return acquire;
+        }
+
+        /**
+         * Time a connection was held before it was returned
+         */
+        public LatencyHistogram getUsage() {
+            return usage;
+        }
+
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        public int getPendingThreads() {
+            return poolStats.getPendingThreads();
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("pool", name);
+            map.put("active", poolStats.getActiveConnections());
+            map.put("idle", poolStats.getIdleConnections());
+            map.put("pending", poolStats.getPendingThreads());
+            map.put("total", poolStats.getTotalConnections());
+            map.put("max", poolStats.getMaxConnections());
+            map.put("min", poolStats.getMinConnections());
+            map.put("timeouts", timeouts.get());
+            map.put("acquire", acquire.snapshot().toMap());
+            map.put("usage", usage.snapshot().toMap());
+            map.put("creation", creation.snapshot().toMap());
+            return map;
+        }
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource dataSource
+                && dataSource.getMetricsTrackerFactory() == null && dataSource.getMetricRegistry() == null) {
+            dataSource.setMetricsTrackerFactory(this);
+        }
+        if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+            factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                    (proxyFactory, repositoryInformation) -> proxyFactory.addAdvice(
+                            timingInterceptor(repositoryInformation.getRepositoryInterface().getSimpleName()))));
+        }
+        return bean;
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        PoolMetrics metrics = new PoolMetrics(poolName, poolStats);
+        pools.put(poolName, metrics);
+        return metrics;
+    }
+
+    private MethodInterceptor timingInterceptor(String repository) {
+        return invocation -> {
+            long[] waited = ACQUIRE_NANOS.get();
+            long waitedBefore = waited[0];
+            long start = System.nanoTime();
+            try {
+                return invocation.proceed();
+            } finally {
+                recordRepositoryCall(repository + "." + invocation.getMethod().getName(),
+                        System.nanoTime() - start - (waited[0] - waitedBefore));
+            }
+        };
+    }
+
+    /**
+     * Record one repository call
+     *
+     * @param method The repository and method name
+     * @param nanos The time the call took, without waiting for a connection
+     */
+    void recordRepositoryCall(String method, long nanos) {
+        repositoryMethods.computeIfAbsent(method, k -> new LatencyHistogram()).recordNanos(nanos);
+    }
+
+    /**
+     * Get the timings of a pool
+     *
+     * @param poolName The pool name
+     * @return The timings, or null if the pool has not started
+     */
+    public PoolMetrics getPool(String poolName) {
+        return pools.get(poolName);
+    }
+
+    /**
+     * Get connection pool statistics for monitoring
+     *
+     * @return Connection counts, timeouts and acquire, usage and creation times per pool
+     */
+    public List<Map<String, Object>> getPoolStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (PoolMetrics metrics : pools.values()) {
+            stats.add(metrics.toMap());
+        }
+        return stats;
+    }
+
+    /**
+     * Get the timings of every repository method called so far
+     *
+     * @return A snapshot of the timings per repository and method name
+     */
+    public Map<String, LatencyHistogram.Snapshot> getRepositoryTimings() {
+        Map<String, LatencyHistogram.Snapshot> timings = new HashMap<>();
+        repositoryMethods.forEach((method, histogram) -> timings.put(method, histogram.snapshot()));
+        return timings;
+    }
+
+    /**
+     * Get repository method timings for monitoring
+     *
+     * @return Call counts and times per repository method, the most total time first
+     */
+    public List<Map<String, Object>> getRepositoryStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        repositoryMethods.forEach((method, histogram) -> {
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("method", method);
+            entry.put("totalMs", Math.round(snapshot.meanMillis() * snapshot.getCount()));
+            entry.putAll(snapshot.toMap());
+            stats.add(entry);
+        });
+        stats.sort(Comparator.comparingLong((Map<String, Object> entry) -> (Long) entry.get("totalMs")).reversed());
+        return stats;
+    }
+}
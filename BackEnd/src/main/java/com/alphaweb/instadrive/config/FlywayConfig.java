@@ -0,0 +1,32 @@
+package com.alphaweb.instadrive.config;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+
+/**
+ * Runs the versioned migrations in db/migration once Hibernate has created or updated the tables
+ * Hibernate still owns the table definitions (ddl-auto=update); migrations add what it cannot express,
+ * such as the composite indexes for the hot queries
+ */
+@Configuration
+public class FlywayConfig {
+
+    /**
+     * Stop Spring Boot from migrating before the entity manager factory, when the tables may not exist yet
+     */
+    @Bean
+    public FlywayMigrationStrategy flywayMigrationStrategy() {
+        return flyway -> {
+        };
+    }
+
+    @Bean
+    @DependsOn("entityManagerFactory")
+    public InitializingBean flywayMigrateAfterHibernate(Flyway flyway) {
+        return flyway::migrate;
+    }
+}
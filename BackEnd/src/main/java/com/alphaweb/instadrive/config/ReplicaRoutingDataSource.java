@@ -0,0 +1,257 @@
+package com.alphaweb.instadrive.config;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DataSource for read-only transactions that spreads them over the healthy read replicas
+ * Any read-only transaction may go to a replica, including the one Spring Data opens around a repository call
+ * made outside a service transaction. Reads fall back to the primary when no replica is healthy or a replica
+ * refuses a connection, and for signed-in users who wrote within the read-your-writes window.
+ * Anonymous requests and background tasks have no user to key that window on, so anything that reads data in
+ * order to change it must run in a read-write service transaction
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long readYourWritesMillis;
+    private final long maxLagSeconds;
+
+    private final Map<String, Long> recentWriters = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong primaryReads = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * A read replica and its last known health
+     */
+    static class Replica {
+        final String name;
+        final DataSource dataSource;
+        volatile boolean healthy = true;
+        volatile String lastError;
+        volatile Long lagSeconds;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+
+    /**
+     * Create the routing DataSource
+     *
+     * @param primary The primary, used when no replica can serve the read
+     * @param replicas The replicas by name
+     * @param readYourWritesMillis How long a user's reads stay on the primary after they wrote
+     * @param maxLagSeconds The replication lag above which a replica is taken out of rotation, or 0 to ignore lag
+     */
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+                                    long readYourWritesMillis, long maxLagSeconds) {
+        this.primary = primary;
+        this.replicas = new ArrayList<>();
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+        this.readYourWritesMillis = readYourWritesMillis;
+        this.maxLagSeconds = maxLagSeconds;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route(null, null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route(username, password);
+    }
+
+    private Connection route(String username, String password) throws SQLException {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !readsOwnWrite()) {
+            Replica replica = pickReplica();
+            if (replica != null) {
+                try {
+                    Connection connection = username == null
+                            ? replica.dataSource.getConnection()
+                            : replica.dataSource.getConnection(username, password);
+                    replicaReads.incrementAndGet();
+                    return connection;
+                } catch (SQLException e) {
+                    markDown(replica, e.getMessage());
+                    fallbacks.incrementAndGet();
+                }
+            }
+        }
+        primaryReads.incrementAndGet();
+        return username == null ? primary.getConnection() : primary.getConnection(username, password);
+    }
+
+    /**
+     * Note that the current user is writing, so their reads go to the primary for a while
+     * Called when a read-write transaction takes a connection from the primary
+     */
+    public void recordWrite() {
+        String user = currentUser();
+        if (user != null && readYourWritesMillis > 0) {
+            recentWriters.put(user, System.currentTimeMillis());
+        }
+    }
+
+    private boolean readsOwnWrite() {
+        if (recentWriters.isEmpty()) {
+            return false;
+        }
+        String user = currentUser();
+        if (user == null) {
+            return false;
+        }
+        Long wroteAt = recentWriters.get(user);
+        return wroteAt != null && System.currentTimeMillis() - wroteAt < readYourWritesMillis;
+    }
+
+    private Replica pickReplica() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size == 0 ? 1 : size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private void markDown(Replica replica, String error) {
+        if (replica.healthy) {
+            System.err.println("Read replica " + replica.name + " is unavailable, reading from the primary: " + error);
+        }
+        replica.healthy = false;
+        replica.lastError = error;
+    }
+
+    private String currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return authentication.getName();
+        }
+        return null;
+    }
+
+    /**
+     * Check every replica, taking unreachable or lagging ones out of rotation and putting recovered ones back,
+     * and forget writers whose read-your-writes window has passed
+     */
+    @Scheduled(fixedDelayString = "${datasource.replica.health-check-interval-ms:5000}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                if (!connection.isValid(2)) {
+                    markDown(replica, "Connection is not valid");
+                    continue;
+                }
+                Long lag = replicationLag(connection);
+                replica.lagSeconds = lag;
+                if (maxLagSeconds > 0 && lag != null && lag > maxLagSeconds) {
+                    markDown(replica, "Replication lag of " + lag + "s");
+                    continue;
+                }
+                if (!replica.healthy) {
+                    System.out.println("Read replica " + replica.name + " is back in rotation");
+                }
+                replica.healthy = true;
+                replica.lastError = null;
+            } catch (SQLException e) {
+                markDown(replica, e.getMessage());
+            }
+        }
+
+        long cutoff = System.currentTimeMillis() - readYourWritesMillis;
+        recentWriters.values().removeIf(wroteAt -> wroteAt < cutoff);
+    }
+
+    /**
+     * Get the replication lag of a replica
+     *
+     * @return The lag in seconds, or null if the server is not replicating or the lag is unknown
+     */
+    private Long replicationLag(Connection connection) {
+        if (maxLagSeconds <= 0) {
+            return null;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SHOW REPLICA STATUS")) {
+            if (resultSet.next()) {
+                long lag = resultSet.getLong("Seconds_Behind_Source");
+                return resultSet.wasNull() ? null : lag;
+            }
+        } catch (SQLException e) {
+            // No privilege to read the replica status; rely on the connection check alone
+        }
+        return null;
+    }
+
+    /**
+     * Get the DataSources of the replicas, in the order they were configured
+     */
+    public List<DataSource> getReplicaDataSources() {
+        return replicas.stream().map(replica -> replica.dataSource).toList();
+    }
+
+    /**
+     * Close the replica pools; the primary is closed by its own bean
+     */
+    public void close() {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    System.err.println("Error closing read replica " + replica.name + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Get routing statistics for monitoring
+     *
+     * @return Reads per target, fallbacks and the health of each replica
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("replicaReads", replicaReads.get());
+        stats.put("primaryReads", primaryReads.get());
+        stats.put("fallbacks", fallbacks.get());
+        stats.put("recentWriters", recentWriters.size());
+        List<Map<String, Object>> replicaStats = new ArrayList<>();
+        for (Replica replica : replicas) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", replica.name);
+            entry.put("healthy", replica.healthy);
+            entry.put("lagSeconds", replica.lagSeconds);
+            entry.put("lastError", replica.lastError);
+            replicaStats.add(entry);
+        }
+        stats.put("replicas", replicaStats);
+        return stats;
+    }
+}
@@ -1,21 +1,36 @@
 package com.alphaweb.instadrive.controller;
 
+import com.alphaweb.instadrive.dto.BatchRefundRequest;
+import com.alphaweb.instadrive.dto.BatchRefundResponse;
 import com.alphaweb.instadrive.dto.CarRequest;
+import com.alphaweb.instadrive.dto.BookingTotalsDTO;
 import com.alphaweb.instadrive.dto.AdminDashboardBookingDTO;
+import com.alphaweb.instadrive.dto.CursorPage;
+import com.alphaweb.instadrive.dto.PaymentSummaryDTO;
 import com.alphaweb.instadrive.model.Booking;
 import com.alphaweb.instadrive.model.Car;
 import com.alphaweb.instadrive.model.Payment;
 import com.alphaweb.instadrive.model.Receipt;
+import com.alphaweb.instadrive.model.ReconciliationDiscrepancy;
+import com.alphaweb.instadrive.model.ReconciliationRun;
 import com.alphaweb.instadrive.model.User;
+import com.alphaweb.instadrive.service.BatchRefundService;
 import com.alphaweb.instadrive.service.BookingService;
 import com.alphaweb.instadrive.service.CarService;
 import com.alphaweb.instadrive.service.PaymentService;
+import com.alphaweb.instadrive.service.ReceiptArchiveService;
 import com.alphaweb.instadrive.service.ReceiptService;
+import com.alphaweb.instadrive.service.ReconciliationService;
 import com.alphaweb.instadrive.service.UserService;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -36,18 +51,28 @@ public class AdminController {
     private final CarService carService;
     private final PaymentService paymentService;
     private final ReceiptService receiptService;
+    private final ReceiptArchiveService receiptArchiveService;
+    private final BatchRefundService batchRefundService;
+    private final ReconciliationService reconciliationService;
+    private final CursorPages cursorPages;
 
     /**
      * Get admin dashboard data
      *
-     * @return Dashboard data including bookings, total revenue, etc.
+     * @param cursor The nextCursor of the previous page of bookings, or none for the first page
+     * @param limit The number of bookings, capped by pagination.max-size
+     * @return Dashboard data including a page of bookings, total revenue, etc.
      */
     @GetMapping("/dashboard")
-    public ResponseEntity<?> getDashboard() {
+    public ResponseEntity<?> getDashboard(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        // Use the BookingService's method to get admin dashboard bookings
+        // This method already joins the booking, user, and car tables
+        CursorPage<AdminDashboardBookingDTO> bookingPage =
+                bookingService.getAdminDashboardBookings(cursor, cursorPages.limit(limit));
         try {
-            // Use the BookingService's method to get admin dashboard bookings
-            // This method already joins the booking, user, and car tables
-            List<AdminDashboardBookingDTO> adminDashboardBookings = bookingService.getAdminDashboardBookings();
+            List<AdminDashboardBookingDTO> adminDashboardBookings = bookingPage.getItems();
 
             // Create booking DTOs with all required information
             List<Map<String, Object>> bookingDTOs = adminDashboardBookings.stream()
@@ -153,10 +178,9 @@ public class AdminController {
                     })
                     .collect(Collectors.toList());
 
-            // Calculate total revenue from processed bookings
-            double totalRevenue = bookingDTOs.stream()
-                    .mapToDouble(dto -> (double) dto.get("amount"))
-                    .sum();
+            // Totals cover all bookings, not just this page
+            BookingTotalsDTO bookingTotals = bookingService.getBookingTotals();
+            double totalRevenue = bookingTotals.getAmount();
 
             // Generate sample revenue by month data
             List<Map<String, Object>> revenueByMonth = generateSampleRevenueData();
@@ -167,8 +191,10 @@ public class AdminController {
             // Create response
             Map<String, Object> response = new HashMap<>();
             response.put("bookings", bookingDTOs);
+            response.put("nextCursor", bookingPage.getNextCursor());
             response.put("totalRevenue", totalRevenue > 0 ? totalRevenue : 125000); // Use sample if no real data
-            response.put("totalBookings", bookingDTOs.size());
+            response.put("totalBookings", bookingTotals.getCount());
+            response.put("bookingCountsByStatus", bookingTotals.getCountsByStatus());
             response.put("revenueByMonth", revenueByMonth);
             response.put("popularCars", popularCars);
 
@@ -307,13 +333,19 @@ public class AdminController {
     }
 
     /**
-     * Get all payments
+     * Get a page of payments
      *
-     * @return List of all payments
+     * @param cursor The X-Next-Cursor of the previous page, or none for the first page
+     * @param limit The page size, capped by pagination.max-size
+     * @param includeTotal Whether to send the number of payments in X-Total-Count
+     * @return The payments, newest first, with the cursor of the next page in X-Next-Cursor
      */
     @GetMapping("/payments")
-    public ResponseEntity<List<Payment>> getAllPayments() {
-        return ResponseEntity.ok(paymentService.getAllPayments());
+    public ResponseEntity<List<PaymentSummaryDTO>> getAllPayments(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        return cursorPages.ok(paymentService.getPaymentSummaries(cursor, cursorPages.limit(limit), includeTotal));
     }
 
     /**
@@ -351,6 +383,89 @@ public class AdminController {
         return ResponseEntity.ok(paymentService.getPaymentsByUserId(userId));
     }
 
+    /**
+     * Refund many bookings at once, by ID or by a filter on car and dates
+     * Bookings that have already been refunded are reported and skipped, so the request can be repeated
+     *
+     * @param request The bookings to refund
+     * @param async Whether to run the refunds in the background and return the job at once
+     * @return The job with a result per booking
+     */
+    @PostMapping("/payments/refunds/batch")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> batchRefund(@RequestBody BatchRefundRequest request,
+                                         @RequestParam(defaultValue = "false") boolean async) {
+        try {
+            if (async) {
+                return ResponseEntity.accepted().body(batchRefundService.submit(request));
+            }
+            return ResponseEntity.ok(batchRefundService.refund(request));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+
+    /**
+     * Get the progress of a background batch refund
+     *
+     * @param jobId The job ID
+     * @return The job with the results so far
+     */
+    @GetMapping("/payments/refunds/batch/{jobId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<BatchRefundResponse> getBatchRefund(@PathVariable String jobId) {
+        return batchRefundService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Start a payment reconciliation run in the background
+     *
+     * @return The started run, or 409 if a run is already in progress
+     */
+    @PostMapping("/reconciliation/runs")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> startReconciliation() {
+        try {
+            return ResponseEntity.accepted().body(reconciliationService.submit());
+        } catch (IllegalStateException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.status(409).body(errorResponse);
+        }
+    }
+
+    /**
+     * Get the most recent reconciliation runs
+     *
+     * @return Up to 20 runs, newest first
+     */
+    @GetMapping("/reconciliation/runs")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<ReconciliationRun>> getReconciliationRuns() {
+        return ResponseEntity.ok(reconciliationService.getRecentRuns());
+    }
+
+    /**
+     * Get a page of the discrepancies found by a reconciliation run
+     *
+     * @param runId The run ID
+     * @param after The last discrepancy ID of the previous page
+     * @param limit The page size, at most 1000
+     * @return The discrepancies, ordered by ID
+     */
+    @GetMapping("/reconciliation/runs/{runId}/discrepancies")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<ReconciliationDiscrepancy>> getReconciliationDiscrepancies(
+            @PathVariable Long runId,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(reconciliationService.getDiscrepancies(runId, after, limit));
+    }
+
     /**
      * Get all receipts for a user
      *
@@ -362,6 +477,23 @@ public class AdminController {
         return ResponseEntity.ok(receiptService.getReceiptsByUserId(userId));
     }
 
+    /**
+     * Download all receipts of a user in a date range as one ZIP archive
+     *
+     * @param userId User ID
+     * @param from The first transaction date to include (optional)
+     * @param to The last transaction date to include (optional)
+     * @param response The HTTP response the archive is streamed to
+     */
+    @GetMapping("/receipts/user/{userId}/archive")
+    public void downloadReceiptArchive(
+            @PathVariable Long userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            HttpServletResponse response) throws IOException {
+        receiptArchiveService.streamArchive(userId, from, to, response);
+    }
+
     /**
      * Get receipt by booking ID
      *
@@ -1,6 +1,7 @@
 package com.alphaweb.instadrive.controller;
 
 import com.alphaweb.instadrive.dto.BookingPaymentDTO;
+import com.alphaweb.instadrive.dto.BookingSummaryDTO;
 import com.alphaweb.instadrive.model.Booking;
 import com.alphaweb.instadrive.model.Car;
 import com.alphaweb.instadrive.model.User;
@@ -33,9 +34,23 @@ public class BookingController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private CursorPages cursorPages;
+
+    /**
+     * Get a page of bookings, newest first
+     *
+     * @param cursor The X-Next-Cursor of the previous page, or none for the first page
+     * @param limit The page size, capped by pagination.max-size
+     * @param includeTotal Whether to send the number of bookings in X-Total-Count
+     * @return The bookings, with the cursor of the next page in X-Next-Cursor
+     */
     @GetMapping
-    public List<Booking> getAllBookings() {
-        return bookingService.getAllBookings();
+    public ResponseEntity<List<BookingSummaryDTO>> getAllBookings(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        return cursorPages.ok(bookingService.getBookingSummaries(cursor, cursorPages.limit(limit), includeTotal));
     }
 
     @GetMapping("/{id}")
@@ -71,9 +86,13 @@ public class BookingController {
                 return ResponseEntity.badRequest().body(errorResponse);
             }
 
-            // Update booking status to CANCELLED
-            booking.setStatus("CANCELLED");
-            bookingService.updateBooking(id, booking);
+            // Cancel through the service so the cancellation is recorded in the outbox
+            if (!bookingService.cancelBooking(id)) {
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("error", "Booking could not be cancelled; it was changed by another request");
+                errorResponse.put("status", "error");
+                return ResponseEntity.status(409).body(errorResponse);
+            }
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Booking cancelled successfully");
@@ -119,9 +138,7 @@ public class BookingController {
                 return ResponseEntity.status(404).body(errorResponse);
             }
 
-            Booking booking = bookingOptional.get();
-            booking.setStatus(newStatus.toUpperCase());
-            Booking updatedBooking = bookingService.updateBooking(id, booking);
+            Booking updatedBooking = bookingService.updateBookingStatus(id, newStatus.toUpperCase());
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Booking status updated successfully");
@@ -374,9 +391,13 @@ public class BookingController {
                 return ResponseEntity.badRequest().body(errorResponse);
             }
 
-            // Update booking status to COMPLETED
-            booking.setStatus("COMPLETED");
-            bookingService.updateBooking(id, booking);
+            // Complete through the service so the return is recorded in the outbox
+            if (!bookingService.returnCar(id)) {
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("error", "Car could not be returned; the booking was changed by another request");
+                errorResponse.put("status", "error");
+                return ResponseEntity.status(409).body(errorResponse);
+            }
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Car returned successfully. Booking completed.");
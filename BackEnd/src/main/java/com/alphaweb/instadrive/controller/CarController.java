@@ -2,6 +2,7 @@ package com.alphaweb.instadrive.controller;
 
 import com.alphaweb.instadrive.dto.CarFeaturesRequest;
 import com.alphaweb.instadrive.dto.CarImageRequest;
+import com.alphaweb.instadrive.dto.CarSummaryDTO;
 import com.alphaweb.instadrive.model.Car;
 import com.alphaweb.instadrive.service.BookingService;
 import com.alphaweb.instadrive.service.CarService;
@@ -23,8 +24,8 @@ public class CarController {
     private final BookingService bookingService;
 
     @GetMapping
-    public List<Car> getAllCars() {
-        return carService.getAllCars();
+    public List<CarSummaryDTO> getAllCars() {
+        return carService.getCarSummaries();
     }
 
     @GetMapping("/{id}")
@@ -1,14 +1,21 @@
 package com.alphaweb.instadrive.controller;
 
 import com.alphaweb.instadrive.model.Car;
+import com.alphaweb.instadrive.model.ImageVariant;
 import com.alphaweb.instadrive.service.CarService;
+import com.alphaweb.instadrive.service.CarImageIndex;
 import com.alphaweb.instadrive.service.FileStorageService;
+import com.alphaweb.instadrive.service.ImagePackService;
+import com.alphaweb.instadrive.service.ImageVariantService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -20,6 +27,9 @@ public class CarImageController {
 
     private final CarService carService;
     private final FileStorageService fileStorageService;
+    private final ImageVariantService imageVariantService;
+    private final CarImageIndex carImageIndex;
+    private final ImagePackService imagePackService;
 
     /**
      * Upload an image for a car and update the car's image URL
@@ -40,7 +50,16 @@ public class CarImageController {
         }
 
         // Store the file
-        String fileName = fileStorageService.storeFile(file);
+        String fileName;
+        try {
+            fileName = fileStorageService.storeFile(file);
+        } catch (FileStorageService.StorageBusyException ex) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", ex.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(errorResponse);
+        }
 
         // Create the file download URL
         String fileDownloadUri = ServletUriComponentsBuilder.fromCurrentContextPath()
@@ -48,11 +67,19 @@ public class CarImageController {
                 .path(fileName)
                 .toUriString();
 
-        // Update the car's image URL
+        // Update the car's image URL; the car takes a reference to the upload and drops the previous one
         Car car = carOptional.get();
         car.setImageUrl(fileDownloadUri);
         Car updatedCar = carService.addCar(car);
 
+        // Add the upload to the image pack and render thumbnail, card and full-size variants in the background
+        Path storedPath = fileStorageService.resolveFilePath(fileName);
+        imagePackService.append(id, ImageVariant.ORIGINAL, storedPath, fileName);
+        imageVariantService.generateVariantsAsync(storedPath, () -> {
+            carImageIndex.evict(id);
+            packVariants(id, fileName);
+        });
+
         // Create response
         Map<String, Object> response = new HashMap<>();
         response.put("car", updatedCar);
@@ -63,4 +90,22 @@ public class CarImageController {
 
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * Append the rendered variants of an upload to the image pack
+     *
+     * @param carId The ID of the car
+     * @param fileName The stored file name of the upload
+     */
+    private void packVariants(Long carId, String fileName) {
+        if (!imagePackService.isEnabled()) {
+            return;
+        }
+        for (ImageVariant variant : ImageVariant.values()) {
+            Path variantPath = variant == ImageVariant.ORIGINAL ? null : imageVariantService.findVariant(fileName, variant);
+            if (variantPath != null) {
+                imagePackService.append(carId, variant, variantPath, fileName);
+            }
+        }
+    }
 }
@@ -1,25 +1,23 @@
 package com.alphaweb.instadrive.controller;
 
-import com.alphaweb.instadrive.model.Car;
-import com.alphaweb.instadrive.repository.CarRepository;
+import com.alphaweb.instadrive.model.ImageVariant;
+import com.alphaweb.instadrive.service.CarImageIndex;
+import com.alphaweb.instadrive.service.FileServingService;
+import com.alphaweb.instadrive.service.ImagePackService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Optional;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 
 /**
  * Controller that serves as a proxy for car images
@@ -30,134 +28,96 @@ import java.util.Optional;
 public class CarImageProxyController {
 
     @Autowired
-    private CarRepository carRepository;
+    private CarImageIndex carImageIndex;
+
+    @Autowired
+    private FileServingService fileServingService;
+
+    @Autowired
+    private ImagePackService imagePackService;
+
+    // Images are revalidated with their ETag once stale, so a replaced image shows up within the max-age
+    @Value("${car-images.cache-control:public, max-age=3600, stale-while-revalidate=86400}")
+    private String cacheControl;
+
+    @Value("${car-images.placeholder-cache-control:public, max-age=300}")
+    private String placeholderCacheControl;
 
     /**
      * Get a car image by car ID
      * @param carId The ID of the car
-     * @return The image resource or a placeholder if not found
+     * @param size The requested size: thumb, card, full or original (default)
+     * @param request The HTTP request
+     * @param response The HTTP response the image is written to
      */
     @GetMapping("/{carId}")
-    public ResponseEntity<Resource> getCarImage(@PathVariable Long carId) {
+    public void getCarImage(@PathVariable Long carId, @RequestParam(required = false) String size,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
         try {
-            // Find the car
-            Optional<Car> carOptional = carRepository.findById(carId);
-            if (carOptional.isEmpty()) {
-                return serveDefaultImage();
+            ImageVariant variant = ImageVariant.fromParam(size);
+
+            // Images in the pack are served straight from the mapping
+            ImagePackService.PackedImage packed = imagePackService.find(carId, variant);
+            if (packed != null) {
+                ImagePackService.PackEntry entry = packed.entry();
+                fileServingService.serve(packed.content(), entry.etag(), entry.createdAt(), entry.source(),
+                        MediaType.parseMediaType(entry.mediaType()), false, cacheControl, request, response);
+                return;
             }
 
-            Car car = carOptional.get();
-            String imageUrl = car.getImageUrl();
+            CarImageIndex.ResolvedImage image = carImageIndex.resolve(carId, variant);
 
-            // If no image URL is set, return the default image
-            if (imageUrl == null || imageUrl.isEmpty()) {
-                return serveDefaultImage();
+            if (!image.isPlaceholder()) {
+                try {
+                    fileServingService.serve(image.path(), image.metadata(), image.fileName(), image.mediaType(),
+                            false, cacheControl, request, response);
+                    if (!image.provisional()) {
+                        // Pack images that are not packed yet, so later requests skip the filesystem
+                        imagePackService.appendIfAbsent(carId, variant, image.path(),
+                                carImageIndex.resolve(carId).fileName(), image.resolvedAt());
+                    }
+                    return;
+                } catch (NoSuchFileException e) {
+                    // The file was removed after it was indexed
+                    carImageIndex.evict(carId);
+                    response.reset();
+                }
             }
 
-            // Extract the filename from the URL
-            String fileName = extractFileName(imageUrl);
-            
-            // Try to load the file from various locations
-            Resource imageResource = tryLoadFromLocations(fileName);
-            
-            if (imageResource != null && imageResource.exists()) {
-                return ResponseEntity.ok()
-                        .contentType(getMediaType(fileName))
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + fileName + "\"")
-                        .body(imageResource);
-            }
-            
-            // If all else fails, return the default image
-            return serveDefaultImage();
+            serveDefaultImage(request, response);
         } catch (Exception e) {
             System.err.println("Error serving car image: " + e.getMessage());
-            return serveDefaultImage();
-        }
-    }
-    
-    /**
-     * Extract the filename from a URL
-     * @param url The URL
-     * @return The filename
-     */
-    private String extractFileName(String url) {
-        try {
-            String path = new URL(url).getPath();
-            return path.substring(path.lastIndexOf('/') + 1);
-        } catch (MalformedURLException e) {
-            // If the URL is malformed, just return the last part
-            return url.substring(url.lastIndexOf('/') + 1);
-        }
-    }
-    
-    /**
-     * Try to load a file from various possible locations
-     * @param fileName The filename to load
-     * @return The resource if found, null otherwise
-     */
-    private Resource tryLoadFromLocations(String fileName) {
-        // Common locations where the file might be stored
-        String[] locations = {
-            "uploads",
-            "./uploads",
-            "../uploads",
-            System.getProperty("user.home") + "/instadrive-data/uploads",
-            System.getProperty("user.home") + "/uploads"
-        };
-        
-        for (String location : locations) {
-            try {
-                Path filePath = Paths.get(location, fileName).toAbsolutePath().normalize();
-                if (Files.exists(filePath)) {
-                    return new UrlResource(filePath.toUri());
-                }
-            } catch (Exception e) {
-                // Ignore and try the next location
+            if (!response.isCommitted()) {
+                response.reset();
+                serveDefaultImage(request, response);
             }
         }
-        
-        return null;
     }
-    
+
     /**
      * Serve a default placeholder image
-     * @return Response with the default image
+     * @param request The HTTP request
+     * @param response The HTTP response
      */
-    private ResponseEntity<Resource> serveDefaultImage() {
-        try {
-            // Try to load from classpath
-            Resource defaultImage = new ClassPathResource("static/images/car-placeholder.png");
-            if (defaultImage.exists()) {
-                return ResponseEntity.ok()
-                        .contentType(MediaType.IMAGE_PNG)
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"car-placeholder.png\"")
-                        .body(defaultImage);
-            }
-            
-            // If no placeholder is available, return a 404
-            return ResponseEntity.notFound().build();
-        } catch (Exception e) {
-            return ResponseEntity.notFound().build();
+    private void serveDefaultImage(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        CarImageIndex.Placeholder placeholder = carImageIndex.getPlaceholder();
+
+        // If no placeholder is available, return a 404
+        if (placeholder.bytes() == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
-    }
-    
-    /**
-     * Determine the media type based on the file extension
-     * @param fileName The filename
-     * @return The media type
-     */
-    private MediaType getMediaType(String fileName) {
-        String extension = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase();
-        switch (extension) {
-            case "png":
-                return MediaType.IMAGE_PNG;
-            case "jpg":
-            case "jpeg":
-                return MediaType.IMAGE_JPEG;
-            case "gif":
-                return MediaType.IMAGE_GIF;
-            default:
-                return MediaType.APPLICATION_OCTET_STREAM;
+
+        response.setHeader(HttpHeaders.ETAG, placeholder.etag());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, placeholderCacheControl);
+        if (fileServingService.isNotModified(request, placeholder.etag(), -1)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
         }
+
+        response.setContentType(MediaType.IMAGE_PNG_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"car-placeholder.png\"");
+        response.setContentLength(placeholder.bytes().length);
+        response.getOutputStream().write(placeholder.bytes());
     }
-}
\ No newline at end of file
+}
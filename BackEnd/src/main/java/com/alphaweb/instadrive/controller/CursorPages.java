@@ -0,0 +1,59 @@
+package com.alphaweb.instadrive.controller;
+
+import com.alphaweb.instadrive.dto.CursorPage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Page sizes and response headers shared by the keyset-paginated list endpoints
+ * The body stays a plain list; the cursor of the next page is sent in X-Next-Cursor, and the
+ * total in X-Total-Count when the client asked for it with includeTotal=true
+ */
+@Component
+public class CursorPages {
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+    private final int defaultSize;
+    private final int maxSize;
+
+    public CursorPages(@Value("${pagination.default-size:50}") int defaultSize,
+                       @Value("${pagination.max-size:200}") int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+        this.defaultSize = Math.min(Math.max(1, defaultSize), this.maxSize);
+    }
+
+    /**
+     * Resolve the page size a client asked for
+     *
+     * @param requested The requested size, or null for the default
+     * @return The size, capped at pagination.max-size
+     */
+    public int limit(Integer requested) {
+        if (requested == null || requested < 1) {
+            return defaultSize;
+        }
+        return Math.min(requested, maxSize);
+    }
+
+    /**
+     * Build the response for a page
+     *
+     * @param page The page
+     * @return The items, with the next cursor and total in headers
+     */
+    public <T> ResponseEntity<List<T>> ok(CursorPage<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        if (page.getTotal() != null) {
+            response.header(TOTAL_COUNT_HEADER, String.valueOf(page.getTotal()));
+        }
+        return response.body(page.getItems());
+    }
+}
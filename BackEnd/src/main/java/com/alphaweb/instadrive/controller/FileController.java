@@ -1,17 +1,22 @@
 package com.alphaweb.instadrive.controller;
 
+import com.alphaweb.instadrive.service.FileServingService;
 import com.alphaweb.instadrive.service.FileStorageService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -21,10 +26,16 @@ import java.util.Map;
 public class FileController {
 
     private final FileStorageService fileStorageService;
+    private final FileServingService fileServingService;
 
     @PostMapping("/upload")
     public ResponseEntity<Map<String, String>> uploadFile(@RequestParam("file") MultipartFile file) {
-        String fileName = fileStorageService.storeFile(file);
+        String fileName;
+        try {
+            fileName = fileStorageService.storeFile(file);
+        } catch (FileStorageService.StorageBusyException ex) {
+            return busyResponse(ex);
+        }
 
         String fileDownloadUri = ServletUriComponentsBuilder.fromCurrentContextPath()
                 .path("/api/files/")
@@ -40,27 +51,58 @@ public class FileController {
         return ResponseEntity.ok(response);
     }
 
-    @GetMapping("/{fileName:.+}")
-    public ResponseEntity<Resource> downloadFile(@PathVariable String fileName, HttpServletRequest request) {
-        // Load file as Resource
-        Resource resource = fileStorageService.loadFileAsResource(fileName);
-
-        // Try to determine file's content type
-        String contentType = null;
+    /**
+     * Upload a file sent as the raw request body
+     * Unlike multipart uploads the body is never spooled to a temporary file; it is hashed and written in one pass
+     *
+     * @param fileName The original file name, used for the extension
+     * @param request The HTTP request carrying the file content
+     * @return The stored file name and download URI
+     */
+    @PostMapping(value = "/stream", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<Map<String, String>> uploadStream(@RequestParam("fileName") String fileName,
+                                                            HttpServletRequest request) throws IOException {
+        FileStorageService.StoreResult stored;
         try {
-            contentType = request.getServletContext().getMimeType(resource.getFile().getAbsolutePath());
-        } catch (IOException ex) {
-            // logger.info("Could not determine file type.");
+            stored = fileStorageService.storeStream(request.getInputStream(), StringUtils.cleanPath(fileName),
+                    request.getContentType());
+        } catch (FileStorageService.StorageBusyException ex) {
+            return busyResponse(ex);
         }
 
-        // Fallback to the default content type if type could not be determined
-        if (contentType == null) {
-            contentType = "application/octet-stream";
+        String fileDownloadUri = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/files/")
+                .path(stored.fileName())
+                .toUriString();
+
+        Map<String, String> response = new HashMap<>();
+        response.put("fileName", stored.fileName());
+        response.put("fileDownloadUri", fileDownloadUri);
+        response.put("fileType", request.getContentType());
+        response.put("size", String.valueOf(stored.size()));
+
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/{fileName:.+}")
+    public void downloadFile(@PathVariable String fileName, HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        Path filePath = fileStorageService.resolveFilePath(fileName);
+
+        try {
+            // Uploaded files are never rewritten under the same name, so clients may keep them
+            fileServingService.serve(filePath, filePath.getFileName().toString(), true,
+                    "public, max-age=86400", request, response);
+        } catch (NoSuchFileException ex) {
+            throw new RuntimeException("File not found " + fileName, ex);
         }
+    }
 
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getFilename() + "\"")
-                .body(resource);
+    private ResponseEntity<Map<String, String>> busyResponse(FileStorageService.StorageBusyException ex) {
+        Map<String, String> errorResponse = new HashMap<>();
+        errorResponse.put("error", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(errorResponse);
     }
 }
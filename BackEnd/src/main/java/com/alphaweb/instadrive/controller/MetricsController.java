@@ -0,0 +1,125 @@
+package com.alphaweb.instadrive.controller;
+
+import com.alphaweb.instadrive.config.AdaptivePoolSizer;
+import com.alphaweb.instadrive.config.DatabaseMetrics;
+import com.alphaweb.instadrive.config.ReplicaRoutingDataSource;
+import com.alphaweb.instadrive.service.HotImageCache;
+import com.alphaweb.instadrive.service.ImagePackService;
+import com.alphaweb.instadrive.service.OutboxRelay;
+import com.alphaweb.instadrive.service.PaymentGatewayClient;
+import com.alphaweb.instadrive.service.VelocityService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controller exposing runtime metrics to admins
+ */
+@RestController
+@RequestMapping("/api/admin/metrics")
+@RequiredArgsConstructor
+public class MetricsController {
+
+    private final HotImageCache hotImageCache;
+    private final ImagePackService imagePackService;
+    private final PaymentGatewayClient paymentGatewayClient;
+    private final OutboxRelay outboxRelay;
+    private final VelocityService velocityService;
+    private final ObjectProvider<ReplicaRoutingDataSource> replicaRoutingDataSource;
+    private final DatabaseMetrics databaseMetrics;
+    private final AdaptivePoolSizer adaptivePoolSizer;
+
+    /**
+     * Get the hot image cache statistics
+     *
+     * @return Hit ratio, resident bytes and eviction counters
+     */
+    @GetMapping("/image-cache")
+    public ResponseEntity<Map<String, Object>> getImageCacheMetrics() {
+        return ResponseEntity.ok(hotImageCache.getStats());
+    }
+
+    /**
+     * Get the image pack statistics
+     *
+     * @return Packed image count, pack size and reclaimable bytes
+     */
+    @GetMapping("/image-pack")
+    public ResponseEntity<Map<String, Object>> getImagePackMetrics() {
+        return ResponseEntity.ok(imagePackService.getStats());
+    }
+
+    /**
+     * Get the payment gateway client statistics
+     *
+     * @return Charge counters, charges in flight and free gateway permits
+     */
+    @GetMapping("/payment-gateway")
+    public ResponseEntity<Map<String, Object>> getPaymentGatewayMetrics() {
+        return ResponseEntity.ok(paymentGatewayClient.getStats());
+    }
+
+    /**
+     * Get the outbox relay statistics
+     *
+     * @return Delivered events per second, delivery counters and the pending backlog
+     */
+    @GetMapping("/outbox")
+    public ResponseEntity<Map<String, Object>> getOutboxMetrics() {
+        return ResponseEntity.ok(outboxRelay.getStats());
+    }
+
+    /**
+     * Get the velocity check statistics
+     *
+     * @return Tracked keys and rejected, flagged and untracked attempts per rule
+     */
+    @GetMapping("/velocity")
+    public ResponseEntity<Map<String, Object>> getVelocityMetrics() {
+        return ResponseEntity.ok(velocityService.getStats());
+    }
+
+    /**
+     * Get the read replica routing statistics
+     *
+     * @return Reads per target, fallbacks and replica health, or enabled=false without replicas
+     */
+    @GetMapping("/replicas")
+    public ResponseEntity<Map<String, Object>> getReplicaMetrics() {
+        ReplicaRoutingDataSource routing = replicaRoutingDataSource.getIfAvailable();
+        if (routing == null) {
+            return ResponseEntity.ok(Map.of("enabled", false));
+        }
+        return ResponseEntity.ok(routing.getStats());
+    }
+
+    /**
+     * Get the connection pool statistics
+     *
+     * @return Connection counts and acquire, usage and creation times per pool, and the adaptive sizing decisions
+     */
+    @GetMapping("/connection-pool")
+    public ResponseEntity<Map<String, Object>> getConnectionPoolMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("pools", databaseMetrics.getPoolStats());
+        metrics.put("adaptiveSizing", adaptivePoolSizer.getStats());
+        return ResponseEntity.ok(metrics);
+    }
+
+    /**
+     * Get the repository method timings
+     *
+     * @return Call counts and times per repository method, the most total time first
+     */
+    @GetMapping("/repositories")
+    public ResponseEntity<List<Map<String, Object>>> getRepositoryMetrics() {
+        return ResponseEntity.ok(databaseMetrics.getRepositoryStats());
+    }
+}
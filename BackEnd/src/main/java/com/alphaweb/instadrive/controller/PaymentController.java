@@ -1,11 +1,13 @@
 package com.alphaweb.instadrive.controller;
 
 import com.alphaweb.instadrive.dto.*;
+import com.alphaweb.instadrive.exception.PaymentException;
 import com.alphaweb.instadrive.model.Booking;
 import com.alphaweb.instadrive.model.Car;
 import com.alphaweb.instadrive.model.Payment;
 import com.alphaweb.instadrive.service.BookingService;
 import com.alphaweb.instadrive.service.CarService;
+import com.alphaweb.instadrive.service.PaymentGatewayClient;
 import com.alphaweb.instadrive.service.PaymentService;
 import com.alphaweb.instadrive.service.UserService;
 import lombok.RequiredArgsConstructor;
@@ -28,6 +30,8 @@ public class PaymentController {
     private final UserService userService;
     private final CarService carService;
     private final BookingService bookingService;
+    private final PaymentGatewayClient paymentGatewayClient;
+    private final CursorPages cursorPages;
 
     @PostMapping("/upi")
     public ResponseEntity<?> upiPayment(@RequestBody UpiPaymentRequest request) {
@@ -35,69 +39,13 @@ public class PaymentController {
             // Log the incoming request for debugging
             System.out.println("Received UPI payment request: " + request);
 
-            // Validate required fields
-            if (request.getBookingId() == null) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", "Booking ID is required");
-                return ResponseEntity.badRequest().body(errorResponse);
-            }
-
-            // Get the booking to ensure it exists and to get additional information
-            Optional<Booking> bookingOptional = bookingService.getBookingById(request.getBookingId());
-            if (bookingOptional.isEmpty()) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", "Booking not found with ID: " + request.getBookingId());
-                return ResponseEntity.badRequest().body(errorResponse);
-            }
-
-            Booking booking = bookingOptional.get();
-
-            // Set user ID from booking if not provided
-            if (request.getUserId() == null) {
-                request.setUserId(booking.getUserId());
-                System.out.println("Set userId from booking: " + request.getUserId());
-            }
-
-            // Set amount from booking if not provided
-            if (request.getAmount() == null || request.getAmount() <= 0) {
-                request.setAmount(booking.getTotalAmount());
-                System.out.println("Set amount from booking: " + request.getAmount());
-            }
-
-            // Set currency if not provided
-            if (request.getCurrency() == null || request.getCurrency().isEmpty()) {
-                request.setCurrency("INR"); // Default currency
-                System.out.println("Set default currency: " + request.getCurrency());
-            }
-
-            // Set payment mode if not provided
-            if (request.getPaymentMode() == null || request.getPaymentMode().isEmpty()) {
-                request.setPaymentMode("UPI");
-                System.out.println("Set payment mode: " + request.getPaymentMode());
-            }
-
-            if (request.getUpiId() == null || request.getUpiId().isEmpty()) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", "UPI ID is required");
-                return ResponseEntity.badRequest().body(errorResponse);
-            }
-
-            // Log the complete request after filling in missing values
-            System.out.println("Complete UPI payment request: " + request);
-
-            // Process payment
+            // The service loads the booking and fills in the user and amount the request leaves out
             PaymentResponse response = paymentService.processUpiPayment(request);
-
-            // Add booking ID to response for clarity
-            Map<String, Object> enhancedResponse = new HashMap<>();
-            enhancedResponse.put("status", response.getStatus());
-            enhancedResponse.put("transactionId", response.getTransactionId());
-            enhancedResponse.put("message", response.getMessage());
-            enhancedResponse.put("bookingId", request.getBookingId());
-            enhancedResponse.put("amount", request.getAmount());
-            enhancedResponse.put("referenceId", booking.getReferenceId());
-
-            return ResponseEntity.ok(enhancedResponse);
+            return ResponseEntity.ok(enhancedResponse(response, request.getBookingId(), request.getAmount()));
+        } catch (PaymentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
         } catch (Exception e) {
             // Log the error
             System.err.println("Error processing UPI payment: " + e.getMessage());
@@ -116,69 +64,13 @@ public class PaymentController {
             // Log the incoming request for debugging
             System.out.println("Received card payment request: " + request);
 
-            // Validate required fields
-            if (request.getBookingId() == null) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", "Booking ID is required");
-                return ResponseEntity.badRequest().body(errorResponse);
-            }
-
-            // Get the booking to ensure it exists and to get additional information
-            Optional<Booking> bookingOptional = bookingService.getBookingById(request.getBookingId());
-            if (bookingOptional.isEmpty()) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", "Booking not found with ID: " + request.getBookingId());
-                return ResponseEntity.badRequest().body(errorResponse);
-            }
-
-            Booking booking = bookingOptional.get();
-
-            // Set user ID from booking if not provided
-            if (request.getUserId() == null) {
-                request.setUserId(booking.getUserId());
-                System.out.println("Set userId from booking: " + request.getUserId());
-            }
-
-            // Set amount from booking if not provided
-            if (request.getAmount() == null || request.getAmount() <= 0) {
-                request.setAmount(booking.getTotalAmount());
-                System.out.println("Set amount from booking: " + request.getAmount());
-            }
-
-            // Set currency if not provided
-            if (request.getCurrency() == null || request.getCurrency().isEmpty()) {
-                request.setCurrency("INR"); // Default currency
-                System.out.println("Set default currency: " + request.getCurrency());
-            }
-
-            // Set payment mode if not provided
-            if (request.getPaymentMode() == null || request.getPaymentMode().isEmpty()) {
-                request.setPaymentMode("CARD");
-                System.out.println("Set payment mode: " + request.getPaymentMode());
-            }
-
-            if (request.getCardNumber() == null || request.getCardNumber().isEmpty()) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", "Card number is required");
-                return ResponseEntity.badRequest().body(errorResponse);
-            }
-
-            // Log the complete request after filling in missing values
-            System.out.println("Complete card payment request: " + request);
-
-            // Process payment
+            // The service loads the booking and fills in the user and amount the request leaves out
             PaymentResponse response = paymentService.processCardPayment(request);
-
-            // Add booking ID to response for clarity
-            Map<String, Object> enhancedResponse = new HashMap<>();
-            enhancedResponse.put("status", response.getStatus());
-            enhancedResponse.put("transactionId", response.getTransactionId());
-            enhancedResponse.put("message", response.getMessage());
-            enhancedResponse.put("bookingId", request.getBookingId());
-            enhancedResponse.put("amount", request.getAmount());
-            enhancedResponse.put("referenceId", booking.getReferenceId());
-
-            return ResponseEntity.ok(enhancedResponse);
+            return ResponseEntity.ok(enhancedResponse(response, request.getBookingId(), request.getAmount()));
+        } catch (PaymentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
         } catch (Exception e) {
             // Log the error
             System.err.println("Error processing card payment: " + e.getMessage());
@@ -192,14 +84,34 @@ public class PaymentController {
     }
 
     /**
-     * Get all payments (admin only)
+     * Add the booking ID and amount to a payment response for clarity
+     */
+    private Map<String, Object> enhancedResponse(PaymentResponse response, Long bookingId, Double amount) {
+        Map<String, Object> enhancedResponse = new HashMap<>();
+        enhancedResponse.put("status", response.getStatus());
+        enhancedResponse.put("transactionId", response.getTransactionId());
+        enhancedResponse.put("message", response.getMessage());
+        enhancedResponse.put("bookingId", bookingId);
+        enhancedResponse.put("amount", amount);
+        enhancedResponse.put("referenceId", response.getReferenceId());
+        return enhancedResponse;
+    }
+
+    /**
+     * Get a page of payments (admin only)
      *
-     * @return List of all payments
+     * @param cursor The X-Next-Cursor of the previous page, or none for the first page
+     * @param limit The page size, capped by pagination.max-size
+     * @param includeTotal Whether to send the number of payments in X-Total-Count
+     * @return The payments, newest first, with the cursor of the next page in X-Next-Cursor
      */
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<List<Payment>> getAllPayments() {
-        return ResponseEntity.ok(paymentService.getAllPayments());
+    public ResponseEntity<List<PaymentSummaryDTO>> getAllPayments(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        return cursorPages.ok(paymentService.getPaymentSummaries(cursor, cursorPages.limit(limit), includeTotal));
     }
 
     /**
@@ -283,35 +195,17 @@ public class PaymentController {
             @PathVariable Long bookingId,
             @RequestBody UpiPaymentRequest request) {
         try {
-            // Get the booking
-            Optional<Booking> bookingOptional = bookingService.getBookingById(bookingId);
-            if (bookingOptional.isEmpty()) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", "Booking not found with ID: " + bookingId);
-                return ResponseEntity.badRequest().body(errorResponse);
-            }
-
-            Booking booking = bookingOptional.get();
-
-            // Set booking ID and user ID in the request
+            // The booking's own user pays; the service fills it in from the booking
             request.setBookingId(bookingId);
-            request.setUserId(booking.getUserId());
-
-            // Set amount if not provided or invalid
-            if (request.getAmount() == null || request.getAmount() <= 0) {
-                request.setAmount(booking.getTotalAmount());
-            }
-
-            // Validate UPI ID
-            if (request.getUpiId() == null || request.getUpiId().isEmpty()) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", "UPI ID is required");
-                return ResponseEntity.badRequest().body(errorResponse);
-            }
+            request.setUserId(null);
 
             // Process payment
             PaymentResponse response = paymentService.processUpiPayment(request);
             return ResponseEntity.ok(response);
+        } catch (PaymentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
         } catch (Exception e) {
             // Log the error
             System.err.println("Error processing UPI payment for booking: " + e.getMessage());
@@ -336,35 +230,17 @@ public class PaymentController {
             @PathVariable Long bookingId,
             @RequestBody CardPaymentRequest request) {
         try {
-            // Get the booking
-            Optional<Booking> bookingOptional = bookingService.getBookingById(bookingId);
-            if (bookingOptional.isEmpty()) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", "Booking not found with ID: " + bookingId);
-                return ResponseEntity.badRequest().body(errorResponse);
-            }
-
-            Booking booking = bookingOptional.get();
-
-            // Set booking ID and user ID in the request
+            // The booking's own user pays; the service fills it in from the booking
             request.setBookingId(bookingId);
-            request.setUserId(booking.getUserId());
-
-            // Set amount if not provided or invalid
-            if (request.getAmount() == null || request.getAmount() <= 0) {
-                request.setAmount(booking.getTotalAmount());
-            }
-
-            // Validate card details
-            if (request.getCardNumber() == null || request.getCardNumber().isEmpty()) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", "Card number is required");
-                return ResponseEntity.badRequest().body(errorResponse);
-            }
+            request.setUserId(null);
 
             // Process payment
             PaymentResponse response = paymentService.processCardPayment(request);
             return ResponseEntity.ok(response);
+        } catch (PaymentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
         } catch (Exception e) {
             // Log the error
             System.err.println("Error processing card payment for booking: " + e.getMessage());
@@ -430,12 +306,14 @@ public class PaymentController {
      * Get payment status for a booking
      *
      * @param bookingId The ID of the booking
+     * @param summary Whether to return only the totals, without the list of payments
      * @return Payment status information
      */
     @GetMapping("/booking/{bookingId}/status")
-    public ResponseEntity<?> getPaymentStatus(@PathVariable Long bookingId) {
+    public ResponseEntity<?> getPaymentStatus(@PathVariable Long bookingId,
+                                              @RequestParam(defaultValue = "false") boolean summary) {
         try {
-            Map<String, Object> paymentStatus = paymentService.getPaymentStatus(bookingId);
+            PaymentStatusDTO paymentStatus = paymentService.getPaymentStatus(bookingId, summary);
             return ResponseEntity.ok(paymentStatus);
 
         } catch (Exception e) {
@@ -448,5 +326,46 @@ public class PaymentController {
         }
     }
 
+    /**
+     * Receive the outcome of a pending payment from the payment gateway
+     *
+     * @param signature The hex-encoded HMAC-SHA256 of "transactionId:status"
+     * @param payload The transaction ID, the status (SUCCESS or FAILED) and an optional failure reason
+     * @return Whether the payment was completed by this notification
+     */
+    @PostMapping("/gateway/webhook")
+    public ResponseEntity<?> gatewayWebhook(
+            @RequestHeader(value = "X-Gateway-Signature", required = false) String signature,
+            @RequestBody Map<String, String> payload) {
+        String transactionId = payload.get("transactionId");
+        String status = payload.get("status");
+
+        if (!paymentGatewayClient.verifyWebhookSignature(transactionId, status, signature)) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Invalid webhook signature");
+            return ResponseEntity.status(401).body(errorResponse);
+        }
+        if (!"SUCCESS".equals(status) && !"FAILED".equals(status)) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Unknown payment status: " + status);
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+
+        try {
+            boolean completed = paymentService.completePayment(transactionId, "SUCCESS".equals(status),
+                    payload.get("failureReason"));
 
+            // Repeated deliveries are acknowledged too, so the gateway stops retrying
+            Map<String, Object> response = new HashMap<>();
+            response.put("transactionId", transactionId);
+            response.put("completed", completed);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            System.err.println("Error handling gateway webhook: " + e.getMessage());
+
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Failed to complete payment: " + e.getMessage());
+            return ResponseEntity.status(500).body(errorResponse);
+        }
+    }
 }
@@ -1,16 +1,31 @@
 package com.alphaweb.instadrive.controller;
 
+import com.alphaweb.instadrive.dto.ReceiptSummaryDTO;
 import com.alphaweb.instadrive.model.Receipt;
+import com.alphaweb.instadrive.service.FileServingService;
+import com.alphaweb.instadrive.service.ReceiptArchiveService;
+import com.alphaweb.instadrive.service.ReceiptQrService;
 import com.alphaweb.instadrive.service.ReceiptService;
+import com.alphaweb.instadrive.service.ReceiptTokenService;
+import com.alphaweb.instadrive.service.StatementService;
 import com.alphaweb.instadrive.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,20 +37,126 @@ import java.util.Optional;
 public class ReceiptController {
 
     private final ReceiptService receiptService;
+    private final FileServingService fileServingService;
     private final UserService userService;
+    private final ReceiptQrService receiptQrService;
+    private final ReceiptTokenService receiptTokenService;
+    private final ReceiptArchiveService receiptArchiveService;
+    private final StatementService statementService;
+    private final CursorPages cursorPages;
 
     /**
-     * Get all receipts for the current user
+     * Get a page of the current user's receipts, newest first
      *
-     * @return List of receipts for the current user
+     * @param cursor The X-Next-Cursor of the previous page, or none for the first page
+     * @param limit The page size, capped by pagination.max-size
+     * @param includeTotal Whether to send the number of receipts in X-Total-Count
+     * @return The receipts, with the cursor of the next page in X-Next-Cursor
      */
     @GetMapping
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<List<Receipt>> getCurrentUserReceipts() {
+    public ResponseEntity<List<ReceiptSummaryDTO>> getCurrentUserReceipts(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
         String email = userService.getCurrentUserEmail();
         Long userId = userService.getUserByEmail(email).get().getId();
-        List<Receipt> receipts = receiptService.getReceiptsByUserId(userId);
-        return ResponseEntity.ok(receipts);
+        return cursorPages.ok(receiptService.getReceiptSummariesByUserId(
+                userId, cursor, cursorPages.limit(limit), includeTotal));
+    }
+
+    /**
+     * Download all of the current user's receipts in a date range as one ZIP archive
+     * The archive is streamed as it is built, so it can be arbitrarily large
+     *
+     * @param from The first transaction date to include (optional)
+     * @param to The last transaction date to include (optional)
+     * @param response The HTTP response the archive is streamed to
+     */
+    @GetMapping("/archive")
+    @PreAuthorize("isAuthenticated()")
+    public void downloadReceiptArchive(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            HttpServletResponse response) throws IOException {
+        String email = userService.getCurrentUserEmail();
+        Long userId = userService.getUserByEmail(email).get().getId();
+
+        receiptArchiveService.streamArchive(userId, from, to, response);
+    }
+
+    /**
+     * Download a consolidated statement of payments and refunds for a month
+     *
+     * @param month The month, as yyyy-MM
+     * @param userId The user whose statement to download; only admins may name another user
+     * @param request The HTTP request, used for Range and conditional headers
+     * @param response The HTTP response the PDF is streamed to
+     * @return An error response, or null once the PDF has been streamed
+     */
+    @GetMapping("/statements/{month}")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> downloadStatement(@PathVariable String month, @RequestParam(required = false) Long userId,
+                                               HttpServletRequest request, HttpServletResponse response) {
+        String email = userService.getCurrentUserEmail();
+        Long currentUserId = userService.getUserByEmail(email).get().getId();
+
+        if (userId == null) {
+            userId = currentUserId;
+        } else if (!userId.equals(currentUserId) && !userService.isCurrentUserAdmin()) {
+            return ResponseEntity.status(403).build(); // Forbidden
+        }
+
+        YearMonth yearMonth;
+        try {
+            yearMonth = YearMonth.parse(month);
+        } catch (DateTimeParseException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Invalid month format, expected yyyy-MM: " + month);
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+
+        try {
+            Path statement = statementService.getStatement(userId, yearMonth);
+            fileServingService.serve(statement, statementService.statementFileName(userId, yearMonth), true,
+                    "private, no-cache", request, response);
+            return null;
+        } catch (Exception e) {
+            System.err.println("Error serving statement: " + e.getMessage());
+            if (response.isCommitted()) {
+                return null;
+            }
+
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Failed to generate statement: " + e.getMessage());
+            return ResponseEntity.status(500).body(errorResponse);
+        }
+    }
+
+    /**
+     * Verify a receipt token scanned from a receipt's QR code
+     * The token is checked by its signature alone, without any database lookup
+     *
+     * @param token The scanned token
+     * @return The verified receipt fields, or 422 if the token is not genuine
+     */
+    @GetMapping("/verify")
+    public ResponseEntity<Map<String, Object>> verifyReceiptToken(@RequestParam String token) {
+        ReceiptTokenService.ReceiptClaims claims = receiptTokenService.verify(token);
+
+        Map<String, Object> response = new HashMap<>();
+        if (claims == null) {
+            response.put("valid", false);
+            response.put("error", "Invalid or tampered receipt token");
+            return ResponseEntity.unprocessableEntity().body(response);
+        }
+
+        response.put("valid", true);
+        response.put("transactionId", claims.transactionId());
+        response.put("amount", claims.amount());
+        response.put("bookingId", claims.bookingId());
+        response.put("transactionDate", claims.transactionDate().toString());
+        return ResponseEntity.ok(response);
     }
 
     /**
@@ -96,15 +217,69 @@ public class ReceiptController {
         return ResponseEntity.ok(receipt);
     }
 
+    /**
+     * Get the verification QR code of a receipt as a PNG
+     * The code changes only if the receipt or its signing key does; clients cache it for a day and then
+     * revalidate it with its ETag, the SHA-256 of the PNG
+     *
+     * @param id The receipt ID
+     * @param request The HTTP request, used for conditional headers
+     * @param response The HTTP response the PNG is written to
+     * @return An error response, or null once the PNG has been written
+     */
+    @GetMapping("/{id}/qr")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> getReceiptQrCode(@PathVariable Long id, HttpServletRequest request,
+                                              HttpServletResponse response) {
+        Optional<Receipt> receiptOptional = receiptService.getReceiptById(id);
+
+        if (receiptOptional.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Receipt receipt = receiptOptional.get();
+
+        // Check if the receipt belongs to the current user or the user is an admin
+        String email = userService.getCurrentUserEmail();
+        Long userId = userService.getUserByEmail(email).get().getId();
+        boolean isAdmin = userService.isCurrentUserAdmin();
+
+        if (!receipt.getUserId().equals(userId) && !isAdmin) {
+            return ResponseEntity.status(403).build(); // Forbidden
+        }
+
+        try {
+            ReceiptQrService.QrPng png = receiptQrService.getQrCodePng(receipt);
+            long lastModified = receipt.getTransactionDate() != null
+                    ? receipt.getTransactionDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                    : 0;
+
+            fileServingService.serve(ByteBuffer.wrap(png.bytes()), png.etag(), lastModified,
+                    "receipt_qr_" + receipt.getTransactionId() + ".png", MediaType.IMAGE_PNG, false,
+                    "private, max-age=86400", request, response);
+            return null;
+        } catch (Exception e) {
+            System.err.println("Error rendering receipt QR code: " + e.getMessage());
+
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Failed to render QR code: " + e.getMessage());
+            errorResponse.put("receiptId", id);
+            return ResponseEntity.status(500).body(errorResponse);
+        }
+    }
+
     /**
      * Download a receipt PDF
      *
      * @param id The receipt ID
-     * @return The receipt PDF
+     * @param request The HTTP request, used for Range and conditional headers
+     * @param response The HTTP response the PDF is streamed to
+     * @return An error response, or null once the PDF has been streamed
      */
     @GetMapping("/{id}/download")
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<?> downloadReceipt(@PathVariable String id) {
+    public ResponseEntity<?> downloadReceipt(@PathVariable String id, HttpServletRequest request,
+                                             HttpServletResponse response) {
         // Validate the ID parameter
         Long receiptId;
         try {
@@ -149,18 +324,29 @@ public class ReceiptController {
                 return ResponseEntity.status(404).body(errorResponse);
             }
 
-            // Load receipt PDF
+            // Stream receipt PDF
             try {
-                Resource resource = receiptService.getReceiptPdf(receipt.getReceiptPath());
+                Path receiptFile = receiptService.getReceiptFilePath(receipt.getReceiptPath());
+                fileServingService.serve(receiptFile, receipt.getReceiptPath(), true,
+                        "private, no-cache", request, response);
 
-                return ResponseEntity.ok()
-                        .contentType(MediaType.APPLICATION_PDF)
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + receipt.getReceiptPath() + "\"")
-                        .body(resource);
+                // The file-serving layer has already written the response
+                return null;
+            } catch (NoSuchFileException e) {
+                System.err.println("Receipt file does not exist: " + e.getMessage());
+
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("error", "Receipt file not found");
+                errorResponse.put("receiptId", receiptId);
+                return ResponseEntity.status(404).body(errorResponse);
             } catch (Exception e) {
                 System.err.println("Error loading receipt PDF: " + e.getMessage());
                 e.printStackTrace();
 
+                if (response.isCommitted()) {
+                    return null;
+                }
+
                 // Return error response
                 Map<String, Object> errorResponse = new HashMap<>();
                 errorResponse.put("error", "Failed to load receipt file: " + e.getMessage());
@@ -1,5 +1,6 @@
 package com.alphaweb.instadrive.controller;
 
+import com.alphaweb.instadrive.dto.UserSummaryDTO;
 import com.alphaweb.instadrive.model.Booking;
 import com.alphaweb.instadrive.model.User;
 import com.alphaweb.instadrive.service.BookingService;
@@ -21,11 +22,23 @@ public class UserController {
 
     private final UserService userService;
     private final BookingService bookingService;
+    private final CursorPages cursorPages;
 
+    /**
+     * Get a page of users in ID order
+     *
+     * @param cursor The X-Next-Cursor of the previous page, or none for the first page
+     * @param limit The page size, capped by pagination.max-size
+     * @param includeTotal Whether to send the number of users in X-Total-Count
+     * @return The users, with the cursor of the next page in X-Next-Cursor
+     */
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<List<User>> getAllUsers() {
-        return ResponseEntity.ok(userService.getAllUsers());
+    public ResponseEntity<List<UserSummaryDTO>> getAllUsers(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        return cursorPages.ok(userService.getUserSummaries(cursor, cursorPages.limit(limit), includeTotal));
     }
 
     @GetMapping("/{id}")
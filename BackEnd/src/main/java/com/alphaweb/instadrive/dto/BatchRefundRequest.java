@@ -0,0 +1,25 @@
+package com.alphaweb.instadrive.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * DTO for a batch refund: either explicit booking IDs or a filter on car and dates
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchRefundRequest {
+    private List<Long> bookingIds;
+
+    // Filter, used when no booking IDs are given
+    private Long carId;
+    private LocalDate from; // Bookings ending on or after this date
+    private LocalDate to; // Bookings starting on or before this date
+
+    private boolean cancelBookings; // Cancel confirmed bookings before refunding them
+}
@@ -0,0 +1,27 @@
+package com.alphaweb.instadrive.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DTO for the state of a batch refund job
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchRefundResponse {
+    private String jobId;
+    private String status; // RUNNING, COMPLETED, FAILED
+    private int requested;
+    private int processed;
+    private Map<String, Integer> outcomes; // Number of bookings per outcome
+    private List<BatchRefundResult> results;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+}
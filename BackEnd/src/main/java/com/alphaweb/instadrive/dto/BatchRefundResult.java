@@ -0,0 +1,19 @@
+package com.alphaweb.instadrive.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for the outcome of one booking in a batch refund
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchRefundResult {
+    private Long bookingId;
+    private String outcome; // REFUNDED, ALREADY_REFUNDED, NOT_CANCELLED, NO_PAYMENT, NOT_FOUND, FAILED
+    private String transactionId; // The refund transaction, if one exists
+    private double amount;
+    private String message;
+}
@@ -0,0 +1,17 @@
+package com.alphaweb.instadrive.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for the bookings in one status, aggregated in the database
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookingStatusTotal {
+    private String status;
+    private long count;
+    private double total; // Sum of the total amounts
+}
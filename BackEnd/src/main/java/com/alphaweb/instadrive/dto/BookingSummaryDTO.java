@@ -0,0 +1,24 @@
+package com.alphaweb.instadrive.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * DTO for a booking in the booking list
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookingSummaryDTO {
+    private Long id;
+    private String referenceId;
+    private Long carId;
+    private Long userId;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private double totalAmount;
+    private String status;
+}
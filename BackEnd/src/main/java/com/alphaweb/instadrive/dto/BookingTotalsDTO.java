@@ -0,0 +1,19 @@
+package com.alphaweb.instadrive.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * DTO for the totals over all bookings shown on the admin dashboard
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookingTotalsDTO {
+    private long count;
+    private double amount;
+    private Map<String, Long> countsByStatus; // Booking count per status, e.g. CONFIRMED
+}
@@ -0,0 +1,25 @@
+package com.alphaweb.instadrive.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for a car in the car list, without its features
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CarSummaryDTO {
+    private Long id;
+    private String brand;
+    private String model;
+    private String fuelType;
+    private String registrationNumber;
+    private double pricePerDay;
+    private String transmission;
+    private String color;
+    private int year;
+    private String description;
+    private String imageUrl;
+}
@@ -0,0 +1,39 @@
+package com.alphaweb.instadrive.dto;
+
+import com.alphaweb.instadrive.util.PageCursor;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * DTO for one page of a keyset-paginated list
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> items;
+    private String nextCursor; // Null on the last page
+    private Long total; // Only counted when asked for
+
+    /**
+     * Build a page from rows fetched with a limit one above the page size
+     * The extra row only tells whether there is a next page and is not returned
+     *
+     * @param rows The rows, at most limit + 1
+     * @param limit The page size
+     * @param id The sort key of a row
+     * @param total The total row count, or null
+     * @return The page
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int limit, ToLongFunction<T> id, Long total) {
+        if (rows.size() <= limit) {
+            return new CursorPage<>(rows, null, total);
+        }
+        List<T> items = rows.subList(0, limit);
+        return new CursorPage<>(items, PageCursor.encode(id.applyAsLong(items.get(limit - 1))), total);
+    }
+}
@@ -0,0 +1,27 @@
+package com.alphaweb.instadrive.dto;
+
+import com.alphaweb.instadrive.model.Booking;
+import com.alphaweb.instadrive.model.Car;
+import com.alphaweb.instadrive.model.Payment;
+import com.alphaweb.instadrive.model.User;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Everything one payment needs, loaded once and passed through validation and persistence
+ * The user and car are null if they no longer exist
+ */
+@Data
+@NoArgsConstructor
+public class PaymentContext {
+    private Booking booking;
+    private User user;
+    private Car car;
+    private Payment payment; // Set once the payment has been saved
+
+    public PaymentContext(Booking booking, User user, Car car) {
+        this.booking = booking;
+        this.user = user;
+        this.car = car;
+    }
+}
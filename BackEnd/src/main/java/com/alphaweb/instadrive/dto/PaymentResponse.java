@@ -1,5 +1,6 @@
 package com.alphaweb.instadrive.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 
 @Data
@@ -7,4 +8,8 @@ public class PaymentResponse {
     private String status;
     private String transactionId;
     private String message;
+
+    // Reference of the booking paid for; not set on refunds
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String referenceId;
 }
@@ -0,0 +1,28 @@
+package com.alphaweb.instadrive.dto;
+
+import com.alphaweb.instadrive.model.Payment;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for the payment status of a booking
+ * In summary mode the payment list is left out
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentStatusDTO {
+    private Long bookingId;
+    private boolean hasPaid;
+    private boolean hasRefund;
+    private double totalPaid;
+    private double totalRefunded;
+    private long paymentCount;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Payment> payments;
+}
@@ -0,0 +1,18 @@
+package com.alphaweb.instadrive.dto;
+
+import com.alphaweb.instadrive.model.PaymentStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for the payments of a booking in one status, aggregated in the database
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentStatusTotal {
+    private PaymentStatus status;
+    private long count;
+    private double total; // Sum of the absolute amounts
+}
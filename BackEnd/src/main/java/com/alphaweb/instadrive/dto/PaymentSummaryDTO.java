@@ -0,0 +1,25 @@
+package com.alphaweb.instadrive.dto;
+
+import com.alphaweb.instadrive.model.PaymentStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO for a payment in the payment list, without the UPI ID and card details
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentSummaryDTO {
+    private Long id;
+    private String paymentMode;
+    private PaymentStatus status;
+    private double amount;
+    private String transactionId;
+    private LocalDateTime timestamp;
+    private Long bookingId;
+    private Long userId;
+}
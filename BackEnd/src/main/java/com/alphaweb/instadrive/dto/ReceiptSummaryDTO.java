@@ -0,0 +1,29 @@
+package com.alphaweb.instadrive.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO for a receipt in the receipt list, without the path of its stored PDF
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReceiptSummaryDTO {
+    private Long id;
+    private Long bookingId;
+    private Long userId;
+    private Long carId;
+    private String transactionId;
+    private LocalDateTime transactionDate;
+    private double amount;
+    private String paymentMethod;
+    private String userName;
+    private String userEmail;
+    private String carBrand;
+    private String carModel;
+    private String carRegistrationNumber;
+}
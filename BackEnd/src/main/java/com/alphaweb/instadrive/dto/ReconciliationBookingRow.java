@@ -0,0 +1,17 @@
+package com.alphaweb.instadrive.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for the columns of a booking the reconciliation job reads
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconciliationBookingRow {
+    private Long id;
+    private double totalAmount;
+    private String status;
+}
@@ -0,0 +1,20 @@
+package com.alphaweb.instadrive.dto;
+
+import com.alphaweb.instadrive.model.PaymentStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for the columns of a payment the reconciliation job reads
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconciliationPaymentRow {
+    private Long id;
+    private Long bookingId;
+    private String transactionId;
+    private PaymentStatus status;
+    private double amount;
+}
@@ -0,0 +1,26 @@
+package com.alphaweb.instadrive.dto;
+
+import com.alphaweb.instadrive.model.PaymentStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO for one line of a monthly statement: a payment or refund with the car it was for
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatementLineDTO {
+    private String transactionId;
+    private LocalDateTime timestamp;
+    private String paymentMode;
+    private PaymentStatus status;
+    private double amount;
+    private Long bookingId;
+    private String carBrand;
+    private String carModel;
+    private String carRegistrationNumber;
+}
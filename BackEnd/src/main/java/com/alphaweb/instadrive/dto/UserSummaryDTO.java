@@ -0,0 +1,22 @@
+package com.alphaweb.instadrive.dto;
+
+import com.alphaweb.instadrive.model.User;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for a user in the admin user list, without the password hash or address
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserSummaryDTO {
+    private Long id;
+    private String userId;
+    private String name;
+    private String username;
+    private String email;
+    private String phone;
+    private User.Role role;
+}
@@ -0,0 +1,35 @@
+package com.alphaweb.instadrive.exception;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exception handler for requests rejected by method security
+ * Ordered ahead of the catch-all handlers, which would otherwise turn a denied request into a 500
+ */
+@ControllerAdvice
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AccessDeniedExceptionHandler {
+
+    /**
+     * Handle requests the caller is not allowed to make
+     *
+     * @param ex The exception
+     * @return Error response
+     */
+    @ExceptionHandler(AccessDeniedException.class)
+    public ResponseEntity<Map<String, Object>> handleAccessDenied(AccessDeniedException ex) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("error", "Access denied");
+        errorResponse.put("status", "FORBIDDEN");
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).body(errorResponse);
+    }
+}
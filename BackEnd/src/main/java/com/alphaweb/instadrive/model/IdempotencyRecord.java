@@ -0,0 +1,39 @@
+package com.alphaweb.instadrive.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * The first response to a request sent with an Idempotency-Key header
+ * Retries with the same key are answered from this record instead of running the request again
+ */
+@Entity
+@Table(name = "idempotency_record", indexes = @Index(name = "idx_idempotency_expires_at", columnList = "expiresAt"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+    @Id
+    @Column(length = 64)
+    private String id; // Hex-encoded SHA-256 of the caller, endpoint and key
+
+    @Column(length = 64)
+    private String requestHash; // Hex-encoded SHA-256 of the request body
+
+    private int statusCode;
+    private String contentType;
+
+    @Column(columnDefinition = "MEDIUMBLOB")
+    private byte[] responseBody;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,51 @@
+package com.alphaweb.instadrive.model;
+
+/**
+ * Enum representing the sizes a car image is served in
+ */
+public enum ImageVariant {
+    THUMBNAIL("thumb", 320, 240),
+    CARD("card", 800, 600),
+    FULL("full", 1920, 1440),
+    ORIGINAL("original", 0, 0);
+
+    private final String key;
+    private final int maxWidth;
+    private final int maxHeight;
+
+    ImageVariant(String key, int maxWidth, int maxHeight) {
+        this.key = key;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * Resolve a variant from a request parameter such as "thumb" or "card"
+     *
+     * @param value The parameter value
+     * @return The matching variant, or ORIGINAL if the value is missing or unknown
+     */
+    public static ImageVariant fromParam(String value) {
+        if (value == null || value.isEmpty()) {
+            return ORIGINAL;
+        }
+        for (ImageVariant variant : values()) {
+            if (variant.key.equalsIgnoreCase(value) || variant.name().equalsIgnoreCase(value)) {
+                return variant;
+            }
+        }
+        return ORIGINAL;
+    }
+}
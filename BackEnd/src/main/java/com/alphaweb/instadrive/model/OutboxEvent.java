@@ -0,0 +1,50 @@
+package com.alphaweb.instadrive.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A side effect of a booking or payment change, written in the same transaction as the change
+ * The outbox relay delivers it to the in-process handlers at least once
+ */
+@Entity
+@Table(name = "outbox_event", indexes = @Index(name = "idx_outbox_pending", columnList = "status, availableAt, id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 64)
+    private String eventType; // PAYMENT_SUCCEEDED, BOOKING_CREATED, ...
+
+    @Column(length = 32)
+    private String aggregateType; // Payment or Booking
+    private Long aggregateId;
+
+    @Column(columnDefinition = "TEXT")
+    private String payload; // JSON
+
+    @Column(length = 16)
+    private String status; // PENDING, DISPATCHED, FAILED
+    private int attempts;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime availableAt; // Not delivered before this time; pushed back while leased or after a failure
+    private LocalDateTime dispatchedAt;
+
+    @Column(length = 1000)
+    private String lastError;
+}
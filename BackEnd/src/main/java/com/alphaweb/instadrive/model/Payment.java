@@ -7,17 +7,22 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = @Index(name = "idx_payment_transaction_id", columnList = "transactionId", unique = true))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Payment {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "payment_id")
+    @TableGenerator(name = "payment_id", table = "id_generator", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "payment", allocationSize = 50)
     private Long id;
 
     private String paymentMode; // UPI, CREDIT_CARD, DEBIT_CARD
     @Enumerated(EnumType.STRING)
     private PaymentStatus status; // PENDING, SUCCESS, FAILED, REFUNDED, CANCELLED
+    @Column(columnDefinition = "BIT(1) NOT NULL DEFAULT 0")
+    private boolean expired; // FAILED because the gateway never answered; a late approval still completes it
     private double amount;
     private String transactionId;
     private LocalDateTime timestamp;
@@ -8,12 +8,15 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = @Index(name = "idx_receipt_transaction_id", columnList = "transactionId", unique = true))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Receipt {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "receipt_id")
+    @TableGenerator(name = "receipt_id", table = "id_generator", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "receipt", allocationSize = 50)
     private Long id;
     
     private Long bookingId;
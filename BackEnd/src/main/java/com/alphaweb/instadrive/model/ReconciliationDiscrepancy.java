@@ -0,0 +1,44 @@
+package com.alphaweb.instadrive.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A mismatch between bookings and payments found by a reconciliation run
+ */
+@Entity
+@Table(name = "reconciliation_discrepancy", indexes = @Index(name = "idx_discrepancy_run", columnList = "runId, id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconciliationDiscrepancy {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long runId;
+
+    @Column(length = 32)
+    private String type; // AMOUNT_MISMATCH, UNREFUNDED_CANCELLATION, DUPLICATE_PAYMENT, ORPHANED_PAYMENT, DUPLICATE_TRANSACTION
+
+    private Long bookingId;
+    private Long paymentId;
+    private String transactionId;
+    private Double expectedAmount;
+    private Double actualAmount;
+
+    @Column(length = 500)
+    private String details;
+
+    private LocalDateTime detectedAt;
+}
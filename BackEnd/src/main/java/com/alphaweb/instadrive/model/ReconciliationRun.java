@@ -0,0 +1,39 @@
+package com.alphaweb.instadrive.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One run of the payment reconciliation job
+ */
+@Entity
+@Table(name = "reconciliation_run")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconciliationRun {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 16)
+    private String status; // RUNNING, COMPLETED, FAILED
+
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private long bookingsScanned;
+    private long paymentsScanned;
+    private long discrepancies;
+
+    @Column(length = 1000)
+    private String error;
+}
@@ -0,0 +1,35 @@
+package com.alphaweb.instadrive.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A content-addressed upload
+ * Identical uploads share one file on disk; the reference count tracks how many records point at it
+ */
+@Entity
+@Table(name = "stored_file")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredFile {
+    @Id
+    @Column(length = 64)
+    private String sha256; // Hex-encoded SHA-256 of the content
+
+    @Column(unique = true)
+    private String fileName; // Name of the file in the upload directory
+
+    private long size;
+    private String contentType;
+    private int referenceCount; // Cars whose image is this file
+    private LocalDateTime createdAt;
+    private LocalDateTime lastStoredAt; // The latest upload of this content
+}
@@ -1,6 +1,11 @@
 package com.alphaweb.instadrive.repository;
 
+import com.alphaweb.instadrive.dto.BookingStatusTotal;
+import com.alphaweb.instadrive.dto.BookingSummaryDTO;
+import com.alphaweb.instadrive.dto.PaymentContext;
+import com.alphaweb.instadrive.dto.ReconciliationBookingRow;
 import com.alphaweb.instadrive.model.Booking;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -8,6 +13,7 @@ import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface BookingRepository extends JpaRepository<Booking,Long> {
@@ -67,4 +73,62 @@ public interface BookingRepository extends JpaRepository<Booking,Long> {
      */
     @Query("SELECT b FROM Booking b WHERE b.endDate < :currentDate AND b.status NOT IN ('COMPLETED', 'CANCELLED')")
     List<Booking> findExpiredBookings(@Param("currentDate") LocalDate currentDate);
+
+    /**
+     * Load a booking together with its user and car in a single query
+     *
+     * @param bookingId The ID of the booking
+     * @return The payment context, or empty if the booking does not exist
+     */
+    @Query("SELECT new com.alphaweb.instadrive.dto.PaymentContext(b, u, c) FROM Booking b "
+           + "LEFT JOIN User u ON u.id = b.userId "
+           + "LEFT JOIN Car c ON c.id = b.carId "
+           + "WHERE b.id = :bookingId")
+    Optional<PaymentContext> findPaymentContext(@Param("bookingId") Long bookingId);
+
+    /**
+     * Find the IDs of bookings matching a batch refund filter; null criteria match everything
+     *
+     * @param carId The car, or null
+     * @param from Only bookings ending on or after this date, or null
+     * @param to Only bookings starting on or before this date, or null
+     * @return The matching booking IDs
+     */
+    @Query("SELECT b.id FROM Booking b WHERE (:carId IS NULL OR b.carId = :carId) "
+           + "AND (:from IS NULL OR b.endDate >= :from) AND (:to IS NULL OR b.startDate <= :to) "
+           + "ORDER BY b.id")
+    List<Long> findIdsForBatch(
+            @Param("carId") Long carId,
+            @Param("from") LocalDate from,
+            @Param("to") LocalDate to);
+
+    /**
+     * Find the next chunk of bookings for reconciliation
+     *
+     * @param afterId The last booking ID of the previous chunk
+     * @param pageable The chunk size
+     * @return The bookings, ordered by ID
+     */
+    @Query("SELECT new com.alphaweb.instadrive.dto.ReconciliationBookingRow(b.id, b.totalAmount, b.status) "
+           + "FROM Booking b WHERE b.id > :afterId ORDER BY b.id ASC")
+    List<ReconciliationBookingRow> findReconciliationChunk(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Get the next page of bookings, newest first, as DTOs so list views skip the persistence context
+     */
+    @Query("SELECT new com.alphaweb.instadrive.dto.BookingSummaryDTO(b.id, b.referenceId, b.carId, b.userId, b.startDate, "
+           + "b.endDate, b.totalAmount, b.status) FROM Booking b WHERE b.id < :beforeId ORDER BY b.id DESC")
+    List<BookingSummaryDTO> findSummariesBefore(@Param("beforeId") Long beforeId, Pageable pageable);
+
+    /**
+     * Get the next page of bookings for the admin dashboard, newest first
+     */
+    List<Booking> findByIdLessThanOrderByIdDesc(Long beforeId, Pageable pageable);
+
+    /**
+     * Get the number and total amount of bookings per status, for the admin dashboard
+     */
+    @Query("SELECT new com.alphaweb.instadrive.dto.BookingStatusTotal(b.status, COUNT(b), COALESCE(SUM(b.totalAmount), 0)) "
+            + "FROM Booking b GROUP BY b.status")
+    List<BookingStatusTotal> sumByStatus();
 }
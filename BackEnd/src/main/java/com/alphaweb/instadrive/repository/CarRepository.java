@@ -1,10 +1,29 @@
 package com.alphaweb.instadrive.repository;
 
+import com.alphaweb.instadrive.dto.CarSummaryDTO;
 import com.alphaweb.instadrive.model.Car;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface CarRepository extends JpaRepository<Car,Long> {
 
+    /**
+     * Get every car with the columns the car list shows, leaving out the features
+     */
+    @Query("SELECT new com.alphaweb.instadrive.dto.CarSummaryDTO(c.id, c.brand, c.model, c.fuelType, c.registrationNumber, "
+           + "c.pricePerDay, c.transmission, c.color, c.year, c.description, c.imageUrl) FROM Car c ORDER BY c.id")
+    List<CarSummaryDTO> findAllSummaries();
+
+    // Lock a car while it is changed, so concurrent image changes move its file references one at a time
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Car c WHERE c.id = :id")
+    Optional<Car> lockById(@Param("id") Long id);
 }
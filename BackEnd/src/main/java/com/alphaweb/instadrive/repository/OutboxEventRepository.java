@@ -0,0 +1,54 @@
+package com.alphaweb.instadrive.repository;
+
+import com.alphaweb.instadrive.model.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Lock a batch of events that are due, skipping rows another relay has locked
+     * Must be called in a transaction; the locks are held until it ends
+     *
+     * @param now The current time
+     * @param limit The maximum number of events
+     * @return The locked events, oldest first
+     */
+    @Query(value = "SELECT * FROM outbox_event WHERE status = 'PENDING' AND available_at <= :now "
+                   + "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxEvent> lockDueEvents(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    /**
+     * Mark delivered events
+     *
+     * @param ids The IDs of the events
+     * @param now The current time
+     * @return The number of rows updated
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxEvent e SET e.status = 'DISPATCHED', e.dispatchedAt = :now WHERE e.id IN :ids")
+    int markDispatched(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    /**
+     * Delete delivered events older than a cutoff
+     *
+     * @param cutoff The cutoff
+     * @return The number of rows deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM OutboxEvent e WHERE e.status = 'DISPATCHED' AND e.dispatchedAt < :cutoff")
+    int deleteDispatchedBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    long countByStatus(String status);
+}
@@ -1,9 +1,23 @@
 package com.alphaweb.instadrive.repository;
 
+import com.alphaweb.instadrive.dto.PaymentStatusTotal;
+import com.alphaweb.instadrive.dto.PaymentSummaryDTO;
+import com.alphaweb.instadrive.dto.ReconciliationPaymentRow;
+import com.alphaweb.instadrive.dto.StatementLineDTO;
 import com.alphaweb.instadrive.model.Payment;
+import com.alphaweb.instadrive.model.PaymentStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,6 +29,101 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
     // Find payments by user ID
     List<Payment> findByUserId(Long userId);
 
+    boolean existsByBookingId(Long bookingId);
+
+    // Count and total a booking's payments per status
+    @Query("SELECT new com.alphaweb.instadrive.dto.PaymentStatusTotal(p.status, COUNT(p), COALESCE(SUM(ABS(p.amount)), 0)) "
+           + "FROM Payment p WHERE p.bookingId = :bookingId GROUP BY p.status")
+    List<PaymentStatusTotal> sumByStatusForBooking(@Param("bookingId") Long bookingId);
+
     // Find payments by transaction ID
     Optional<Payment> findByTransactionId(String transactionId);
+
+    // Find a user's payments and refunds in a period, with the car details from the booking's first receipt
+    // A booking paid in several parts has several receipts; joining on the booking alone would repeat the payment
+    @Query("SELECT new com.alphaweb.instadrive.dto.StatementLineDTO(p.transactionId, p.timestamp, p.paymentMode, "
+           + "p.status, p.amount, p.bookingId, r.carBrand, r.carModel, r.carRegistrationNumber) "
+           + "FROM Payment p LEFT JOIN Receipt r "
+           + "ON r.id = (SELECT MIN(r2.id) FROM Receipt r2 WHERE r2.bookingId = p.bookingId) "
+           + "WHERE p.userId = :userId AND p.timestamp >= :start AND p.timestamp < :end "
+           + "ORDER BY p.timestamp ASC, p.id ASC")
+    List<StatementLineDTO> findStatementLines(
+            @Param("userId") Long userId,
+            @Param("start") LocalDateTime start,
+            @Param("end") LocalDateTime end);
+
+    // Find the users with any payment activity in a period
+    @Query("SELECT DISTINCT p.userId FROM Payment p WHERE p.timestamp >= :start AND p.timestamp < :end AND p.userId IS NOT NULL")
+    List<Long> findUserIdsWithPaymentsBetween(
+            @Param("start") LocalDateTime start,
+            @Param("end") LocalDateTime end);
+
+    // Find payments in a status that were created before a cutoff
+    List<Payment> findByStatusAndTimestampBefore(PaymentStatus status, LocalDateTime cutoff);
+
+    // Move a pending payment to its final status; returns 0 if it was already completed
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.status = :status WHERE p.transactionId = :transactionId "
+           + "AND p.status = com.alphaweb.instadrive.model.PaymentStatus.PENDING")
+    int completePendingPayment(
+            @Param("transactionId") String transactionId,
+            @Param("status") PaymentStatus status);
+
+    // Fail a pending payment the gateway has not answered, remembering that it only expired
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.status = com.alphaweb.instadrive.model.PaymentStatus.FAILED, p.expired = true "
+           + "WHERE p.transactionId = :transactionId AND p.status = com.alphaweb.instadrive.model.PaymentStatus.PENDING")
+    int expirePendingPayment(@Param("transactionId") String transactionId);
+
+    // Complete an expired payment the gateway approved after all
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.status = com.alphaweb.instadrive.model.PaymentStatus.SUCCESS, p.expired = false "
+           + "WHERE p.transactionId = :transactionId AND p.expired = true "
+           + "AND p.status = com.alphaweb.instadrive.model.PaymentStatus.FAILED")
+    int approveExpiredPayment(@Param("transactionId") String transactionId);
+
+    // Lock the payments of several bookings in the given statuses, so concurrent refunds of a booking queue up
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Payment p WHERE p.bookingId IN :bookingIds AND p.status IN :statuses ORDER BY p.id")
+    List<Payment> lockByBookingIds(
+            @Param("bookingIds") Collection<Long> bookingIds,
+            @Param("statuses") Collection<PaymentStatus> statuses);
+
+    // Mark successful payments as refunded
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.status = com.alphaweb.instadrive.model.PaymentStatus.REFUNDED "
+           + "WHERE p.id IN :ids AND p.status = com.alphaweb.instadrive.model.PaymentStatus.SUCCESS")
+    int markRefunded(@Param("ids") Collection<Long> ids);
+
+    // Next chunk of payments that belong to a booking, ordered by booking and then payment ID
+    @Query("SELECT new com.alphaweb.instadrive.dto.ReconciliationPaymentRow(p.id, p.bookingId, p.transactionId, p.status, p.amount) "
+           + "FROM Payment p WHERE p.bookingId > :bookingId OR (p.bookingId = :bookingId AND p.id > :id) "
+           + "ORDER BY p.bookingId ASC, p.id ASC")
+    List<ReconciliationPaymentRow> findReconciliationChunkByBooking(
+            @Param("bookingId") Long bookingId,
+            @Param("id") Long id,
+            Pageable pageable);
+
+    // Next chunk of payments without a booking, ordered by ID
+    @Query("SELECT new com.alphaweb.instadrive.dto.ReconciliationPaymentRow(p.id, p.bookingId, p.transactionId, p.status, p.amount) "
+           + "FROM Payment p WHERE p.bookingId IS NULL AND p.id > :id ORDER BY p.id ASC")
+    List<ReconciliationPaymentRow> findReconciliationChunkWithoutBooking(@Param("id") Long id, Pageable pageable);
+
+    // Next chunk of payments ordered by transaction ID, so duplicates are adjacent
+    @Query("SELECT new com.alphaweb.instadrive.dto.ReconciliationPaymentRow(p.id, p.bookingId, p.transactionId, p.status, p.amount) "
+           + "FROM Payment p WHERE p.transactionId > :transactionId OR (p.transactionId = :transactionId AND p.id > :id) "
+           + "ORDER BY p.transactionId ASC, p.id ASC")
+    List<ReconciliationPaymentRow> findReconciliationChunkByTransaction(
+            @Param("transactionId") String transactionId,
+            @Param("id") Long id,
+            Pageable pageable);
+
+    // Get the next page of payments, newest first, without the UPI ID and card details
+    @Query("SELECT new com.alphaweb.instadrive.dto.PaymentSummaryDTO(p.id, p.paymentMode, p.status, p.amount, p.transactionId, "
+           + "p.timestamp, p.bookingId, p.userId) FROM Payment p WHERE p.id < :beforeId ORDER BY p.id DESC")
+    List<PaymentSummaryDTO> findSummariesBefore(@Param("beforeId") Long beforeId, Pageable pageable);
 }
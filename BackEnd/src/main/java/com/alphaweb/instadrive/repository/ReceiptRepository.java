@@ -1,9 +1,14 @@
 package com.alphaweb.instadrive.repository;
 
+import com.alphaweb.instadrive.dto.ReceiptSummaryDTO;
 import com.alphaweb.instadrive.model.Receipt;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,4 +17,22 @@ public interface ReceiptRepository extends JpaRepository<Receipt, Long> {
     List<Receipt> findByUserId(Long userId);
     Optional<Receipt> findByBookingId(Long bookingId);
     Optional<Receipt> findByTransactionId(String transactionId);
+
+    /**
+     * Get the next chunk of a user's receipts in a date range, in ID order
+     * Used to walk large result sets with constant memory
+     */
+    List<Receipt> findByUserIdAndTransactionDateBetweenAndIdGreaterThanOrderByIdAsc(
+            Long userId, LocalDateTime from, LocalDateTime to, Long afterId, Pageable pageable);
+
+    long countByUserId(Long userId);
+
+    /**
+     * Get the next page of a user's receipts, newest first, without the paths of their stored PDFs
+     */
+    @Query("SELECT new com.alphaweb.instadrive.dto.ReceiptSummaryDTO(r.id, r.bookingId, r.userId, r.carId, r.transactionId, "
+           + "r.transactionDate, r.amount, r.paymentMethod, r.userName, r.userEmail, r.carBrand, r.carModel, "
+           + "r.carRegistrationNumber) FROM Receipt r WHERE r.userId = :userId AND r.id < :beforeId ORDER BY r.id DESC")
+    List<ReceiptSummaryDTO> findSummariesByUserIdBefore(
+            @Param("userId") Long userId, @Param("beforeId") Long beforeId, Pageable pageable);
 }
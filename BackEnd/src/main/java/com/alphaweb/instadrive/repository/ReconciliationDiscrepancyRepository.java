@@ -0,0 +1,15 @@
+package com.alphaweb.instadrive.repository;
+
+import com.alphaweb.instadrive.model.ReconciliationDiscrepancy;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ReconciliationDiscrepancyRepository extends JpaRepository<ReconciliationDiscrepancy, Long> {
+
+    // Find the discrepancies of a run after a given ID, for keyset paging
+    List<ReconciliationDiscrepancy> findByRunIdAndIdGreaterThanOrderByIdAsc(Long runId, Long afterId, Pageable pageable);
+}
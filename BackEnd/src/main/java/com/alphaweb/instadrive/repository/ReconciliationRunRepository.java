@@ -0,0 +1,13 @@
+package com.alphaweb.instadrive.repository;
+
+import com.alphaweb.instadrive.model.ReconciliationRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ReconciliationRunRepository extends JpaRepository<ReconciliationRun, Long> {
+
+    List<ReconciliationRun> findTop20ByOrderByIdDesc();
+}
@@ -0,0 +1,77 @@
+package com.alphaweb.instadrive.repository;
+
+import com.alphaweb.instadrive.model.StoredFile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StoredFileRepository extends JpaRepository<StoredFile, String> {
+
+    Optional<StoredFile> findByFileName(String fileName);
+
+    /**
+     * Add a reference to a stored file
+     *
+     * @param fileName The stored file name
+     * @return The number of rows updated, 0 if the file was not stored by content hash
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE StoredFile f SET f.referenceCount = f.referenceCount + 1 WHERE f.fileName = :fileName")
+    int incrementReferenceCountByFileName(@Param("fileName") String fileName);
+
+    /**
+     * Drop a reference to a stored file
+     *
+     * @param fileName The stored file name
+     * @return The number of rows updated
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE StoredFile f SET f.referenceCount = f.referenceCount - 1 "
+           + "WHERE f.fileName = :fileName AND f.referenceCount > 0")
+    int decrementReferenceCountByFileName(@Param("fileName") String fileName);
+
+    /**
+     * Record another upload of a stored file
+     *
+     * @param sha256 The content hash
+     * @param now The current time
+     * @return The number of rows updated, 0 if the file is not stored yet
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE StoredFile f SET f.lastStoredAt = :now WHERE f.sha256 = :sha256")
+    int touch(@Param("sha256") String sha256, @Param("now") LocalDateTime now);
+
+    /**
+     * Find stored files nothing refers to that were last uploaded before a cutoff
+     *
+     * @param cutoff The cutoff
+     * @return The unreferenced files
+     */
+    @Query("SELECT f FROM StoredFile f WHERE f.referenceCount = 0 "
+           + "AND (f.lastStoredAt IS NULL OR f.lastStoredAt < :cutoff)")
+    List<StoredFile> findUnreferencedBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * Delete a stored file's record if it is still unreferenced and was not uploaded again since the cutoff
+     *
+     * @param sha256 The content hash
+     * @param cutoff The cutoff
+     * @return The number of rows deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM StoredFile f WHERE f.sha256 = :sha256 AND f.referenceCount = 0 "
+           + "AND (f.lastStoredAt IS NULL OR f.lastStoredAt < :cutoff)")
+    int deleteIfUnreferenced(@Param("sha256") String sha256, @Param("cutoff") LocalDateTime cutoff);
+}
@@ -1,13 +1,25 @@
 package com.alphaweb.instadrive.repository;
 
+import com.alphaweb.instadrive.dto.UserSummaryDTO;
 import com.alphaweb.instadrive.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
     Boolean existsByEmail(String email);
+
+    /**
+     * Get the next page of users in ID order, without the password hash or address
+     */
+    @Query("SELECT new com.alphaweb.instadrive.dto.UserSummaryDTO(u.id, u.userId, u.name, u.username, u.email, u.phone, u.role) "
+           + "FROM User u WHERE u.id > :afterId ORDER BY u.id ASC")
+    List<UserSummaryDTO> findSummariesAfter(@Param("afterId") Long afterId, Pageable pageable);
 }
@@ -0,0 +1,155 @@
+package com.alphaweb.instadrive.security;
+
+import com.alphaweb.instadrive.service.VelocityService;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Filter that applies velocity checks to booking and payment attempts before they reach the controllers
+ * Runs ahead of the idempotency filter, so rejected bursts never touch the database
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 10)
+public class VelocityFilter extends OncePerRequestFilter {
+
+    public static final String FLAGGED_ATTRIBUTE = "velocity.flagged";
+
+    private final VelocityService velocityService;
+    private final ObjectMapper objectMapper;
+    private final List<String> bookingPaths;
+    private final List<String> paymentPaths;
+    private final List<String> excludedPaths;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    public VelocityFilter(VelocityService velocityService, ObjectMapper objectMapper,
+                          @Value("${velocity.booking-paths:/api/bookings}") List<String> bookingPaths,
+                          @Value("${velocity.payment-paths:/api/payments/**}") List<String> paymentPaths,
+                          @Value("${velocity.excluded-paths:/api/payments/gateway/**}") List<String> excludedPaths) {
+        this.velocityService = velocityService;
+        this.objectMapper = objectMapper;
+        this.bookingPaths = bookingPaths;
+        this.paymentPaths = paymentPaths;
+        this.excludedPaths = excludedPaths;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod()) || !velocityService.isEnabled() || scope(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain
+    ) throws ServletException, IOException {
+        VelocityService.Scope scope = scope(request);
+
+        HttpServletRequest forwarded = request;
+        String card = null;
+        if (velocityService.needsCard(scope) && isJson(request)) {
+            CachedBodyRequest cachedRequest = new CachedBodyRequest(request);
+            card = velocityService.cardFingerprint(cardNumber(cachedRequest.getBody()));
+            forwarded = cachedRequest;
+        }
+
+        // Behind a proxy this is the forwarded client address, see server.forward-headers-strategy
+        VelocityService.Decision decision = velocityService.check(scope, user(), request.getRemoteAddr(), card);
+        if (decision.isRejected()) {
+            System.out.println("Velocity rule " + decision.rejectedBy().name() + " rejected "
+                    + request.getRequestURI() + " from " + request.getRemoteAddr());
+            response.setStatus(429);
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(decision.retryAfterSeconds()));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(),
+                    Map.of("error", "Too many attempts, please try again later"));
+            return;
+        }
+        if (decision.isFlagged()) {
+            String rules = decision.flaggedBy().stream()
+                    .map(VelocityService.Rule::name)
+                    .collect(Collectors.joining(","));
+            System.out.println("Velocity rules " + rules + " flagged " + request.getRequestURI()
+                    + " from " + request.getRemoteAddr());
+            forwarded.setAttribute(FLAGGED_ATTRIBUTE, rules);
+        }
+
+        filterChain.doFilter(forwarded, response);
+    }
+
+    private VelocityService.Scope scope(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (matches(excludedPaths, path)) {
+            return null;
+        }
+        if (matches(bookingPaths, path)) {
+            return VelocityService.Scope.BOOKING;
+        }
+        if (matches(paymentPaths, path)) {
+            return VelocityService.Scope.PAYMENT;
+        }
+        return null;
+    }
+
+    private boolean matches(List<String> patterns, String path) {
+        for (String pattern : patterns) {
+            if (pathMatcher.match(pattern.trim(), path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isJson(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.contains("json");
+    }
+
+    private String user() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return authentication.getName();
+        }
+        return null;
+    }
+
+    /**
+     * Find the card number in a JSON body, stopping at the first cardNumber field
+     */
+    private String cardNumber(byte[] body) {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME && "cardNumber".equals(parser.currentName())) {
+                    parser.nextToken();
+                    return parser.getValueAsString();
+                }
+            }
+        } catch (IOException e) {
+            // Malformed bodies are rejected by the controller
+        }
+        return null;
+    }
+}
@@ -16,7 +16,7 @@ public class WebConfig {
                         .allowedOriginPatterns("*") // Use allowedOriginPatterns instead of allowedOrigins
                         .allowedMethods("GET", "POST", "PUT", "DELETE") // HTTP methods allowed
                         .allowedHeaders("*") // All headers allowed
-                        .exposedHeaders("Authorization") // Expose Authorization header
+                        .exposedHeaders("Authorization", "X-Next-Cursor", "X-Total-Count") // Expose auth and paging headers
                         .allowCredentials(true); // Allow credentials
             }
         };
@@ -0,0 +1,304 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.dto.BatchRefundRequest;
+import com.alphaweb.instadrive.dto.BatchRefundResponse;
+import com.alphaweb.instadrive.dto.BatchRefundResult;
+import com.alphaweb.instadrive.model.Booking;
+import com.alphaweb.instadrive.model.Payment;
+import com.alphaweb.instadrive.model.PaymentStatus;
+import com.alphaweb.instadrive.repository.BookingRepository;
+import com.alphaweb.instadrive.repository.PaymentRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Service for refunding many cancelled bookings at once
+ * Each chunk of bookings is refunded in one transaction: the payments are locked and loaded in one query,
+ * the refund rows are written as one JDBC batch and the originals are marked refunded with one UPDATE.
+ * A booking that already has a refund is reported and skipped, so a batch can safely be run again
+ */
+@Service
+public class BatchRefundService {
+
+    private final BookingRepository bookingRepository;
+    private final PaymentRepository paymentRepository;
+    private final BookingService bookingService;
+    private final PaymentService paymentService;
+    private final StatementService statementService;
+    private final TransactionIdGenerator transactionIdGenerator;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int maxBookings;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "batch-refunds");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Recent jobs, oldest evicted first
+    private final Map<String, BatchRefundResponse> jobs = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, BatchRefundResponse> eldest) {
+                    return size() > 100;
+                }
+            });
+
+    public BatchRefundService(BookingRepository bookingRepository,
+                              PaymentRepository paymentRepository,
+                              BookingService bookingService,
+                              PaymentService paymentService,
+                              StatementService statementService,
+                              TransactionIdGenerator transactionIdGenerator,
+                              TransactionTemplate transactionTemplate,
+                              @Value("${payments.batch-refund.chunk-size:200}") int chunkSize,
+                              @Value("${payments.batch-refund.max-bookings:5000}") int maxBookings) {
+        this.bookingRepository = bookingRepository;
+        this.paymentRepository = paymentRepository;
+        this.bookingService = bookingService;
+        this.paymentService = paymentService;
+        this.statementService = statementService;
+        this.transactionIdGenerator = transactionIdGenerator;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+        this.maxBookings = maxBookings;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Refund a batch of bookings and wait for the result
+     *
+     * @param request The bookings to refund
+     * @return The completed job with a result per booking
+     * @throws IllegalArgumentException if the request selects no bookings or too many
+     */
+    public BatchRefundResponse refund(BatchRefundRequest request) {
+        List<Long> bookingIds = resolveBookingIds(request);
+        BatchRefundResponse job = newJob(bookingIds.size());
+        run(job, bookingIds, request.isCancelBookings());
+        return job;
+    }
+
+    /**
+     * Start refunding a batch of bookings in the background
+     *
+     * @param request The bookings to refund
+     * @return The running job; poll {@link #getJob} for progress
+     * @throws IllegalArgumentException if the request selects no bookings or too many
+     */
+    public BatchRefundResponse submit(BatchRefundRequest request) {
+        List<Long> bookingIds = resolveBookingIds(request);
+        BatchRefundResponse job = newJob(bookingIds.size());
+        jobs.put(job.getJobId(), job);
+        executor.execute(() -> run(job, bookingIds, request.isCancelBookings()));
+        return snapshot(job);
+    }
+
+    /**
+     * Get the state of a background job
+     *
+     * @param jobId The job ID
+     * @return The job, or empty if it is unknown or has been evicted
+     */
+    public Optional<BatchRefundResponse> getJob(String jobId) {
+        BatchRefundResponse job = jobs.get(jobId);
+        return job == null ? Optional.empty() : Optional.of(snapshot(job));
+    }
+
+    private List<Long> resolveBookingIds(BatchRefundRequest request) {
+        List<Long> bookingIds;
+        if (request.getBookingIds() != null && !request.getBookingIds().isEmpty()) {
+            bookingIds = new ArrayList<>(new LinkedHashSet<>(request.getBookingIds()));
+            bookingIds.remove(null);
+        } else if (request.getCarId() != null || request.getFrom() != null || request.getTo() != null) {
+            bookingIds = bookingRepository.findIdsForBatch(request.getCarId(), request.getFrom(), request.getTo());
+        } else {
+            throw new IllegalArgumentException("Booking IDs or a filter on car or dates are required");
+        }
+
+        if (bookingIds.isEmpty()) {
+            throw new IllegalArgumentException("No bookings match the request");
+        }
+        if (bookingIds.size() > maxBookings) {
+            throw new IllegalArgumentException("At most " + maxBookings + " bookings can be refunded at once, "
+                    + bookingIds.size() + " were selected");
+        }
+        return bookingIds;
+    }
+
+    private BatchRefundResponse newJob(int requested) {
+        BatchRefundResponse job = new BatchRefundResponse();
+        job.setJobId(UUID.randomUUID().toString());
+        job.setStatus("RUNNING");
+        job.setRequested(requested);
+        job.setOutcomes(new LinkedHashMap<>());
+        job.setResults(new ArrayList<>(requested));
+        job.setStartedAt(LocalDateTime.now());
+        return job;
+    }
+
+    private void run(BatchRefundResponse job, List<Long> bookingIds, boolean cancelBookings) {
+        try {
+            for (int from = 0; from < bookingIds.size(); from += chunkSize) {
+                List<Long> chunk = bookingIds.subList(from, Math.min(from + chunkSize, bookingIds.size()));
+                List<BatchRefundResult> results;
+                try {
+                    results = transactionTemplate.execute(status -> refundChunk(chunk, cancelBookings));
+                } catch (Exception e) {
+                    System.err.println("Error refunding bookings " + chunk + ": " + e.getMessage());
+                    results = chunk.stream()
+                            .map(id -> new BatchRefundResult(id, "FAILED", null, 0, e.getMessage()))
+                            .toList();
+                }
+                record(job, results);
+            }
+            finish(job, "COMPLETED", null);
+        } catch (Exception e) {
+            finish(job, "FAILED", e.getMessage());
+        }
+    }
+
+    /**
+     * Refund one chunk of bookings; runs in a transaction
+     */
+    private List<BatchRefundResult> refundChunk(List<Long> bookingIds, boolean cancelBookings) {
+        Map<Long, Booking> bookings = bookingRepository.findAllById(bookingIds).stream()
+                .collect(Collectors.toMap(Booking::getId, Function.identity()));
+
+        if (cancelBookings) {
+            for (Booking booking : bookings.values()) {
+                if (!"CANCELLED".equals(booking.getStatus()) && !"COMPLETED".equals(booking.getStatus())) {
+                    booking.setStatus("CANCELLED");
+                    bookingService.publishBookingEvent(OutboxService.BOOKING_CANCELLED, booking);
+                }
+            }
+        }
+
+        Map<Long, List<Payment>> paymentsByBooking = paymentRepository
+                .lockByBookingIds(bookingIds, List.of(PaymentStatus.SUCCESS, PaymentStatus.REFUNDED)).stream()
+                .collect(Collectors.groupingBy(Payment::getBookingId));
+
+        List<BatchRefundResult> results = new ArrayList<>(bookingIds.size());
+        List<Payment> refunds = new ArrayList<>();
+        List<Payment> originals = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+
+        for (Long bookingId : bookingIds) {
+            Booking booking = bookings.get(bookingId);
+            if (booking == null) {
+                results.add(new BatchRefundResult(bookingId, "NOT_FOUND", null, 0, "Booking not found"));
+                continue;
+            }
+
+            List<Payment> payments = paymentsByBooking.getOrDefault(bookingId, List.of());
+            Optional<Payment> existingRefund = payments.stream()
+                    .filter(p -> PaymentStatus.REFUNDED.equals(p.getStatus()) && p.getAmount() < 0)
+                    .findFirst();
+            if (existingRefund.isPresent()) {
+                results.add(new BatchRefundResult(bookingId, "ALREADY_REFUNDED", existingRefund.get().getTransactionId(),
+                        Math.abs(existingRefund.get().getAmount()), "Booking has already been refunded"));
+                continue;
+            }
+            if (!"CANCELLED".equals(booking.getStatus())) {
+                results.add(new BatchRefundResult(bookingId, "NOT_CANCELLED", null, 0,
+                        "Refund can only be processed for cancelled bookings"));
+                continue;
+            }
+
+            Optional<Payment> original = payments.stream()
+                    .filter(p -> PaymentStatus.SUCCESS.equals(p.getStatus()))
+                    .findFirst();
+            if (original.isEmpty()) {
+                results.add(new BatchRefundResult(bookingId, "NO_PAYMENT", null, 0,
+                        "No successful payment found for booking ID: " + bookingId));
+                continue;
+            }
+
+            Payment refund = refundOf(original.get(), now);
+            refunds.add(refund);
+            originals.add(original.get());
+            results.add(new BatchRefundResult(bookingId, "REFUNDED", refund.getTransactionId(),
+                    original.get().getAmount(), "Refund processed successfully for booking ID: " + bookingId));
+        }
+
+        if (!refunds.isEmpty()) {
+            // Refund IDs come from the pooled generator, so Hibernate writes these as one JDBC batch
+            paymentRepository.saveAll(refunds);
+            paymentRepository.markRefunded(originals.stream().map(Payment::getId).toList());
+
+            for (int i = 0; i < refunds.size(); i++) {
+                Payment refund = refunds.get(i);
+                Payment original = originals.get(i);
+                paymentService.publishPaymentEvent(OutboxService.PAYMENT_REFUNDED, refund);
+                statementService.invalidate(refund.getUserId(), YearMonth.from(refund.getTimestamp()));
+                if (original.getTimestamp() != null) {
+                    statementService.invalidate(original.getUserId(), YearMonth.from(original.getTimestamp()));
+                }
+            }
+        }
+        return results;
+    }
+
+    private Payment refundOf(Payment original, LocalDateTime now) {
+        Payment refund = new Payment();
+        refund.setPaymentMode(original.getPaymentMode());
+        refund.setAmount(-original.getAmount()); // Negative amount for refund
+        refund.setTimestamp(now);
+        refund.setBookingId(original.getBookingId());
+        refund.setUserId(original.getUserId());
+        refund.setStatus(PaymentStatus.REFUNDED);
+        refund.setTransactionId(transactionIdGenerator.next("REFUND"));
+        refund.setUpiId(original.getUpiId());
+        refund.setCardNumber(original.getCardNumber());
+        refund.setCardExpiry(original.getCardExpiry());
+        return refund;
+    }
+
+    private void record(BatchRefundResponse job, List<BatchRefundResult> results) {
+        synchronized (job) {
+            job.getResults().addAll(results);
+            job.setProcessed(job.getResults().size());
+            for (BatchRefundResult result : results) {
+                job.getOutcomes().merge(result.getOutcome(), 1, Integer::sum);
+            }
+        }
+    }
+
+    private void finish(BatchRefundResponse job, String status, String error) {
+        synchronized (job) {
+            job.setStatus(status);
+            job.setError(error);
+            job.setFinishedAt(LocalDateTime.now());
+        }
+    }
+
+    private BatchRefundResponse snapshot(BatchRefundResponse job) {
+        synchronized (job) {
+            return new BatchRefundResponse(job.getJobId(), job.getStatus(), job.getRequested(), job.getProcessed(),
+                    new LinkedHashMap<>(job.getOutcomes()), new ArrayList<>(job.getResults()),
+                    job.getStartedAt(), job.getFinishedAt(), job.getError());
+        }
+    }
+}
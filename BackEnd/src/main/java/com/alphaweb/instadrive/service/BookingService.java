@@ -3,18 +3,28 @@ package com.alphaweb.instadrive.service;
 import com.alphaweb.instadrive.dto.AdminDashboardBookingDTO;
 import com.alphaweb.instadrive.dto.BookingHistoryResponse;
 import com.alphaweb.instadrive.dto.BookingResponseDTO;
+import com.alphaweb.instadrive.dto.BookingStatusTotal;
+import com.alphaweb.instadrive.dto.BookingSummaryDTO;
+import com.alphaweb.instadrive.dto.BookingTotalsDTO;
+import com.alphaweb.instadrive.dto.CursorPage;
+import com.alphaweb.instadrive.dto.PaymentContext;
 import com.alphaweb.instadrive.model.Booking;
 import com.alphaweb.instadrive.model.Car;
 import com.alphaweb.instadrive.model.User;
 import com.alphaweb.instadrive.repository.BookingRepository;
+import com.alphaweb.instadrive.util.PageCursor;
 import lombok.RequiredArgsConstructor;
 // Removed unused cache annotations
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
@@ -27,21 +37,57 @@ public class BookingService {
     private final BookingRepository bookingRepository;
     private final CarService carService;
     private final UserService userService;
+    private final OutboxService outboxService;
 
+    @Transactional(readOnly = true)
     public List<Booking> getAllBookings() {
         return bookingRepository.findAll();
     }
 
+    /**
+     * Get a page of bookings for list views, newest first
+     *
+     * @param cursor The cursor of the page, or null for the first page
+     * @param limit The page size
+     * @param includeTotal Whether to count all bookings
+     * @return The page
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<BookingSummaryDTO> getBookingSummaries(String cursor, int limit, boolean includeTotal) {
+        long beforeId = PageCursor.decodeOr(cursor, Long.MAX_VALUE);
+        List<BookingSummaryDTO> rows = bookingRepository.findSummariesBefore(beforeId, PageRequest.of(0, limit + 1));
+        return CursorPage.of(rows, limit, BookingSummaryDTO::getId, includeTotal ? bookingRepository.count() : null);
+    }
+
+    /**
+     * Get a booking by ID
+     * Read from the primary rather than a replica, since callers check and change the booking they get
+     *
+     * @param id The booking ID
+     * @return The booking, or empty if it does not exist
+     */
+    @Transactional
     public Optional<Booking> getBookingById(Long id) {
         return bookingRepository.findById(id);
     }
 
+    /**
+     * Load a booking with its user and car for payment processing
+     *
+     * @param id The ID of the booking
+     * @return The payment context, or empty if the booking does not exist
+     */
+    public Optional<PaymentContext> getPaymentContext(Long id) {
+        return bookingRepository.findPaymentContext(id);
+    }
+
     /**
      * Add a new booking after checking if the car is available for the requested dates
      *
      * @param booking The booking to add
      * @return The saved booking if the car is available, null otherwise
      */
+    @Transactional
     public Booking addBooking(Booking booking) {
         // Check if the car is available for the requested dates
         if (isCarAvailable(booking.getCarId(), booking.getStartDate(), booking.getEndDate())) {
@@ -52,7 +98,9 @@ public class BookingService {
             // Set initial status
             booking.setStatus("CONFIRMED");
 
-            return bookingRepository.save(booking);
+            Booking saved = bookingRepository.save(booking);
+            publishBookingEvent(OutboxService.BOOKING_CREATED, saved);
+            return saved;
         }
         return null; // Car is not available for the requested dates
     }
@@ -97,6 +145,7 @@ public class BookingService {
         bookingRepository.deleteById(id);
     }
 
+    @Transactional
     public Booking updateBooking(Long id, Booking bookingDetails) {
         Optional<Booking> bookingOptional = bookingRepository.findById(id);
         if (bookingOptional.isPresent()) {
@@ -171,6 +220,7 @@ public class BookingService {
      * @param userId The ID of the user
      * @return List of bookings made by the user
      */
+    @Transactional(readOnly = true)
     public List<Booking> getUserBookings(Long userId) {
         return bookingRepository.findByUserIdOrderByStartDateDesc(userId);
     }
@@ -181,6 +231,7 @@ public class BookingService {
      * @param userId The ID of the user
      * @return List of current and future bookings
      */
+    @Transactional(readOnly = true)
     public List<Booking> getCurrentAndFutureBookings(Long userId) {
         return bookingRepository.findCurrentAndFutureBookingsByUserId(userId, LocalDate.now());
     }
@@ -191,6 +242,7 @@ public class BookingService {
      * @param userId The ID of the user
      * @return List of past bookings
      */
+    @Transactional(readOnly = true)
     public List<Booking> getPastBookings(Long userId) {
         return bookingRepository.findPastBookingsByUserId(userId, LocalDate.now());
     }
@@ -201,6 +253,7 @@ public class BookingService {
      * @param userId The ID of the user
      * @return List of booking history responses with car details
      */
+    @Transactional(readOnly = true)
     public List<BookingHistoryResponse> getUserBookingHistory(Long userId) {
         List<Booking> bookings = getUserBookings(userId);
         return convertToBookingHistoryResponse(bookings);
@@ -212,6 +265,7 @@ public class BookingService {
      * @param userId The ID of the user
      * @return List of booking history responses with car details
      */
+    @Transactional(readOnly = true)
     public List<BookingHistoryResponse> getCurrentAndFutureBookingHistory(Long userId) {
         List<Booking> bookings = getCurrentAndFutureBookings(userId);
         return convertToBookingHistoryResponse(bookings);
@@ -223,6 +277,7 @@ public class BookingService {
      * @param userId The ID of the user
      * @return List of booking history responses with car details
      */
+    @Transactional(readOnly = true)
     public List<BookingHistoryResponse> getPastBookingHistory(Long userId) {
         List<Booking> bookings = getPastBookings(userId);
         return convertToBookingHistoryResponse(bookings);
@@ -345,13 +400,38 @@ public class BookingService {
     }
 
     /**
-     * Get all bookings with detailed information for admin dashboard
+     * Get a page of bookings with detailed information for admin dashboard, newest first
      *
-     * @return List of admin dashboard booking DTOs
+     * @param cursor The cursor of the page, or null for the first page
+     * @param limit The page size
+     * @return The page of admin dashboard booking DTOs
      */
-    public List<AdminDashboardBookingDTO> getAdminDashboardBookings() {
-        List<Booking> bookings = getAllBookings();
-        return convertToAdminDashboardBookingDTOs(bookings);
+    @Transactional(readOnly = true)
+    public CursorPage<AdminDashboardBookingDTO> getAdminDashboardBookings(String cursor, int limit) {
+        long beforeId = PageCursor.decodeOr(cursor, Long.MAX_VALUE);
+        List<Booking> rows = bookingRepository.findByIdLessThanOrderByIdDesc(beforeId, PageRequest.of(0, limit + 1));
+        CursorPage<Booking> page = CursorPage.of(rows, limit, Booking::getId, null);
+        return new CursorPage<>(convertToAdminDashboardBookingDTOs(page.getItems()), page.getNextCursor(), null);
+    }
+
+    /**
+     * Get the number of bookings, their total amount and the number in each status, for the admin dashboard
+     *
+     * @return The totals over all bookings
+     */
+    @Transactional(readOnly = true)
+    public BookingTotalsDTO getBookingTotals() {
+        long count = 0;
+        double amount = 0;
+        Map<String, Long> countsByStatus = new HashMap<>();
+        for (BookingStatusTotal total : bookingRepository.sumByStatus()) {
+            count += total.getCount();
+            amount += total.getTotal();
+            if (total.getStatus() != null) {
+                countsByStatus.put(total.getStatus(), total.getCount());
+            }
+        }
+        return new BookingTotalsDTO(count, amount, countsByStatus);
     }
 
     /**
@@ -461,6 +541,7 @@ public class BookingService {
      *
      * @return Number of bookings updated
      */
+    @Transactional
     public int updateExpiredBookings() {
         LocalDate today = LocalDate.now();
         List<Booking> expiredBookings = bookingRepository.findExpiredBookings(today);
@@ -470,6 +551,7 @@ public class BookingService {
             if (!"COMPLETED".equals(booking.getStatus()) && !"CANCELLED".equals(booking.getStatus())) {
                 booking.setStatus("COMPLETED");
                 bookingRepository.save(booking);
+                publishBookingEvent(OutboxService.BOOKING_COMPLETED, booking);
                 updatedCount++;
             }
         }
@@ -479,17 +561,28 @@ public class BookingService {
 
     /**
      * Update booking status
+     * Moving a booking to CANCELLED or COMPLETED records the same event as cancelling or returning it
      *
      * @param id Booking ID
      * @param status New status
      * @return Updated booking or null if not found
      */
+    @Transactional
     public Booking updateBookingStatus(Long id, String status) {
         Optional<Booking> bookingOptional = bookingRepository.findById(id);
         if (bookingOptional.isPresent()) {
             Booking booking = bookingOptional.get();
+            String previousStatus = booking.getStatus();
             booking.setStatus(status);
-            return bookingRepository.save(booking);
+            Booking saved = bookingRepository.save(booking);
+            if (!status.equals(previousStatus)) {
+                if ("CANCELLED".equals(status)) {
+                    publishBookingEvent(OutboxService.BOOKING_CANCELLED, saved);
+                } else if ("COMPLETED".equals(status)) {
+                    publishBookingEvent(OutboxService.BOOKING_COMPLETED, saved);
+                }
+            }
+            return saved;
         }
         return null;
     }
@@ -500,6 +593,7 @@ public class BookingService {
      * @param id Booking ID
      * @return true if cancelled successfully, false otherwise
      */
+    @Transactional
     public boolean cancelBooking(Long id) {
         Optional<Booking> bookingOptional = bookingRepository.findById(id);
         if (bookingOptional.isPresent()) {
@@ -512,6 +606,7 @@ public class BookingService {
 
             booking.setStatus("CANCELLED");
             bookingRepository.save(booking);
+            publishBookingEvent(OutboxService.BOOKING_CANCELLED, booking);
             return true;
         }
         return false;
@@ -523,6 +618,7 @@ public class BookingService {
      * @param id Booking ID
      * @return true if returned successfully, false otherwise
      */
+    @Transactional
     public boolean returnCar(Long id) {
         Optional<Booking> bookingOptional = bookingRepository.findById(id);
         if (bookingOptional.isPresent()) {
@@ -535,10 +631,25 @@ public class BookingService {
 
             booking.setStatus("COMPLETED");
             bookingRepository.save(booking);
+            publishBookingEvent(OutboxService.BOOKING_COMPLETED, booking);
             return true;
         }
         return false;
     }
 
-
+    /**
+     * Record a booking event in the outbox, in the transaction that changed the booking
+     *
+     * @param eventType The event type
+     * @param booking The changed booking
+     */
+    void publishBookingEvent(String eventType, Booking booking) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("bookingId", booking.getId());
+        payload.put("referenceId", booking.getReferenceId());
+        payload.put("userId", booking.getUserId());
+        payload.put("carId", booking.getCarId());
+        payload.put("status", booking.getStatus());
+        outboxService.publish(eventType, "Booking", booking.getId(), payload);
+    }
 }
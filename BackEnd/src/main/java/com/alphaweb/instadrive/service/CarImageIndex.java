@@ -0,0 +1,326 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.Car;
+import com.alphaweb.instadrive.model.ImageVariant;
+import com.alphaweb.instadrive.repository.CarRepository;
+import com.alphaweb.instadrive.util.MimeTypes;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Index of resolved car images
+ * Maps a car ID and size to the file that serves it so repeat requests need no database or filesystem lookups
+ * The index holds the most recently requested cars up to a fixed size, and only cars that exist
+ */
+@Service
+public class CarImageIndex {
+
+    private static final String PLACEHOLDER_RESOURCE = "static/images/car-placeholder.png";
+    private static final int VERSION_STRIPES = 64;
+
+    private final CarRepository carRepository;
+    private final FileServingService fileServingService;
+    private final ImageVariantService imageVariantService;
+    private final String uploadDir;
+    private final long placeholderRecheckMillis;
+
+    private final Map<ImageKey, ResolvedImage> index;
+    // Bumped by every eviction, so a lookup that overlapped one does not keep what it found
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    private volatile Placeholder placeholder;
+
+    public CarImageIndex(CarRepository carRepository,
+                         FileServingService fileServingService,
+                         ImageVariantService imageVariantService,
+                         @Value("${file.upload-dir:uploads}") String uploadDir,
+                         @Value("${car-images.placeholder-recheck-ms:60000}") long placeholderRecheckMillis,
+                         @Value("${car-images.index-size:10000}") int indexSize) {
+        this.carRepository = carRepository;
+        this.fileServingService = fileServingService;
+        this.imageVariantService = imageVariantService;
+        this.uploadDir = uploadDir;
+        this.placeholderRecheckMillis = placeholderRecheckMillis;
+        this.index = Collections.synchronizedMap(new LinkedHashMap<ImageKey, ResolvedImage>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ImageKey, ResolvedImage> eldest) {
+                return size() > indexSize;
+            }
+        });
+    }
+
+    /**
+     * A resolved car image
+     *
+     * @param path The image file, or null if the car is served the placeholder
+     * @param fileName The file name presented to the client
+     * @param mediaType The media type of the image
+     * @param metadata The file metadata, including the ETag
+     * @param resolvedAt When the entry was resolved, in milliseconds
+     * @param provisional Whether the entry stands in for a file that may appear later
+     */
+    public record ResolvedImage(Path path, String fileName, MediaType mediaType,
+                                FileServingService.FileMetadata metadata, long resolvedAt, boolean provisional) {
+
+        public boolean isPlaceholder() {
+            return path == null;
+        }
+    }
+
+    /**
+     * Key of an index entry
+     *
+     * @param carId The ID of the car
+     * @param variant The requested size
+     */
+    private record ImageKey(Long carId, ImageVariant variant) {
+    }
+
+    /**
+     * The bundled placeholder image, loaded once
+     *
+     * @param bytes The image bytes, or null if no placeholder is bundled
+     * @param etag The entity tag of the placeholder
+     */
+    public record Placeholder(byte[] bytes, String etag) {
+    }
+
+    /**
+     * Get the resolved original image of a car
+     *
+     * @param carId The ID of the car
+     * @return The resolved image
+     */
+    public ResolvedImage resolve(Long carId) {
+        return resolve(carId, ImageVariant.ORIGINAL);
+    }
+
+    /**
+     * Get the resolved image of a car in the requested size, resolving it on the first request
+     * Until the variant has been rendered the original is served in its place
+     *
+     * @param carId The ID of the car
+     * @param variant The requested size
+     * @return The resolved image
+     */
+    public ResolvedImage resolve(Long carId, ImageVariant variant) {
+        ResolvedImage image = resolveIfExists(carId, variant);
+        return image != null ? image : placeholderEntry(System.currentTimeMillis());
+    }
+
+    /**
+     * Get the resolved image of a car, from the index or by looking it up
+     *
+     * @return The resolved image, or null if there is no such car
+     */
+    private ResolvedImage resolveIfExists(Long carId, ImageVariant variant) {
+        ImageKey key = new ImageKey(carId, variant);
+        ResolvedImage image = index.get(key);
+        if (image != null && !isStale(image)) {
+            return image;
+        }
+
+        int stripe = stripe(carId);
+        long version = versions.get(stripe);
+        image = lookup(carId, variant);
+        if (image == null) {
+            // Unknown cars are not indexed, so requests for made-up IDs cannot fill the index
+            return null;
+        }
+        index.put(key, image);
+        if (versions.get(stripe) != version) {
+            // The car's image changed during the lookup, so what was found may already be out of date
+            index.remove(key, image);
+        }
+        return image;
+    }
+
+    /**
+     * Forget the resolved image of a car
+     * Called whenever the car's image changes; the next request resolves it again
+     *
+     * @param carId The ID of the car
+     */
+    public void evict(Long carId) {
+        if (carId == null) {
+            return;
+        }
+        versions.incrementAndGet(stripe(carId));
+        for (ImageVariant variant : ImageVariant.values()) {
+            ResolvedImage removed = index.remove(new ImageKey(carId, variant));
+            if (removed != null && removed.path() != null) {
+                fileServingService.evict(removed.path());
+            }
+        }
+    }
+
+    /**
+     * Get the bundled placeholder image
+     *
+     * @return The placeholder
+     */
+    public Placeholder getPlaceholder() {
+        Placeholder current = placeholder;
+        if (current == null) {
+            current = loadPlaceholder();
+            placeholder = current;
+        }
+        return current;
+    }
+
+    private static int stripe(Long carId) {
+        return Long.hashCode(carId) & (VERSION_STRIPES - 1);
+    }
+
+    /**
+     * Provisional entries are re-checked now and then, in case the file appears later
+     */
+    private boolean isStale(ResolvedImage image) {
+        return image.provisional() && System.currentTimeMillis() - image.resolvedAt() > placeholderRecheckMillis;
+    }
+
+    /**
+     * Resolve a car's image URL to a file on disk, preferring a rendered variant of the requested size
+     *
+     * @param carId The ID of the car
+     * @param variant The requested size
+     * @return The resolved image, a placeholder entry, or null if there is no such car
+     */
+    private ResolvedImage lookup(Long carId, ImageVariant variant) {
+        if (variant == ImageVariant.ORIGINAL) {
+            return lookupOriginal(carId);
+        }
+
+        ResolvedImage original = resolveIfExists(carId, ImageVariant.ORIGINAL);
+        if (original == null || original.isPlaceholder()) {
+            return original;
+        }
+
+        try {
+            Path variantPath = imageVariantService.findVariant(original.fileName(), variant);
+            if (variantPath != null) {
+                String variantFileName = variantPath.getFileName().toString();
+                return new ResolvedImage(variantPath, variantFileName, MimeTypes.forFileName(variantFileName),
+                        fileServingService.getMetadata(variantPath), original.resolvedAt(), false);
+            }
+        } catch (IOException e) {
+            // Fall back to the original
+        }
+
+        // Render the variants now; once they are written this entry is evicted and resolved again
+        imageVariantService.generateVariantsAsync(original.path(), () -> evict(carId));
+        return new ResolvedImage(original.path(), original.fileName(), original.mediaType(), original.metadata(),
+                System.currentTimeMillis(), true);
+    }
+
+    /**
+     * Resolve a car's image URL to the original file on disk
+     *
+     * @param carId The ID of the car
+     * @return The resolved image, a placeholder entry, or null if there is no such car
+     */
+    private ResolvedImage lookupOriginal(Long carId) {
+        long now = System.currentTimeMillis();
+
+        Optional<Car> carOptional = carRepository.findById(carId);
+        if (carOptional.isEmpty()) {
+            return null;
+        }
+
+        String imageUrl = carOptional.get().getImageUrl();
+        if (imageUrl == null || imageUrl.isEmpty()) {
+            return placeholderEntry(now);
+        }
+
+        String fileName = extractFileName(imageUrl);
+        if (fileName.isEmpty()) {
+            return placeholderEntry(now);
+        }
+
+        for (Path location : candidateLocations()) {
+            try {
+                Path filePath = location.resolve(fileName).normalize();
+                if (!filePath.startsWith(location) || !Files.isRegularFile(filePath)) {
+                    continue;
+                }
+                FileServingService.FileMetadata metadata = fileServingService.getMetadata(filePath);
+                return new ResolvedImage(filePath, fileName, MimeTypes.forFileName(fileName), metadata, now, false);
+            } catch (Exception e) {
+                // Ignore and try the next location
+            }
+        }
+
+        return placeholderEntry(now);
+    }
+
+    private ResolvedImage placeholderEntry(long now) {
+        return new ResolvedImage(null, "car-placeholder.png", MediaType.IMAGE_PNG, null, now, true);
+    }
+
+    /**
+     * Extract the filename from a URL
+     * @param url The URL
+     * @return The filename
+     */
+    static String extractFileName(String url) {
+        String path;
+        try {
+            path = URI.create(url).getPath();
+        } catch (IllegalArgumentException e) {
+            path = null;
+        }
+        if (path == null) {
+            // If the URL is malformed, just use the last part
+            path = url;
+        }
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Common locations where uploaded images might be stored, the configured upload directory first
+     */
+    private Path[] candidateLocations() {
+        String[] locations = {
+            uploadDir,
+            "uploads",
+            "../uploads",
+            System.getProperty("user.home") + "/instadrive-data/uploads",
+            System.getProperty("user.home") + "/uploads"
+        };
+
+        Path[] paths = new Path[locations.length];
+        for (int i = 0; i < locations.length; i++) {
+            paths[i] = Paths.get(locations[i]).toAbsolutePath().normalize();
+        }
+        return paths;
+    }
+
+    private Placeholder loadPlaceholder() {
+        ClassPathResource resource = new ClassPathResource(PLACEHOLDER_RESOURCE);
+        if (!resource.exists()) {
+            return new Placeholder(null, null);
+        }
+        try (InputStream inputStream = resource.getInputStream()) {
+            byte[] bytes = inputStream.readAllBytes();
+            return new Placeholder(bytes, "\"placeholder-" + Integer.toHexString(Arrays.hashCode(bytes)) + "\"");
+        } catch (IOException e) {
+            System.err.println("Error loading car image placeholder: " + e.getMessage());
+            return new Placeholder(null, null);
+        }
+    }
+}
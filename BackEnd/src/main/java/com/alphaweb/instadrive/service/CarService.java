@@ -1,10 +1,13 @@
 package com.alphaweb.instadrive.service;
 
+import com.alphaweb.instadrive.dto.CarSummaryDTO;
 import com.alphaweb.instadrive.model.Car;
 import com.alphaweb.instadrive.repository.CarRepository;
+import com.alphaweb.instadrive.util.AfterCommit;
 import lombok.RequiredArgsConstructor;
 // Removed unused cache annotations
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -13,27 +16,81 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class CarService {
     private final CarRepository carRepository;
+    private final CarImageIndex carImageIndex;
+    private final ImagePackService imagePackService;
+    private final FileStorageService fileStorageService;
 
+    @Transactional(readOnly = true)
     public List<Car> getAllCars() {
         return carRepository.findAll();
     }
 
+    /**
+     * Get every car for list views, without the features
+     *
+     * @return The car summaries
+     */
+    @Transactional(readOnly = true)
+    public List<CarSummaryDTO> getCarSummaries() {
+        return carRepository.findAllSummaries();
+    }
+
+    /**
+     * Get a car by ID
+     * Read from the primary rather than a replica, since callers change and save the car they get
+     *
+     * @param id The car ID
+     * @return The car, or empty if it does not exist
+     */
+    @Transactional
     public Optional<Car> getCarById(Long id) {
         return carRepository.findById(id);
     }
 
+    /**
+     * Save a new or changed car
+     * A car holds a reference to its uploaded image, moved from the previous image if the image changed
+     *
+     * @param car The car
+     * @return The saved car
+     */
+    @Transactional
     public Car addCar(Car car) {
-        return carRepository.save(car);
+        String previousFileName = car.getId() == null
+                ? null
+                : carRepository.lockById(car.getId()).map(this::imageFileName).orElse(null);
+        Car savedCar = carRepository.save(car);
+        fileStorageService.replaceReference(previousFileName, imageFileName(savedCar));
+        // The image URL may have changed, so let the image proxy resolve it again once this commits
+        Long carId = savedCar.getId();
+        String fileName = imageFileName(savedCar);
+        AfterCommit.run(() -> {
+            carImageIndex.evict(carId);
+            imagePackService.removeIfChanged(carId, fileName);
+        });
+        return savedCar;
     }
 
+    @Transactional
     public void deleteCar(Long id) {
-        carRepository.deleteById(id);
+        Optional<Car> carOptional = carRepository.lockById(id);
+        if (carOptional.isEmpty()) {
+            return;
+        }
+        carRepository.delete(carOptional.get());
+        fileStorageService.releaseFile(imageFileName(carOptional.get()));
+        AfterCommit.run(() -> {
+            carImageIndex.evict(id);
+            imagePackService.removeIfChanged(id, null);
+        });
     }
 
+    @Transactional
     public Car updateCar(Long id, Car carDetails) {
-        Optional<Car> carOptional = carRepository.findById(id);
+        Optional<Car> carOptional = carRepository.lockById(id);
         if (carOptional.isPresent()) {
             Car car = carOptional.get();
+            String previousFileName = imageFileName(car);
             car.setBrand(carDetails.getBrand());
             car.setModel(carDetails.getModel());
             car.setFuelType(carDetails.getFuelType());
@@ -58,9 +115,21 @@ public class CarService {
             car.setAppleCarPlay(carDetails.isAppleCarPlay());
             car.setAndroidAuto(carDetails.isAndroidAuto());
 
-            return carRepository.save(car);
+            Car savedCar = carRepository.save(car);
+            fileStorageService.replaceReference(previousFileName, imageFileName(savedCar));
+            String fileName = imageFileName(savedCar);
+            AfterCommit.run(() -> {
+                carImageIndex.evict(id);
+                imagePackService.removeIfChanged(id, fileName);
+            });
+            return savedCar;
         }
         return null; // Or handle with custom exception
     }
 
+    private String imageFileName(Car car) {
+        String imageUrl = car.getImageUrl();
+        return imageUrl == null || imageUrl.isEmpty() ? null : CarImageIndex.extractFileName(imageUrl);
+    }
+
 }
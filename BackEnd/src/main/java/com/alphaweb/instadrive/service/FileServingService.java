@@ -0,0 +1,433 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.util.MimeTypes;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Service for streaming files from disk to HTTP clients
+ * Supports byte ranges, conditional requests (ETag / Last-Modified) and zero-copy transfer
+ */
+@Service
+public class FileServingService {
+
+    // Tomcat request attributes used to hand a file over to the connector's sendfile support
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final Map<Path, CachedMetadata> metadataCache;
+    private final long metadataRevalidateMillis;
+    private final HotImageCache hotImageCache;
+
+    public FileServingService(@Value("${file.serving.metadata-cache-size:10000}") int metadataCacheSize,
+                              @Value("${file.serving.metadata-revalidate-ms:1000}") long metadataRevalidateMillis,
+                              HotImageCache hotImageCache) {
+        this.metadataRevalidateMillis = metadataRevalidateMillis;
+        this.hotImageCache = hotImageCache;
+        this.metadataCache = Collections.synchronizedMap(new LinkedHashMap<Path, CachedMetadata>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, CachedMetadata> eldest) {
+                return size() > metadataCacheSize;
+            }
+        });
+    }
+
+    /**
+     * Cached metadata of a served file
+     *
+     * @param size The file size in bytes
+     * @param lastModified The last modified time in milliseconds
+     * @param etag The strong entity tag
+     * @param realPath The canonical path of the file
+     */
+    public record FileMetadata(long size, long lastModified, String etag, String realPath) {
+    }
+
+    /**
+     * Metadata in the cache, with when it was last checked against the file
+     */
+    private record CachedMetadata(FileMetadata metadata, long checkedAt) {
+    }
+
+    /**
+     * Get the metadata of a file, reading it from disk on the first request
+     * Cached metadata older than file.serving.metadata-revalidate-ms is checked against the file's size and
+     * modification time, so a file changed without an eviction is picked up within that interval
+     *
+     * @param file The file
+     * @return The file metadata
+     * @throws NoSuchFileException if the file does not exist
+     */
+    public FileMetadata getMetadata(Path file) throws IOException {
+        long now = System.currentTimeMillis();
+        CachedMetadata cached = metadataCache.get(file);
+        if (cached != null && now - cached.checkedAt() < metadataRevalidateMillis) {
+            return cached.metadata();
+        }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            evict(file);
+            throw e;
+        }
+        if (!attributes.isRegularFile()) {
+            evict(file);
+            throw new NoSuchFileException(file.toString());
+        }
+
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        FileMetadata metadata;
+        if (cached != null && cached.metadata().size() == size && cached.metadata().lastModified() == lastModified) {
+            metadata = cached.metadata();
+        } else {
+            if (cached != null) {
+                hotImageCache.evict(cached.metadata().realPath());
+            }
+            String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+            metadata = new FileMetadata(size, lastModified, etag, file.toRealPath().toString());
+        }
+        metadataCache.put(file, new CachedMetadata(metadata, now));
+        return metadata;
+    }
+
+    /**
+     * Forget the cached metadata of a file
+     * Must be called whenever a file is rewritten or deleted
+     *
+     * @param file The file
+     */
+    public void evict(Path file) {
+        CachedMetadata cached = metadataCache.remove(file);
+        if (cached != null) {
+            hotImageCache.evict(cached.metadata().realPath());
+        }
+    }
+
+    /**
+     * Serve a file, honouring Range, If-Range, If-None-Match and If-Modified-Since
+     *
+     * @param file The file to serve
+     * @param fileName The file name presented to the client
+     * @param attachment Whether the file should be downloaded rather than displayed inline
+     * @param cacheControl The Cache-Control header value
+     * @param request The HTTP request
+     * @param response The HTTP response
+     * @throws NoSuchFileException if the file does not exist
+     */
+    public void serve(Path file, String fileName, boolean attachment, String cacheControl,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(file, fileName, MimeTypes.forFileName(fileName), attachment, cacheControl, request, response);
+    }
+
+    /**
+     * Serve a file with an explicit media type
+     *
+     * @param file The file to serve
+     * @param fileName The file name presented to the client
+     * @param mediaType The media type of the file
+     * @param attachment Whether the file should be downloaded rather than displayed inline
+     * @param cacheControl The Cache-Control header value
+     * @param request The HTTP request
+     * @param response The HTTP response
+     * @throws NoSuchFileException if the file does not exist
+     */
+    public void serve(Path file, String fileName, MediaType mediaType, boolean attachment, String cacheControl,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(file, getMetadata(file), fileName, mediaType, attachment, cacheControl, request, response);
+    }
+
+    /**
+     * Serve a file whose metadata the caller has already resolved
+     *
+     * @param file The file to serve
+     * @param metadata The file metadata
+     * @param fileName The file name presented to the client
+     * @param mediaType The media type of the file
+     * @param attachment Whether the file should be downloaded rather than displayed inline
+     * @param cacheControl The Cache-Control header value
+     * @param request The HTTP request
+     * @param response The HTTP response
+     * @throws NoSuchFileException if the file has been removed since the metadata was read
+     */
+    public void serve(Path file, FileMetadata metadata, String fileName, MediaType mediaType, boolean attachment,
+                      String cacheControl, HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+        long[] range = writeHeaders(metadata.etag(), metadata.lastModified(), metadata.size(), fileName, mediaType,
+                attachment, cacheControl, request, response);
+        if (range == null) {
+            return;
+        }
+        long start = range[0];
+        long end = range[1];
+        long contentLength = end - start + 1;
+
+        // Small, frequently requested images are served from memory
+        if (hotImageCache.accepts(metadata.size(), mediaType.toString())) {
+            ByteBuffer cached = hotImageCache.get(file, metadata.realPath(), metadata.etag(), metadata.size());
+            if (cached != null) {
+                cached.position((int) start).limit((int) (end + 1));
+                writeBuffer(cached, response);
+                return;
+            }
+        }
+
+        // Let the connector send the file with sendfile(2) when it supports it
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, metadata.realPath());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = contentLength;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+    }
+
+    /**
+     * Serve content that is already in memory, such as a slice of a memory-mapped file
+     *
+     * @param content The bytes to serve, between position and limit
+     * @param etag The strong entity tag of the content
+     * @param lastModified The last modified time in milliseconds
+     * @param fileName The file name presented to the client
+     * @param mediaType The media type of the content
+     * @param attachment Whether the content should be downloaded rather than displayed inline
+     * @param cacheControl The Cache-Control header value
+     * @param request The HTTP request
+     * @param response The HTTP response
+     */
+    public void serve(ByteBuffer content, String etag, long lastModified, String fileName, MediaType mediaType,
+                      boolean attachment, String cacheControl, HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        ByteBuffer buffer = content.slice();
+        long[] range = writeHeaders(etag, lastModified, buffer.remaining(), fileName, mediaType,
+                attachment, cacheControl, request, response);
+        if (range == null) {
+            return;
+        }
+        buffer.position((int) range[0]).limit((int) (range[1] + 1));
+        writeBuffer(buffer, response);
+    }
+
+    /**
+     * Write the status and headers of a response, evaluating conditional and range headers
+     *
+     * @return The inclusive start and end offsets to send, or null if no body should be sent
+     */
+    private long[] writeHeaders(String etag, long lastModified, long length, String fileName, MediaType mediaType,
+                                boolean attachment, String cacheControl, HttpServletRequest request,
+                                HttpServletResponse response) {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (cacheControl != null) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        }
+
+        if (isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return null;
+        }
+
+        long start = 0;
+        long end = length - 1;
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && isRangeApplicable(request, etag, lastModified)) {
+            long[] range = parseRange(rangeHeader, length);
+            if (range == UNSATISFIABLE) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return null;
+            }
+            if (range != null) {
+                start = range[0];
+                end = range[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long contentLength = end - start + 1;
+        response.setContentType(mediaType.toString());
+        response.setContentLengthLong(Math.max(contentLength, 0));
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                (attachment ? ContentDisposition.attachment() : ContentDisposition.inline())
+                        .filename(fileName)
+                        .build()
+                        .toString());
+
+        if ("HEAD".equals(request.getMethod()) || contentLength <= 0) {
+            return null;
+        }
+        return new long[]{start, end};
+    }
+
+    /**
+     * Write a buffer to the response through the servlet API, so any servlet container can serve it
+     *
+     * @param buffer The bytes to write, between position and limit
+     * @param response The HTTP response
+     */
+    private void writeBuffer(ByteBuffer buffer, HttpServletResponse response) throws IOException {
+        WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    // Marker returned by parseRange when the requested range cannot be satisfied
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    /**
+     * Parse a single byte range
+     * Multi-range requests are answered with the full file
+     *
+     * @param rangeHeader The Range header value
+     * @param length The file length
+     * @return The inclusive start and end offsets, null to serve the full file, or UNSATISFIABLE
+     */
+    static long[] parseRange(String rangeHeader, long length) {
+        if (!rangeHeader.startsWith("bytes=") || rangeHeader.indexOf(',') >= 0) {
+            return null;
+        }
+
+        String spec = rangeHeader.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                // Suffix range: the last N bytes
+                long suffixLength = Long.parseLong(spec.substring(1));
+                if (suffixLength <= 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, length - suffixLength);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length - 1 : Long.parseLong(spec.substring(dash + 1));
+                end = Math.min(end, length - 1);
+            }
+
+            if (start >= length || start > end) {
+                return UNSATISFIABLE;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check the conditional request headers against an entity tag and modification time
+     *
+     * @param request The HTTP request
+     * @param etag The current entity tag
+     * @param lastModified The last modified time in milliseconds, or -1 if unknown
+     * @return true if the client's copy is still current
+     */
+    public boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return matchesEtag(ifNoneMatch, etag);
+        }
+        if (lastModified < 0) {
+            return false;
+        }
+
+        try {
+            long ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+            return ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check whether a Range header should be honoured given the If-Range header
+     *
+     * @param request The HTTP request
+     * @param etag The current entity tag
+     * @param lastModified The last modified time in milliseconds
+     * @return true if the range applies to the current representation
+     */
+    private boolean isRangeApplicable(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            long date = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return lastModified / 1000 <= date / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check whether an If-None-Match header matches an entity tag
+     *
+     * @param header The If-None-Match header value
+     * @param etag The current entity tag
+     * @return true if any listed tag matches
+     */
+    private boolean matchesEtag(String header, String etag) {
+        if ("*".equals(header.trim())) {
+            return true;
+        }
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,28 +1,98 @@
 package com.alphaweb.instadrive.service;
 
+import com.alphaweb.instadrive.model.StoredFile;
+import com.alphaweb.instadrive.repository.StoredFileRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.UUID;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Service for storing uploaded files
+ * Files are stored under the SHA-256 of their content, so identical uploads share one file on disk.
+ * Storing a file does not reference it; whatever points at the file (a car's image) acquires and
+ * releases it, and files nothing refers to are deleted once they are past the orphan grace period
+ */
 @Service
 public class FileStorageService {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int LOCK_STRIPES = 64;
+
     private final Path fileStorageLocation;
+    private final StoredFileRepository storedFileRepository;
+    private final ImageVariantService imageVariantService;
+    private final FileServingService fileServingService;
+    private final long maxUploadSize;
+    private final long acquireTimeoutMillis;
+    private final long orphanGraceMillis;
+
+    // Bounds how many uploads are hashed and written at the same time
+    private final Semaphore uploadPermits;
+
+    // Serializes storing and releasing files with the same hash
+    private final Object[] locks = new Object[LOCK_STRIPES];
 
-    public FileStorageService(@Value("${file.upload-dir:uploads}") String uploadDir) {
+    /**
+     * Thrown when too many uploads are already in progress
+     */
+    public static class StorageBusyException extends RuntimeException {
+        public StorageBusyException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A file that has been stored
+     *
+     * @param fileName The name of the file in the upload directory
+     * @param size The size of the file in bytes
+     * @param duplicate Whether the content was already stored by an earlier upload
+     */
+    public record StoreResult(String fileName, long size, boolean duplicate) {
+    }
+
+    public FileStorageService(@Value("${file.upload-dir:uploads}") String uploadDir,
+                              StoredFileRepository storedFileRepository,
+                              ImageVariantService imageVariantService,
+                              FileServingService fileServingService,
+                              @Value("${file.upload.max-concurrent:8}") int maxConcurrentUploads,
+                              @Value("${file.upload.acquire-timeout-ms:5000}") long acquireTimeoutMillis,
+                              @Value("${file.upload.max-size:10485760}") long maxUploadSize,
+                              @Value("${file.upload.orphan-grace-ms:86400000}") long orphanGraceMillis) {
         this.fileStorageLocation = Paths.get(uploadDir)
                 .toAbsolutePath().normalize();
+        this.storedFileRepository = storedFileRepository;
+        this.imageVariantService = imageVariantService;
+        this.fileServingService = fileServingService;
+        this.uploadPermits = new Semaphore(maxConcurrentUploads, true);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.maxUploadSize = maxUploadSize;
+        this.orphanGraceMillis = orphanGraceMillis;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
 
         try {
             Files.createDirectories(this.fileStorageLocation);
@@ -33,25 +103,172 @@ public class FileStorageService {
 
     public String storeFile(MultipartFile file) {
         // Normalize file name
-        String originalFileName = StringUtils.cleanPath(file.getOriginalFilename());
-        
-        // Generate a unique file name to prevent conflicts
-        String fileName = UUID.randomUUID().toString() + "_" + originalFileName;
+        String originalFileName = StringUtils.cleanPath(file.getOriginalFilename() == null ? "" : file.getOriginalFilename());
 
+        try (InputStream inputStream = file.getInputStream()) {
+            return storeStream(inputStream, originalFileName, file.getContentType()).fileName();
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not store file " + originalFileName + ". Please try again!", ex);
+        }
+    }
+
+    /**
+     * Store an upload read straight from a stream
+     * The content is hashed while it is written into the upload directory, then renamed to its hash.
+     * Content that is already stored keeps its first file name, whatever extension it is uploaded with
+     *
+     * @param inputStream The content of the upload
+     * @param originalFileName The name the client gave the file, used for its extension
+     * @param contentType The content type reported by the client
+     * @return The stored file
+     * @throws IOException if the content cannot be read or written
+     */
+    public StoreResult storeStream(InputStream inputStream, String originalFileName, String contentType) throws IOException {
+        if (originalFileName != null && originalFileName.contains("..")) {
+            throw new RuntimeException("Sorry! Filename contains invalid path sequence " + originalFileName);
+        }
+
+        acquireUploadPermit();
+        Path partFile = null;
         try {
-            // Check if the file's name contains invalid characters
-            if (fileName.contains("..")) {
-                throw new RuntimeException("Sorry! Filename contains invalid path sequence " + fileName);
+            MessageDigest digest = newDigest();
+            partFile = Files.createTempFile(this.fileStorageLocation, "upload-", ".part");
+
+            long size = 0;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (OutputStream outputStream = Files.newOutputStream(partFile)) {
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxUploadSize) {
+                        throw new RuntimeException("File exceeds the maximum upload size of " + maxUploadSize + " bytes");
+                    }
+                    digest.update(buffer, 0, read);
+                    outputStream.write(buffer, 0, read);
+                }
             }
 
-            // Copy file to the target location (Replacing existing file with the same name)
-            Path targetLocation = this.fileStorageLocation.resolve(fileName);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+            String sha256 = HexFormat.of().formatHex(digest.digest());
 
-            return fileName;
-        } catch (IOException ex) {
-            throw new RuntimeException("Could not store file " + fileName + ". Please try again!", ex);
+            synchronized (lockFor(sha256)) {
+                StoredFile existing = storedFileRepository.findById(sha256).orElse(null);
+                String fileName = existing != null ? existing.getFileName() : sha256 + extensionOf(originalFileName);
+                Path targetLocation = this.fileStorageLocation.resolve(fileName);
+
+                boolean duplicate = Files.exists(targetLocation);
+                if (duplicate) {
+                    Files.delete(partFile);
+                } else {
+                    // Same directory, so this is a rename rather than a copy
+                    Files.move(partFile, targetLocation, StandardCopyOption.ATOMIC_MOVE);
+                }
+                partFile = null;
+
+                recordStored(existing, sha256, fileName, size, contentType);
+                return new StoreResult(fileName, size, duplicate);
+            }
+        } finally {
+            if (partFile != null) {
+                Files.deleteIfExists(partFile);
+            }
+            uploadPermits.release();
+        }
+    }
+
+    /**
+     * Add a reference to a stored file
+     * Files that were not stored by content hash, such as external image URLs, are left alone
+     *
+     * @param fileName The stored file name
+     */
+    public void acquireFile(String fileName) {
+        if (fileName == null || fileName.isEmpty()) {
+            return;
+        }
+        storedFileRepository.incrementReferenceCountByFileName(fileName);
+    }
+
+    /**
+     * Drop one reference to a stored file
+     * The file is deleted by the orphan sweep once nothing refers to it and it has not been uploaded again
+     * within the grace period, so an upload that is about to be attached elsewhere is not lost
+     *
+     * @param fileName The stored file name
+     */
+    public void releaseFile(String fileName) {
+        if (fileName == null || fileName.isEmpty()) {
+            return;
+        }
+        storedFileRepository.decrementReferenceCountByFileName(fileName);
+    }
+
+    /**
+     * Move from one referenced file to another, for a record whose file changed
+     *
+     * @param previousFileName The file referenced before, or null
+     * @param fileName The file referenced now, or null
+     */
+    public void replaceReference(String previousFileName, String fileName) {
+        if (previousFileName != null && previousFileName.equals(fileName)) {
+            return;
         }
+        acquireFile(fileName);
+        releaseFile(previousFileName);
+    }
+
+    /**
+     * Delete stored files nothing refers to, with their image variants
+     */
+    @Scheduled(fixedDelayString = "${file.upload.orphan-sweep-interval-ms:3600000}")
+    public void deleteUnreferencedFiles() {
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minusNanos(orphanGraceMillis * 1_000_000);
+            List<StoredFile> orphans = storedFileRepository.findUnreferencedBefore(cutoff);
+            int deleted = 0;
+            for (StoredFile orphan : orphans) {
+                if (deleteIfUnreferenced(orphan, cutoff)) {
+                    deleted++;
+                }
+            }
+            if (deleted > 0) {
+                System.out.println("Deleted " + deleted + " unreferenced uploads");
+            }
+        } catch (Exception e) {
+            System.err.println("Error deleting unreferenced uploads: " + e.getMessage());
+        }
+    }
+
+    private boolean deleteIfUnreferenced(StoredFile storedFile, LocalDateTime cutoff) {
+        String fileName = storedFile.getFileName();
+        synchronized (lockFor(storedFile.getSha256())) {
+            // The row is only deleted if no reference or upload arrived since it was read
+            if (storedFileRepository.deleteIfUnreferenced(storedFile.getSha256(), cutoff) == 0) {
+                return false;
+            }
+            try {
+                Path filePath = resolveFilePath(fileName);
+                Files.deleteIfExists(filePath);
+                fileServingService.evict(filePath);
+                imageVariantService.deleteVariants(fileName);
+            } catch (IOException ex) {
+                System.err.println("Error deleting stored file " + fileName + ": " + ex.getMessage());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Resolve a stored file name to its path inside the upload directory
+     *
+     * @param fileName The stored file name
+     * @return The path of the file
+     */
+    public Path resolveFilePath(String fileName) {
+        Path filePath = this.fileStorageLocation.resolve(fileName).normalize();
+        if (!filePath.startsWith(this.fileStorageLocation)) {
+            throw new RuntimeException("Sorry! Filename contains invalid path sequence " + fileName);
+        }
+        return filePath;
     }
 
     public Resource loadFileAsResource(String fileName) {
@@ -67,4 +284,62 @@ public class FileStorageService {
             throw new RuntimeException("File not found " + fileName, ex);
         }
     }
+
+    /**
+     * Record an upload, creating the file's record on its first upload
+     * Every upload restarts the orphan grace period, so content uploaded again is not swept before it is attached
+     */
+    private void recordStored(StoredFile existing, String sha256, String fileName, long size, String contentType) {
+        LocalDateTime now = LocalDateTime.now();
+        if (existing != null && storedFileRepository.touch(sha256, now) > 0) {
+            return;
+        }
+        try {
+            storedFileRepository.saveAndFlush(new StoredFile(sha256, fileName, size, contentType, 0, now, now));
+        } catch (DataIntegrityViolationException ex) {
+            // Another instance recorded the same content first
+            storedFileRepository.touch(sha256, now);
+        }
+    }
+
+    private void acquireUploadPermit() {
+        try {
+            if (!uploadPermits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new StorageBusyException("Too many uploads in progress. Please try again shortly.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StorageBusyException("Upload was interrupted");
+        }
+    }
+
+    private Object lockFor(String sha256) {
+        return locks[Math.floorMod(sha256.hashCode(), LOCK_STRIPES)];
+    }
+
+    /**
+     * Keep a short alphanumeric extension so stored files are still served with the right media type
+     */
+    private static String extensionOf(String originalFileName) {
+        if (originalFileName == null) {
+            return "";
+        }
+        int dot = originalFileName.lastIndexOf('.');
+        if (dot < 0 || dot == originalFileName.length() - 1) {
+            return "";
+        }
+        String extension = originalFileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+        if (extension.length() > 10 || !extension.chars().allMatch(Character::isLetterOrDigit)) {
+            return "";
+        }
+        return "." + extension;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
 }
@@ -0,0 +1,256 @@
+package com.alphaweb.instadrive.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of frequently served images
+ * Image bytes live in direct buffers outside the Java heap, bounded by a total byte budget.
+ * Eviction is least recently used, weighted by size, with a TinyLFU admission filter so a burst
+ * of one-off requests cannot flush images that are requested all the time.
+ */
+@Service
+public class HotImageCache {
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    // Access-ordered, so iteration starts at the least recently used entry; guarded by this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long residentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    /**
+     * A cached image
+     *
+     * @param etag The entity tag of the file the bytes were read from
+     * @param buffer The image bytes, read-only and positioned at zero
+     */
+    private record Entry(String etag, ByteBuffer buffer) {
+    }
+
+    public HotImageCache(@Value("${image-cache.max-bytes:67108864}") long maxBytes,
+                         @Value("${image-cache.max-entry-bytes:2097152}") long maxEntryBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+        // Size the sketch for roughly ten times the number of average-sized entries that fit
+        this.sketch = new FrequencySketch((int) Math.max(1024, Math.min(1 << 20, maxBytes / 100_000 * 10)));
+    }
+
+    /**
+     * Whether a file of the given size and type may be cached
+     *
+     * @param size The file size in bytes
+     * @param mediaType The media type of the file
+     * @return true if the file is an image within the per-entry limit
+     */
+    public boolean accepts(long size, String mediaType) {
+        return maxBytes > 0 && size > 0 && size <= maxEntryBytes && mediaType != null && mediaType.startsWith("image/");
+    }
+
+    /**
+     * Get the cached bytes of a file, reading and admitting it on a miss
+     *
+     * @param file The file
+     * @param realPath The canonical path of the file, used as the cache key
+     * @param etag The current entity tag of the file; entries for older versions are replaced
+     * @param size The file size in bytes
+     * @return A read-only view of the bytes, or null if the file was not admitted
+     * @throws IOException if the file cannot be read
+     */
+    public ByteBuffer get(Path file, String realPath, String etag, long size) throws IOException {
+        synchronized (this) {
+            sketch.increment(realPath);
+            Entry entry = entries.get(realPath);
+            if (entry != null && entry.etag().equals(etag)) {
+                hits.incrementAndGet();
+                return entry.buffer().duplicate();
+            }
+            misses.incrementAndGet();
+            if (entry != null) {
+                remove(realPath);
+            }
+            if (!shouldAdmit(realPath, size)) {
+                rejections.incrementAndGet();
+                return null;
+            }
+        }
+
+        // Read outside the lock; concurrent misses for the same file may both read it
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    // The file shrank since its metadata was read
+                    return null;
+                }
+            }
+        }
+        buffer.flip();
+        ByteBuffer readOnly = buffer.asReadOnlyBuffer();
+
+        synchronized (this) {
+            remove(realPath);
+            makeRoom(size);
+            entries.put(realPath, new Entry(etag, readOnly));
+            residentBytes += size;
+        }
+        return readOnly.duplicate();
+    }
+
+    /**
+     * Drop a file from the cache
+     *
+     * @param realPath The canonical path of the file
+     */
+    public synchronized void evict(String realPath) {
+        remove(realPath);
+    }
+
+    /**
+     * Get the cache statistics
+     *
+     * @return Hit ratio, resident bytes and counters
+     */
+    public synchronized Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long requestCount = hitCount + misses.get();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", requestCount == 0 ? 0.0 : (double) hitCount / requestCount);
+        stats.put("evictions", evictions.get());
+        stats.put("rejections", rejections.get());
+        stats.put("entries", entries.size());
+        stats.put("residentBytes", residentBytes);
+        stats.put("maxBytes", maxBytes);
+        return stats;
+    }
+
+    /**
+     * TinyLFU admission: when the cache is full, a new entry is only admitted if it has been
+     * requested more often than the entries it would push out
+     */
+    private boolean shouldAdmit(String key, long size) {
+        if (residentBytes + size <= maxBytes) {
+            return true;
+        }
+
+        int candidateFrequency = sketch.frequency(key);
+        long freed = 0;
+        // Iterate the entries rather than look them up: a lookup would move the victim to the recently used end
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && residentBytes - freed + size > maxBytes) {
+            Map.Entry<String, Entry> victim = iterator.next();
+            if (sketch.frequency(victim.getKey()) >= candidateFrequency) {
+                return false;
+            }
+            freed += victim.getValue().buffer().capacity();
+        }
+        return true;
+    }
+
+    private void makeRoom(long size) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (residentBytes + size > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            residentBytes -= eldest.getValue().buffer().capacity();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            residentBytes -= removed.buffer().capacity();
+        }
+    }
+
+    /**
+     * Count-min sketch of request frequencies with four 4-bit counters per key
+     * Counts are halved once the sample size is reached, so old popularity fades
+     */
+    static final class FrequencySketch {
+
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int size = Integer.highestOneBit(Math.max(64, expectedEntries) - 1) << 1;
+            this.table = new long[size];
+            this.sampleSize = size * 10;
+        }
+
+        void increment(String key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int shift = counterShift(hash, i);
+                if (((table[index] >>> shift) & 0xfL) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int count = (int) ((table[indexOf(hash, i)] >>> counterShift(hash, i)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int row) {
+            long mixed = (hash + SEEDS[row]) * SEEDS[row];
+            mixed += mixed >>> 32;
+            return (int) mixed & (table.length - 1);
+        }
+
+        // Each long holds sixteen 4-bit counters; pick one per row
+        private int counterShift(int hash, int row) {
+            int counter = (((hash >>> (row << 3)) & 3) << 2) | row;
+            return counter << 2;
+        }
+
+        private static int spread(int hash) {
+            hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+            return (hash >>> 16) ^ hash;
+        }
+    }
+}
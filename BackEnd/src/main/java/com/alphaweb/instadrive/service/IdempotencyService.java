@@ -0,0 +1,249 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.IdempotencyRecord;
+import com.alphaweb.instadrive.repository.IdempotencyRecordRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service that runs a request at most once per Idempotency-Key
+ * Keys are tracked in memory while their request is in progress, so concurrent duplicates wait for it
+ * instead of running it again. The first response is persisted, and later retries are answered from the
+ * database, even after a restart; only a response that could not be saved stays in memory, within
+ * idempotency.max-memory-bytes
+ */
+@Service
+public class IdempotencyService {
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final long ttlMillis;
+    private final long waitTimeoutMillis;
+    private final long maxMemoryBytes;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository,
+                              @Value("${idempotency.ttl-ms:86400000}") long ttlMillis,
+                              @Value("${idempotency.wait-timeout-ms:30000}") long waitTimeoutMillis,
+                              @Value("${idempotency.max-memory-bytes:16777216}") long maxMemoryBytes) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.ttlMillis = ttlMillis;
+        this.waitTimeoutMillis = waitTimeoutMillis;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * Thrown when a key cannot be used for a request
+     */
+    public static class IdempotencyConflictException extends RuntimeException {
+        private final int status;
+
+        public IdempotencyConflictException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    /**
+     * A response kept for replay
+     *
+     * @param status The HTTP status code
+     * @param contentType The content type, or null if the response has no body
+     * @param body The response body
+     */
+    public record StoredResponse(int status, String contentType, byte[] body) {
+    }
+
+    /**
+     * The outcome of an idempotent request
+     *
+     * @param response The response to send
+     * @param replayed Whether the response was kept from an earlier request
+     */
+    public record Result(StoredResponse response, boolean replayed) {
+    }
+
+    /**
+     * A key whose request is in progress, or whose response could not be saved
+     *
+     * @param requestHash The hash of the request the key was first used for
+     * @param expiresAt When the key may be reused, in milliseconds
+     * @param response Completed with the response once the first request has finished
+     * @param retainedBytes The size of the response kept in memory for replay, 0 while in progress
+     */
+    private record Entry(String requestHash, long expiresAt, CompletableFuture<StoredResponse> response,
+                         long retainedBytes) {
+    }
+
+    /**
+     * Run a request unless a request with the same key has already run
+     * Server errors are not kept, so a request that failed that way can be retried with the same key
+     *
+     * @param key The scoped key of the request
+     * @param requestHash The hash of the request, used to reject a key reused for a different request
+     * @param action Runs the request and returns its response
+     * @return The response to send
+     * @throws Exception if the request fails
+     */
+    public Result execute(String key, String requestHash, Callable<StoredResponse> action) throws Exception {
+        Entry entry = new Entry(requestHash, System.currentTimeMillis() + ttlMillis, new CompletableFuture<>(), 0);
+        Entry existing;
+        while ((existing = entries.putIfAbsent(key, entry)) != null) {
+            if (existing.expiresAt() > System.currentTimeMillis()) {
+                checkSameRequest(existing.requestHash(), requestHash);
+                return new Result(await(existing.response()), true);
+            }
+            remove(key, existing);
+        }
+
+        try {
+            Optional<IdempotencyRecord> record = idempotencyRecordRepository.findById(key)
+                    .filter(r -> r.getExpiresAt().isAfter(LocalDateTime.now()));
+            if (record.isPresent()) {
+                checkSameRequest(record.get().getRequestHash(), requestHash);
+                StoredResponse stored = new StoredResponse(record.get().getStatusCode(),
+                        record.get().getContentType(), record.get().getResponseBody());
+                settle(key, entry, stored, true);
+                return new Result(stored, true);
+            }
+
+            StoredResponse response = action.call();
+            if (response.status() >= 500) {
+                entries.remove(key, entry);
+                entry.response().complete(response);
+            } else {
+                settle(key, entry, response, persist(key, entry, response));
+            }
+            return new Result(response, false);
+        } catch (Exception | Error e) {
+            entries.remove(key, entry);
+            entry.response().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Drop expired keys from memory and from the database
+     */
+    @Scheduled(fixedDelayString = "${idempotency.cleanup-interval-ms:300000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        entries.forEach((key, entry) -> {
+            if (entry.expiresAt() <= now && entry.response().isDone()) {
+                remove(key, entry);
+            }
+        });
+        try {
+            int deleted = idempotencyRecordRepository.deleteExpired(LocalDateTime.now());
+            if (deleted > 0) {
+                System.out.println("Deleted " + deleted + " expired idempotency records");
+            }
+        } catch (Exception e) {
+            System.err.println("Error deleting expired idempotency records: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the bytes of responses held in memory because they could not be saved
+     */
+    long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * Hand the response to the duplicates waiting for it, then stop holding it in memory unless it
+     * could not be saved; such a response is kept for its replay window while it fits in max-memory-bytes
+     */
+    private void settle(String key, Entry entry, StoredResponse response, boolean persisted) {
+        entry.response().complete(response);
+        if (persisted) {
+            entries.remove(key, entry);
+            return;
+        }
+
+        long size = response.body() == null ? 0 : response.body().length;
+        if (retainedBytes.addAndGet(size) > maxMemoryBytes) {
+            retainedBytes.addAndGet(-size);
+            entries.remove(key, entry);
+            System.err.println("Idempotency record not saved and idempotency.max-memory-bytes reached; "
+                    + "a retry of this request will run it again");
+            return;
+        }
+        if (!entries.replace(key, entry, new Entry(entry.requestHash(), entry.expiresAt(), entry.response(), size))) {
+            retainedBytes.addAndGet(-size);
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            retainedBytes.addAndGet(-entry.retainedBytes());
+        }
+    }
+
+    /**
+     * Save the first response of a key
+     *
+     * @return Whether a record of the key is in the database, saved now or by another instance
+     */
+    private boolean persist(String key, Entry entry, StoredResponse response) {
+        LocalDateTime expiresAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.expiresAt()), ZoneId.systemDefault());
+        IdempotencyRecord record = new IdempotencyRecord(key, entry.requestHash(), response.status(),
+                response.contentType(), response.body(), LocalDateTime.now(), expiresAt);
+        try {
+            idempotencyRecordRepository.save(record);
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            // Another instance ran the same request first; its record is kept
+            return true;
+        } catch (Exception e) {
+            // The in-memory entry covers retries to this instance instead
+            System.err.println("Error saving idempotency record: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void checkSameRequest(String expected, String actual) {
+        if (!expected.equals(actual)) {
+            throw new IdempotencyConflictException(422,
+                    "Idempotency-Key has already been used for a different request");
+        }
+    }
+
+    private StoredResponse await(CompletableFuture<StoredResponse> response) {
+        try {
+            return response.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IdempotencyConflictException(409,
+                    "A request with this Idempotency-Key is still in progress");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IdempotencyConflictException conflict) {
+                throw conflict;
+            }
+            throw new IdempotencyConflictException(409,
+                    "The original request with this Idempotency-Key failed. Please try again.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyConflictException(409, "Request was interrupted");
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.ImageVariant;
+import com.alphaweb.instadrive.util.MimeTypes;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service keeping the fleet's car images in one memory-mapped pack file
+ * The pack is an append-only sequence of records, each a fixed header followed by the image bytes.
+ * A replaced image simply gets a newer record, and a background compactor drops the superseded ones.
+ * Serving an image from the pack is a slice of the mapping, with no file opens at all.
+ * Images are appended on a background thread, so no request waits for the pack to be written and remapped.
+ */
+@Service
+public class ImagePackService {
+
+    private static final int MAGIC = 0x49504B31; // "IPK1"
+    private static final int HEADER_SIZE = 28;
+    private static final int TOMBSTONE = -1;
+
+    private final boolean enabled;
+    private final Path packFile;
+    private final double compactDeadRatio;
+    private final ThreadPoolExecutor executor;
+
+    // Mapping and index, swapped together when the pack is compacted; writes are guarded by this
+    private volatile PackState state = new PackState(null, new ConcurrentHashMap<>());
+
+    // When each car's images were last invalidated, so images resolved before that are not packed
+    private final Map<Long, Long> invalidatedAt = new ConcurrentHashMap<>();
+
+    // Images queued to be appended
+    private final Set<PackKey> queued = ConcurrentHashMap.newKeySet();
+
+    private FileChannel channel;
+    private long deadBytes;
+
+    /**
+     * The current mapping of the pack and the latest record per car image
+     * Appends add to the index in place; entries are only added once the mapping covers them
+     *
+     * @param mapping The read-only mapping of the pack file, or null if the pack is empty
+     * @param index The latest record per car image
+     */
+    private record PackState(MappedByteBuffer mapping, Map<PackKey, PackEntry> index) {
+    }
+
+    /**
+     * Key of a pack record
+     *
+     * @param carId The ID of the car
+     * @param variant The image size
+     */
+    private record PackKey(Long carId, ImageVariant variant) {
+    }
+
+    /**
+     * Location of an image inside the pack
+     *
+     * @param recordOffset The offset of the record header in the pack file
+     * @param offset The offset of the image bytes in the pack file
+     * @param length The number of image bytes
+     * @param mediaType The media type of the image
+     * @param source The uploaded file the image was taken from
+     * @param createdAt When the record was appended, in milliseconds
+     */
+    public record PackEntry(long recordOffset, long offset, int length, String mediaType, String source,
+                            long createdAt) {
+
+        public String etag() {
+            return "\"p" + Long.toHexString(createdAt) + "-" + Integer.toHexString(length) + "\"";
+        }
+
+        private long recordSize() {
+            return offset - recordOffset + length;
+        }
+    }
+
+    /**
+     * An image served from the pack
+     *
+     * @param entry The pack entry
+     * @param content A read-only slice of the mapping holding the image bytes
+     */
+    public record PackedImage(PackEntry entry, ByteBuffer content) {
+    }
+
+    public ImagePackService(@Value("${image-pack.enabled:false}") boolean enabled,
+                            @Value("${file.upload-dir:uploads}") String uploadDir,
+                            @Value("${image-pack.compact-dead-ratio:0.3}") double compactDeadRatio,
+                            @Value("${image-pack.queue-size:100}") int queueSize) {
+        this.enabled = enabled;
+        this.packFile = Paths.get(uploadDir, "pack", "car-images.pack").toAbsolutePath().normalize();
+        this.compactDeadRatio = compactDeadRatio;
+
+        // Appends hold the pack's lock, so one thread is all they can use
+        this.executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "image-pack");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Open and map the pack, rebuilding the index from the record headers
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(packFile.getParent());
+        channel = FileChannel.open(packFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long validLength = loadIndex();
+        if (validLength < channel.size()) {
+            // Drop a record that was only partly written when the application stopped
+            System.err.println("Truncating image pack to " + validLength + " bytes");
+            channel.truncate(validLength);
+        }
+        remap();
+        System.out.println("Image pack loaded with " + state.index().size() + " images");
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        executor.shutdownNow();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Find a car image in the pack
+     *
+     * @param carId The ID of the car
+     * @param variant The image size
+     * @return The image, or null if the pack does not hold it
+     */
+    public PackedImage find(Long carId, ImageVariant variant) {
+        if (!enabled || carId == null) {
+            return null;
+        }
+        PackState current = state;
+        PackEntry entry = current.index().get(new PackKey(carId, variant));
+        MappedByteBuffer mapping = current.mapping();
+        if (entry == null || mapping == null || entry.offset() + entry.length() > mapping.capacity()) {
+            return null;
+        }
+        ByteBuffer content = mapping.asReadOnlyBuffer()
+                .position((int) entry.offset())
+                .limit((int) (entry.offset() + entry.length()))
+                .slice();
+        return new PackedImage(entry, content);
+    }
+
+    /**
+     * Append a car image to the pack, superseding any earlier record for the same car and size
+     *
+     * @param carId The ID of the car
+     * @param variant The image size
+     * @param image The image file
+     * @param source The uploaded file the image was taken from
+     */
+    public synchronized void append(Long carId, ImageVariant variant, Path image, String source) {
+        if (!enabled || channel == null || carId == null) {
+            return;
+        }
+        try {
+            long size = Files.size(image);
+            if (channel.size() + HEADER_SIZE + size > Integer.MAX_VALUE) {
+                System.err.println("Image pack is full, serving " + image.getFileName() + " from disk");
+                return;
+            }
+            String mediaType = MimeTypes.forFileName(image.getFileName().toString()).toString();
+            PackEntry entry = writeRecord(carId, variant, mediaType, source, image, (int) size);
+            remap();
+            PackEntry previous = state.index().put(new PackKey(carId, variant), entry);
+            if (previous != null) {
+                deadBytes += previous.recordSize();
+            }
+        } catch (IOException e) {
+            System.err.println("Error appending " + image + " to the image pack: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queue an image to be appended if the pack does not hold it yet for the same upload, and return at once
+     *
+     * @param carId The ID of the car
+     * @param variant The image size
+     * @param image The image file
+     * @param source The uploaded file the image was taken from
+     * @param resolvedAt When the image was resolved; images resolved before the car last changed are skipped
+     */
+    public void appendIfAbsent(Long carId, ImageVariant variant, Path image, String source, long resolvedAt) {
+        if (!enabled || carId == null) {
+            return;
+        }
+        PackKey key = new PackKey(carId, variant);
+        PackEntry entry = state.index().get(key);
+        if (entry != null && entry.source().equals(source) || !queued.add(key)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    appendIfCurrent(key, image, source, resolvedAt);
+                } finally {
+                    queued.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Queue is full; the image is offered again the next time it is served from disk
+            queued.remove(key);
+        }
+    }
+
+    private synchronized void appendIfCurrent(PackKey key, Path image, String source, long resolvedAt) {
+        Long invalidated = invalidatedAt.get(key.carId());
+        if (invalidated != null && resolvedAt <= invalidated) {
+            return;
+        }
+        PackEntry entry = state.index().get(key);
+        if (entry == null || !entry.source().equals(source)) {
+            append(key.carId(), key.variant(), image, source);
+        }
+    }
+
+    /**
+     * Drop all images of a car whose image no longer comes from the given upload
+     *
+     * @param carId The ID of the car
+     * @param source The file name of the car's current upload, or null if it has none
+     */
+    public synchronized void removeIfChanged(Long carId, String source) {
+        if (!enabled || channel == null || carId == null) {
+            return;
+        }
+        invalidatedAt.put(carId, System.currentTimeMillis());
+        for (ImageVariant variant : ImageVariant.values()) {
+            PackKey key = new PackKey(carId, variant);
+            PackEntry entry = state.index().get(key);
+            if (entry == null || entry.source().equals(source)) {
+                continue;
+            }
+            try {
+                // A tombstone keeps the removal across restarts
+                PackEntry tombstone = writeRecord(carId, variant, "", "", null, TOMBSTONE);
+                state.index().remove(key);
+                deadBytes += entry.recordSize() + tombstone.recordSize();
+            } catch (IOException e) {
+                System.err.println("Error removing car " + carId + " from the image pack: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Rewrite the pack without superseded records once enough of it is dead
+     */
+    @Scheduled(fixedDelayString = "${image-pack.compact-interval-ms:3600000}")
+    public synchronized void compact() {
+        if (!enabled || channel == null) {
+            return;
+        }
+        try {
+            long size = channel.size();
+            if (size == 0 || (double) deadBytes / size < compactDeadRatio) {
+                return;
+            }
+
+            Path compacted = packFile.resolveSibling(packFile.getFileName() + ".compact");
+            Map<PackKey, PackEntry> compactedIndex = new ConcurrentHashMap<>();
+            try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (Map.Entry<PackKey, PackEntry> live : state.index().entrySet()) {
+                    PackEntry entry = live.getValue();
+                    long newRecordOffset = target.position();
+                    long copied = 0;
+                    while (copied < entry.recordSize()) {
+                        copied += channel.transferTo(entry.recordOffset() + copied, entry.recordSize() - copied, target);
+                    }
+                    compactedIndex.put(live.getKey(), new PackEntry(newRecordOffset,
+                            newRecordOffset + entry.offset() - entry.recordOffset(), entry.length(),
+                            entry.mediaType(), entry.source(), entry.createdAt()));
+                }
+                target.force(true);
+            }
+
+            // Readers holding slices of the old mapping keep working; the old file stays alive until they let go
+            Files.move(compacted, packFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.close();
+            channel = FileChannel.open(packFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            state = new PackState(map(), compactedIndex);
+            deadBytes = 0;
+            System.out.println("Compacted image pack from " + size + " to " + channel.size() + " bytes");
+        } catch (IOException e) {
+            System.err.println("Error compacting image pack: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the pack statistics
+     *
+     * @return Image count, pack size and reclaimable bytes
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("images", state.index().size());
+        stats.put("deadBytes", deadBytes);
+        try {
+            stats.put("packBytes", channel != null ? channel.size() : 0L);
+        } catch (IOException e) {
+            stats.put("packBytes", -1L);
+        }
+        return stats;
+    }
+
+    /**
+     * Append one record at the end of the pack
+     * If any part of it cannot be written, the pack is cut back to where the record started
+     */
+    private PackEntry writeRecord(Long carId, ImageVariant variant, String mediaType, String source,
+                                  Path image, int length) throws IOException {
+        byte[] mediaTypeBytes = mediaType.getBytes(StandardCharsets.US_ASCII);
+        byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+        long createdAt = System.currentTimeMillis();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + mediaTypeBytes.length + sourceBytes.length);
+        header.putInt(MAGIC)
+                .putLong(carId)
+                .put((byte) variant.ordinal())
+                .put((byte) mediaTypeBytes.length)
+                .putShort((short) sourceBytes.length)
+                .putInt(length)
+                .putLong(createdAt)
+                .put(mediaTypeBytes)
+                .put(sourceBytes)
+                .flip();
+
+        long recordStart = channel.size();
+        long position = recordStart;
+        long dataOffset;
+        try {
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+            dataOffset = position;
+
+            if (image != null) {
+                try (FileChannel input = FileChannel.open(image, StandardOpenOption.READ)) {
+                    long copied = 0;
+                    while (copied < length) {
+                        long transferred = channel.transferFrom(input, dataOffset + copied, length - copied);
+                        if (transferred <= 0) {
+                            throw new IOException("Image changed while it was being packed");
+                        }
+                        copied += transferred;
+                    }
+                }
+            }
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            try {
+                channel.truncate(recordStart);
+            } catch (IOException truncateError) {
+                e.addSuppressed(truncateError);
+            }
+            throw e;
+        }
+
+        return new PackEntry(recordStart, dataOffset, Math.max(length, 0), mediaType, source, createdAt);
+    }
+
+    /**
+     * Rebuild the index by reading each record header, skipping over the image bytes
+     *
+     * @return The length of the pack up to the last complete record
+     */
+    private long loadIndex() throws IOException {
+        Map<PackKey, PackEntry> index = state.index();
+        index.clear();
+        deadBytes = 0;
+
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                break;
+            }
+            long carId = header.getLong();
+            int variantOrdinal = header.get();
+            int mediaTypeLength = header.get() & 0xff;
+            int sourceLength = header.getShort() & 0xffff;
+            int length = header.getInt();
+            long createdAt = header.getLong();
+
+            long dataOffset = position + HEADER_SIZE + mediaTypeLength + sourceLength;
+            long recordEnd = dataOffset + Math.max(length, 0);
+            if (recordEnd > size || variantOrdinal < 0 || variantOrdinal >= ImageVariant.values().length) {
+                break;
+            }
+
+            ByteBuffer strings = ByteBuffer.allocate(mediaTypeLength + sourceLength);
+            channel.read(strings, position + HEADER_SIZE);
+            byte[] bytes = strings.array();
+            String mediaType = new String(bytes, 0, mediaTypeLength, StandardCharsets.US_ASCII);
+            String source = new String(bytes, mediaTypeLength, sourceLength, StandardCharsets.UTF_8);
+
+            PackKey key = new PackKey(carId, ImageVariant.values()[variantOrdinal]);
+            PackEntry previous = length == TOMBSTONE
+                    ? index.remove(key)
+                    : index.put(key, new PackEntry(position, dataOffset, length, mediaType, source, createdAt));
+            if (previous != null) {
+                deadBytes += previous.recordSize();
+            }
+            if (length == TOMBSTONE) {
+                deadBytes += recordEnd - position;
+            }
+            position = recordEnd;
+        }
+        return position;
+    }
+
+    private void remap() throws IOException {
+        state = new PackState(map(), state.index());
+    }
+
+    private MappedByteBuffer map() throws IOException {
+        long size = channel.size();
+        return size == 0 ? null : channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+}
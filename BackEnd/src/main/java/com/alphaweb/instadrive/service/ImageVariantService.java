@@ -0,0 +1,291 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.ImageVariant;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service for producing resized variants of uploaded car images
+ * Variants are rendered in the background with ImageIO and stored next to the uploads
+ */
+@Service
+public class ImageVariantService {
+
+    private final Path variantsLocation;
+    private final float jpegQuality;
+    private final ThreadPoolExecutor executor;
+
+    // Originals whose variants are currently being rendered
+    private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+
+    public ImageVariantService(@Value("${file.upload-dir:uploads}") String uploadDir,
+                               @Value("${image-variants.jpeg-quality:0.82}") float jpegQuality,
+                               @Value("${image-variants.threads:2}") int threads,
+                               @Value("${image-variants.queue-size:200}") int queueSize) {
+        this.variantsLocation = Paths.get(uploadDir, "variants").toAbsolutePath().normalize();
+        this.jpegQuality = jpegQuality;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "image-variants-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+
+        try {
+            Files.createDirectories(this.variantsLocation);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not create the directory where image variants will be stored.", ex);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Get the path a variant of an image is stored at
+     * Variants of images with transparency are stored as PNG, all others as JPEG
+     *
+     * @param originalFileName The file name of the original image
+     * @param variant The variant
+     * @param transparent Whether the original has an alpha channel
+     * @return The path of the variant
+     */
+    public Path variantPath(String originalFileName, ImageVariant variant, boolean transparent) {
+        int dot = originalFileName.lastIndexOf('.');
+        String stem = dot > 0 ? originalFileName.substring(0, dot) : originalFileName;
+        return variantsLocation.resolve(stem + "_" + variant.getKey() + (transparent ? ".png" : ".jpg"));
+    }
+
+    /**
+     * Find an already rendered variant of an image
+     *
+     * @param originalFileName The file name of the original image
+     * @param variant The variant
+     * @return The path of the variant, or null if it has not been rendered
+     */
+    public Path findVariant(String originalFileName, ImageVariant variant) {
+        Path jpeg = variantPath(originalFileName, variant, false);
+        if (Files.isRegularFile(jpeg)) {
+            return jpeg;
+        }
+        Path png = variantPath(originalFileName, variant, true);
+        return Files.isRegularFile(png) ? png : null;
+    }
+
+    /**
+     * Delete all rendered variants of an image
+     *
+     * @param originalFileName The file name of the original image
+     * @throws IOException if a variant cannot be deleted
+     */
+    public void deleteVariants(String originalFileName) throws IOException {
+        for (ImageVariant variant : ImageVariant.values()) {
+            if (variant == ImageVariant.ORIGINAL) {
+                continue;
+            }
+            Files.deleteIfExists(variantPath(originalFileName, variant, false));
+            Files.deleteIfExists(variantPath(originalFileName, variant, true));
+        }
+    }
+
+    /**
+     * Render all variants of an image in the background
+     * Requests for an image that is already queued are ignored
+     *
+     * @param original The original image
+     * @param onComplete Called once the variants have been written
+     */
+    public void generateVariantsAsync(Path original, Runnable onComplete) {
+        if (!inFlight.add(original)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    generateVariants(original);
+                    if (onComplete != null) {
+                        onComplete.run();
+                    }
+                } catch (Exception e) {
+                    System.err.println("Error generating image variants for " + original + ": " + e.getMessage());
+                } finally {
+                    inFlight.remove(original);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Queue is full; the variants are requested again the next time the image is resolved
+            inFlight.remove(original);
+            System.err.println("Image variant queue is full, skipping " + original);
+        }
+    }
+
+    /**
+     * Render all variants of an image
+     *
+     * @param original The original image
+     * @throws IOException if the image cannot be read or a variant cannot be written
+     */
+    public void generateVariants(Path original) throws IOException {
+        BufferedImage source = readImage(original, ImageVariant.FULL.getMaxWidth(), ImageVariant.FULL.getMaxHeight());
+        if (source == null) {
+            throw new IOException("Unsupported image format: " + original.getFileName());
+        }
+
+        boolean transparent = source.getColorModel().hasAlpha();
+        String originalFileName = original.getFileName().toString();
+
+        // Render from the largest variant down so each step scales from an already reduced image
+        BufferedImage current = source;
+        for (ImageVariant variant : new ImageVariant[]{ImageVariant.FULL, ImageVariant.CARD, ImageVariant.THUMBNAIL}) {
+            current = resize(current, variant.getMaxWidth(), variant.getMaxHeight(), transparent);
+            writeImage(current, variantPath(originalFileName, variant, transparent), transparent);
+        }
+    }
+
+    /**
+     * Read an image, subsampling very large images while decoding to bound memory use
+     *
+     * @param file The image file
+     * @param targetWidth The largest width that will be rendered
+     * @param targetHeight The largest height that will be rendered
+     * @return The decoded image, or null if no reader supports the format
+     */
+    private BufferedImage readImage(Path file, int targetWidth, int targetHeight) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int factor = Math.min(width / targetWidth, height / targetHeight);
+                if (factor > 1) {
+                    param.setSourceSubsampling(factor, factor, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scale an image to fit a bounding box, keeping its aspect ratio
+     * Large reductions are done in halving steps, which keeps bilinear filtering sharp
+     *
+     * @param source The source image
+     * @param maxWidth The maximum width
+     * @param maxHeight The maximum height
+     * @param transparent Whether to keep an alpha channel
+     * @return The scaled image
+     */
+    private BufferedImage resize(BufferedImage source, int maxWidth, int maxHeight, boolean transparent) {
+        double scale = Math.min(1.0, Math.min((double) maxWidth / source.getWidth(), (double) maxHeight / source.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2 >= targetWidth ? width / 2 : targetWidth);
+            height = Math.max(targetHeight, height / 2 >= targetHeight ? height / 2 : targetHeight);
+            current = draw(current, width, height, transparent);
+        } while (width != targetWidth || height != targetHeight);
+
+        return current;
+    }
+
+    private BufferedImage draw(BufferedImage source, int width, int height, boolean transparent) {
+        BufferedImage target = new BufferedImage(width, height,
+                transparent ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (!transparent) {
+                // JPEG has no alpha channel, so flatten onto white
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+            }
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Encode an image and move it into place atomically, so readers never see a partial file
+     *
+     * @param image The image to write
+     * @param target The target path
+     * @param png Whether to write PNG rather than JPEG
+     */
+    private void writeImage(BufferedImage image, Path target, boolean png) throws IOException {
+        Path temp = Files.createTempFile(variantsLocation, "variant-", ".tmp");
+        try {
+            if (png) {
+                ImageIO.write(image, "png", temp.toFile());
+            } else {
+                ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+                try (ImageOutputStream output = ImageIO.createImageOutputStream(temp.toFile())) {
+                    ImageWriteParam param = writer.getDefaultWriteParam();
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(jpegQuality);
+                    param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+                    writer.setOutput(output);
+                    writer.write(null, new IIOImage(image, null, null), param);
+                } finally {
+                    writer.dispose();
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.OutboxEvent;
+
+/**
+ * In-process consumer of outbox events
+ * Events are delivered at least once, so handlers must tolerate seeing an event again
+ */
+public interface OutboxEventHandler {
+
+    /**
+     * Whether this handler consumes events of a type
+     *
+     * @param eventType The event type
+     * @return true if {@link #handle} should be called
+     */
+    boolean supports(String eventType);
+
+    /**
+     * Handle an event; throwing schedules it for another attempt
+     *
+     * @param event The event
+     * @throws Exception if the event could not be handled
+     */
+    void handle(OutboxEvent event) throws Exception;
+}
@@ -0,0 +1,212 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.OutboxEvent;
+import com.alphaweb.instadrive.repository.OutboxEventRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers outbox events to the in-process handlers
+ * Each run leases a batch of due events with SELECT ... FOR UPDATE SKIP LOCKED, so several instances
+ * can relay side by side, then delivers them outside the locking transaction; an event whose lease
+ * runs out before it is marked delivered is delivered again
+ */
+@Service
+public class OutboxRelay {
+
+    private static final int RATE_WINDOW_SECONDS = 10;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final List<OutboxEventHandler> handlers;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long leaseMillis;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final long retentionMillis;
+
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Map<String, AtomicLong> dispatchedByType = new ConcurrentHashMap<>();
+
+    // Delivered events per second over the last few seconds, indexed by second modulo the window
+    private final long[] rateSeconds = new long[RATE_WINDOW_SECONDS + 1];
+    private final long[] rateCounts = new long[RATE_WINDOW_SECONDS + 1];
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       List<OutboxEventHandler> handlers,
+                       TransactionTemplate transactionTemplate,
+                       @Value("${outbox.relay.batch-size:100}") int batchSize,
+                       @Value("${outbox.relay.lease-ms:30000}") long leaseMillis,
+                       @Value("${outbox.relay.max-attempts:10}") int maxAttempts,
+                       @Value("${outbox.relay.retry-backoff-ms:1000}") long retryBackoffMillis,
+                       @Value("${outbox.retention-ms:604800000}") long retentionMillis) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.handlers = handlers;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.leaseMillis = leaseMillis;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Deliver due events, batch after batch until the backlog is drained
+     */
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:250}")
+    public void relay() {
+        try {
+            List<OutboxEvent> batch;
+            do {
+                batch = leaseBatch();
+                deliver(batch);
+            } while (batch.size() == batchSize);
+        } catch (Exception e) {
+            System.err.println("Error relaying outbox events: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Delete delivered events once they are past the retention period
+     */
+    @Scheduled(fixedDelayString = "${outbox.cleanup-interval-ms:3600000}")
+    public void deleteDispatched() {
+        try {
+            int deleted = outboxEventRepository.deleteDispatchedBefore(
+                    LocalDateTime.now().minus(Duration.ofMillis(retentionMillis)));
+            if (deleted > 0) {
+                System.out.println("Deleted " + deleted + " delivered outbox events");
+            }
+        } catch (Exception e) {
+            System.err.println("Error deleting delivered outbox events: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the relay statistics
+     *
+     * @return Delivery counters, the recent delivery rate and the backlog
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("dispatched", dispatched.get());
+        stats.put("retried", retried.get());
+        stats.put("failed", failed.get());
+        stats.put("eventsPerSecond", eventsPerSecond());
+        stats.put("pending", outboxEventRepository.countByStatus("PENDING"));
+
+        Map<String, Long> byType = new HashMap<>();
+        dispatchedByType.forEach((type, count) -> byType.put(type, count.get()));
+        stats.put("dispatchedByType", byType);
+        return stats;
+    }
+
+    /**
+     * Lock a batch of due events and push their availability past the lease, so no other relay
+     * picks them up while they are being delivered
+     */
+    private List<OutboxEvent> leaseBatch() {
+        List<OutboxEvent> batch = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<OutboxEvent> events = outboxEventRepository.lockDueEvents(now, batchSize);
+            LocalDateTime leasedUntil = now.plus(Duration.ofMillis(leaseMillis));
+            for (OutboxEvent event : events) {
+                event.setAvailableAt(leasedUntil);
+            }
+            return events;
+        });
+        return batch != null ? batch : List.of();
+    }
+
+    private void deliver(List<OutboxEvent> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<Long> delivered = new ArrayList<>(batch.size());
+        for (OutboxEvent event : batch) {
+            try {
+                for (OutboxEventHandler handler : handlers) {
+                    if (handler.supports(event.getEventType())) {
+                        handler.handle(event);
+                    }
+                }
+                delivered.add(event.getId());
+                dispatchedByType.computeIfAbsent(event.getEventType(), type -> new AtomicLong()).incrementAndGet();
+            } catch (Exception e) {
+                scheduleRetry(event, e);
+            }
+        }
+
+        if (!delivered.isEmpty()) {
+            outboxEventRepository.markDispatched(delivered, LocalDateTime.now());
+            dispatched.addAndGet(delivered.size());
+            recordRate(delivered.size());
+        }
+    }
+
+    /**
+     * Put a failed event back with exponential backoff, or give up once it has used all its attempts
+     */
+    private void scheduleRetry(OutboxEvent event, Exception error) {
+        int attempts = event.getAttempts() + 1;
+        event.setAttempts(attempts);
+        String message = String.valueOf(error.getMessage());
+        event.setLastError(message.length() > 1000 ? message.substring(0, 1000) : message);
+
+        if (attempts >= maxAttempts) {
+            event.setStatus("FAILED");
+            failed.incrementAndGet();
+            System.err.println("Giving up on outbox event " + event.getId() + " (" + event.getEventType() + "): " + message);
+        } else {
+            long backoff = retryBackoffMillis << Math.min(attempts - 1, 16);
+            event.setAvailableAt(LocalDateTime.now().plus(Duration.ofMillis(backoff)));
+            retried.incrementAndGet();
+        }
+
+        try {
+            outboxEventRepository.save(event);
+        } catch (Exception e) {
+            // The lease runs out and the event is delivered again
+            System.err.println("Error rescheduling outbox event " + event.getId() + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized void recordRate(int count) {
+        long second = System.currentTimeMillis() / 1000;
+        int slot = (int) (second % rateSeconds.length);
+        if (rateSeconds[slot] != second) {
+            rateSeconds[slot] = second;
+            rateCounts[slot] = 0;
+        }
+        rateCounts[slot] += count;
+    }
+
+    /**
+     * Average delivery rate over the last complete seconds of the window
+     */
+    private synchronized double eventsPerSecond() {
+        long current = System.currentTimeMillis() / 1000;
+        long total = 0;
+        for (int i = 0; i < rateSeconds.length; i++) {
+            long age = current - rateSeconds[i];
+            if (age >= 1 && age <= RATE_WINDOW_SECONDS) {
+                total += rateCounts[i];
+            }
+        }
+        return (double) total / RATE_WINDOW_SECONDS;
+    }
+}
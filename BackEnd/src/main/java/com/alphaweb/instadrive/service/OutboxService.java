@@ -0,0 +1,77 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.OutboxEvent;
+import com.alphaweb.instadrive.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Service for recording side effects in the transactional outbox
+ */
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+
+    public static final String PAYMENT_SUCCEEDED = "PAYMENT_SUCCEEDED";
+    public static final String PAYMENT_FAILED = "PAYMENT_FAILED";
+    public static final String PAYMENT_REFUNDED = "PAYMENT_REFUNDED";
+    public static final String BOOKING_CREATED = "BOOKING_CREATED";
+    public static final String BOOKING_CANCELLED = "BOOKING_CANCELLED";
+    public static final String BOOKING_COMPLETED = "BOOKING_COMPLETED";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Record an event in the caller's transaction, so it is delivered if and only if the change commits
+     *
+     * @param eventType The event type
+     * @param aggregateType The type of the changed entity
+     * @param aggregateId The ID of the changed entity
+     * @param payload The event data
+     * @return The recorded event
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public OutboxEvent publish(String eventType, String aggregateType, Long aggregateId, Map<String, ?> payload) {
+        LocalDateTime now = LocalDateTime.now();
+        OutboxEvent event = new OutboxEvent();
+        event.setEventType(eventType);
+        event.setAggregateType(aggregateType);
+        event.setAggregateId(aggregateId);
+        event.setPayload(toJson(payload));
+        event.setStatus("PENDING");
+        event.setCreatedAt(now);
+        event.setAvailableAt(now);
+        return outboxEventRepository.save(event);
+    }
+
+    /**
+     * Read the payload of an event
+     *
+     * @param event The event
+     * @return The event data
+     */
+    public Map<String, Object> readPayload(OutboxEvent event) {
+        try {
+            return objectMapper.readValue(event.getPayload(),
+                    objectMapper.getTypeFactory().constructMapType(Map.class, String.class, Object.class));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid payload in outbox event " + event.getId(), e);
+        }
+    }
+
+    private String toJson(Map<String, ?> payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Outbox payload cannot be serialized", e);
+        }
+    }
+}
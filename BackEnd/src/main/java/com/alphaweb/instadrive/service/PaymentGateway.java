@@ -0,0 +1,40 @@
+package com.alphaweb.instadrive.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Client of an external payment gateway
+ * Charges complete asynchronously, so no request thread waits for the gateway
+ */
+public interface PaymentGateway {
+
+    /**
+     * A charge to submit to the gateway
+     *
+     * @param transactionId Our transaction ID, echoed back by the gateway
+     * @param paymentMode UPI or CARD
+     * @param amount The amount to charge
+     * @param instrument The UPI ID or masked card number
+     */
+    record ChargeRequest(String transactionId, String paymentMode, double amount, String instrument) {
+    }
+
+    /**
+     * The gateway's answer to a charge
+     *
+     * @param transactionId Our transaction ID
+     * @param approved Whether the charge went through
+     * @param gatewayReference The gateway's own reference, or null if declined
+     * @param failureReason Why the charge was declined, or null if approved
+     */
+    record ChargeResult(String transactionId, boolean approved, String gatewayReference, String failureReason) {
+    }
+
+    /**
+     * Submit a charge
+     *
+     * @param request The charge
+     * @return Completed with the gateway's answer
+     */
+    CompletableFuture<ChargeResult> charge(ChargeRequest request);
+}
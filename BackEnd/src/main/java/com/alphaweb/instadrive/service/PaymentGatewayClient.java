@@ -0,0 +1,191 @@
+package com.alphaweb.instadrive.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Submits charges to the payment gateway off the request thread
+ * Each charge waits on its own virtual thread, at most a configured number reach the gateway at once,
+ * and a charge the gateway does not answer in time stays pending until its answer or webhook arrives
+ */
+@Service
+public class PaymentGatewayClient {
+
+    private final PaymentGateway paymentGateway;
+    private final boolean enabled;
+    private final long timeoutMillis;
+    private final String webhookSecret;
+    private final Semaphore permits;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong approved = new AtomicLong();
+    private final AtomicLong declined = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong lateAnswers = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+
+    public PaymentGatewayClient(PaymentGateway paymentGateway,
+                                @Value("${payments.gateway.enabled:false}") boolean enabled,
+                                @Value("${payments.gateway.timeout-ms:10000}") long timeoutMillis,
+                                @Value("${payments.gateway.max-concurrent:64}") int maxConcurrent,
+                                @Value("${payments.gateway.webhook-secret}") String webhookSecret) {
+        // There is no default: a secret known from the source would let anyone complete payments
+        if (webhookSecret == null || webhookSecret.isBlank()) {
+            throw new IllegalStateException("payments.gateway.webhook-secret is not set");
+        }
+        this.paymentGateway = paymentGateway;
+        this.enabled = enabled;
+        this.timeoutMillis = timeoutMillis;
+        this.webhookSecret = webhookSecret;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Whether payments are charged through the gateway; if not, they succeed immediately
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Submit a charge and return at once
+     *
+     * @param request The charge
+     * @param onResult Called with the gateway's answer, also when it arrives after the timeout
+     */
+    public void submit(PaymentGateway.ChargeRequest request, Consumer<PaymentGateway.ChargeResult> onResult) {
+        submitted.incrementAndGet();
+        executor.execute(() -> {
+            inFlight.incrementAndGet();
+            try {
+                PaymentGateway.ChargeResult result = charge(request, onResult);
+                if (result != null) {
+                    deliver(result, onResult);
+                }
+            } catch (Exception e) {
+                errors.incrementAndGet();
+                System.err.println("Error completing payment " + request.transactionId() + ": " + e.getMessage());
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Verify the signature of a gateway webhook
+     *
+     * @param transactionId The transaction ID in the webhook
+     * @param status The status in the webhook
+     * @param signature The hex-encoded HMAC-SHA256 of "transactionId:status"
+     * @return Whether the signature is valid
+     */
+    public boolean verifyWebhookSignature(String transactionId, String status, String signature) {
+        if (transactionId == null || status == null || signature == null) {
+            return false;
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(webhookSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] expected = mac.doFinal((transactionId + ":" + status).getBytes(StandardCharsets.UTF_8));
+            return MessageDigest.isEqual(expected, HexFormat.of().parseHex(signature));
+        } catch (IllegalArgumentException e) {
+            return false;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    /**
+     * Get the gateway client statistics
+     *
+     * @return Charge counters and the number of charges in flight
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("submitted", submitted.get());
+        stats.put("approved", approved.get());
+        stats.put("declined", declined.get());
+        stats.put("timedOut", timedOut.get());
+        stats.put("lateAnswers", lateAnswers.get());
+        stats.put("errors", errors.get());
+        stats.put("inFlight", inFlight.get());
+        stats.put("availablePermits", permits.availablePermits());
+        return stats;
+    }
+
+    /**
+     * Run one charge, waiting for a permit and then for the gateway within the timeout
+     * A charge that reached the gateway but was not answered in time is still completed by its late answer,
+     * since the gateway may have taken the money
+     *
+     * @return The gateway's answer, or null if it did not answer in time
+     */
+    private PaymentGateway.ChargeResult charge(PaymentGateway.ChargeRequest request,
+                                               Consumer<PaymentGateway.ChargeResult> onResult) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            timedOut.incrementAndGet();
+            return null;
+        }
+        try {
+            CompletableFuture<PaymentGateway.ChargeResult> result = paymentGateway.charge(request);
+            try {
+                return result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                timedOut.incrementAndGet();
+                System.err.println("Payment gateway timed out for " + request.transactionId());
+                result.whenCompleteAsync((answer, error) -> {
+                    if (error != null) {
+                        errors.incrementAndGet();
+                        System.err.println("Error completing payment " + request.transactionId() + ": " + error.getMessage());
+                        return;
+                    }
+                    lateAnswers.incrementAndGet();
+                    try {
+                        deliver(answer, onResult);
+                    } catch (Exception lateError) {
+                        errors.incrementAndGet();
+                        System.err.println("Error completing payment " + request.transactionId() + ": " + lateError.getMessage());
+                    }
+                }, executor);
+                return null;
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void deliver(PaymentGateway.ChargeResult result, Consumer<PaymentGateway.ChargeResult> onResult) {
+        (result.approved() ? approved : declined).incrementAndGet();
+        onResult.accept(result);
+    }
+}
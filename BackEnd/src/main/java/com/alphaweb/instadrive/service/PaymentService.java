@@ -1,48 +1,74 @@
 package com.alphaweb.instadrive.service;
 
 import com.alphaweb.instadrive.dto.*;
+import com.alphaweb.instadrive.exception.PaymentException;
 import com.alphaweb.instadrive.model.Booking;
 import com.alphaweb.instadrive.model.Payment;
 import com.alphaweb.instadrive.model.PaymentStatus;
-import com.alphaweb.instadrive.model.Receipt;
 import com.alphaweb.instadrive.repository.PaymentRepository;
+import com.alphaweb.instadrive.util.AfterCommit;
+import com.alphaweb.instadrive.util.PageCursor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.*;
+import java.util.function.BooleanSupplier;
 
 @Service
 @RequiredArgsConstructor
 public class PaymentService {
 
+    private static final String DEFAULT_CURRENCY = "INR";
+
     private final PaymentRepository paymentRepository;
     private final BookingService bookingService;
-    private final ReceiptService receiptService;
+    private final StatementService statementService;
+    private final PaymentGatewayClient paymentGatewayClient;
+    private final OutboxService outboxService;
+    private final TransactionIdGenerator transactionIdGenerator;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${payments.gateway.pending-expiry-ms:900000}")
+    private long pendingExpiryMillis;
 
     /**
      * Process UPI payment and save payment details
+     * The booking is loaded in this transaction, and fills in the user and amount the request leaves out
      *
      * @param request The UPI payment request
      * @return The payment response
+     * @throws PaymentException if the booking does not exist or the request is incomplete
      * @throws RuntimeException if there's an error processing the payment
      */
+    @Transactional
     public PaymentResponse processUpiPayment(UpiPaymentRequest request) {
-        // Validate booking ID is provided
-        if (request.getBookingId() == null) {
-            throw new RuntimeException("Booking ID is required");
-        }
+        PaymentContext context = loadContext(request.getBookingId());
+        Booking booking = context.getBooking();
 
-        // Validate user ID is provided
         if (request.getUserId() == null) {
-            throw new RuntimeException("User ID is required");
+            request.setUserId(booking.getUserId());
         }
-
-        // Validate booking exists
-        Optional<Booking> bookingOptional = bookingService.getBookingById(request.getBookingId());
-        if (bookingOptional.isEmpty()) {
-            throw new RuntimeException("Booking not found with ID: " + request.getBookingId());
+        if (request.getAmount() == null || request.getAmount() <= 0) {
+            request.setAmount(booking.getTotalAmount());
+        }
+        if (request.getCurrency() == null || request.getCurrency().isEmpty()) {
+            request.setCurrency(DEFAULT_CURRENCY);
+        }
+        if (request.getPaymentMode() == null || request.getPaymentMode().isEmpty()) {
+            request.setPaymentMode("UPI");
         }
+        if (request.getUpiId() == null || request.getUpiId().isEmpty()) {
+            throw new PaymentException("UPI ID is required");
+        }
+        validate(request.getBookingId(), request.getUserId(), context);
 
         // Create a new payment record
         Payment payment = new Payment();
@@ -54,33 +80,14 @@ public class PaymentService {
         payment.setUserId(request.getUserId());
 
         // Generate a unique transaction ID
-        String transactionId = "UPI-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        String transactionId = transactionIdGenerator.next("UPI");
         payment.setTransactionId(transactionId);
 
-        // Set payment status
-        payment.setStatus(PaymentStatus.SUCCESS); // In a real system, this would depend on the payment gateway response
+        // Payments charged through the gateway stay pending until it answers
+        payment.setStatus(paymentGatewayClient.isEnabled() ? PaymentStatus.PENDING : PaymentStatus.SUCCESS);
 
         try {
-            // Save payment to database
-            payment = paymentRepository.save(payment);
-
-            // Generate receipt if payment is successful
-            if (PaymentStatus.SUCCESS.equals(payment.getStatus())) {
-                try {
-                    generateReceiptForPayment(payment);
-                } catch (Exception e) {
-                    // Log receipt generation error but continue
-                    System.err.println("Error generating receipt: " + e.getMessage());
-                    e.printStackTrace();
-                }
-            }
-
-            // Create response
-            PaymentResponse response = new PaymentResponse();
-            response.setStatus(payment.getStatus().name());
-            response.setTransactionId(payment.getTransactionId());
-            response.setMessage("UPI Payment processed successfully.");
-            return response;
+            return complete(context, payment, "UPI Payment processed successfully.");
         } catch (Exception e) {
             throw new RuntimeException("Error processing UPI payment: " + e.getMessage(), e);
         }
@@ -88,27 +95,34 @@ public class PaymentService {
 
     /**
      * Process card payment and save payment details
+     * The booking is loaded in this transaction, and fills in the user and amount the request leaves out
      *
      * @param request The card payment request
      * @return The payment response
+     * @throws PaymentException if the booking does not exist or the request is incomplete
      * @throws RuntimeException if there's an error processing the payment
      */
+    @Transactional
     public PaymentResponse processCardPayment(CardPaymentRequest request) {
-        // Validate booking ID is provided
-        if (request.getBookingId() == null) {
-            throw new RuntimeException("Booking ID is required");
-        }
+        PaymentContext context = loadContext(request.getBookingId());
+        Booking booking = context.getBooking();
 
-        // Validate user ID is provided
         if (request.getUserId() == null) {
-            throw new RuntimeException("User ID is required");
+            request.setUserId(booking.getUserId());
         }
-
-        // Validate booking exists
-        Optional<Booking> bookingOptional = bookingService.getBookingById(request.getBookingId());
-        if (bookingOptional.isEmpty()) {
-            throw new RuntimeException("Booking not found with ID: " + request.getBookingId());
+        if (request.getAmount() == null || request.getAmount() <= 0) {
+            request.setAmount(booking.getTotalAmount());
+        }
+        if (request.getCurrency() == null || request.getCurrency().isEmpty()) {
+            request.setCurrency(DEFAULT_CURRENCY);
         }
+        if (request.getPaymentMode() == null || request.getPaymentMode().isEmpty()) {
+            request.setPaymentMode("CARD");
+        }
+        if (request.getCardNumber() == null || request.getCardNumber().isEmpty()) {
+            throw new PaymentException("Card number is required");
+        }
+        validate(request.getBookingId(), request.getUserId(), context);
 
         // Create a new payment record
         Payment payment = new Payment();
@@ -131,60 +145,182 @@ public class PaymentService {
         }
 
         // Generate a unique transaction ID
-        String transactionId = "CARD-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        String transactionId = transactionIdGenerator.next("CARD");
         payment.setTransactionId(transactionId);
 
-        // Set payment status
-        payment.setStatus(PaymentStatus.SUCCESS); // In a real system, this would depend on the payment gateway response
+        // Payments charged through the gateway stay pending until it answers
+        payment.setStatus(paymentGatewayClient.isEnabled() ? PaymentStatus.PENDING : PaymentStatus.SUCCESS);
 
         try {
-            // Save payment to database
-            payment = paymentRepository.save(payment);
-
-            // Generate receipt if payment is successful
-            if (PaymentStatus.SUCCESS.equals(payment.getStatus())) {
-                try {
-                    generateReceiptForPayment(payment);
-                } catch (Exception e) {
-                    // Log receipt generation error but continue
-                    System.err.println("Error generating receipt: " + e.getMessage());
-                    e.printStackTrace();
-                }
-            }
-
-            // Create response
-            PaymentResponse response = new PaymentResponse();
-            response.setStatus(payment.getStatus().name());
-            response.setTransactionId(payment.getTransactionId());
-            response.setMessage("Card payment processed successfully.");
-            return response;
+            return complete(context, payment, "Card payment processed successfully.");
         } catch (Exception e) {
             throw new RuntimeException("Error processing card payment: " + e.getMessage(), e);
         }
     }
 
     /**
-     * Generate a receipt for a successful payment
+     * Load the booking, user and car for a payment in one query
      *
-     * @param payment The payment
-     * @return The generated receipt
-     * @throws RuntimeException if there's an error generating the receipt
+     * @param bookingId The booking ID
+     * @return The payment context
+     * @throws RuntimeException if the booking does not exist
      */
-    private Receipt generateReceiptForPayment(Payment payment) {
-        try {
-            // Get the booking
-            Optional<Booking> bookingOptional = bookingService.getBookingById(payment.getBookingId());
-            if (bookingOptional.isEmpty()) {
-                throw new RuntimeException("Booking not found with ID: " + payment.getBookingId());
-            }
+    private PaymentContext loadContext(Long bookingId) {
+        if (bookingId == null) {
+            throw new PaymentException("Booking ID is required");
+        }
+        return bookingService.getPaymentContext(bookingId)
+                .orElseThrow(() -> new PaymentException("Booking not found with ID: " + bookingId));
+    }
 
-            Booking booking = bookingOptional.get();
+    /**
+     * Validate a payment request against its loaded context
+     *
+     * @param bookingId The booking ID from the request
+     * @param userId The user ID from the request
+     * @param context The loaded context
+     * @throws PaymentException if the request is incomplete or does not match the context
+     */
+    private void validate(Long bookingId, Long userId, PaymentContext context) {
+        if (userId == null) {
+            throw new PaymentException("User ID is required");
+        }
+        if (context.getBooking() == null) {
+            throw new PaymentException("Booking not found with ID: " + bookingId);
+        }
+        if (!bookingId.equals(context.getBooking().getId())) {
+            throw new PaymentException("Payment is for booking " + bookingId
+                    + " but booking " + context.getBooking().getId() + " was loaded");
+        }
+    }
 
-            // Generate receipt
-            return receiptService.generateReceipt(booking, payment.getTransactionId(), payment.getPaymentMode());
-        } catch (Exception e) {
-            throw new RuntimeException("Error generating receipt: " + e.getMessage(), e);
+    /**
+     * Save a payment and record what should follow from it
+     *
+     * @param context The loaded context; the saved payment is added to it
+     * @param payment The payment to save
+     * @param message The message of the response
+     * @return The payment response
+     */
+    private PaymentResponse complete(PaymentContext context, Payment payment, String message) {
+        // Save payment to database
+        payment = paymentRepository.save(payment);
+        context.setPayment(payment);
+        statementService.invalidate(payment.getUserId(), YearMonth.from(payment.getTimestamp()));
+
+        // The receipt is rendered by the outbox relay once this transaction commits
+        if (PaymentStatus.SUCCESS.equals(payment.getStatus())) {
+            publishPaymentEvent(OutboxService.PAYMENT_SUCCEEDED, payment);
+        } else if (PaymentStatus.PENDING.equals(payment.getStatus())) {
+            submitToGateway(payment);
+            message = "Payment submitted. Awaiting confirmation from the payment gateway.";
         }
+
+        // Create response
+        PaymentResponse response = new PaymentResponse();
+        response.setStatus(payment.getStatus().name());
+        response.setTransactionId(payment.getTransactionId());
+        response.setMessage(message);
+        response.setReferenceId(context.getBooking().getReferenceId());
+        return response;
+    }
+
+    /**
+     * Charge a pending payment through the gateway once it has been committed,
+     * so the gateway's answer never arrives before the payment can be found
+     *
+     * @param payment The saved payment
+     */
+    private void submitToGateway(Payment payment) {
+        String instrument = payment.getUpiId() != null ? payment.getUpiId() : payment.getCardNumber();
+        PaymentGateway.ChargeRequest request = new PaymentGateway.ChargeRequest(payment.getTransactionId(),
+                payment.getPaymentMode(), payment.getAmount(), instrument);
+        AfterCommit.run(() -> paymentGatewayClient.submit(request,
+                result -> completePayment(result.transactionId(), result.approved(), result.failureReason())));
+    }
+
+    /**
+     * Complete a pending payment with the gateway's answer, from its callback or webhook
+     * Only the first answer for a payment takes effect, so duplicate deliveries are harmless. An approval
+     * still completes a payment that expired waiting for it, since the gateway has taken the money
+     *
+     * @param transactionId The transaction ID
+     * @param approved Whether the gateway approved the charge
+     * @param failureReason Why the charge was declined, or null if approved
+     * @return Whether the payment was pending or expired and has now been completed
+     */
+    public boolean completePayment(String transactionId, boolean approved, String failureReason) {
+        PaymentStatus status = approved ? PaymentStatus.SUCCESS : PaymentStatus.FAILED;
+        boolean completed = transition(transactionId, status, () ->
+                paymentRepository.completePendingPayment(transactionId, status) > 0
+                        || approved && paymentRepository.approveExpiredPayment(transactionId) > 0);
+
+        if (completed && !approved) {
+            System.out.println("Payment " + transactionId + " failed: " + failureReason);
+        }
+        return completed;
+    }
+
+    /**
+     * Fail payments the gateway never answered, so their bookings can be paid again
+     * They are marked expired, so the gateway's late answer or webhook can still approve them
+     */
+    @Scheduled(fixedDelayString = "${payments.gateway.expiry-check-interval-ms:60000}")
+    public void expirePendingPayments() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(Duration.ofMillis(pendingExpiryMillis));
+        for (Payment payment : paymentRepository.findByStatusAndTimestampBefore(PaymentStatus.PENDING, cutoff)) {
+            String transactionId = payment.getTransactionId();
+            try {
+                if (transition(transactionId, PaymentStatus.FAILED,
+                        () -> paymentRepository.expirePendingPayment(transactionId) > 0)) {
+                    System.out.println("Payment " + transactionId + " expired: no answer from the payment gateway");
+                }
+            } catch (Exception e) {
+                System.err.println("Error expiring payment " + transactionId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Move a payment to a new status and record the change, in one transaction
+     *
+     * @param transactionId The transaction ID
+     * @param status The new status, SUCCESS or FAILED
+     * @param update Applies the change; returns false if the payment was not in a status it applies to
+     * @return Whether the payment was changed
+     */
+    private boolean transition(String transactionId, PaymentStatus status, BooleanSupplier update) {
+        Boolean changed = transactionTemplate.execute(tx -> {
+            if (!update.getAsBoolean()) {
+                return false;
+            }
+
+            Payment payment = paymentRepository.findByTransactionId(transactionId)
+                    .orElseThrow(() -> new RuntimeException("Payment not found with transaction ID: " + transactionId));
+            payment.setStatus(status);
+            statementService.invalidate(payment.getUserId(), YearMonth.from(payment.getTimestamp()));
+            publishPaymentEvent(PaymentStatus.SUCCESS.equals(status)
+                    ? OutboxService.PAYMENT_SUCCEEDED : OutboxService.PAYMENT_FAILED, payment);
+            return true;
+        });
+        return Boolean.TRUE.equals(changed);
+    }
+
+    /**
+     * Record a payment event in the outbox, in the transaction that changed the payment
+     *
+     * @param eventType The event type
+     * @param payment The changed payment
+     */
+    void publishPaymentEvent(String eventType, Payment payment) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("transactionId", payment.getTransactionId());
+        payload.put("bookingId", payment.getBookingId());
+        payload.put("userId", payment.getUserId());
+        payload.put("paymentMode", payment.getPaymentMode());
+        payload.put("amount", payment.getAmount());
+        payload.put("status", payment.getStatus().name());
+        outboxService.publish(eventType, "Payment", payment.getId(), payload);
     }
 
     /**
@@ -192,16 +328,33 @@ public class PaymentService {
      *
      * @return List of all payments
      */
+    @Transactional(readOnly = true)
     public List<Payment> getAllPayments() {
         return paymentRepository.findAll();
     }
 
+    /**
+     * Get a page of payments for list views, newest first, without the UPI ID and card details
+     *
+     * @param cursor The cursor of the page, or null for the first page
+     * @param limit The page size
+     * @param includeTotal Whether to count all payments
+     * @return The page
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<PaymentSummaryDTO> getPaymentSummaries(String cursor, int limit, boolean includeTotal) {
+        long beforeId = PageCursor.decodeOr(cursor, Long.MAX_VALUE);
+        List<PaymentSummaryDTO> rows = paymentRepository.findSummariesBefore(beforeId, PageRequest.of(0, limit + 1));
+        return CursorPage.of(rows, limit, PaymentSummaryDTO::getId, includeTotal ? paymentRepository.count() : null);
+    }
+
     /**
      * Get a payment by ID
      *
      * @param id The payment ID
      * @return The payment
      */
+    @Transactional(readOnly = true)
     public Optional<Payment> getPaymentById(Long id) {
         return paymentRepository.findById(id);
     }
@@ -212,6 +365,7 @@ public class PaymentService {
      * @param bookingId The booking ID
      * @return List of payments for the booking
      */
+    @Transactional(readOnly = true)
     public List<Payment> getPaymentsByBookingId(Long bookingId) {
         return paymentRepository.findByBookingId(bookingId);
     }
@@ -222,6 +376,7 @@ public class PaymentService {
      * @param userId The user ID
      * @return List of payments made by the user
      */
+    @Transactional(readOnly = true)
     public List<Payment> getPaymentsByUserId(Long userId) {
         return paymentRepository.findByUserId(userId);
     }
@@ -232,20 +387,23 @@ public class PaymentService {
      * @param bookingId The booking ID to refund
      * @return PaymentResponse indicating refund status
      */
+    @Transactional
     public PaymentResponse processRefund(Long bookingId) {
         try {
-            // Find the original payment for this booking
-            List<Payment> payments = paymentRepository.findByBookingId(bookingId);
-
-            if (payments.isEmpty()) {
-                throw new RuntimeException("No payment found for booking ID: " + bookingId);
+            // Lock the booking's payments as batch refunds do, so a booking is only ever refunded once
+            List<Payment> payments = paymentRepository.lockByBookingIds(List.of(bookingId),
+                    List.of(PaymentStatus.SUCCESS, PaymentStatus.REFUNDED));
+            if (payments.stream().anyMatch(p -> PaymentStatus.REFUNDED.equals(p.getStatus()) && p.getAmount() < 0)) {
+                throw new RuntimeException("Booking has already been refunded: " + bookingId);
             }
 
-            // Get the most recent successful payment
+            // Find the successful payment for this booking
             Payment originalPayment = payments.stream()
                     .filter(p -> PaymentStatus.SUCCESS.equals(p.getStatus()))
                     .findFirst()
-                    .orElseThrow(() -> new RuntimeException("No successful payment found for booking ID: " + bookingId));
+                    .orElseThrow(() -> new RuntimeException(paymentRepository.existsByBookingId(bookingId)
+                            ? "No successful payment found for booking ID: " + bookingId
+                            : "No payment found for booking ID: " + bookingId));
 
             // Create refund payment record
             Payment refundPayment = new Payment();
@@ -257,7 +415,7 @@ public class PaymentService {
             refundPayment.setStatus(PaymentStatus.REFUNDED);
 
             // Generate refund transaction ID
-            String refundTransactionId = "REFUND-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+            String refundTransactionId = transactionIdGenerator.next("REFUND");
             refundPayment.setTransactionId(refundTransactionId);
 
             // Copy payment method details
@@ -271,6 +429,13 @@ public class PaymentService {
             // Update original payment status
             originalPayment.setStatus(PaymentStatus.REFUNDED);
             paymentRepository.save(originalPayment);
+            publishPaymentEvent(OutboxService.PAYMENT_REFUNDED, refundPayment);
+
+            // Both the refund's month and the original payment's month have changed
+            statementService.invalidate(refundPayment.getUserId(), YearMonth.from(refundPayment.getTimestamp()));
+            if (originalPayment.getTimestamp() != null) {
+                statementService.invalidate(originalPayment.getUserId(), YearMonth.from(originalPayment.getTimestamp()));
+            }
 
             // Create response
             PaymentResponse response = new PaymentResponse();
@@ -287,44 +452,33 @@ public class PaymentService {
 
     /**
      * Get payment status for a booking
+     * Totals are computed in the database; the payments themselves are only loaded when asked for
      *
      * @param bookingId The booking ID
+     * @param summary Whether to leave out the list of payments
      * @return Payment status information
      */
-    public Map<String, Object> getPaymentStatus(Long bookingId) {
-        List<Payment> payments = paymentRepository.findByBookingId(bookingId);
-
-        Map<String, Object> status = new HashMap<>();
-        status.put("bookingId", bookingId);
-        status.put("hasPaid", false);
-        status.put("hasRefund", false);
-        status.put("totalPaid", 0.0);
-        status.put("totalRefunded", 0.0);
-        status.put("payments", new ArrayList<>());
-
-        if (!payments.isEmpty()) {
-            double totalPaid = 0.0;
-            double totalRefunded = 0.0;
-            boolean hasPaid = false;
-            boolean hasRefund = false;
-
-            for (Payment payment : payments) {
-                if (PaymentStatus.SUCCESS.equals(payment.getStatus())) {
-                    totalPaid += payment.getAmount();
-                    hasPaid = true;
-                } else if (PaymentStatus.REFUNDED.equals(payment.getStatus())) {
-                    totalRefunded += Math.abs(payment.getAmount());
-                    hasRefund = true;
-                }
+    @Transactional(readOnly = true)
+    public PaymentStatusDTO getPaymentStatus(Long bookingId, boolean summary) {
+        PaymentStatusDTO status = new PaymentStatusDTO();
+        status.setBookingId(bookingId);
+
+        for (PaymentStatusTotal total : paymentRepository.sumByStatusForBooking(bookingId)) {
+            status.setPaymentCount(status.getPaymentCount() + total.getCount());
+            if (PaymentStatus.SUCCESS.equals(total.getStatus())) {
+                status.setHasPaid(total.getCount() > 0);
+                status.setTotalPaid(total.getTotal());
+            } else if (PaymentStatus.REFUNDED.equals(total.getStatus())) {
+                status.setHasRefund(total.getCount() > 0);
+                status.setTotalRefunded(total.getTotal());
             }
-
-            status.put("hasPaid", hasPaid);
-            status.put("hasRefund", hasRefund);
-            status.put("totalPaid", totalPaid);
-            status.put("totalRefunded", totalRefunded);
-            status.put("payments", payments);
         }
 
+        if (!summary) {
+            status.setPayments(status.getPaymentCount() == 0
+                    ? new ArrayList<>()
+                    : paymentRepository.findByBookingId(bookingId));
+        }
         return status;
     }
 }
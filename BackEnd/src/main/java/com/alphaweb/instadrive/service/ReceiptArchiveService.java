@@ -0,0 +1,148 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.Receipt;
+import com.alphaweb.instadrive.repository.ReceiptRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Service streaming a user's receipt PDFs as one ZIP archive
+ * Receipts are read in fixed-size chunks and each PDF is copied straight into the archive,
+ * so only the entry names are kept for the whole archive
+ */
+@Service
+public class ReceiptArchiveService {
+
+    private final ReceiptRepository receiptRepository;
+    private final ReceiptService receiptService;
+    private final EntityManager entityManager;
+    private final int chunkSize;
+
+    public ReceiptArchiveService(ReceiptRepository receiptRepository,
+                                 ReceiptService receiptService,
+                                 EntityManager entityManager,
+                                 @Value("${receipts.archive.chunk-size:100}") int chunkSize) {
+        this.receiptRepository = receiptRepository;
+        this.receiptService = receiptService;
+        this.entityManager = entityManager;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Stream a user's receipt archive as a ZIP download
+     *
+     * @param userId The user ID
+     * @param from The first transaction date to include, or null for no lower bound
+     * @param to The last transaction date to include, or null for no upper bound
+     * @param response The HTTP response
+     * @throws IOException if the archive cannot be written
+     */
+    public void streamArchive(Long userId, LocalDate from, LocalDate to, HttpServletResponse response) throws IOException {
+        String fileName = "receipts_" + (from != null ? from : "all") + "_" + (to != null ? to : "all") + ".zip";
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(fileName).build().toString());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-store");
+
+        int count = writeArchive(userId, from, to, response.getOutputStream());
+        System.out.println("Streamed " + count + " receipts for user " + userId);
+    }
+
+    /**
+     * Write all receipts of a user in a date range to a ZIP stream
+     * Receipts whose PDF file is missing are rendered into the archive on the fly
+     *
+     * @param userId The user ID
+     * @param from The first transaction date to include, or null for no lower bound
+     * @param to The last transaction date to include, or null for no upper bound
+     * @param outputStream The stream to write the archive to
+     * @return The number of receipts written
+     * @throws IOException if the archive cannot be written
+     */
+    public int writeArchive(Long userId, LocalDate from, LocalDate to, OutputStream outputStream) throws IOException {
+        LocalDateTime start = from != null ? from.atStartOfDay() : LocalDateTime.of(1970, 1, 1, 0, 0);
+        LocalDateTime end = to != null ? to.atTime(LocalTime.MAX) : LocalDateTime.of(9999, 12, 31, 23, 59);
+
+        int count = 0;
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        // The PDFs are already compressed, so favour speed
+        zip.setLevel(Deflater.BEST_SPEED);
+
+        Set<String> entryNames = new HashSet<>();
+        long afterId = 0;
+        List<Receipt> chunk;
+        do {
+            chunk = receiptRepository.findByUserIdAndTransactionDateBetweenAndIdGreaterThanOrderByIdAsc(
+                    userId, start, end, afterId, PageRequest.of(0, chunkSize));
+            for (Receipt receipt : chunk) {
+                writeEntry(zip, receipt, entryNames);
+                afterId = receipt.getId();
+                count++;
+            }
+            // Push what has been written so far to the client, and let the chunk's entities go
+            zip.flush();
+            entityManager.clear();
+        } while (chunk.size() == chunkSize);
+
+        zip.finish();
+        return count;
+    }
+
+    private void writeEntry(ZipOutputStream zip, Receipt receipt, Set<String> entryNames) throws IOException {
+        ZipEntry entry = new ZipEntry(entryName(receipt, entryNames));
+        if (receipt.getTransactionDate() != null) {
+            entry.setTimeLocal(receipt.getTransactionDate());
+        }
+        zip.putNextEntry(entry);
+
+        Path receiptFile = null;
+        if (receipt.getReceiptPath() != null && !receipt.getReceiptPath().isEmpty()) {
+            receiptFile = receiptService.getReceiptFilePath(receipt.getReceiptPath());
+        }
+
+        try {
+            if (receiptFile == null) {
+                throw new NoSuchFileException("receipt " + receipt.getId());
+            }
+            Files.copy(receiptFile, zip);
+        } catch (NoSuchFileException e) {
+            receiptService.renderReceiptPdf(receipt, zip);
+        }
+        zip.closeEntry();
+    }
+
+    /**
+     * Name a receipt's entry after its transaction ID, adding the receipt ID when another receipt
+     * already took that name, since a ZIP with duplicate names cannot be written
+     */
+    private static String entryName(Receipt receipt, Set<String> entryNames) {
+        String name = receipt.getTransactionId() != null
+                ? "receipt_" + receipt.getTransactionId() + ".pdf"
+                : "receipt_" + receipt.getId() + ".pdf";
+        if (!entryNames.add(name)) {
+            name = "receipt_" + receipt.getTransactionId() + "_" + receipt.getId() + ".pdf";
+            entryNames.add(name);
+        }
+        return name;
+    }
+}
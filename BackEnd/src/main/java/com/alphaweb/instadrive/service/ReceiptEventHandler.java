@@ -0,0 +1,56 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.dto.PaymentContext;
+import com.alphaweb.instadrive.model.Booking;
+import com.alphaweb.instadrive.model.OutboxEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+/**
+ * Renders the receipt of a successful payment from its outbox event
+ * A redelivered event finds the receipt already saved and does nothing. Two deliveries racing past
+ * that check both insert, and the unique transaction ID index fails the second before it writes a PDF
+ */
+@Service
+@RequiredArgsConstructor
+public class ReceiptEventHandler implements OutboxEventHandler {
+
+    private final OutboxService outboxService;
+    private final BookingService bookingService;
+    private final ReceiptService receiptService;
+
+    @Override
+    public boolean supports(String eventType) {
+        return OutboxService.PAYMENT_SUCCEEDED.equals(eventType);
+    }
+
+    @Override
+    public void handle(OutboxEvent event) {
+        Map<String, Object> payload = outboxService.readPayload(event);
+        String transactionId = (String) payload.get("transactionId");
+        if (receiptService.getReceiptByTransactionId(transactionId).isPresent()) {
+            return;
+        }
+
+        Long bookingId = ((Number) payload.get("bookingId")).longValue();
+        PaymentContext context = bookingService.getPaymentContext(bookingId)
+                .orElseThrow(() -> new RuntimeException("Booking not found with ID: " + bookingId));
+        Booking booking = context.getBooking();
+        if (context.getUser() == null) {
+            throw new RuntimeException("User not found with ID: " + booking.getUserId());
+        }
+        if (context.getCar() == null) {
+            throw new RuntimeException("Car not found with ID: " + booking.getCarId());
+        }
+
+        try {
+            receiptService.generateReceipt(booking, context.getUser(), context.getCar(),
+                    transactionId, (String) payload.get("paymentMode"));
+        } catch (DataIntegrityViolationException e) {
+            // The payment already has a receipt
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.Receipt;
+import com.alphaweb.instadrive.util.QrCodeGenerator;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Service rendering the verification QR codes printed on receipts
+ * Codes are rendered in memory and cached by transaction ID, since a receipt's code never changes
+ */
+@Service
+public class ReceiptQrService {
+
+    private final ReceiptTokenService receiptTokenService;
+    private final Map<String, QrCode> cache;
+    private final Map<String, QrPng> pngCache;
+    private final int pngScale;
+
+    public ReceiptQrService(ReceiptTokenService receiptTokenService,
+                            @Value("${receipts.qr.cache-size:5000}") int cacheSize,
+                            @Value("${receipts.qr.png-scale:8}") int pngScale) {
+        this.receiptTokenService = receiptTokenService;
+        this.pngScale = pngScale;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, QrCode>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, QrCode> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        this.pngCache = Collections.synchronizedMap(new LinkedHashMap<String, QrPng>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, QrPng> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * A rendered QR code
+     *
+     * @param payload The encoded text
+     * @param matrix The QR code, one bit per module
+     */
+    public record QrCode(String payload, BitMatrix matrix) {
+    }
+
+    /**
+     * A QR code encoded as a PNG
+     *
+     * @param bytes The PNG bytes
+     * @param etag The strong entity tag, the SHA-256 of the bytes
+     */
+    public record QrPng(byte[] bytes, String etag) {
+    }
+
+    /**
+     * Get the QR code of a receipt, rendering it on the first request
+     *
+     * @param receipt The receipt
+     * @return The QR code
+     */
+    public QrCode getQrCode(Receipt receipt) {
+        QrCode qrCode = cache.get(receipt.getTransactionId());
+        if (qrCode != null) {
+            return qrCode;
+        }
+
+        String payload = payloadFor(receipt);
+        try {
+            BitMatrix matrix = QrCodeGenerator.generateQRCodeMatrix(payload);
+            qrCode = new QrCode(payload, matrix);
+        } catch (WriterException e) {
+            throw new RuntimeException("Error rendering QR code for transaction " + receipt.getTransactionId(), e);
+        }
+        cache.put(receipt.getTransactionId(), qrCode);
+        return qrCode;
+    }
+
+    /**
+     * Get the QR code of a receipt as PNG bytes
+     * The PNG is only encoded when a client asks for the image; receipt PDFs embed the matrix directly
+     *
+     * @param receipt The receipt
+     * @return The PNG and its entity tag
+     */
+    public QrPng getQrCodePng(Receipt receipt) {
+        QrPng png = pngCache.get(receipt.getTransactionId());
+        if (png != null) {
+            return png;
+        }
+        try {
+            byte[] bytes = QrCodeGenerator.toPng(getQrCode(receipt).matrix(), pngScale);
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            png = new QrPng(bytes, "\"" + HexFormat.of().formatHex(digest) + "\"");
+        } catch (IOException e) {
+            throw new RuntimeException("Error encoding QR code for transaction " + receipt.getTransactionId(), e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        pngCache.put(receipt.getTransactionId(), png);
+        return png;
+    }
+
+    /**
+     * Build the text encoded in a receipt's QR code: its signed token, which can be verified offline
+     *
+     * @param receipt The receipt
+     * @return The payload
+     */
+    private String payloadFor(Receipt receipt) {
+        return receiptTokenService.createToken(receipt);
+    }
+}
@@ -1,10 +1,16 @@
 package com.alphaweb.instadrive.service;
 
+import com.alphaweb.instadrive.dto.CursorPage;
+import com.alphaweb.instadrive.dto.ReceiptSummaryDTO;
 import com.alphaweb.instadrive.model.Booking;
 import com.alphaweb.instadrive.model.Car;
 import com.alphaweb.instadrive.model.Receipt;
 import com.alphaweb.instadrive.model.User;
+import com.alphaweb.instadrive.repository.BookingRepository;
 import com.alphaweb.instadrive.repository.ReceiptRepository;
+import com.alphaweb.instadrive.util.PageCursor;
+import com.alphaweb.instadrive.util.QrCodeGenerator;
+import com.google.zxing.common.BitMatrix;
 import com.itextpdf.text.*;
 import com.itextpdf.text.pdf.PdfPCell;
 import com.itextpdf.text.pdf.PdfPTable;
@@ -13,10 +19,12 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -24,6 +32,7 @@ import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -32,8 +41,10 @@ import java.util.UUID;
 public class ReceiptService {
 
     private final ReceiptRepository receiptRepository;
+    private final BookingRepository bookingRepository;
     private final UserService userService;
     private final CarService carService;
+    private final ReceiptQrService receiptQrService;
 
     @Value("${file.receipts-dir:receipts}")
     private String receiptsDir;
@@ -75,9 +86,20 @@ public class ReceiptService {
             throw new RuntimeException("Car not found with ID: " + booking.getCarId());
         }
 
-        User user = userOptional.get();
-        Car car = carOptional.get();
+        return generateReceipt(booking, userOptional.get(), carOptional.get(), transactionId, paymentMethod);
+    }
 
+    /**
+     * Generate a receipt for a booking whose user and car are already loaded
+     *
+     * @param booking The booking to generate a receipt for
+     * @param user The user who made the booking
+     * @param car The booked car
+     * @param transactionId The transaction ID
+     * @param paymentMethod The payment method
+     * @return The generated receipt
+     */
+    public Receipt generateReceipt(Booking booking, User user, Car car, String transactionId, String paymentMethod) {
         // Create receipt
         Receipt receipt = new Receipt();
         receipt.setBookingId(booking.getId());
@@ -95,12 +117,19 @@ public class ReceiptService {
         receipt.setCarModel(car.getModel());
         receipt.setCarRegistrationNumber(car.getRegistrationNumber());
 
-        // Generate PDF receipt
-        String receiptPath = generatePdfReceipt(receipt, booking, user, car);
-        receipt.setReceiptPath(receiptPath);
+        // Save the receipt before writing its PDF, so a duplicate fails on the unique transaction ID
+        // index before it can overwrite the file of the receipt saved first
+        receipt.setReceiptPath(receiptFileName(transactionId));
+        Receipt saved = receiptRepository.saveAndFlush(receipt);
 
-        // Save receipt to database
-        return receiptRepository.save(receipt);
+        try {
+            generatePdfReceipt(saved, booking, user, car);
+        } catch (RuntimeException e) {
+            // Drop the row so a retry generates the receipt again instead of finding one without a PDF
+            receiptRepository.delete(saved);
+            throw e;
+        }
+        return saved;
     }
 
     /**
@@ -110,17 +139,74 @@ public class ReceiptService {
      * @param booking The booking information
      * @param user The user information
      * @param car The car information
-     * @return The path to the generated PDF
      */
-    private String generatePdfReceipt(Receipt receipt, Booking booking, User user, Car car) {
-        // Create a unique filename
-        String fileName = "receipt_" + receipt.getTransactionId() + ".pdf";
-        Path filePath = Paths.get(receiptsDir).resolve(fileName).normalize();
+    private void generatePdfReceipt(Receipt receipt, Booking booking, User user, Car car) {
+        Path filePath = Paths.get(receiptsDir).resolve(receipt.getReceiptPath()).normalize();
 
+        try (OutputStream outputStream = Files.newOutputStream(filePath)) {
+            writePdfReceipt(receipt, booking, user, car, outputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Error generating PDF receipt", e);
+        }
+    }
+
+    private static String receiptFileName(String transactionId) {
+        return "receipt_" + transactionId + ".pdf";
+    }
+
+    /**
+     * Render the PDF of a stored receipt to a stream, for receipts whose file is missing
+     * Details that can no longer be loaded are taken from the receipt itself
+     *
+     * @param receipt The receipt
+     * @param outputStream The stream to write the PDF to; it is left open
+     */
+    public void renderReceiptPdf(Receipt receipt, OutputStream outputStream) {
+        // Old receipts may lack any of the IDs, and looking up a null ID throws
+        Booking booking = Optional.ofNullable(receipt.getBookingId())
+                .flatMap(bookingRepository::findById)
+                .orElseGet(() -> {
+                    Booking fallback = new Booking();
+                    fallback.setId(receipt.getBookingId());
+                    fallback.setTotalAmount(receipt.getAmount());
+                    return fallback;
+                });
+        User user = Optional.ofNullable(receipt.getUserId())
+                .flatMap(userService::getUserById)
+                .orElseGet(() -> {
+                    User fallback = new User();
+                    fallback.setName(receipt.getUserName());
+                    fallback.setEmail(receipt.getUserEmail());
+                    return fallback;
+                });
+        Car car = Optional.ofNullable(receipt.getCarId())
+                .flatMap(carService::getCarById)
+                .orElseGet(() -> {
+                    Car fallback = new Car();
+                    fallback.setBrand(receipt.getCarBrand());
+                    fallback.setModel(receipt.getCarModel());
+                    fallback.setRegistrationNumber(receipt.getCarRegistrationNumber());
+                    return fallback;
+                });
+
+        writePdfReceipt(receipt, booking, user, car, outputStream);
+    }
+
+    /**
+     * Write a PDF receipt to a stream
+     *
+     * @param receipt The receipt information
+     * @param booking The booking information
+     * @param user The user information
+     * @param car The car information
+     * @param outputStream The stream to write the PDF to; it is left open
+     */
+    private void writePdfReceipt(Receipt receipt, Booking booking, User user, Car car, OutputStream outputStream) {
         try {
             // Create PDF document
             Document document = new Document();
-            PdfWriter.getInstance(document, new FileOutputStream(filePath.toFile()));
+            PdfWriter writer = PdfWriter.getInstance(document, outputStream);
+            writer.setCloseStream(false);
             document.open();
 
             // Add title
@@ -187,9 +273,9 @@ public class ReceiptService {
             PdfPTable bookingTable = new PdfPTable(2);
             bookingTable.setWidthPercentage(100);
 
-            addTableRow(bookingTable, "Booking ID:", booking.getId().toString(), normalFont);
-            addTableRow(bookingTable, "Start Date:", booking.getStartDate().toString(), normalFont);
-            addTableRow(bookingTable, "End Date:", booking.getEndDate().toString(), normalFont);
+            addTableRow(bookingTable, "Booking ID:", Objects.toString(booking.getId(), "N/A"), normalFont);
+            addTableRow(bookingTable, "Start Date:", Objects.toString(booking.getStartDate(), "N/A"), normalFont);
+            addTableRow(bookingTable, "End Date:", Objects.toString(booking.getEndDate(), "N/A"), normalFont);
             addTableRow(bookingTable, "Total Amount:", "$" + String.format("%.2f", booking.getTotalAmount()), normalFont);
 
             document.add(bookingTable);
@@ -208,17 +294,41 @@ public class ReceiptService {
                 }
             }
 
+            // Verification QR code
+            addQrCode(document, receipt, normalFont);
+
             // Add footer
             document.add(new Paragraph("Thank you for choosing InstaDrive!", boldFont));
 
             document.close();
-
-            return fileName;
-        } catch (DocumentException | IOException e) {
+        } catch (DocumentException e) {
             throw new RuntimeException("Error generating PDF receipt", e);
         }
     }
 
+    /**
+     * Add the receipt's verification QR code to a PDF
+     * The cached matrix is embedded as a 1-bit image, so no PNG is encoded or decoded
+     *
+     * @param document The PDF document
+     * @param receipt The receipt information
+     * @param font The font for the caption
+     */
+    private void addQrCode(Document document, Receipt receipt, Font font) throws DocumentException {
+        BitMatrix matrix = receiptQrService.getQrCode(receipt).matrix();
+        Image qrImage = Image.getInstance(matrix.getWidth(), matrix.getHeight(), 1, 1,
+                QrCodeGenerator.toGrayBits(matrix));
+        qrImage.setInterpolation(false);
+        qrImage.scaleAbsolute(96, 96);
+        qrImage.setAlignment(Element.ALIGN_CENTER);
+        document.add(qrImage);
+
+        Paragraph caption = new Paragraph("Scan to verify this receipt", font);
+        caption.setAlignment(Element.ALIGN_CENTER);
+        document.add(caption);
+        document.add(Chunk.NEWLINE);
+    }
+
     /**
      * Add a row to a PDF table
      *
@@ -243,6 +353,7 @@ public class ReceiptService {
      * @param id The receipt ID
      * @return The receipt
      */
+    @Transactional(readOnly = true)
     public Optional<Receipt> getReceiptById(Long id) {
         return receiptRepository.findById(id);
     }
@@ -253,6 +364,7 @@ public class ReceiptService {
      * @param bookingId The booking ID
      * @return The receipt
      */
+    @Transactional(readOnly = true)
     public Optional<Receipt> getReceiptByBookingId(Long bookingId) {
         return receiptRepository.findByBookingId(bookingId);
     }
@@ -263,6 +375,7 @@ public class ReceiptService {
      * @param transactionId The transaction ID
      * @return The receipt
      */
+    @Transactional(readOnly = true)
     public Optional<Receipt> getReceiptByTransactionId(String transactionId) {
         return receiptRepository.findByTransactionId(transactionId);
     }
@@ -273,10 +386,45 @@ public class ReceiptService {
      * @param userId The user ID
      * @return The list of receipts
      */
+    @Transactional(readOnly = true)
     public List<Receipt> getReceiptsByUserId(Long userId) {
         return receiptRepository.findByUserId(userId);
     }
 
+    /**
+     * Get a page of a user's receipts for list views, newest first, without the paths of the stored PDFs
+     *
+     * @param userId The user ID
+     * @param cursor The cursor of the page, or null for the first page
+     * @param limit The page size
+     * @param includeTotal Whether to count all of the user's receipts
+     * @return The page
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<ReceiptSummaryDTO> getReceiptSummariesByUserId(Long userId, String cursor, int limit,
+                                                                     boolean includeTotal) {
+        long beforeId = PageCursor.decodeOr(cursor, Long.MAX_VALUE);
+        List<ReceiptSummaryDTO> rows = receiptRepository.findSummariesByUserIdBefore(
+                userId, beforeId, PageRequest.of(0, limit + 1));
+        return CursorPage.of(rows, limit, ReceiptSummaryDTO::getId,
+                includeTotal ? receiptRepository.countByUserId(userId) : null);
+    }
+
+    /**
+     * Resolve a receipt file name to its path inside the receipts directory
+     *
+     * @param fileName The receipt file name
+     * @return The path of the receipt PDF
+     */
+    public Path getReceiptFilePath(String fileName) {
+        Path receiptsPath = Paths.get(receiptsDir).toAbsolutePath().normalize();
+        Path filePath = receiptsPath.resolve(fileName).normalize();
+        if (!filePath.startsWith(receiptsPath)) {
+            throw new RuntimeException("Invalid receipt path: " + fileName);
+        }
+        return filePath;
+    }
+
     /**
      * Get a receipt PDF as a resource
      *
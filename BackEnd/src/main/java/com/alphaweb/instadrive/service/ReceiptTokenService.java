@@ -0,0 +1,131 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.Receipt;
+import com.alphaweb.instadrive.util.Base32;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Service issuing and verifying the signed tokens printed in receipt QR codes
+ * A token carries the transaction ID, amount, booking ID and date, signed with HMAC-SHA256,
+ * so a receipt can be checked without looking anything up.
+ */
+@Service
+public class ReceiptTokenService {
+
+    public static final String PREFIX = "IDR1:";
+
+    private static final byte VERSION = 1;
+    private static final int MAC_LENGTH = 10; // Truncated HMAC, 80 bits
+    private static final int FIXED_LENGTH = 1 + 8 + 8 + 4 + 1;
+    private static final int MAX_TRANSACTION_ID_LENGTH = 64;
+
+    private final ThreadLocal<Mac> macs;
+
+    public ReceiptTokenService(@Value("${receipts.token.secret}") String secret) {
+        // There is no default: a secret known from the source would let anyone forge receipts
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("receipts.token.secret is not set");
+        }
+        SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        // Mac instances are not thread-safe and slow to create, so each thread keeps its own
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 is not available", e);
+            }
+        });
+    }
+
+    /**
+     * The fields of a verified receipt token
+     *
+     * @param transactionId The transaction ID
+     * @param amount The amount paid
+     * @param bookingId The booking ID
+     * @param transactionDate The transaction date
+     */
+    public record ReceiptClaims(String transactionId, double amount, Long bookingId, LocalDate transactionDate) {
+    }
+
+    /**
+     * Create the signed token of a receipt
+     *
+     * @param receipt The receipt
+     * @return The token, base32 encoded behind a version prefix
+     */
+    public String createToken(Receipt receipt) {
+        byte[] transactionId = receipt.getTransactionId().getBytes(StandardCharsets.US_ASCII);
+        if (transactionId.length > MAX_TRANSACTION_ID_LENGTH) {
+            throw new IllegalArgumentException("Transaction ID is too long for a receipt token");
+        }
+        LocalDate date = receipt.getTransactionDate() != null ? receipt.getTransactionDate().toLocalDate() : LocalDate.now();
+
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_LENGTH + transactionId.length + MAC_LENGTH);
+        buffer.put(VERSION)
+                .putLong(receipt.getBookingId() != null ? receipt.getBookingId() : 0L)
+                .putLong(Math.round(receipt.getAmount() * 100))
+                .putInt((int) date.toEpochDay())
+                .put((byte) transactionId.length)
+                .put(transactionId);
+
+        byte[] signature = sign(buffer.array(), buffer.position());
+        buffer.put(signature, 0, MAC_LENGTH);
+        return PREFIX + Base32.encode(buffer.array());
+    }
+
+    /**
+     * Verify a receipt token
+     *
+     * @param token The token read from a QR code
+     * @return The receipt fields, or null if the token is malformed or its signature does not match
+     */
+    public ReceiptClaims verify(String token) {
+        if (token == null || !token.startsWith(PREFIX)) {
+            return null;
+        }
+        byte[] data = Base32.decode(token.substring(PREFIX.length()).trim());
+        if (data == null || data.length < FIXED_LENGTH + MAC_LENGTH || data[0] != VERSION) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.position(1);
+        long bookingId = buffer.getLong();
+        long amountCents = buffer.getLong();
+        int epochDay = buffer.getInt();
+        int transactionIdLength = buffer.get() & 0xff;
+
+        int signedLength = FIXED_LENGTH + transactionIdLength;
+        if (data.length != signedLength + MAC_LENGTH) {
+            return null;
+        }
+
+        byte[] expected = Arrays.copyOf(sign(data, signedLength), MAC_LENGTH);
+        byte[] actual = Arrays.copyOfRange(data, signedLength, data.length);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return null;
+        }
+
+        String transactionId = new String(data, FIXED_LENGTH, transactionIdLength, StandardCharsets.US_ASCII);
+        return new ReceiptClaims(transactionId, amountCents / 100.0, bookingId, LocalDate.ofEpochDay(epochDay));
+    }
+
+    private byte[] sign(byte[] data, int length) {
+        Mac mac = macs.get();
+        mac.update(data, 0, length);
+        return mac.doFinal();
+    }
+}
@@ -0,0 +1,343 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.dto.ReconciliationBookingRow;
+import com.alphaweb.instadrive.dto.ReconciliationPaymentRow;
+import com.alphaweb.instadrive.model.PaymentStatus;
+import com.alphaweb.instadrive.model.ReconciliationDiscrepancy;
+import com.alphaweb.instadrive.model.ReconciliationRun;
+import com.alphaweb.instadrive.repository.BookingRepository;
+import com.alphaweb.instadrive.repository.PaymentRepository;
+import com.alphaweb.instadrive.repository.ReconciliationDiscrepancyRepository;
+import com.alphaweb.instadrive.repository.ReconciliationRunRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Service that reconciles bookings against their payments
+ * Bookings and payments are read in keyset-paginated chunks ordered by booking ID and merge-joined in memory,
+ * so a run holds at most one chunk of each no matter how large the tables grow.
+ * Discrepancies are written to the reconciliation_discrepancy table in batches as they are found
+ */
+@Service
+public class ReconciliationService {
+
+    public static final String AMOUNT_MISMATCH = "AMOUNT_MISMATCH";
+    public static final String UNREFUNDED_CANCELLATION = "UNREFUNDED_CANCELLATION";
+    public static final String DUPLICATE_PAYMENT = "DUPLICATE_PAYMENT";
+    public static final String ORPHANED_PAYMENT = "ORPHANED_PAYMENT";
+    public static final String DUPLICATE_TRANSACTION = "DUPLICATE_TRANSACTION";
+
+    private static final double TOLERANCE = 0.01;
+
+    private final BookingRepository bookingRepository;
+    private final PaymentRepository paymentRepository;
+    private final ReconciliationRunRepository runRepository;
+    private final ReconciliationDiscrepancyRepository discrepancyRepository;
+    private final int chunkSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reconciliation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReconciliationService(BookingRepository bookingRepository,
+                                 PaymentRepository paymentRepository,
+                                 ReconciliationRunRepository runRepository,
+                                 ReconciliationDiscrepancyRepository discrepancyRepository,
+                                 @Value("${reconciliation.chunk-size:1000}") int chunkSize) {
+        this.bookingRepository = bookingRepository;
+        this.paymentRepository = paymentRepository;
+        this.runRepository = runRepository;
+        this.discrepancyRepository = discrepancyRepository;
+        this.chunkSize = chunkSize;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Nightly reconciliation run
+     * The run is handed to the reconciliation thread, so it does not hold up the other scheduled tasks
+     */
+    @Scheduled(cron = "${reconciliation.cron:0 30 2 * * *}")
+    public void scheduledRun() {
+        try {
+            submit();
+        } catch (IllegalStateException e) {
+            System.out.println("Skipping scheduled reconciliation: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Error starting scheduled reconciliation: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Start a reconciliation run in the background
+     *
+     * @return The started run
+     * @throws IllegalStateException if a run is already in progress
+     */
+    public ReconciliationRun submit() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A reconciliation run is already in progress");
+        }
+        try {
+            ReconciliationRun run = startRun();
+            executor.execute(() -> {
+                try {
+                    reconcile(run);
+                } finally {
+                    running.set(false);
+                }
+            });
+            return run;
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Get the most recent runs
+     *
+     * @return Up to 20 runs, newest first
+     */
+    public List<ReconciliationRun> getRecentRuns() {
+        return runRepository.findTop20ByOrderByIdDesc();
+    }
+
+    /**
+     * Get a page of the discrepancies found by a run
+     *
+     * @param runId The run ID
+     * @param afterId The last discrepancy ID of the previous page, or 0 for the first page
+     * @param limit The page size
+     * @return The discrepancies, ordered by ID
+     */
+    public List<ReconciliationDiscrepancy> getDiscrepancies(Long runId, long afterId, int limit) {
+        return discrepancyRepository.findByRunIdAndIdGreaterThanOrderByIdAsc(runId, afterId,
+                PageRequest.of(0, Math.max(1, Math.min(limit, 1000))));
+    }
+
+    private ReconciliationRun startRun() {
+        ReconciliationRun run = new ReconciliationRun();
+        run.setStatus("RUNNING");
+        run.setStartedAt(LocalDateTime.now());
+        return runRepository.save(run);
+    }
+
+    /**
+     * Reconcile all bookings and payments, recording the result on the run
+     *
+     * @param run The run to record the result on
+     */
+    void reconcile(ReconciliationRun run) {
+        DiscrepancyWriter writer = new DiscrepancyWriter(run.getId());
+        try {
+            reconcileBookings(run, writer);
+            reconcileUnassignedPayments(run, writer);
+            reconcileTransactionIds(writer);
+            writer.flush();
+            run.setStatus("COMPLETED");
+        } catch (Exception e) {
+            writer.flush();
+            run.setStatus("FAILED");
+            run.setError(e.getMessage());
+            System.err.println("Reconciliation run " + run.getId() + " failed: " + e.getMessage());
+        }
+        run.setDiscrepancies(writer.written);
+        run.setFinishedAt(LocalDateTime.now());
+        runRepository.save(run);
+        System.out.println("Reconciliation run " + run.getId() + " " + run.getStatus() + ": "
+                + run.getBookingsScanned() + " bookings, " + run.getPaymentsScanned() + " payments, "
+                + run.getDiscrepancies() + " discrepancies");
+    }
+
+    /**
+     * Merge-join bookings with the payments made against them
+     * Both streams are ordered by booking ID, so payments whose booking is missing show up as a gap
+     */
+    private void reconcileBookings(ReconciliationRun run, DiscrepancyWriter writer) {
+        Pageable chunk = PageRequest.of(0, chunkSize);
+        KeysetCursor<ReconciliationBookingRow> bookings = new KeysetCursor<>(last ->
+                bookingRepository.findReconciliationChunk(last == null ? 0L : last.getId(), chunk));
+        KeysetCursor<ReconciliationPaymentRow> payments = new KeysetCursor<>(last -> last == null
+                ? paymentRepository.findReconciliationChunkByBooking(Long.MIN_VALUE, Long.MIN_VALUE, chunk)
+                : paymentRepository.findReconciliationChunkByBooking(last.getBookingId(), last.getId(), chunk));
+
+        ReconciliationPaymentRow payment = payments.next();
+        ReconciliationBookingRow booking;
+        while ((booking = bookings.next()) != null) {
+            while (payment != null && payment.getBookingId() < booking.getId()) {
+                writer.orphaned(payment, "Payment references booking " + payment.getBookingId() + ", which does not exist");
+                payment = payments.next();
+            }
+
+            double net = 0;
+            int successful = 0;
+            int settled = 0;
+            while (payment != null && payment.getBookingId().equals(booking.getId())) {
+                // Refunded originals keep their positive amount and the refund row holds the negative one
+                if (payment.getStatus() == PaymentStatus.SUCCESS || payment.getStatus() == PaymentStatus.REFUNDED) {
+                    net += payment.getAmount();
+                    settled++;
+                }
+                if (payment.getStatus() == PaymentStatus.SUCCESS) {
+                    successful++;
+                }
+                payment = payments.next();
+            }
+            checkBooking(booking, net, successful, settled, writer);
+        }
+
+        while (payment != null) {
+            writer.orphaned(payment, "Payment references booking " + payment.getBookingId() + ", which does not exist");
+            payment = payments.next();
+        }
+
+        run.setBookingsScanned(bookings.read);
+        run.setPaymentsScanned(payments.read);
+    }
+
+    private void checkBooking(ReconciliationBookingRow booking, double net, int successful, int settled,
+                              DiscrepancyWriter writer) {
+        if (settled == 0) {
+            // Bookings without a settled payment are unpaid, not a payment discrepancy
+            return;
+        }
+        if ("CANCELLED".equals(booking.getStatus())) {
+            if (net > TOLERANCE) {
+                writer.add(UNREFUNDED_CANCELLATION, booking.getId(), null, null, 0.0, net,
+                        "Cancelled booking still holds " + net + " in payments");
+            }
+            return;
+        }
+        if (successful > 1) {
+            writer.add(DUPLICATE_PAYMENT, booking.getId(), null, null, booking.getTotalAmount(), net,
+                    "Booking has " + successful + " successful payments");
+        } else if (Math.abs(net - booking.getTotalAmount()) > TOLERANCE) {
+            writer.add(AMOUNT_MISMATCH, booking.getId(), null, null, booking.getTotalAmount(), net,
+                    "Payments net to " + net + " but the booking total is " + booking.getTotalAmount());
+        }
+    }
+
+    /**
+     * Report payments that were never attached to a booking
+     */
+    private void reconcileUnassignedPayments(ReconciliationRun run, DiscrepancyWriter writer) {
+        Pageable chunk = PageRequest.of(0, chunkSize);
+        KeysetCursor<ReconciliationPaymentRow> payments = new KeysetCursor<>(last ->
+                paymentRepository.findReconciliationChunkWithoutBooking(last == null ? 0L : last.getId(), chunk));
+
+        ReconciliationPaymentRow payment;
+        while ((payment = payments.next()) != null) {
+            writer.orphaned(payment, "Payment has no booking");
+        }
+        run.setPaymentsScanned(run.getPaymentsScanned() + payments.read);
+    }
+
+    /**
+     * Report transaction IDs used by more than one payment
+     * Payments are read ordered by transaction ID, so duplicates are always adjacent
+     */
+    private void reconcileTransactionIds(DiscrepancyWriter writer) {
+        Pageable chunk = PageRequest.of(0, chunkSize);
+        KeysetCursor<ReconciliationPaymentRow> payments = new KeysetCursor<>(last -> last == null
+                ? paymentRepository.findReconciliationChunkByTransaction("", 0L, chunk)
+                : paymentRepository.findReconciliationChunkByTransaction(last.getTransactionId(), last.getId(), chunk));
+
+        ReconciliationPaymentRow previous = null;
+        ReconciliationPaymentRow payment;
+        while ((payment = payments.next()) != null) {
+            if (previous != null && payment.getTransactionId().equals(previous.getTransactionId())) {
+                writer.add(DUPLICATE_TRANSACTION, payment.getBookingId(), payment.getId(), payment.getTransactionId(),
+                        null, payment.getAmount(), "Transaction ID is also used by payment " + previous.getId());
+            }
+            previous = payment;
+        }
+    }
+
+    /**
+     * Iterates over a query one keyset page at a time
+     * Only the current page is held; the next one is fetched after the last row of the current page
+     */
+    private static class KeysetCursor<T> {
+        private final Function<T, List<T>> fetch;
+        private List<T> page = List.of();
+        private int position;
+        private boolean exhausted;
+        private long read;
+
+        KeysetCursor(Function<T, List<T>> fetch) {
+            this.fetch = fetch;
+        }
+
+        T next() {
+            if (position == page.size()) {
+                if (exhausted) {
+                    return null;
+                }
+                page = fetch.apply(page.isEmpty() ? null : page.get(page.size() - 1));
+                position = 0;
+                exhausted = page.isEmpty();
+                if (exhausted) {
+                    return null;
+                }
+            }
+            read++;
+            return page.get(position++);
+        }
+    }
+
+    /**
+     * Buffers discrepancies and saves them one chunk at a time
+     */
+    private class DiscrepancyWriter {
+        private final Long runId;
+        private final List<ReconciliationDiscrepancy> buffer = new ArrayList<>();
+        private long written;
+
+        DiscrepancyWriter(Long runId) {
+            this.runId = runId;
+        }
+
+        void orphaned(ReconciliationPaymentRow payment, String details) {
+            add(ORPHANED_PAYMENT, payment.getBookingId(), payment.getId(), payment.getTransactionId(),
+                    null, payment.getAmount(), details);
+        }
+
+        void add(String type, Long bookingId, Long paymentId, String transactionId,
+                 Double expected, Double actual, String details) {
+            buffer.add(new ReconciliationDiscrepancy(null, runId, type, bookingId, paymentId, transactionId,
+                    expected, actual, details, LocalDateTime.now()));
+            if (buffer.size() >= chunkSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            discrepancyRepository.saveAll(buffer);
+            written += buffer.size();
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.alphaweb.instadrive.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for a payment gateway with configurable latency and decline rate
+ * Charges complete on a timer rather than a blocked thread, like a real gateway's callback,
+ * so throughput under a slow gateway can be load tested offline
+ */
+@Service
+public class SimulatedPaymentGateway implements PaymentGateway {
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double failureRate;
+
+    public SimulatedPaymentGateway(@Value("${payments.gateway.simulator.latency-ms:300}") long latencyMillis,
+                                   @Value("${payments.gateway.simulator.jitter-ms:200}") long jitterMillis,
+                                   @Value("${payments.gateway.simulator.failure-rate:0.05}") double failureRate) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public CompletableFuture<ChargeResult> charge(ChargeRequest request) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyMillis + (jitterMillis > 0 ? random.nextLong(jitterMillis + 1) : 0);
+        boolean approved = random.nextDouble() >= failureRate;
+
+        return CompletableFuture.supplyAsync(() -> approved
+                ? new ChargeResult(request.transactionId(), true, "SIM-" + UUID.randomUUID(), null)
+                : new ChargeResult(request.transactionId(), false, null, "Declined by simulated gateway"),
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,366 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.dto.StatementLineDTO;
+import com.alphaweb.instadrive.model.PaymentStatus;
+import com.alphaweb.instadrive.model.User;
+import com.alphaweb.instadrive.repository.PaymentRepository;
+import com.alphaweb.instadrive.util.AfterCommit;
+import com.itextpdf.text.*;
+import com.itextpdf.text.pdf.PdfPCell;
+import com.itextpdf.text.pdf.PdfPTable;
+import com.itextpdf.text.pdf.PdfWriter;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Service producing consolidated monthly statements of a user's payments and refunds
+ * Statements are stored as PDFs next to the receipts and reused until a payment or refund touches their month
+ */
+@Service
+public class StatementService {
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("MMMM yyyy");
+
+    // Rows are handed to the writer in batches, so a long statement never holds its whole table
+    private static final int ROWS_PER_FLUSH = 50;
+
+    private final PaymentRepository paymentRepository;
+    private final UserService userService;
+    private final FileServingService fileServingService;
+    private final Path statementsLocation;
+    private final ExecutorService executor;
+
+    // Statements being rendered or rendered stale, guarded by itself
+    // An entry lives only while a rendering is in flight or the file on disk is known to be stale
+    private final Map<String, RenderState> renders = new HashMap<>();
+
+    /**
+     * Renderings of one statement that may race with an invalidation
+     */
+    private static class RenderState {
+        // Bumped by every invalidation while the entry exists
+        long generation;
+        int inFlight;
+        // The file on disk was rendered before the latest invalidation and must be rendered again
+        boolean stale;
+    }
+
+    public StatementService(PaymentRepository paymentRepository, UserService userService,
+                            FileServingService fileServingService,
+                            @Value("${file.receipts-dir:receipts}") String receiptsDir,
+                            @Value("${statements.parallelism:0}") int parallelism) {
+        this.paymentRepository = paymentRepository;
+        this.userService = userService;
+        this.fileServingService = fileServingService;
+        this.statementsLocation = Paths.get(receiptsDir, "statements").toAbsolutePath().normalize();
+        this.executor = Executors.newFixedThreadPool(
+                parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+
+        try {
+            Files.createDirectories(this.statementsLocation);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not create the directory where statements will be stored.", ex);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Get a user's statement for a month, rendering it if there is no current one
+     *
+     * @param userId The user ID
+     * @param month The statement month
+     * @return The path of the statement PDF
+     */
+    public Path getStatement(Long userId, YearMonth month) {
+        Path statement = statementPath(userId, month);
+        if (Files.isRegularFile(statement) && !isStale(key(userId, month))) {
+            return statement;
+        }
+        return generateStatement(userId, month);
+    }
+
+    /**
+     * Get the file name a statement is served under
+     *
+     * @param userId The user ID
+     * @param month The statement month
+     * @return The file name
+     */
+    public String statementFileName(Long userId, YearMonth month) {
+        return "statement_" + userId + "_" + month + ".pdf";
+    }
+
+    /**
+     * Discard a user's statement for a month
+     * Called whenever a payment or refund in that month is created or changed. Inside a
+     * transaction the statement is discarded once it commits, so a statement rendered from
+     * the uncommitted rows' old state is not kept for the month
+     *
+     * @param userId The user ID
+     * @param month The month that changed
+     */
+    public void invalidate(Long userId, YearMonth month) {
+        if (userId == null || month == null) {
+            return;
+        }
+        AfterCommit.run(() -> discard(userId, month));
+    }
+
+    private void discard(Long userId, YearMonth month) {
+        String key = key(userId, month);
+        synchronized (renders) {
+            RenderState state = renders.get(key);
+            if (state != null) {
+                state.generation++;
+                if (state.inFlight == 0) {
+                    // Only a stale file was recorded, and it is deleted below
+                    renders.remove(key);
+                }
+            }
+        }
+
+        Path statement = statementPath(userId, month);
+        try {
+            Files.deleteIfExists(statement);
+        } catch (IOException e) {
+            System.err.println("Error invalidating statement " + statementFileName(userId, month) + ": " + e.getMessage());
+        }
+        fileServingService.evict(statement);
+    }
+
+    /**
+     * Render the previous month's statements for every user with activity in it
+     */
+    @Scheduled(cron = "${statements.month-end-cron:0 30 1 1 * *}")
+    public void generateMonthEndStatements() {
+        generateAllStatements(YearMonth.now().minusMonths(1));
+    }
+
+    /**
+     * Render a month's statements for every user with activity in it, in parallel
+     *
+     * @param month The statement month
+     * @return The number of statements rendered
+     */
+    public int generateAllStatements(YearMonth month) {
+        List<Long> userIds = paymentRepository.findUserIdsWithPaymentsBetween(
+                month.atDay(1).atStartOfDay(), month.plusMonths(1).atDay(1).atStartOfDay());
+
+        List<Callable<Path>> tasks = new ArrayList<>(userIds.size());
+        for (Long userId : userIds) {
+            tasks.add(() -> generateStatement(userId, month));
+        }
+
+        int generated = 0;
+        try {
+            for (Future<Path> future : executor.invokeAll(tasks)) {
+                try {
+                    future.get();
+                    generated++;
+                } catch (ExecutionException e) {
+                    System.err.println("Error generating statement: " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        System.out.println("Generated " + generated + " of " + userIds.size() + " statements for " + month);
+        return generated;
+    }
+
+    /**
+     * Render a user's statement for a month
+     *
+     * @param userId The user ID
+     * @param month The statement month
+     * @return The path of the statement PDF
+     */
+    private Path generateStatement(Long userId, YearMonth month) {
+        String key = key(userId, month);
+        long generation;
+        synchronized (renders) {
+            RenderState state = renders.computeIfAbsent(key, k -> new RenderState());
+            state.inFlight++;
+            generation = state.generation;
+        }
+
+        Path statement = statementPath(userId, month);
+        boolean rendered = false;
+        try {
+            LocalDateTime start = month.atDay(1).atStartOfDay();
+            LocalDateTime end = month.plusMonths(1).atDay(1).atStartOfDay();
+            List<StatementLineDTO> lines = paymentRepository.findStatementLines(userId, start, end);
+            Optional<User> user = userService.getUserById(userId);
+
+            Path temp = Files.createTempFile(statementsLocation, "statement-", ".tmp");
+            try {
+                try (OutputStream outputStream = Files.newOutputStream(temp)) {
+                    writeStatement(user.orElse(null), month, lines, outputStream);
+                }
+                Files.move(temp, statement, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                fileServingService.evict(statement);
+                rendered = true;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error generating statement " + statementFileName(userId, month), e);
+        } finally {
+            finishRendering(key, generation, rendered);
+        }
+        // A payment that arrived while rendering leaves this copy stale; it is still served to this
+        // caller, and the next request renders again
+        return statement;
+    }
+
+    /**
+     * Record the end of a rendering, marking its file stale if an invalidation raced with it
+     *
+     * @param key The statement key
+     * @param generation The generation the rendering started from
+     * @param rendered Whether the rendering replaced the file on disk
+     */
+    private void finishRendering(String key, long generation, boolean rendered) {
+        synchronized (renders) {
+            RenderState state = renders.get(key);
+            if (state == null) {
+                return;
+            }
+            state.inFlight--;
+            if (rendered) {
+                state.stale = state.generation != generation;
+            }
+            if (state.inFlight == 0 && !state.stale) {
+                renders.remove(key);
+            }
+        }
+    }
+
+    private boolean isStale(String key) {
+        synchronized (renders) {
+            RenderState state = renders.get(key);
+            return state != null && state.stale;
+        }
+    }
+
+    /**
+     * Write a statement PDF to a stream
+     *
+     * @param user The user, or null if the user no longer exists
+     * @param month The statement month
+     * @param lines The payments and refunds of the month, in date order
+     * @param outputStream The stream to write the PDF to
+     */
+    private void writeStatement(User user, YearMonth month, List<StatementLineDTO> lines, OutputStream outputStream) {
+        try {
+            Document document = new Document(PageSize.A4.rotate());
+            PdfWriter.getInstance(document, outputStream);
+            document.open();
+
+            Font titleFont = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18, BaseColor.BLACK);
+            Font normalFont = FontFactory.getFont(FontFactory.HELVETICA, 10, BaseColor.BLACK);
+            Font boldFont = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10, BaseColor.BLACK);
+
+            Paragraph title = new Paragraph("InstaDrive - Monthly Statement", titleFont);
+            title.setAlignment(Element.ALIGN_CENTER);
+            document.add(title);
+            document.add(new Paragraph(month.format(MONTH), boldFont));
+            if (user != null) {
+                document.add(new Paragraph(user.getName() + " <" + user.getEmail() + ">", normalFont));
+            }
+            document.add(Chunk.NEWLINE);
+
+            // A table that is never complete is written out in parts as rows are added
+            PdfPTable table = new PdfPTable(new float[]{3, 3, 2, 4, 2, 2, 2});
+            table.setWidthPercentage(100);
+            table.setHeaderRows(1);
+            table.setComplete(false);
+            for (String header : new String[]{"Date", "Transaction", "Booking", "Car", "Method", "Status", "Amount"}) {
+                table.addCell(new PdfPCell(new Phrase(header, boldFont)));
+            }
+
+            double charged = 0;
+            double refunded = 0;
+            int rows = 0;
+            for (StatementLineDTO line : lines) {
+                addCell(table, line.getTimestamp() != null ? line.getTimestamp().format(DATE_TIME) : "", normalFont);
+                addCell(table, line.getTransactionId(), normalFont);
+                addCell(table, String.valueOf(line.getBookingId()), normalFont);
+                addCell(table, carDescription(line), normalFont);
+                addCell(table, line.getPaymentMode(), normalFont);
+                addCell(table, line.getStatus() != null ? line.getStatus().name() : "", normalFont);
+                addCell(table, String.format("%.2f", line.getAmount()), normalFont);
+
+                if (line.getAmount() < 0) {
+                    refunded += -line.getAmount();
+                } else if (line.getStatus() == PaymentStatus.SUCCESS || line.getStatus() == PaymentStatus.REFUNDED) {
+                    charged += line.getAmount();
+                }
+
+                if (++rows % ROWS_PER_FLUSH == 0) {
+                    document.add(table);
+                }
+            }
+            table.setComplete(true);
+            document.add(table);
+            document.add(Chunk.NEWLINE);
+
+            document.add(new Paragraph("Transactions: " + lines.size(), normalFont));
+            document.add(new Paragraph("Total charged: $" + String.format("%.2f", charged), boldFont));
+            document.add(new Paragraph("Total refunded: $" + String.format("%.2f", refunded), boldFont));
+            document.add(new Paragraph("Net: $" + String.format("%.2f", charged - refunded), boldFont));
+
+            document.close();
+        } catch (DocumentException e) {
+            throw new RuntimeException("Error generating PDF statement", e);
+        }
+    }
+
+    private void addCell(PdfPTable table, String value, Font font) {
+        table.addCell(new PdfPCell(new Phrase(value != null ? value : "", font)));
+    }
+
+    private String carDescription(StatementLineDTO line) {
+        if (line.getCarBrand() == null) {
+            return "";
+        }
+        String description = line.getCarBrand() + " " + line.getCarModel();
+        return line.getCarRegistrationNumber() != null ? description + " (" + line.getCarRegistrationNumber() + ")" : description;
+    }
+
+    private Path statementPath(Long userId, YearMonth month) {
+        return statementsLocation.resolve(statementFileName(userId, month));
+    }
+
+    private String key(Long userId, YearMonth month) {
+        return userId + ":" + month;
+    }
+}
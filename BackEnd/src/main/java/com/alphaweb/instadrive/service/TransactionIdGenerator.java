@@ -0,0 +1,51 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.util.SnowflakeIdGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+
+/**
+ * Service for generating payment and refund transaction IDs
+ * Each instance needs its own node ID, so startup fails without one. Deriving it from the host name and process ID
+ * is only allowed with ids.derive-node-id, for single-instance development runs: derived IDs can collide
+ */
+@Service
+public class TransactionIdGenerator {
+
+    private final SnowflakeIdGenerator generator;
+
+    public TransactionIdGenerator(@Value("${ids.node-id:-1}") long nodeId,
+                                  @Value("${ids.derive-node-id:false}") boolean deriveNodeId) {
+        if (nodeId < 0 && !deriveNodeId) {
+            throw new IllegalStateException("ids.node-id is not set; give each instance its own node ID from 0 to "
+                    + SnowflakeIdGenerator.MAX_NODE_ID + ", or set ids.derive-node-id=true for a single instance");
+        }
+        long node = nodeId >= 0 ? nodeId : deriveNodeId();
+        this.generator = new SnowflakeIdGenerator(node);
+        System.out.println("Transaction ID generator node ID: " + node);
+    }
+
+    /**
+     * Generate a transaction ID
+     *
+     * @param prefix The prefix, such as UPI, CARD or REFUND
+     * @return The transaction ID
+     */
+    public String next(String prefix) {
+        return generator.nextId(prefix);
+    }
+
+    private static long deriveNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "localhost";
+        }
+        String identity = host + "/" + ManagementFactory.getRuntimeMXBean().getName();
+        return (identity.hashCode() & 0x7fffffff) % (SnowflakeIdGenerator.MAX_NODE_ID + 1);
+    }
+}
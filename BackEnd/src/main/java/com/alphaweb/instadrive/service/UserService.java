@@ -1,8 +1,12 @@
 package com.alphaweb.instadrive.service;
 
+import com.alphaweb.instadrive.dto.CursorPage;
+import com.alphaweb.instadrive.dto.UserSummaryDTO;
 import com.alphaweb.instadrive.model.User;
 import com.alphaweb.instadrive.repository.UserRepository;
+import com.alphaweb.instadrive.util.PageCursor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -10,6 +14,7 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collections;
 import java.util.List;
@@ -33,10 +38,34 @@ public class UserService implements UserDetailsService {
         );
     }
 
+    @Transactional(readOnly = true)
     public List<User> getAllUsers() {
         return userRepository.findAll();
     }
 
+    /**
+     * Get a page of users for list views, in ID order, without the password hash or address
+     *
+     * @param cursor The cursor of the page, or null for the first page
+     * @param limit The page size
+     * @param includeTotal Whether to count all users
+     * @return The page
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<UserSummaryDTO> getUserSummaries(String cursor, int limit, boolean includeTotal) {
+        long afterId = PageCursor.decodeOr(cursor, 0);
+        List<UserSummaryDTO> rows = userRepository.findSummariesAfter(afterId, PageRequest.of(0, limit + 1));
+        return CursorPage.of(rows, limit, UserSummaryDTO::getId, includeTotal ? userRepository.count() : null);
+    }
+
+    /**
+     * Get a user by ID
+     * Read from the primary rather than a replica, since callers update the user or copy their details into receipts
+     *
+     * @param id The user ID
+     * @return The user, or empty if they do not exist
+     */
+    @Transactional
     public Optional<User> getUserById(Long id) {
         return userRepository.findById(id);
     }
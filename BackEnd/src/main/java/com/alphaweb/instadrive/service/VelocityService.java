@@ -0,0 +1,319 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.util.SlidingWindowCounter;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory velocity checks on booking and payment attempts
+ * Every rule counts attempts per user, IP address or card in a sliding window and rejects or flags
+ * attempts above its limit. Cards are counted by a keyed hash of the full number, never the number itself. Counters live only in memory; idle ones are evicted and each rule tracks
+ * at most a fixed number of keys, so memory stays bounded even when keys are spoofed. A full rule
+ * does not track new keys, and frees room on a background thread rather than on the request
+ */
+@Service
+public class VelocityService {
+
+    public enum Dimension { USER, IP, CARD }
+
+    public enum Scope { BOOKING, PAYMENT }
+
+    public enum Action { REJECT, FLAG }
+
+    /**
+     * A velocity rule, configured as "dimension:scope:limit/windowSeconds:action", e.g. "ip:payment:30/60:reject"
+     *
+     * @param name The rule as configured
+     * @param dimension What attempts are counted per
+     * @param scope Which attempts are counted
+     * @param limit The number of attempts allowed in the window
+     * @param windowMillis The window length
+     * @param action What happens to attempts above the limit
+     */
+    public record Rule(String name, Dimension dimension, Scope scope, long limit, long windowMillis, Action action) {
+
+        static Rule parse(String spec) {
+            String[] parts = spec.trim().split(":");
+            String[] rate = parts.length == 4 ? parts[2].split("/") : new String[0];
+            if (rate.length != 2) {
+                throw new IllegalArgumentException("Invalid velocity rule '" + spec
+                        + "', expected dimension:scope:limit/windowSeconds:action");
+            }
+            return new Rule(spec.trim(),
+                    Dimension.valueOf(parts[0].trim().toUpperCase(Locale.ROOT)),
+                    Scope.valueOf(parts[1].trim().toUpperCase(Locale.ROOT)),
+                    Long.parseLong(rate[0].trim()),
+                    Long.parseLong(rate[1].trim()) * 1000,
+                    Action.valueOf(parts[3].trim().toUpperCase(Locale.ROOT)));
+        }
+    }
+
+    /**
+     * The outcome of a velocity check
+     *
+     * @param rejectedBy The rule that rejected the attempt, or null if it is allowed
+     * @param flaggedBy The rules that flagged the attempt
+     */
+    public record Decision(Rule rejectedBy, List<Rule> flaggedBy) {
+
+        static final Decision ALLOW = new Decision(null, List.of());
+
+        public boolean isRejected() {
+            return rejectedBy != null;
+        }
+
+        public boolean isFlagged() {
+            return !flaggedBy.isEmpty();
+        }
+
+        public long retryAfterSeconds() {
+            return rejectedBy == null ? 0 : Math.max(1, rejectedBy.windowMillis() / 1000);
+        }
+    }
+
+    /**
+     * The counters of one rule
+     */
+    private static class RuleState {
+        final Rule rule;
+        final Map<String, SlidingWindowCounter> counters = new ConcurrentHashMap<>();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong flagged = new AtomicLong();
+        final AtomicLong untracked = new AtomicLong();
+        final AtomicLong nextEvictionAt = new AtomicLong();
+
+        RuleState(Rule rule) {
+            this.rule = rule;
+        }
+    }
+
+    private final boolean enabled;
+    private final int buckets;
+    private final int maxKeysPerRule;
+    private final List<RuleState> rules = new ArrayList<>();
+    private final ThreadLocal<Mac> cardMacs;
+
+    private final ExecutorService evictor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "velocity-eviction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public VelocityService(@Value("${velocity.enabled:true}") boolean enabled,
+                           @Value("${velocity.buckets:10}") int buckets,
+                           @Value("${velocity.max-keys-per-rule:100000}") int maxKeysPerRule,
+                           @Value("${velocity.rules:user:booking:5/60:reject,ip:booking:20/60:reject,"
+                                   + "user:payment:10/60:reject,ip:payment:30/60:reject,"
+                                   + "card:payment:5/300:reject,user:payment:20/3600:flag}") List<String> rules) {
+        this.enabled = enabled;
+        this.buckets = buckets;
+        this.maxKeysPerRule = maxKeysPerRule;
+        for (String spec : rules) {
+            if (!spec.isBlank()) {
+                this.rules.add(new RuleState(Rule.parse(spec)));
+            }
+        }
+
+        // Counters live only in memory, so a key drawn at startup is enough
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        SecretKeySpec key = new SecretKeySpec(secret, "HmacSHA256");
+        this.cardMacs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 is not available", e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        evictor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled && !rules.isEmpty();
+    }
+
+    /**
+     * Whether any rule needs the card for a scope, so callers only read request bodies when needed
+     *
+     * @param scope The scope
+     * @return true if a card rule applies to the scope
+     */
+    public boolean needsCard(Scope scope) {
+        for (RuleState state : rules) {
+            if (state.rule.scope() == scope && state.rule.dimension() == Dimension.CARD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the key a card is counted under
+     * Two cards sharing their last digits get different keys, and the number cannot be read back from its key
+     *
+     * @param cardNumber The card number as entered
+     * @return The fingerprint, or null if the value is too short to be a card number
+     */
+    public String cardFingerprint(String cardNumber) {
+        String digits = cardNumber == null ? "" : cardNumber.replaceAll("\\D", "");
+        if (digits.length() < 12) {
+            return null;
+        }
+        byte[] digest = cardMacs.get().doFinal(digits.getBytes(StandardCharsets.US_ASCII));
+        return HexFormat.of().formatHex(Arrays.copyOf(digest, 16));
+    }
+
+    /**
+     * Record an attempt and check it against the rules of its scope
+     * Rejected attempts are counted too, so a burst stays blocked until it slows down
+     *
+     * @param scope The kind of attempt
+     * @param user The authenticated user, or null
+     * @param ip The client IP address
+     * @param card The fingerprint of the card, or null
+     * @return The decision
+     */
+    public Decision check(Scope scope, String user, String ip, String card) {
+        if (!enabled) {
+            return Decision.ALLOW;
+        }
+
+        long now = System.currentTimeMillis();
+        Rule rejectedBy = null;
+        List<Rule> flaggedBy = null;
+        for (RuleState state : rules) {
+            Rule rule = state.rule;
+            if (rule.scope() != scope) {
+                continue;
+            }
+            String key = switch (rule.dimension()) {
+                case USER -> user;
+                case IP -> ip;
+                case CARD -> card;
+            };
+            if (key == null) {
+                continue;
+            }
+            SlidingWindowCounter counter = counter(state, key, now);
+            if (counter == null || counter.incrementAndCount(now) <= rule.limit()) {
+                continue;
+            }
+
+            if (rule.action() == Action.REJECT) {
+                state.rejected.incrementAndGet();
+                if (rejectedBy == null) {
+                    rejectedBy = rule;
+                }
+            } else {
+                state.flagged.incrementAndGet();
+                if (flaggedBy == null) {
+                    flaggedBy = new ArrayList<>(2);
+                }
+                flaggedBy.add(rule);
+            }
+        }
+
+        if (rejectedBy == null && flaggedBy == null) {
+            return Decision.ALLOW;
+        }
+        return new Decision(rejectedBy, flaggedBy == null ? List.of() : flaggedBy);
+    }
+
+    /**
+     * Get the counter of a key, creating it if the rule has room for another key
+     */
+    private SlidingWindowCounter counter(RuleState state, String key, long now) {
+        SlidingWindowCounter counter = state.counters.get(key);
+        if (counter != null) {
+            return counter;
+        }
+        if (state.counters.size() >= maxKeysPerRule) {
+            // Fail open rather than grow without bound, or scan every counter on the request thread
+            state.untracked.incrementAndGet();
+            requestEviction(state, now);
+            return null;
+        }
+        return state.counters.computeIfAbsent(key,
+                k -> new SlidingWindowCounter(state.rule.windowMillis(), buckets));
+    }
+
+    /**
+     * Evict the idle counters of a full rule in the background, at most once per bucket of its window
+     */
+    private void requestEviction(RuleState state, long now) {
+        long next = state.nextEvictionAt.get();
+        long interval = Math.max(1, state.rule.windowMillis() / buckets);
+        if (now < next || !state.nextEvictionAt.compareAndSet(next, now + interval)) {
+            return;
+        }
+        try {
+            evictor.execute(() -> evictIdle(state, System.currentTimeMillis()));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Drop counters that have seen no attempt for a whole window
+     */
+    @Scheduled(fixedDelayString = "${velocity.eviction-interval-ms:60000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (RuleState state : rules) {
+            evictIdle(state, now);
+        }
+    }
+
+    private void evictIdle(RuleState state, long now) {
+        long cutoff = now - state.rule.windowMillis();
+        state.counters.values().removeIf(counter -> counter.getLastUpdated() < cutoff);
+    }
+
+    /**
+     * Get velocity statistics for monitoring
+     *
+     * @return Tracked keys and rejected, flagged and untracked attempts per rule
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        List<Map<String, Object>> ruleStats = new ArrayList<>();
+        for (RuleState state : rules) {
+            Map<String, Object> rule = new LinkedHashMap<>();
+            rule.put("rule", state.rule.name());
+            rule.put("trackedKeys", state.counters.size());
+            rule.put("rejected", state.rejected.get());
+            rule.put("flagged", state.flagged.get());
+            rule.put("untracked", state.untracked.get());
+            ruleStats.add(rule);
+        }
+        stats.put("rules", ruleStats);
+        return stats;
+    }
+}
@@ -0,0 +1,34 @@
+package com.alphaweb.instadrive.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Defers side effects of a transaction, such as cache invalidation, until it has committed
+ * Done any earlier, a concurrent reader can load and cache the state from before the commit,
+ * and a rollback would leave the side effect behind
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /**
+     * Run an action once the current transaction commits, or at once if there is no transaction
+     * The action is dropped if the transaction rolls back
+     *
+     * @param action The action
+     */
+    public static void run(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
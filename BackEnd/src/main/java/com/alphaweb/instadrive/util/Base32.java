@@ -0,0 +1,69 @@
+package com.alphaweb.instadrive.util;
+
+import java.util.Arrays;
+
+/**
+ * RFC 4648 base32 without padding
+ * The alphabet is upper-case letters and digits only, which QR codes store in their compact alphanumeric mode
+ */
+public final class Base32 {
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567".toCharArray();
+    private static final int[] DECODE = new int[128];
+
+    static {
+        Arrays.fill(DECODE, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = i;
+            DECODE[Character.toLowerCase(ALPHABET[i])] = i;
+        }
+    }
+
+    private Base32() {
+    }
+
+    public static String encode(byte[] data) {
+        StringBuilder builder = new StringBuilder((data.length * 8 + 4) / 5);
+        int buffer = 0;
+        int bits = 0;
+        for (byte b : data) {
+            buffer = (buffer << 8) | (b & 0xff);
+            bits += 8;
+            while (bits >= 5) {
+                builder.append(ALPHABET[(buffer >>> (bits - 5)) & 31]);
+                bits -= 5;
+            }
+        }
+        if (bits > 0) {
+            builder.append(ALPHABET[(buffer << (5 - bits)) & 31]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Decode base32 text
+     *
+     * @param text The encoded text, in either case
+     * @return The decoded bytes, or null if the text contains characters outside the alphabet
+     */
+    public static byte[] decode(String text) {
+        byte[] data = new byte[text.length() * 5 / 8];
+        int buffer = 0;
+        int bits = 0;
+        int index = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int value = c < 128 ? DECODE[c] : -1;
+            if (value < 0) {
+                return null;
+            }
+            buffer = (buffer << 5) | value;
+            bits += 5;
+            if (bits >= 8) {
+                data[index++] = (byte) (buffer >>> (bits - 8));
+                bits -= 8;
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,150 @@
+package com.alphaweb.instadrive.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets
+ * Bucket i counts durations from 2^i up to 2^(i+1) microseconds, so percentiles are exact to within a factor of two,
+ * which is plenty for telling a 2 ms wait from a 200 ms one at a fixed 33 counters per histogram
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 33;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Record a duration
+     *
+     * @param nanos The duration in nanoseconds
+     */
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    /**
+     * Record a duration
+     *
+     * @param millis The duration in milliseconds
+     */
+    public void recordMillis(long millis) {
+        record(millis * 1000);
+    }
+
+    private void record(long micros) {
+        micros = Math.max(0, micros);
+        counts.incrementAndGet(bucketOf(micros));
+        totalMicros.addAndGet(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    static int bucketOf(long micros) {
+        return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(1, micros)));
+    }
+
+    /**
+     * Take a copy of the counts, to report or to diff against a later snapshot
+     *
+     * @return The snapshot
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, totalMicros.get(), maxMicros.get());
+    }
+
+    /**
+     * Counts of a histogram at one point in time
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long totalMicros;
+        private final long maxMicros;
+        private final long count;
+
+        Snapshot(long[] counts, long totalMicros, long maxMicros) {
+            this.counts = counts;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+            long sum = 0;
+            for (long c : counts) {
+                sum += c;
+            }
+            this.count = sum;
+        }
+
+        /**
+         * Get what was recorded between an earlier snapshot and this one
+         * The maximum is not windowed and stays the all-time maximum
+         *
+         * @param earlier The earlier snapshot, or null
+         * @return The difference
+         */
+        public Snapshot since(Snapshot earlier) {
+            if (earlier == null) {
+                return this;
+            }
+            long[] diff = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                diff[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(diff, totalMicros - earlier.totalMicros, maxMicros);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get a percentile, as the upper bound of the bucket it falls in
+         *
+         * @param percentile The percentile, between 0 and 100
+         * @return The duration in milliseconds, or 0 if nothing was recorded
+         */
+        public double percentileMillis(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min((1L << (i + 1)), Math.max(maxMicros, 1)) / 1000.0;
+                }
+            }
+            return maxMicros / 1000.0;
+        }
+
+        public double meanMillis() {
+            return count == 0 ? 0 : totalMicros / 1000.0 / count;
+        }
+
+        /**
+         * Summarise the snapshot for the metrics endpoints
+         *
+         * @return Count, mean, p50, p95, p99 and max in milliseconds
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", count);
+            map.put("meanMs", round(meanMillis()));
+            map.put("p50Ms", round(percentileMillis(50)));
+            map.put("p95Ms", round(percentileMillis(95)));
+            map.put("p99Ms", round(percentileMillis(99)));
+            map.put("maxMs", round(maxMicros / 1000.0));
+            return map;
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 1000) / 1000.0;
+        }
+    }
+}
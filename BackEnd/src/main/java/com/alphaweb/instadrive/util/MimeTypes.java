@@ -0,0 +1,50 @@
+package com.alphaweb.instadrive.util;
+
+import org.springframework.http.MediaType;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Utility class for resolving media types from file names
+ * The table is built once so no servlet context or filesystem lookup is needed per request
+ */
+public final class MimeTypes {
+
+    private static final Map<String, MediaType> BY_EXTENSION = Map.ofEntries(
+            Map.entry("pdf", MediaType.APPLICATION_PDF),
+            Map.entry("png", MediaType.IMAGE_PNG),
+            Map.entry("jpg", MediaType.IMAGE_JPEG),
+            Map.entry("jpeg", MediaType.IMAGE_JPEG),
+            Map.entry("gif", MediaType.IMAGE_GIF),
+            Map.entry("webp", MediaType.parseMediaType("image/webp")),
+            Map.entry("bmp", MediaType.parseMediaType("image/bmp")),
+            Map.entry("svg", MediaType.parseMediaType("image/svg+xml")),
+            Map.entry("txt", MediaType.TEXT_PLAIN),
+            Map.entry("csv", MediaType.parseMediaType("text/csv")),
+            Map.entry("html", MediaType.TEXT_HTML),
+            Map.entry("json", MediaType.APPLICATION_JSON),
+            Map.entry("zip", MediaType.parseMediaType("application/zip"))
+    );
+
+    private MimeTypes() {
+    }
+
+    /**
+     * Resolve the media type of a file from its extension
+     *
+     * @param fileName The file name
+     * @return The media type, or application/octet-stream if the extension is unknown
+     */
+    public static MediaType forFileName(String fileName) {
+        if (fileName == null) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0 || dot == fileName.length() - 1) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        MediaType mediaType = BY_EXTENSION.get(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+        return mediaType != null ? mediaType : MediaType.APPLICATION_OCTET_STREAM;
+    }
+}
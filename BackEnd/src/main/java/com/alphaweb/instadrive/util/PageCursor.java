@@ -0,0 +1,60 @@
+package com.alphaweb.instadrive.util;
+
+import com.alphaweb.instadrive.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque cursors for keyset pagination
+ * A cursor wraps the sort key of the last row of a page, so the next page starts right after it
+ * with an index range scan, however deep it is. Clients must treat cursors as opaque tokens
+ */
+public final class PageCursor {
+
+    private static final String PREFIX = "k1:";
+
+    private PageCursor() {
+    }
+
+    /**
+     * Create the cursor for the page after a row
+     *
+     * @param id The ID of the last row of the page
+     * @return The cursor
+     */
+    public static String encode(long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + id).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Read the row ID from a cursor, if the client sent one
+     *
+     * @param cursor The cursor from a previous page, or null or blank for the first page
+     * @param firstPage The key to start from on the first page
+     * @return The ID of the last row of the previous page, or firstPage
+     */
+    public static long decodeOr(String cursor, long firstPage) {
+        return cursor == null || cursor.isBlank() ? firstPage : decode(cursor);
+    }
+
+    /**
+     * Read the row ID from a cursor
+     *
+     * @param cursor The cursor from a previous page
+     * @return The ID of the last row of the previous page
+     * @throws InvalidCursorException if the cursor was not issued by {@link #encode(long)}
+     */
+    public static long decode(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            if (value.startsWith(PREFIX)) {
+                return Long.parseLong(value.substring(PREFIX.length()));
+            }
+        } catch (IllegalArgumentException e) {
+            // Not base64 or not a number; reported below
+        }
+        throw new InvalidCursorException("Invalid page cursor");
+    }
+}
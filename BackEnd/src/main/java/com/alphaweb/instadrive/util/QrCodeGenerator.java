@@ -1,18 +1,26 @@
 package com.alphaweb.instadrive.util;
 
 import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
 import com.google.zxing.WriterException;
 import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
 
 public class QrCodeGenerator {
 
+    private static final Map<EncodeHintType, Object> HINTS = Map.of(
+            EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M,
+            EncodeHintType.MARGIN, 1);
+
     public static void generateQRCodeImage(String text, int width, int height, String filePath)
             throws WriterException, IOException {
         QRCodeWriter qrCodeWriter = new QRCodeWriter();
@@ -21,4 +29,63 @@ public class QrCodeGenerator {
         Path path = FileSystems.getDefault().getPath(filePath);
         MatrixToImageWriter.writeToPath(bitMatrix, "PNG", path);
     }
+
+    /**
+     * Encode text as a QR code with one pixel per module
+     *
+     * @param text The text to encode
+     * @return The QR code matrix, including a one-module quiet zone
+     * @throws WriterException if the text cannot be encoded
+     */
+    public static BitMatrix generateQRCodeMatrix(String text) throws WriterException {
+        return new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, 0, 0, HINTS);
+    }
+
+    /**
+     * Render a QR code matrix as PNG bytes in memory
+     *
+     * @param matrix The QR code matrix
+     * @param scale The number of pixels per module
+     * @return The PNG bytes
+     * @throws IOException if the image cannot be encoded
+     */
+    public static byte[] toPng(BitMatrix matrix, int scale) throws IOException {
+        BitMatrix scaled = matrix;
+        if (scale > 1) {
+            scaled = new BitMatrix(matrix.getWidth() * scale, matrix.getHeight() * scale);
+            for (int y = 0; y < matrix.getHeight(); y++) {
+                for (int x = 0; x < matrix.getWidth(); x++) {
+                    if (matrix.get(x, y)) {
+                        scaled.setRegion(x * scale, y * scale, scale, scale);
+                    }
+                }
+            }
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        MatrixToImageWriter.writeToStream(scaled, "PNG", outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Pack a QR code matrix into 1-bit grayscale rows, as used by PDF image streams
+     * Dark modules are 0 and light modules are 1, each row padded to a whole byte
+     *
+     * @param matrix The QR code matrix
+     * @return The packed rows
+     */
+    public static byte[] toGrayBits(BitMatrix matrix) {
+        int width = matrix.getWidth();
+        int rowBytes = (width + 7) / 8;
+        byte[] data = new byte[rowBytes * matrix.getHeight()];
+        Arrays.fill(data, (byte) 0xff);
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                if (matrix.get(x, y)) {
+                    data[y * rowBytes + x / 8] &= (byte) ~(0x80 >>> (x % 8));
+                }
+            }
+        }
+        return data;
+    }
 }
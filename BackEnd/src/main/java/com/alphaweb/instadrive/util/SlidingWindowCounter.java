@@ -0,0 +1,85 @@
+package com.alphaweb.instadrive.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free event counter over a sliding time window
+ * The window is a ring of time buckets. Each slot packs the bucket number it belongs to with its count,
+ * so a slot left over from an earlier lap of the ring is reset by the same compare-and-set that increments it.
+ * With 20 bits for the count, a bucket holds up to about a million events before it saturates.
+ */
+public class SlidingWindowCounter {
+
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final AtomicLongArray slots;
+    private final long bucketMillis;
+    private volatile long lastUpdated;
+
+    /**
+     * Create a counter
+     *
+     * @param windowMillis The length of the window
+     * @param buckets The number of buckets the window is split into
+     */
+    public SlidingWindowCounter(long windowMillis, int buckets) {
+        if (buckets < 1 || windowMillis < buckets) {
+            throw new IllegalArgumentException("The window must be at least one millisecond per bucket");
+        }
+        this.slots = new AtomicLongArray(buckets);
+        this.bucketMillis = windowMillis / buckets;
+    }
+
+    /**
+     * Record an event and count the events in the window ending now, including this one
+     *
+     * @param now The current time in milliseconds
+     * @return The number of events in the window
+     */
+    public long incrementAndCount(long now) {
+        long bucket = now / bucketMillis;
+        int slot = (int) (bucket % slots.length());
+        while (true) {
+            long value = slots.get(slot);
+            long count = (value >>> COUNT_BITS) == bucket ? value & COUNT_MASK : 0;
+            if (count == COUNT_MASK) {
+                break; // Saturated
+            }
+            if (slots.compareAndSet(slot, value, (bucket << COUNT_BITS) | (count + 1))) {
+                break;
+            }
+        }
+        lastUpdated = now;
+        return count(now);
+    }
+
+    /**
+     * Count the events in the window ending now
+     *
+     * @param now The current time in milliseconds
+     * @return The number of events in the window
+     */
+    public long count(long now) {
+        long bucket = now / bucketMillis;
+        long oldest = bucket - slots.length() + 1;
+        long total = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            long value = slots.get(i);
+            long slotBucket = value >>> COUNT_BITS;
+            if (slotBucket >= oldest && slotBucket <= bucket) {
+                total += value & COUNT_MASK;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Get when an event was last recorded
+     *
+     * @return The time in milliseconds, or 0 if no event was recorded
+     */
+    public long getLastUpdated() {
+        return lastUpdated;
+    }
+}
@@ -0,0 +1,107 @@
+package com.alphaweb.instadrive.util;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Generator of time-ordered 64-bit IDs that are unique without locks or database coordination
+ * Layout: 41 bits of milliseconds since the epoch, 10 bits of node ID and a 12-bit sequence
+ * within the millisecond, enough for 4096 IDs per millisecond per node for about 69 years
+ */
+public class SnowflakeIdGenerator {
+
+    public static final int NODE_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+
+    // 2025-01-01T00:00:00Z
+    public static final long DEFAULT_EPOCH_MILLIS = 1735689600000L;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int ENCODED_LENGTH = 13; // Base-36 digits of the largest positive long
+
+    private final long nodeId;
+    private final long epochMillis;
+    private final LongSupplier clock;
+
+    // Last issued timestamp and sequence, packed as (timestamp << SEQUENCE_BITS) | sequence
+    private final AtomicLong state = new AtomicLong();
+
+    public SnowflakeIdGenerator(long nodeId) {
+        this(nodeId, DEFAULT_EPOCH_MILLIS, System::currentTimeMillis);
+    }
+
+    public SnowflakeIdGenerator(long nodeId, long epochMillis, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node ID must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeId = nodeId;
+        this.epochMillis = epochMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Generate the next ID
+     * If the sequence of a millisecond is used up, or the clock moves backwards, the ID is taken
+     * from the next millisecond rather than waiting, so IDs stay unique and increasing
+     *
+     * @return A positive ID, greater than every ID this generator returned before
+     */
+    public long nextId() {
+        long now = clock.getAsLong() - epochMillis;
+        long previous;
+        long next;
+        do {
+            previous = state.get();
+            long previousTimestamp = previous >>> SEQUENCE_BITS;
+            if (now > previousTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else if ((previous & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = previous + 1;
+            } else {
+                next = (previousTimestamp + 1) << SEQUENCE_BITS;
+            }
+        } while (!state.compareAndSet(previous, next));
+
+        long timestamp = next >>> SEQUENCE_BITS;
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+    }
+
+    /**
+     * Generate the next ID as a prefixed string, such as UPI-0B7Z1K2M3N4P5
+     * The ID is written as fixed-width base 36, so the strings sort in the same order as the IDs
+     *
+     * @param prefix The prefix
+     * @return The prefixed ID
+     */
+    public String nextId(String prefix) {
+        return format(prefix, nextId());
+    }
+
+    /**
+     * Write an ID as a prefixed, fixed-width base-36 string
+     *
+     * @param prefix The prefix
+     * @param id The ID
+     * @return The prefixed ID
+     */
+    public static String format(String prefix, long id) {
+        String digits = Long.toString(id, 36).toUpperCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(prefix.length() + 1 + ENCODED_LENGTH).append(prefix).append('-');
+        for (int i = digits.length(); i < ENCODED_LENGTH; i++) {
+            sb.append('0');
+        }
+        return sb.append(digits).toString();
+    }
+
+    /**
+     * Get the time an ID was generated
+     *
+     * @param id The ID
+     * @return The time in milliseconds since 1970
+     */
+    public long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + epochMillis;
+    }
+}
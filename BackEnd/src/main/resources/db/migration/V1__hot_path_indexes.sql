@@ -0,0 +1,70 @@
+-- Secondary indexes for the hot booking, payment and receipt queries.
+-- Tables are created by Hibernate (ddl-auto=update) before migrations run, see FlywayConfig.
+-- Each index is created only if it is missing, so databases where an index was added by hand
+-- or by an earlier entity annotation migrate cleanly.
+-- The unique transaction_id indexes on payment and receipt are declared on the entities.
+
+-- BookingRepository.findOverlappingBookings: car_id = ? AND start_date <= ? AND end_date >= ?
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE()
+        AND table_name = 'booking' AND index_name = 'idx_booking_car_dates') = 0,
+    'CREATE INDEX idx_booking_car_dates ON booking (car_id, start_date, end_date)', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- BookingRepository.findByUserIdOrderByStartDateDesc and the current/past booking history queries
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE()
+        AND table_name = 'booking' AND index_name = 'idx_booking_user_start') = 0,
+    'CREATE INDEX idx_booking_user_start ON booking (user_id, start_date)', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- BookingRepository.findExpiredBookings: end_date < ? AND status NOT IN ('COMPLETED', 'CANCELLED')
+-- Status leads, because open bookings are few while most end dates are in the past
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE()
+        AND table_name = 'booking' AND index_name = 'idx_booking_status_end') = 0,
+    'CREATE INDEX idx_booking_status_end ON booking (status, end_date)', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- PaymentRepository.findByBookingId, the payment status totals and the reconciliation merge-join
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE()
+        AND table_name = 'payment' AND index_name = 'idx_payment_booking_id') = 0,
+    'CREATE INDEX idx_payment_booking_id ON payment (booking_id, id)', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- PaymentRepository.findByUserId and the monthly statement lines
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE()
+        AND table_name = 'payment' AND index_name = 'idx_payment_user_timestamp') = 0,
+    'CREATE INDEX idx_payment_user_timestamp ON payment (user_id, timestamp)', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- PaymentRepository.findByStatusAndTimestampBefore, used to expire pending gateway payments
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE()
+        AND table_name = 'payment' AND index_name = 'idx_payment_status_timestamp') = 0,
+    'CREATE INDEX idx_payment_status_timestamp ON payment (status, timestamp)', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- ReceiptRepository.findByBookingId
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE()
+        AND table_name = 'receipt' AND index_name = 'idx_receipt_booking_id') = 0,
+    'CREATE INDEX idx_receipt_booking_id ON receipt (booking_id)', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- ReceiptRepository.findByUserId and the receipt archive date range
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE()
+        AND table_name = 'receipt' AND index_name = 'idx_receipt_user_date') = 0,
+    'CREATE INDEX idx_receipt_user_date ON receipt (user_id, transaction_date)', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
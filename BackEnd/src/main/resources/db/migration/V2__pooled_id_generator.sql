@@ -0,0 +1,23 @@
+-- Booking, payment, receipt and car IDs come from a table generator with the pooled-lo optimizer,
+-- so Hibernate can batch their inserts. Each row holds the first ID of the next block to hand out.
+-- Hibernate creates the table; the rows are seeded past the IDs already issued by AUTO_INCREMENT.
+CREATE TABLE IF NOT EXISTS id_generator (
+    sequence_name VARCHAR(255) NOT NULL PRIMARY KEY,
+    next_val BIGINT
+);
+
+INSERT INTO id_generator (sequence_name, next_val)
+SELECT 'booking', COALESCE(MAX(id), 0) + 1 FROM booking
+ON DUPLICATE KEY UPDATE next_val = GREATEST(COALESCE(next_val, 0), VALUES(next_val));
+
+INSERT INTO id_generator (sequence_name, next_val)
+SELECT 'payment', COALESCE(MAX(id), 0) + 1 FROM payment
+ON DUPLICATE KEY UPDATE next_val = GREATEST(COALESCE(next_val, 0), VALUES(next_val));
+
+INSERT INTO id_generator (sequence_name, next_val)
+SELECT 'receipt', COALESCE(MAX(id), 0) + 1 FROM receipt
+ON DUPLICATE KEY UPDATE next_val = GREATEST(COALESCE(next_val, 0), VALUES(next_val));
+
+INSERT INTO id_generator (sequence_name, next_val)
+SELECT 'car', COALESCE(MAX(id), 0) + 1 FROM car
+ON DUPLICATE KEY UPDATE next_val = GREATEST(COALESCE(next_val, 0), VALUES(next_val));
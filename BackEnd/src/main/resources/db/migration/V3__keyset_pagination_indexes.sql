@@ -0,0 +1,10 @@
+-- Index for the keyset-paginated receipt list.
+-- The user, payment and booking lists page on the primary key and need no index of their own.
+
+-- ReceiptRepository.findSummariesByUserIdBefore: user_id = ? AND id < ? ORDER BY id DESC
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE()
+        AND table_name = 'receipt' AND index_name = 'idx_receipt_user_id') = 0,
+    'CREATE INDEX idx_receipt_user_id ON receipt (user_id, id)', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
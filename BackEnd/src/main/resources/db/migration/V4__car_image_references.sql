@@ -0,0 +1,9 @@
+-- Uploads no longer hold a reference of their own; a stored file is referenced by the cars showing it.
+-- Recount every stored file from the car image URLs, matching both full URLs and bare file names, and
+-- restart the orphan grace period of every existing file now, so nothing uploaded before this migration
+-- is swept before it has had the chance to be attached.
+UPDATE stored_file f
+SET f.reference_count = (SELECT COUNT(*) FROM car c
+                         WHERE c.image_url = f.file_name
+                            OR c.image_url LIKE CONCAT('%/', f.file_name)),
+    f.last_stored_at = NOW();
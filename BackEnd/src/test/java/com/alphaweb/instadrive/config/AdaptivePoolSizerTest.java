@@ -0,0 +1,109 @@
+package com.alphaweb.instadrive.config;
+
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptivePoolSizerTest {
+
+    private static final long NOW = 1_760_000_000_000L;
+
+    private AdaptivePoolSizer sizer;
+    private DatabaseMetrics databaseMetrics;
+    private DatabaseMetrics.PoolMetrics metrics;
+    private AdaptivePoolSizer.Window window;
+
+    @BeforeEach
+    void setUp() {
+        databaseMetrics = new DatabaseMetrics();
+        sizer = new AdaptivePoolSizer(databaseMetrics, null, null, true, 2, 40, 5, 1.5, 50);
+        metrics = (DatabaseMetrics.PoolMetrics) databaseMetrics.create("primary", new PoolStats(0) {
+            @Override
+            protected void update() {
+            }
+        });
+        window = new AdaptivePoolSizer.Window();
+        assertNull(sizer.decide(window, metrics, 10, NOW));
+    }
+
+    /**
+     * Record 100 repository calls, each holding its connection for the query and any work around it
+     */
+    private void load(long acquireMillis, long queryMillis, long usageMillis) {
+        for (int i = 0; i < 100; i++) {
+            metrics.recordConnectionAcquiredNanos(acquireMillis * 1_000_000);
+            databaseMetrics.recordRepositoryCall("BookingRepository.findById", queryMillis * 1_000_000);
+            metrics.recordConnectionUsageMillis(usageMillis);
+        }
+    }
+
+    @Test
+    void decide_WaitingWhileDatabaseKeepsUp_Grows() {
+        load(1, 2, 2);
+        sizer.decide(window, metrics, 10, NOW + 1_000);
+        load(20, 2, 2);
+
+        AdaptivePoolSizer.Decision decision = sizer.decide(window, metrics, 10, NOW + 2_000);
+
+        assertEquals(12, decision.size());
+        assertTrue(decision.reason().startsWith("requests wait"));
+    }
+
+    @Test
+    void decide_WaitingWhileDatabaseSlowsDown_Shrinks() {
+        load(1, 2, 2);
+        sizer.decide(window, metrics, 10, NOW + 1_000);
+        load(20, 10, 10);
+
+        AdaptivePoolSizer.Decision decision = sizer.decide(window, metrics, 10, NOW + 2_000);
+
+        assertEquals(9, decision.size());
+        assertTrue(decision.reason().startsWith("the database slows down"));
+    }
+
+    @Test
+    void decide_ConnectionsHeldLongerByApplicationWork_StillGrows() {
+        load(1, 2, 2);
+        sizer.decide(window, metrics, 10, NOW + 1_000);
+        // Queries take as long as before; the application holds connections longer between them
+        load(20, 2, 30);
+
+        AdaptivePoolSizer.Decision decision = sizer.decide(window, metrics, 10, NOW + 2_000);
+
+        assertEquals(12, decision.size());
+    }
+
+    @Test
+    void decide_SlowerQueriesJoinTheMix_NotTakenForSlowdown() {
+        load(1, 2, 2);
+        sizer.decide(window, metrics, 10, NOW + 1_000);
+        load(20, 2, 2);
+        for (int i = 0; i < 100; i++) {
+            databaseMetrics.recordRepositoryCall("PaymentRepository.findStatementLines", 40_000_000);
+        }
+
+        AdaptivePoolSizer.Decision decision = sizer.decide(window, metrics, 10, NOW + 2_000);
+
+        assertEquals(12, decision.size());
+    }
+
+    @Test
+    void decide_MostlyIdle_ShrinksByOne() {
+        load(1, 2, 2);
+
+        AdaptivePoolSizer.Decision decision = sizer.decide(window, metrics, 10, NOW + 1_000);
+
+        assertEquals(9, decision.size());
+    }
+
+    @Test
+    void decide_TooFewSamples_KeepsAccumulating() {
+        metrics.recordConnectionAcquiredNanos(50_000_000);
+
+        assertNull(sizer.decide(window, metrics, 10, NOW + 1_000));
+        load(20, 2, 2);
+        assertEquals(12, sizer.decide(window, metrics, 10, NOW + 2_000).size());
+    }
+}
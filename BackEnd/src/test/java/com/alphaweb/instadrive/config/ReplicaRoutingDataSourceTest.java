@@ -0,0 +1,121 @@
+package com.alphaweb.instadrive.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReplicaRoutingDataSourceTest {
+
+    @Mock
+    private DataSource primary;
+
+    @Mock
+    private DataSource replica1;
+
+    @Mock
+    private DataSource replica2;
+
+    @Mock
+    private Connection primaryConnection;
+
+    @Mock
+    private Connection replica1Connection;
+
+    @Mock
+    private Connection replica2Connection;
+
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-1", replica1);
+        replicas.put("replica-2", replica2);
+        routing = new ReplicaRoutingDataSource(primary, replicas, 60000, 0);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        lenient().when(primary.getConnection()).thenReturn(primaryConnection);
+        lenient().when(replica1.getConnection()).thenReturn(replica1Connection);
+        lenient().when(replica2.getConnection()).thenReturn(replica2Connection);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    private void signIn(String user) {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, List.of()));
+    }
+
+    @Test
+    void getConnection_SpreadsReadsOverReplicas() throws SQLException {
+        assertSame(replica1Connection, routing.getConnection());
+        assertSame(replica2Connection, routing.getConnection());
+        assertSame(replica1Connection, routing.getConnection());
+        verify(primary, never()).getConnection();
+    }
+
+    @Test
+    void getConnection_ReplicaFails_FallsBackAndSkipsItUntilHealthy() throws SQLException {
+        when(replica1.getConnection()).thenThrow(new SQLException("Connection refused"))
+                .thenReturn(replica1Connection);
+
+        assertSame(primaryConnection, routing.getConnection());
+        // replica-1 is out of rotation now
+        assertSame(replica2Connection, routing.getConnection());
+        assertSame(replica2Connection, routing.getConnection());
+
+        when(replica1Connection.isValid(anyInt())).thenReturn(true);
+        when(replica2Connection.isValid(anyInt())).thenReturn(true);
+        routing.checkReplicas();
+
+        assertEquals(1L, routing.getStats().get("fallbacks"));
+        assertTrue(List.of(routing.getConnection(), routing.getConnection()).contains(replica1Connection));
+    }
+
+    @Test
+    void getConnection_AfterOwnWrite_ReadsFromPrimary() throws SQLException {
+        signIn("writer@example.com");
+        routing.recordWrite();
+
+        assertSame(primaryConnection, routing.getConnection());
+
+        signIn("reader@example.com");
+        assertNotSame(primaryConnection, routing.getConnection());
+    }
+
+    @Test
+    void getConnection_ReadWriteTransaction_ReadsFromPrimary() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        assertSame(primaryConnection, routing.getConnection());
+
+        // Any read-only transaction may use a replica, whoever started it
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertSame(replica1Connection, routing.getConnection());
+    }
+
+    @Test
+    void getReplicaDataSources_ReturnsPoolsInConfiguredOrder() {
+        assertEquals(List.of(replica1, replica2), routing.getReplicaDataSources());
+    }
+}
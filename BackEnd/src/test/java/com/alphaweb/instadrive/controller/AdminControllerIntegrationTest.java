@@ -0,0 +1,96 @@
+package com.alphaweb.instadrive.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Date;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks that the admin payment endpoints are closed to everyone but admins
+ * Skipped when Docker is not available
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@Testcontainers(disabledWithoutDocker = true)
+class AdminControllerIntegrationTest {
+
+    private static final String BATCH_BY_CAR = "{\"carId\": 77, \"cancelBookings\": true}";
+
+    @Container
+    @ServiceConnection
+    static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void batchRefund_Anonymous_Forbidden() throws Exception {
+        insertBooking(9101L);
+
+        mockMvc.perform(post("/api/admin/payments/refunds/batch")
+                        .contentType(MediaType.APPLICATION_JSON).content(BATCH_BY_CAR))
+                .andExpect(status().isForbidden());
+
+        assertEquals("CONFIRMED", bookingStatus(9101L));
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    void batchRefund_NonAdmin_Forbidden() throws Exception {
+        insertBooking(9102L);
+
+        mockMvc.perform(post("/api/admin/payments/refunds/batch")
+                        .contentType(MediaType.APPLICATION_JSON).content(BATCH_BY_CAR))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/admin/payments/refunds/batch/some-job")).andExpect(status().isForbidden());
+
+        assertEquals("CONFIRMED", bookingStatus(9102L));
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    void reconciliation_NonAdmin_Forbidden() throws Exception {
+        mockMvc.perform(post("/api/admin/reconciliation/runs")).andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/admin/reconciliation/runs")).andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/admin/reconciliation/runs/1/discrepancies")).andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void getBatchRefund_Admin_Allowed() throws Exception {
+        mockMvc.perform(get("/api/admin/payments/refunds/batch/unknown-job")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/admin/reconciliation/runs")).andExpect(status().isOk());
+    }
+
+    private void insertBooking(long id) {
+        LocalDate start = LocalDate.now().plusDays(1);
+        jdbcTemplate.update("INSERT INTO booking (id, reference_id, car_id, user_id, start_date, end_date, "
+                + "total_amount, status) VALUES (?, ?, 77, 1, ?, ?, 300.0, 'CONFIRMED')",
+                id, "BK" + id, Date.valueOf(start), Date.valueOf(start.plusDays(3)));
+    }
+
+    private String bookingStatus(long id) {
+        return jdbcTemplate.queryForObject("SELECT status FROM booking WHERE id = ?", String.class, id);
+    }
+}
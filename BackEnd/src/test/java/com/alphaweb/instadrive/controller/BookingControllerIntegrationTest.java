@@ -0,0 +1,89 @@
+package com.alphaweb.instadrive.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Date;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Calls the booking endpoints against MySQL and checks the events they leave in the outbox
+ * Skipped when Docker is not available
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@Testcontainers(disabledWithoutDocker = true)
+class BookingControllerIntegrationTest {
+
+    @Container
+    @ServiceConnection
+    static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void cancelBooking_ConfirmedBooking_RecordsCancelledEvent() throws Exception {
+        insertBooking(9001L);
+
+        mockMvc.perform(delete("/api/bookings/9001")).andExpect(status().isOk());
+
+        assertEquals("CANCELLED", bookingStatus(9001L));
+        assertEquals(1, outboxEvents("BOOKING_CANCELLED", 9001L));
+    }
+
+    @Test
+    void returnCar_ConfirmedBooking_RecordsCompletedEvent() throws Exception {
+        insertBooking(9002L);
+
+        mockMvc.perform(put("/api/bookings/9002/return")).andExpect(status().isOk());
+
+        assertEquals("COMPLETED", bookingStatus(9002L));
+        assertEquals(1, outboxEvents("BOOKING_COMPLETED", 9002L));
+    }
+
+    @Test
+    void cancelBooking_AlreadyCancelled_RecordsNothing() throws Exception {
+        insertBooking(9003L);
+        jdbcTemplate.update("UPDATE booking SET status = 'CANCELLED' WHERE id = 9003");
+
+        mockMvc.perform(delete("/api/bookings/9003")).andExpect(status().isBadRequest());
+
+        assertEquals(0, outboxEvents("BOOKING_CANCELLED", 9003L));
+    }
+
+    private void insertBooking(long id) {
+        LocalDate start = LocalDate.now().plusDays(1);
+        jdbcTemplate.update("INSERT INTO booking (id, reference_id, car_id, user_id, start_date, end_date, "
+                + "total_amount, status) VALUES (?, ?, 1, 1, ?, ?, 300.0, 'CONFIRMED')",
+                id, "BK" + id, Date.valueOf(start), Date.valueOf(start.plusDays(3)));
+    }
+
+    private String bookingStatus(long id) {
+        return jdbcTemplate.queryForObject("SELECT status FROM booking WHERE id = ?", String.class, id);
+    }
+
+    // The relay may already have delivered the event, so its status is not checked
+    private int outboxEvents(String eventType, long bookingId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox_event WHERE event_type = ? "
+                + "AND aggregate_type = 'Booking' AND aggregate_id = ?", Integer.class, eventType, bookingId);
+    }
+}
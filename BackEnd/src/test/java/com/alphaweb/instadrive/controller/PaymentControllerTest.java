@@ -3,7 +3,7 @@ package com.alphaweb.instadrive.controller;
 import com.alphaweb.instadrive.dto.CardPaymentRequest;
 import com.alphaweb.instadrive.dto.PaymentResponse;
 import com.alphaweb.instadrive.dto.UpiPaymentRequest;
-import com.alphaweb.instadrive.model.Booking;
+import com.alphaweb.instadrive.exception.PaymentException;
 import com.alphaweb.instadrive.service.BookingService;
 import com.alphaweb.instadrive.service.PaymentService;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,12 +14,12 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
-import java.time.LocalDate;
-import java.util.Optional;
-
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 class PaymentControllerTest {
@@ -46,16 +46,10 @@ class PaymentControllerTest {
         request.setUpiId("test@upi");
         request.setAmount(100.0);
 
-        Booking booking = new Booking();
-        booking.setId(bookingId);
-        booking.setUserId(2L);
-        booking.setTotalAmount(100.0);
-
         PaymentResponse expectedResponse = new PaymentResponse();
         expectedResponse.setStatus("Success");
         expectedResponse.setTransactionId("UPI-12345678");
 
-        when(bookingService.getBookingById(bookingId)).thenReturn(Optional.of(booking));
         when(paymentService.processUpiPayment(any(UpiPaymentRequest.class))).thenReturn(expectedResponse);
 
         // Act
@@ -64,6 +58,9 @@ class PaymentControllerTest {
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(expectedResponse, response.getBody());
+        // The booking is loaded by the service, in its own transaction
+        verify(paymentService).processUpiPayment(argThat(sent -> bookingId.equals(sent.getBookingId())));
+        verifyNoInteractions(bookingService);
     }
 
     @Test
@@ -73,7 +70,8 @@ class PaymentControllerTest {
         UpiPaymentRequest request = new UpiPaymentRequest();
         request.setUpiId("test@upi");
 
-        when(bookingService.getBookingById(bookingId)).thenReturn(Optional.empty());
+        when(paymentService.processUpiPayment(any(UpiPaymentRequest.class)))
+                .thenThrow(new PaymentException("Booking not found with ID: " + bookingId));
 
         // Act
         ResponseEntity<?> response = paymentController.processBookingUpiPayment(bookingId, request);
@@ -93,16 +91,10 @@ class PaymentControllerTest {
         request.setCardCvc("123");
         request.setAmount(100.0);
 
-        Booking booking = new Booking();
-        booking.setId(bookingId);
-        booking.setUserId(2L);
-        booking.setTotalAmount(100.0);
-
         PaymentResponse expectedResponse = new PaymentResponse();
         expectedResponse.setStatus("Success");
         expectedResponse.setTransactionId("CARD-12345678");
 
-        when(bookingService.getBookingById(bookingId)).thenReturn(Optional.of(booking));
         when(paymentService.processCardPayment(any(CardPaymentRequest.class))).thenReturn(expectedResponse);
 
         // Act
@@ -112,4 +104,18 @@ class PaymentControllerTest {
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(expectedResponse, response.getBody());
     }
+
+    @Test
+    void processBookingCardPayment_NoCardNumber_BadRequest() {
+        // Arrange
+        when(paymentService.processCardPayment(any(CardPaymentRequest.class)))
+                .thenThrow(new PaymentException("Card number is required"));
+
+        // Act
+        ResponseEntity<?> response = paymentController.processBookingCardPayment(1L, new CardPaymentRequest());
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertTrue(response.getBody().toString().contains("Card number is required"));
+    }
 }
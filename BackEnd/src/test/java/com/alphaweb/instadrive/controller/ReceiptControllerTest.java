@@ -0,0 +1,123 @@
+package com.alphaweb.instadrive.controller;
+
+import com.alphaweb.instadrive.model.Receipt;
+import com.alphaweb.instadrive.model.User;
+import com.alphaweb.instadrive.service.FileServingService;
+import com.alphaweb.instadrive.service.HotImageCache;
+import com.alphaweb.instadrive.service.ReceiptArchiveService;
+import com.alphaweb.instadrive.service.ReceiptQrService;
+import com.alphaweb.instadrive.service.ReceiptService;
+import com.alphaweb.instadrive.service.ReceiptTokenService;
+import com.alphaweb.instadrive.service.StatementService;
+import com.alphaweb.instadrive.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+class ReceiptControllerTest {
+
+    @Mock
+    private ReceiptService receiptService;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private ReceiptArchiveService receiptArchiveService;
+
+    @Mock
+    private StatementService statementService;
+
+    private ReceiptController receiptController;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReceiptTokenService receiptTokenService = new ReceiptTokenService("test-secret");
+        receiptController = new ReceiptController(receiptService,
+                new FileServingService(100, 1000, new HotImageCache(1024, 64)), userService,
+                new ReceiptQrService(receiptTokenService, 10, 4), receiptTokenService,
+                receiptArchiveService, statementService);
+
+        Receipt receipt = new Receipt();
+        receipt.setId(1L);
+        receipt.setUserId(2L);
+        receipt.setBookingId(3L);
+        receipt.setTransactionId("UPI-1A2B3C4D");
+        receipt.setAmount(150.0);
+        receipt.setTransactionDate(LocalDateTime.of(2025, 3, 14, 10, 30));
+        when(receiptService.getReceiptById(1L)).thenReturn(Optional.of(receipt));
+
+        User user = new User();
+        user.setId(2L);
+        when(userService.getCurrentUserEmail()).thenReturn("user@example.com");
+        when(userService.getUserByEmail("user@example.com")).thenReturn(Optional.of(user));
+    }
+
+    @Test
+    void getReceiptQrCode_OwnReceipt_ServesPngTaggedWithItsHash() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        ResponseEntity<?> result = receiptController.getReceiptQrCode(1L,
+                new MockHttpServletRequest("GET", "/api/receipts/1/qr"), response);
+
+        assertNull(result);
+        assertEquals(200, response.getStatus());
+        assertEquals("image/png", response.getContentType());
+        byte[] png = response.getContentAsByteArray();
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(png));
+        assertEquals("\"" + sha256 + "\"", response.getHeader("ETag"));
+        // Revalidated once stale, since a new signing key changes the code
+        assertFalse(response.getHeader("Cache-Control").contains("immutable"));
+    }
+
+    @Test
+    void getReceiptQrCode_MatchingIfNoneMatch_ReturnsNotModified() {
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        receiptController.getReceiptQrCode(1L, new MockHttpServletRequest("GET", "/api/receipts/1/qr"), first);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/receipts/1/qr");
+        request.addHeader("If-None-Match", first.getHeader("ETag"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        receiptController.getReceiptQrCode(1L, request, response);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void getReceiptQrCode_OtherUsersReceipt_Forbidden() {
+        User other = new User();
+        other.setId(9L);
+        when(userService.getUserByEmail("user@example.com")).thenReturn(Optional.of(other));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        ResponseEntity<?> result = receiptController.getReceiptQrCode(1L,
+                new MockHttpServletRequest("GET", "/api/receipts/1/qr"), response);
+
+        assertEquals(403, result.getStatusCode().value());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void getReceiptQrCode_UnknownReceipt_NotFound() {
+        when(receiptService.getReceiptById(5L)).thenReturn(Optional.empty());
+
+        ResponseEntity<?> result = receiptController.getReceiptQrCode(5L,
+                new MockHttpServletRequest("GET", "/api/receipts/5/qr"), new MockHttpServletResponse());
+
+        assertEquals(404, result.getStatusCode().value());
+    }
+}
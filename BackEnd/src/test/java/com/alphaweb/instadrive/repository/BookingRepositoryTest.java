@@ -0,0 +1,134 @@
+package com.alphaweb.instadrive.repository;
+
+import com.alphaweb.instadrive.config.FlywayConfig;
+import com.alphaweb.instadrive.dto.BookingStatusTotal;
+import com.alphaweb.instadrive.dto.BookingSummaryDTO;
+import com.alphaweb.instadrive.dto.PaymentContext;
+import com.alphaweb.instadrive.dto.ReconciliationBookingRow;
+import com.alphaweb.instadrive.model.Car;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the hand-written booking queries against MySQL
+ * Skipped when Docker is not available
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(FlywayConfig.class)
+@Testcontainers(disabledWithoutDocker = true)
+class BookingRepositoryTest {
+
+    private static final LocalDate START = LocalDate.of(2025, 5, 3);
+    private static final LocalDate END = LocalDate.of(2025, 5, 6);
+
+    @Container
+    @ServiceConnection
+    static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void findPaymentContext_UserAndCarExist_LoadsAllThree() {
+        Car car = new Car();
+        car.setBrand("Toyota");
+        car.setRegistrationNumber("KA01AB1234");
+        car = carRepository.saveAndFlush(car);
+        jdbcTemplate.update("INSERT INTO users (id, user_id, name, email, role) VALUES (3, 'U3', 'Asha', 'asha@example.com', 'USER')");
+        insertBookings("(1, 'REF1', " + car.getId() + ", 3, ?, ?, 300.0, 'CONFIRMED')");
+
+        PaymentContext context = bookingRepository.findPaymentContext(1L).orElseThrow();
+
+        assertEquals("REF1", context.getBooking().getReferenceId());
+        assertEquals("asha@example.com", context.getUser().getEmail());
+        assertEquals("KA01AB1234", context.getCar().getRegistrationNumber());
+        assertNull(context.getPayment());
+    }
+
+    @Test
+    void findPaymentContext_UserAndCarDeleted_LoadsBookingAlone() {
+        insertBookings("(2, 'REF2', 999, 999, ?, ?, 300.0, 'CONFIRMED')");
+
+        PaymentContext context = bookingRepository.findPaymentContext(2L).orElseThrow();
+
+        assertEquals("REF2", context.getBooking().getReferenceId());
+        assertNull(context.getUser());
+        assertNull(context.getCar());
+        assertTrue(bookingRepository.findPaymentContext(3L).isEmpty());
+    }
+
+    @Test
+    void findReconciliationChunk_SeveralBookings_ReturnsNextChunkInIdOrder() {
+        insertBookings("(11, 'REF11', 5, 3, ?, ?, 100.0, 'CONFIRMED')",
+                "(12, 'REF12', 5, 3, ?, ?, 200.0, 'CANCELLED')",
+                "(13, 'REF13', 5, 3, ?, ?, 300.0, 'COMPLETED')");
+
+        List<ReconciliationBookingRow> rows = bookingRepository.findReconciliationChunk(11L, PageRequest.of(0, 1));
+
+        assertEquals(List.of(new ReconciliationBookingRow(12L, 200.0, "CANCELLED")), rows);
+    }
+
+    @Test
+    void findSummariesBefore_SeveralBookings_MapsEveryColumnNewestFirst() {
+        insertBookings("(21, 'REF21', 5, 3, ?, ?, 100.0, 'CONFIRMED')",
+                "(22, 'REF22', 6, 4, ?, ?, 200.0, 'COMPLETED')",
+                "(23, 'REF23', 5, 3, ?, ?, 300.0, 'CONFIRMED')");
+
+        List<BookingSummaryDTO> bookings = bookingRepository.findSummariesBefore(23L, PageRequest.of(0, 10));
+
+        assertEquals(List.of(22L, 21L), bookings.stream().map(BookingSummaryDTO::getId).toList());
+        assertEquals(new BookingSummaryDTO(22L, "REF22", 6L, 4L, START, END, 200.0, "COMPLETED"), bookings.get(0));
+    }
+
+    @Test
+    void sumByStatus_BookingsInSeveralStatuses_TotalsEachStatus() {
+        insertBookings("(31, 'REF31', 5, 3, ?, ?, 100.0, 'CONFIRMED')",
+                "(32, 'REF32', 5, 3, ?, ?, 150.0, 'CONFIRMED')",
+                "(33, 'REF33', 5, 3, ?, ?, 70.0, 'CANCELLED')");
+
+        Map<String, BookingStatusTotal> totals = bookingRepository.sumByStatus().stream()
+                .collect(Collectors.toMap(BookingStatusTotal::getStatus, Function.identity()));
+
+        assertEquals(new BookingStatusTotal("CONFIRMED", 2, 250.0), totals.get("CONFIRMED"));
+        assertEquals(new BookingStatusTotal("CANCELLED", 1, 70.0), totals.get("CANCELLED"));
+        assertEquals(2, totals.size());
+    }
+
+    @Test
+    void sumByStatus_NoBookings_ReturnsNoTotals() {
+        assertTrue(bookingRepository.sumByStatus().isEmpty());
+    }
+
+    // Each row is "(id, reference, car, user, ?, ?, amount, status)", booked from START to END
+    private void insertBookings(String... rows) {
+        for (String row : rows) {
+            jdbcTemplate.update("INSERT INTO booking (id, reference_id, car_id, user_id, start_date, end_date, "
+                    + "total_amount, status) VALUES " + row, Date.valueOf(START), Date.valueOf(END));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.alphaweb.instadrive.repository;
+
+import com.alphaweb.instadrive.config.FlywayConfig;
+import com.alphaweb.instadrive.model.Booking;
+import com.alphaweb.instadrive.model.Payment;
+import com.alphaweb.instadrive.model.PaymentStatus;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bulk insert throughput of bookings and payments, before and after the switch to pooled table IDs
+ * "Before" persists copies of the entities mapped with IDENTITY keys, which Hibernate cannot batch;
+ * "after" saves the real entities, which are batched and rewritten into multi-row INSERTs by the driver.
+ * Run with -Dbenchmark=true; needs Docker
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(FlywayConfig.class)
+@Testcontainers(disabledWithoutDocker = true)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class BulkInsertBenchmarkTest {
+
+    private static final int ROWS = 20000;
+    private static final int ROUNDS = 3;
+
+    @Container
+    @ServiceConnection
+    static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    /**
+     * A booking with the IDENTITY key all entities used before
+     */
+    @Entity
+    @Table(name = "benchmark_identity_booking")
+    @Data
+    static class IdentityBooking {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        private Long id;
+        private String referenceId;
+        private Long carId;
+        private Long userId;
+        private LocalDate startDate;
+        private LocalDate endDate;
+        private double totalAmount;
+        private String status;
+    }
+
+    /**
+     * A payment with the IDENTITY key all entities used before
+     */
+    @Entity
+    @Table(name = "benchmark_identity_payment")
+    @Data
+    static class IdentityPayment {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        private Long id;
+        private String paymentMode;
+        private String status;
+        private double amount;
+        private String transactionId;
+        private LocalDateTime timestamp;
+        private Long bookingId;
+        private Long userId;
+    }
+
+    @Test
+    void bulkInsert_Bookings() {
+        double before = measure("bookings, IDENTITY", i -> {
+            IdentityBooking booking = new IdentityBooking();
+            booking.setReferenceId("BK" + i);
+            booking.setCarId((long) i % 200);
+            booking.setUserId((long) i % 600);
+            booking.setStartDate(LocalDate.of(2025, 1, 1).plusDays(i % 365));
+            booking.setEndDate(booking.getStartDate().plusDays(3));
+            booking.setTotalAmount(300.0);
+            booking.setStatus("CONFIRMED");
+            return booking;
+        });
+        double after = measure("bookings, pooled-lo", i -> {
+            Booking booking = new Booking();
+            booking.setReferenceId("BK" + i);
+            booking.setCarId((long) i % 200);
+            booking.setUserId((long) i % 600);
+            booking.setStartDate(LocalDate.of(2025, 1, 1).plusDays(i % 365));
+            booking.setEndDate(booking.getStartDate().plusDays(3));
+            booking.setTotalAmount(300.0);
+            booking.setStatus("CONFIRMED");
+            return booking;
+        });
+
+        System.out.printf("Bookings: %.0f rows/s before, %.0f rows/s after (%.1fx)%n", before, after, after / before);
+        assertTrue(bookingRepository.count() >= ROWS);
+    }
+
+    @Test
+    void bulkInsert_Payments() {
+        double before = measure("payments, IDENTITY", i -> {
+            IdentityPayment payment = new IdentityPayment();
+            payment.setPaymentMode("UPI");
+            payment.setStatus("SUCCESS");
+            payment.setAmount(300.0);
+            payment.setTransactionId("BENCH-ID-" + i + "-" + System.nanoTime());
+            payment.setTimestamp(LocalDateTime.now());
+            payment.setBookingId((long) i);
+            payment.setUserId((long) i % 600);
+            return payment;
+        });
+        double after = measure("payments, pooled-lo", i -> {
+            Payment payment = new Payment();
+            payment.setPaymentMode("UPI");
+            payment.setStatus(PaymentStatus.SUCCESS);
+            payment.setAmount(300.0);
+            payment.setTransactionId("BENCH-" + i + "-" + System.nanoTime());
+            payment.setTimestamp(LocalDateTime.now());
+            payment.setBookingId((long) i);
+            payment.setUserId((long) i % 600);
+            return payment;
+        });
+
+        System.out.printf("Payments: %.0f rows/s before, %.0f rows/s after (%.1fx)%n", before, after, after / before);
+        assertTrue(paymentRepository.count() >= ROWS);
+    }
+
+    /**
+     * Persist ROWS entities per round in one transaction, flushing every batch, and report the best round
+     *
+     * @return The best throughput in rows per second
+     */
+    private double measure(String label, IntFunction<Object> factory) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        double best = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Object> pending = new ArrayList<>();
+                for (int i = 0; i < ROWS; i++) {
+                    pending.add(factory.apply(i));
+                    if (pending.size() == 500) {
+                        flush(pending);
+                    }
+                }
+                flush(pending);
+            });
+            double rowsPerSecond = ROWS / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("%s, round %d: %.0f rows/s%n", label, round + 1, rowsPerSecond);
+            best = Math.max(best, rowsPerSecond);
+        }
+        return best;
+    }
+
+    private void flush(List<Object> pending) {
+        pending.forEach(entityManager::persist);
+        entityManager.flush();
+        entityManager.clear();
+        pending.clear();
+    }
+}
@@ -0,0 +1,70 @@
+package com.alphaweb.instadrive.repository;
+
+import com.alphaweb.instadrive.config.FlywayConfig;
+import com.alphaweb.instadrive.dto.CarSummaryDTO;
+import com.alphaweb.instadrive.model.Car;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the car list query against MySQL
+ * Skipped when Docker is not available
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(FlywayConfig.class)
+@Testcontainers(disabledWithoutDocker = true)
+class CarRepositoryTest {
+
+    @Container
+    @ServiceConnection
+    static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Test
+    void findAllSummaries_SavedCars_MapsEveryColumnInIdOrder() {
+        Car first = carRepository.save(car("Toyota", "Corolla", "KA01AB1234"));
+        Car second = carRepository.save(car("Honda", "City", "KA02CD5678"));
+
+        List<CarSummaryDTO> cars = carRepository.findAllSummaries();
+
+        assertEquals(List.of(first.getId(), second.getId()), cars.stream().map(CarSummaryDTO::getId).toList());
+        assertEquals(new CarSummaryDTO(first.getId(), "Toyota", "Corolla", "PETROL", "KA01AB1234", 2500.0,
+                "MANUAL", "White", 2022, "Compact sedan", "http://localhost:8080/api/files/KA01AB1234.png"), cars.get(0));
+    }
+
+    @Test
+    void findAllSummaries_NoCars_ReturnsNothing() {
+        assertTrue(carRepository.findAllSummaries().isEmpty());
+    }
+
+    private static Car car(String brand, String model, String registrationNumber) {
+        Car car = new Car();
+        car.setBrand(brand);
+        car.setModel(model);
+        car.setFuelType("PETROL");
+        car.setRegistrationNumber(registrationNumber);
+        car.setPricePerDay(2500.0);
+        car.setTransmission("MANUAL");
+        car.setColor("White");
+        car.setYear(2022);
+        car.setDescription("Compact sedan");
+        car.setImageUrl("http://localhost:8080/api/files/" + registrationNumber + ".png");
+        // Features are left out of the summary
+        car.setSunroof(true);
+        return car;
+    }
+}
@@ -0,0 +1,215 @@
+package com.alphaweb.instadrive.repository;
+
+import com.alphaweb.instadrive.config.FlywayConfig;
+import com.alphaweb.instadrive.dto.PaymentStatusTotal;
+import com.alphaweb.instadrive.dto.PaymentSummaryDTO;
+import com.alphaweb.instadrive.dto.ReconciliationPaymentRow;
+import com.alphaweb.instadrive.dto.StatementLineDTO;
+import com.alphaweb.instadrive.model.Payment;
+import com.alphaweb.instadrive.model.PaymentStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the hand-written payment queries against MySQL
+ * Skipped when Docker is not available
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(FlywayConfig.class)
+@Testcontainers(disabledWithoutDocker = true)
+class PaymentRepositoryTest {
+
+    @Container
+    @ServiceConnection
+    static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void findStatementLines_BookingWithTwoReceipts_ListsEachPaymentOnce() {
+        Timestamp deposit = Timestamp.valueOf(LocalDateTime.of(2025, 5, 3, 10, 0));
+        Timestamp balance = Timestamp.valueOf(LocalDateTime.of(2025, 5, 6, 10, 0));
+        // One booking paid in two parts, each with its own receipt
+        jdbcTemplate.update("INSERT INTO payment (id, payment_mode, status, amount, transaction_id, timestamp, "
+                + "booking_id, user_id) VALUES (1, 'UPI', 'SUCCESS', 100.0, 'TX1', ?, 7, 3), "
+                + "(2, 'UPI', 'SUCCESS', 200.0, 'TX2', ?, 7, 3)", deposit, balance);
+        jdbcTemplate.update("INSERT INTO receipt (id, booking_id, user_id, car_id, transaction_id, transaction_date, "
+                + "amount, payment_method, car_brand, car_model, car_registration_number) VALUES "
+                + "(1, 7, 3, 5, 'TX1', ?, 100.0, 'UPI', 'Toyota', 'Corolla', 'KA01AB1234'), "
+                + "(2, 7, 3, 5, 'TX2', ?, 200.0, 'UPI', 'Toyota', 'Corolla', 'KA01AB1234')", deposit, balance);
+
+        List<StatementLineDTO> lines = paymentRepository.findStatementLines(3L,
+                LocalDateTime.of(2025, 5, 1, 0, 0), LocalDateTime.of(2025, 6, 1, 0, 0));
+
+        assertEquals(List.of("TX1", "TX2"), lines.stream().map(StatementLineDTO::getTransactionId).toList());
+        assertEquals("Toyota", lines.get(0).getCarBrand());
+        assertEquals("Toyota", lines.get(1).getCarBrand());
+    }
+
+    @Test
+    void findStatementLines_PaymentWithoutReceipt_KeepsLine() {
+        Timestamp paidAt = Timestamp.valueOf(LocalDateTime.of(2025, 5, 3, 10, 0));
+        jdbcTemplate.update("INSERT INTO payment (id, payment_mode, status, amount, transaction_id, timestamp, "
+                + "booking_id, user_id) VALUES (3, 'CARD', 'FAILED', 100.0, 'TX3', ?, 8, 4)", paidAt);
+
+        List<StatementLineDTO> lines = paymentRepository.findStatementLines(4L,
+                LocalDateTime.of(2025, 5, 1, 0, 0), LocalDateTime.of(2025, 6, 1, 0, 0));
+
+        assertEquals(1, lines.size());
+        assertNull(lines.get(0).getCarBrand());
+    }
+
+    @Test
+    void sumByStatusForBooking_PaymentsInSeveralStatuses_TotalsEachStatus() {
+        jdbcTemplate.update("INSERT INTO payment (id, payment_mode, status, amount, transaction_id, timestamp, "
+                + "booking_id, user_id) VALUES (41, 'UPI', 'SUCCESS', 100.0, 'TX41', NOW(), 31, 6), "
+                + "(42, 'UPI', 'SUCCESS', 50.0, 'TX42', NOW(), 31, 6), "
+                + "(43, 'CARD', 'FAILED', 70.0, 'TX43', NOW(), 31, 6), "
+                + "(44, 'UPI', 'SUCCESS', 999.0, 'TX44', NOW(), 32, 6)");
+
+        Map<PaymentStatus, PaymentStatusTotal> totals = byStatus(paymentRepository.sumByStatusForBooking(31L));
+
+        assertEquals(Set.of(PaymentStatus.SUCCESS, PaymentStatus.FAILED), totals.keySet());
+        assertEquals(2, totals.get(PaymentStatus.SUCCESS).getCount());
+        assertEquals(150.0, totals.get(PaymentStatus.SUCCESS).getTotal(), 0.001);
+        assertEquals(1, totals.get(PaymentStatus.FAILED).getCount());
+        assertEquals(70.0, totals.get(PaymentStatus.FAILED).getTotal(), 0.001);
+    }
+
+    @Test
+    void sumByStatusForBooking_RefundedBooking_TotalsAbsoluteAmounts() {
+        // A refund marks the payment REFUNDED and adds a negative REFUNDED row
+        jdbcTemplate.update("INSERT INTO payment (id, payment_mode, status, amount, transaction_id, timestamp, "
+                + "booking_id, user_id) VALUES (45, 'UPI', 'REFUNDED', 100.0, 'TX45', NOW(), 33, 6), "
+                + "(46, 'UPI', 'REFUNDED', -100.0, 'REFUND46', NOW(), 33, 6)");
+
+        Map<PaymentStatus, PaymentStatusTotal> totals = byStatus(paymentRepository.sumByStatusForBooking(33L));
+
+        assertEquals(Set.of(PaymentStatus.REFUNDED), totals.keySet());
+        assertEquals(2, totals.get(PaymentStatus.REFUNDED).getCount());
+        assertEquals(200.0, totals.get(PaymentStatus.REFUNDED).getTotal(), 0.001);
+    }
+
+    @Test
+    void sumByStatusForBooking_NoPayments_ReturnsNoTotals() {
+        assertTrue(paymentRepository.sumByStatusForBooking(34L).isEmpty());
+    }
+
+    @Test
+    void findSummariesBefore_SeveralPayments_MapsEveryColumnNewestFirst() {
+        Timestamp paidAt = Timestamp.valueOf(LocalDateTime.of(2025, 5, 3, 10, 0));
+        jdbcTemplate.update("INSERT INTO payment (id, payment_mode, status, amount, transaction_id, timestamp, "
+                + "booking_id, user_id, upi_id) VALUES (51, 'UPI', 'SUCCESS', 100.0, 'TX51', ?, 35, 7, 'asha@upi'), "
+                + "(52, 'CREDIT_CARD', 'FAILED', 200.0, 'TX52', ?, 36, 7, NULL), "
+                + "(53, 'UPI', 'SUCCESS', 300.0, 'TX53', ?, 37, 7, 'asha@upi')", paidAt, paidAt, paidAt);
+
+        List<PaymentSummaryDTO> payments = paymentRepository.findSummariesBefore(53L, PageRequest.of(0, 10));
+
+        assertEquals(List.of(52L, 51L), payments.stream().map(PaymentSummaryDTO::getId).toList());
+        assertEquals(new PaymentSummaryDTO(52L, "CREDIT_CARD", PaymentStatus.FAILED, 200.0, "TX52",
+                paidAt.toLocalDateTime(), 36L, 7L), payments.get(0));
+    }
+
+    @Test
+    void findReconciliationChunks_MixedPayments_WalkEachOrder() {
+        jdbcTemplate.update("INSERT INTO payment (id, payment_mode, status, amount, transaction_id, timestamp, "
+                + "booking_id, user_id) VALUES (61, 'UPI', 'SUCCESS', 100.0, 'TXB', NOW(), 902, 8), "
+                + "(62, 'UPI', 'FAILED', 100.0, 'TXA', NOW(), 901, 8), "
+                + "(63, 'UPI', 'SUCCESS', 100.0, 'TXA', NOW(), 901, 8), "
+                + "(64, 'CARD', 'REFUNDED', -50.0, 'TXC', NOW(), NULL, 8)");
+
+        assertEquals(List.of(new ReconciliationPaymentRow(63L, 901L, "TXA", PaymentStatus.SUCCESS, 100.0),
+                        new ReconciliationPaymentRow(61L, 902L, "TXB", PaymentStatus.SUCCESS, 100.0)),
+                paymentRepository.findReconciliationChunkByBooking(901L, 62L, PageRequest.of(0, 2)));
+        assertEquals(List.of(new ReconciliationPaymentRow(64L, null, "TXC", PaymentStatus.REFUNDED, -50.0)),
+                paymentRepository.findReconciliationChunkWithoutBooking(60L, PageRequest.of(0, 10)));
+        assertEquals(List.of(63L, 61L, 64L), paymentRepository
+                .findReconciliationChunkByTransaction("TXA", 62L, PageRequest.of(0, 10))
+                .stream().map(ReconciliationPaymentRow::getId).toList());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void lockByBookingIds_OverlappingBatches_SecondWaitsForFirst() throws Exception {
+        // Committed up front so both batches see the rows
+        jdbcTemplate.update("INSERT INTO payment (id, payment_mode, status, amount, transaction_id, timestamp, "
+                + "booking_id, user_id) VALUES (11, 'UPI', 'SUCCESS', 100.0, 'TX11', NOW(), 21, 5), "
+                + "(12, 'UPI', 'SUCCESS', 100.0, 'TX12', NOW(), 22, 5), "
+                + "(13, 'UPI', 'FAILED', 100.0, 'TX13', NOW(), 21, 5)");
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<PaymentStatus> statuses = List.of(PaymentStatus.SUCCESS, PaymentStatus.REFUNDED);
+        CountDownLatch firstLocked = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // The batches name the same bookings in opposite orders
+            Future<Long> first = executor.submit(() -> transactionTemplate.execute(status -> {
+                List<Payment> locked = paymentRepository.lockByBookingIds(List.of(22L, 21L), statuses);
+                assertEquals(List.of(11L, 12L), locked.stream().map(Payment::getId).toList());
+                firstLocked.countDown();
+                sleep(500);
+                return System.nanoTime();
+            }));
+            assertTrue(firstLocked.await(10, TimeUnit.SECONDS));
+            Future<Long> second = executor.submit(() -> transactionTemplate.execute(status -> {
+                List<Payment> locked = paymentRepository.lockByBookingIds(List.of(21L, 22L), statuses);
+                assertEquals(List.of(11L, 12L), locked.stream().map(Payment::getId).toList());
+                return System.nanoTime();
+            }));
+
+            long firstDone = first.get(20, TimeUnit.SECONDS);
+            long secondLocked = second.get(20, TimeUnit.SECONDS);
+            assertTrue(secondLocked > firstDone);
+        } finally {
+            executor.shutdownNow();
+            jdbcTemplate.update("DELETE FROM payment WHERE id IN (11, 12, 13)");
+        }
+    }
+
+    private static Map<PaymentStatus, PaymentStatusTotal> byStatus(List<PaymentStatusTotal> totals) {
+        return totals.stream().collect(Collectors.toMap(PaymentStatusTotal::getStatus, Function.identity()));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
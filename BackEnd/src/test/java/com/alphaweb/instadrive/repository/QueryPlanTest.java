@@ -0,0 +1,180 @@
+package com.alphaweb.instadrive.repository;
+
+import com.alphaweb.instadrive.config.FlywayConfig;
+import com.alphaweb.instadrive.model.PaymentStatus;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the EXPLAIN plans of the hot queries against a seeded MySQL database
+ * Each repository method is run and the SQL Hibernate prepared for it is captured and explained as it is.
+ * Skipped when Docker is not available
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.alphaweb.instadrive.repository.QueryPlanTest$CapturingInspector")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(FlywayConfig.class)
+@Testcontainers(disabledWithoutDocker = true)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryPlanTest {
+
+    private static final int BOOKINGS = 6000;
+    private static final LocalDate TODAY = LocalDate.of(2025, 6, 1);
+
+    @Container
+    @ServiceConnection
+    static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private ReceiptRepository receiptRepository;
+
+    @BeforeAll
+    void seed() {
+        List<Object[]> bookings = new ArrayList<>();
+        List<Object[]> payments = new ArrayList<>();
+        List<Object[]> receipts = new ArrayList<>();
+        for (int i = 1; i <= BOOKINGS; i++) {
+            LocalDate start = TODAY.minusDays(400).plusDays(i % 430);
+            // Most bookings are closed; the open ones are the few the expiry job looks at
+            String status = i % 10 == 0 ? "CONFIRMED" : i % 7 == 0 ? "CANCELLED" : "COMPLETED";
+            bookings.add(new Object[]{(long) i, "BK" + i, (long) (i % 200) + 1, (long) (i % 600) + 1,
+                    Date.valueOf(start), Date.valueOf(start.plusDays(3)), 300.0, status});
+
+            Timestamp paidAt = Timestamp.valueOf(start.atStartOfDay());
+            String transactionId = "TX" + i;
+            payments.add(new Object[]{(long) i, "UPI", i % 50 == 0 ? "PENDING" : "SUCCESS", 300.0, transactionId,
+                    paidAt, (long) i, (long) (i % 600) + 1});
+            receipts.add(new Object[]{(long) i, (long) i, (long) (i % 600) + 1, (long) (i % 200) + 1, transactionId,
+                    paidAt, 300.0, "UPI"});
+        }
+
+        jdbcTemplate.batchUpdate("INSERT INTO booking (id, reference_id, car_id, user_id, start_date, end_date, "
+                + "total_amount, status) VALUES (?, ?, ?, ?, ?, ?, ?, ?)", bookings);
+        jdbcTemplate.batchUpdate("INSERT INTO payment (id, payment_mode, status, amount, transaction_id, timestamp, "
+                + "booking_id, user_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)", payments);
+        jdbcTemplate.batchUpdate("INSERT INTO receipt (id, booking_id, user_id, car_id, transaction_id, "
+                + "transaction_date, amount, payment_method) VALUES (?, ?, ?, ?, ?, ?, ?, ?)", receipts);
+        jdbcTemplate.execute("ANALYZE TABLE booking, payment, receipt");
+    }
+
+    Stream<Arguments> hotQueries() {
+        LocalDate from = TODAY.plusDays(10);
+        Pageable firstPage = PageRequest.of(0, 51);
+        // The bind values are listed in the order their parameters appear in the generated SQL
+        return Stream.of(
+                Arguments.of("BookingRepository.findOverlappingBookings",
+                        query(() -> bookingRepository.findOverlappingBookings(42L, from, from.plusDays(5))),
+                        new Object[]{42L, Date.valueOf(from.plusDays(5)), Date.valueOf(from)}),
+                Arguments.of("BookingRepository.findByUserIdOrderByStartDateDesc",
+                        query(() -> bookingRepository.findByUserIdOrderByStartDateDesc(42L)),
+                        new Object[]{42L}),
+                Arguments.of("BookingRepository.findExpiredBookings",
+                        query(() -> bookingRepository.findExpiredBookings(TODAY)),
+                        new Object[]{Date.valueOf(TODAY)}),
+                Arguments.of("PaymentRepository.findByBookingId",
+                        query(() -> paymentRepository.findByBookingId(42L)),
+                        new Object[]{42L}),
+                Arguments.of("PaymentRepository.findByUserId",
+                        query(() -> paymentRepository.findByUserId(42L)),
+                        new Object[]{42L}),
+                Arguments.of("PaymentRepository.findByTransactionId",
+                        query(() -> paymentRepository.findByTransactionId("TX42")),
+                        new Object[]{"TX42"}),
+                Arguments.of("PaymentRepository.findByStatusAndTimestampBefore",
+                        query(() -> paymentRepository.findByStatusAndTimestampBefore(PaymentStatus.PENDING,
+                                TODAY.atStartOfDay())),
+                        new Object[]{"PENDING", Timestamp.valueOf(TODAY.atStartOfDay())}),
+                Arguments.of("ReceiptRepository.findByBookingId",
+                        query(() -> receiptRepository.findByBookingId(42L)),
+                        new Object[]{42L}),
+                Arguments.of("ReceiptRepository.findByTransactionId",
+                        query(() -> receiptRepository.findByTransactionId("TX42")),
+                        new Object[]{"TX42"}),
+                Arguments.of("ReceiptRepository.findSummariesByUserIdBefore",
+                        query(() -> receiptRepository.findSummariesByUserIdBefore(42L, 3000L, firstPage)),
+                        new Object[]{42L, 3000L, 51}),
+                Arguments.of("PaymentRepository.findSummariesBefore",
+                        query(() -> paymentRepository.findSummariesBefore(3000L, firstPage)),
+                        new Object[]{3000L, 51}),
+                Arguments.of("BookingRepository.findSummariesBefore",
+                        query(() -> bookingRepository.findSummariesBefore(3000L, firstPage)),
+                        new Object[]{3000L, 51})
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("hotQueries")
+    void hotQuery_UsesAnIndex(String name, Runnable query, Object[] args) {
+        CapturingInspector.STATEMENTS.clear();
+        query.run();
+        assertEquals(1, CapturingInspector.STATEMENTS.size(), name + " ran " + CapturingInspector.STATEMENTS);
+        String sql = CapturingInspector.STATEMENTS.get(0);
+        assertEquals(args.length, sql.chars().filter(c -> c == '?').count(), name + " binds other parameters: " + sql);
+
+        List<Map<String, Object>> plan = jdbcTemplate.queryForList("EXPLAIN " + sql, args);
+
+        assertFalse(plan.isEmpty());
+        for (Map<String, Object> row : plan) {
+            assertNotEquals("ALL", row.get("type"), name + " does a full table scan: " + sql + " " + row);
+            assertNotNull(row.get("key"), name + " uses no index: " + sql + " " + row);
+        }
+    }
+
+    /**
+     * Give a repository call a type, so it can be passed as a test argument
+     */
+    private static Runnable query(Runnable call) {
+        return call;
+    }
+
+    /**
+     * Records the SQL Hibernate prepares, so the plans are checked for exactly what the repositories run
+     */
+    public static class CapturingInspector implements StatementInspector {
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.alphaweb.instadrive.repository;
+
+import com.alphaweb.instadrive.config.FlywayConfig;
+import com.alphaweb.instadrive.dto.ReceiptSummaryDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the receipt list query against MySQL
+ * Skipped when Docker is not available
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(FlywayConfig.class)
+@Testcontainers(disabledWithoutDocker = true)
+class ReceiptRepositoryTest {
+
+    @Container
+    @ServiceConnection
+    static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+    @Autowired
+    private ReceiptRepository receiptRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void findSummariesByUserIdBefore_SeveralReceipts_MapsUserReceiptsNewestFirst() {
+        LocalDateTime paidAt = LocalDateTime.of(2025, 5, 3, 10, 0);
+        jdbcTemplate.update("INSERT INTO receipt (id, booking_id, user_id, car_id, transaction_id, transaction_date, "
+                + "amount, payment_method, receipt_path, user_name, user_email, car_brand, car_model, "
+                + "car_registration_number) VALUES "
+                + "(1, 7, 3, 5, 'TX1', ?, 100.0, 'UPI', 'receipt_TX1.pdf', 'Asha', 'asha@example.com', 'Toyota', 'Corolla', 'KA01AB1234'), "
+                + "(2, 8, 3, 5, 'TX2', ?, 200.0, 'CREDIT_CARD', 'receipt_TX2.pdf', 'Asha', 'asha@example.com', 'Toyota', 'Corolla', 'KA01AB1234'), "
+                + "(3, 9, 4, 6, 'TX3', ?, 300.0, 'UPI', 'receipt_TX3.pdf', 'Ravi', 'ravi@example.com', 'Honda', 'City', 'KA02CD5678'), "
+                + "(4, 10, 3, 6, 'TX4', ?, 400.0, 'UPI', 'receipt_TX4.pdf', 'Asha', 'asha@example.com', 'Honda', 'City', 'KA02CD5678')",
+                Timestamp.valueOf(paidAt), Timestamp.valueOf(paidAt), Timestamp.valueOf(paidAt), Timestamp.valueOf(paidAt));
+
+        List<ReceiptSummaryDTO> receipts = receiptRepository.findSummariesByUserIdBefore(3L, 4L, PageRequest.of(0, 10));
+
+        assertEquals(List.of(2L, 1L), receipts.stream().map(ReceiptSummaryDTO::getId).toList());
+        assertEquals(new ReceiptSummaryDTO(2L, 8L, 3L, 5L, "TX2", paidAt, 200.0, "CREDIT_CARD", "Asha",
+                "asha@example.com", "Toyota", "Corolla", "KA01AB1234"), receipts.get(0));
+    }
+
+    @Test
+    void findSummariesByUserIdBefore_PageSize_StopsAtPage() {
+        jdbcTemplate.update("INSERT INTO receipt (id, booking_id, user_id, car_id, transaction_id, transaction_date, "
+                + "amount, payment_method) VALUES (11, 21, 5, 5, 'TX11', NOW(), 100.0, 'UPI'), "
+                + "(12, 22, 5, 5, 'TX12', NOW(), 100.0, 'UPI'), (13, 23, 5, 5, 'TX13', NOW(), 100.0, 'UPI')");
+
+        List<ReceiptSummaryDTO> receipts = receiptRepository.findSummariesByUserIdBefore(5L, Long.MAX_VALUE, PageRequest.of(0, 2));
+
+        assertEquals(List.of(13L, 12L), receipts.stream().map(ReceiptSummaryDTO::getId).toList());
+        assertNull(receipts.get(0).getCarBrand());
+    }
+}
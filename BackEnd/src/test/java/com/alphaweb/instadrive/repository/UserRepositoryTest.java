@@ -0,0 +1,63 @@
+package com.alphaweb.instadrive.repository;
+
+import com.alphaweb.instadrive.config.FlywayConfig;
+import com.alphaweb.instadrive.dto.UserSummaryDTO;
+import com.alphaweb.instadrive.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the user list query against MySQL
+ * Skipped when Docker is not available
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(FlywayConfig.class)
+@Testcontainers(disabledWithoutDocker = true)
+class UserRepositoryTest {
+
+    @Container
+    @ServiceConnection
+    static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void findSummariesAfter_SeveralUsers_MapsEveryColumnInIdOrder() {
+        jdbcTemplate.update("INSERT INTO users (id, user_id, name, username, email, password, phone, address, role) VALUES "
+                + "(1, 'U1', 'Asha', 'asha', 'asha@example.com', 'hash1', '9000000001', 'Pune', 'USER'), "
+                + "(2, 'U2', 'Ravi', 'ravi', 'ravi@example.com', 'hash2', '9000000002', 'Goa', 'ADMIN'), "
+                + "(3, 'U3', 'Meera', 'meera', 'meera@example.com', 'hash3', '9000000003', 'Delhi', 'USER')");
+
+        List<UserSummaryDTO> users = userRepository.findSummariesAfter(1L, PageRequest.of(0, 1));
+
+        assertEquals(List.of(new UserSummaryDTO(2L, "U2", "Ravi", "ravi", "ravi@example.com", "9000000002",
+                User.Role.ADMIN)), users);
+        assertEquals(List.of(3L), userRepository.findSummariesAfter(2L, PageRequest.of(0, 10))
+                .stream().map(UserSummaryDTO::getId).toList());
+    }
+
+    @Test
+    void findSummariesAfter_LastUser_ReturnsNothing() {
+        jdbcTemplate.update("INSERT INTO users (id, user_id, name, email, role) VALUES (4, 'U4', 'Kiran', 'kiran@example.com', 'USER')");
+
+        assertTrue(userRepository.findSummariesAfter(4L, PageRequest.of(0, 10)).isEmpty());
+    }
+}
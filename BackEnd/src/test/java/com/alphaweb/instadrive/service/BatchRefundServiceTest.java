@@ -0,0 +1,233 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.dto.BatchRefundRequest;
+import com.alphaweb.instadrive.dto.BatchRefundResponse;
+import com.alphaweb.instadrive.dto.BatchRefundResult;
+import com.alphaweb.instadrive.model.Booking;
+import com.alphaweb.instadrive.model.Payment;
+import com.alphaweb.instadrive.model.PaymentStatus;
+import com.alphaweb.instadrive.repository.BookingRepository;
+import com.alphaweb.instadrive.repository.PaymentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BatchRefundServiceTest {
+
+    private static final List<PaymentStatus> LOCKED_STATUSES = List.of(PaymentStatus.SUCCESS, PaymentStatus.REFUNDED);
+
+    @Mock
+    private BookingRepository bookingRepository;
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    @Mock
+    private BookingService bookingService;
+
+    @Mock
+    private PaymentService paymentService;
+
+    @Mock
+    private StatementService statementService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private BatchRefundService batchRefundService;
+
+    private final List<Booking> bookings = new ArrayList<>();
+    private final List<Payment> payments = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+        // The repositories answer from the bookings and payments each test sets up
+        when(bookingRepository.findAllById(any())).thenAnswer(invocation -> {
+            Collection<Long> ids = (Collection<Long>) invocation.getArgument(0);
+            return bookings.stream().filter(b -> ids.contains(b.getId())).toList();
+        });
+        when(paymentRepository.lockByBookingIds(anyCollection(), anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = (Collection<Long>) invocation.getArgument(0);
+            return payments.stream().filter(p -> ids.contains(p.getBookingId())).toList();
+        });
+        batchRefundService = new BatchRefundService(bookingRepository, paymentRepository, bookingService,
+                paymentService, statementService, new TransactionIdGenerator(0, false), transactionTemplate, 2, 10);
+    }
+
+    @Test
+    void refund_MixedBookings_ReportsOutcomePerBooking() {
+        // Arrange
+        booking(1L, "CANCELLED");
+        payment(11L, 1L, PaymentStatus.SUCCESS, 100.0, "TX11");
+        booking(2L, "CANCELLED");
+        payment(12L, 2L, PaymentStatus.REFUNDED, 200.0, "TX12");
+        payment(13L, 2L, PaymentStatus.REFUNDED, -200.0, "REFUND13");
+        booking(3L, "CONFIRMED");
+        payment(14L, 3L, PaymentStatus.SUCCESS, 300.0, "TX14");
+        booking(4L, "CANCELLED");
+
+        // Act
+        BatchRefundResponse response = batchRefundService.refund(request(1L, 2L, 3L, 4L, 5L));
+
+        // Assert
+        assertEquals("COMPLETED", response.getStatus());
+        assertEquals(5, response.getProcessed());
+        assertEquals(List.of("REFUNDED", "ALREADY_REFUNDED", "NOT_CANCELLED", "NO_PAYMENT", "NOT_FOUND"),
+                response.getResults().stream().map(BatchRefundResult::getOutcome).toList());
+        assertEquals(Map.of("REFUNDED", 1, "ALREADY_REFUNDED", 1, "NOT_CANCELLED", 1, "NO_PAYMENT", 1, "NOT_FOUND", 1),
+                response.getOutcomes());
+        assertEquals(100.0, response.getResults().get(0).getAmount());
+
+        ArgumentCaptor<List<Payment>> refunds = ArgumentCaptor.captor();
+        verify(paymentRepository).saveAll(refunds.capture());
+        assertEquals(1, refunds.getValue().size());
+        Payment refund = refunds.getValue().get(0);
+        assertEquals(-100.0, refund.getAmount());
+        assertEquals(PaymentStatus.REFUNDED, refund.getStatus());
+        assertEquals(response.getResults().get(0).getTransactionId(), refund.getTransactionId());
+        verify(paymentRepository).markRefunded(List.of(11L));
+        verify(paymentService).publishPaymentEvent(OutboxService.PAYMENT_REFUNDED, refund);
+    }
+
+    @Test
+    void refund_AlreadyRefunded_ReportsExistingRefundWithoutWriting() {
+        // Arrange
+        booking(1L, "CANCELLED");
+        payment(11L, 1L, PaymentStatus.REFUNDED, 100.0, "TX11");
+        payment(12L, 1L, PaymentStatus.REFUNDED, -100.0, "REFUND12");
+
+        // Act
+        BatchRefundResponse response = batchRefundService.refund(request(1L));
+
+        // Assert
+        BatchRefundResult result = response.getResults().get(0);
+        assertEquals("ALREADY_REFUNDED", result.getOutcome());
+        assertEquals("REFUND12", result.getTransactionId());
+        assertEquals(100.0, result.getAmount());
+        verify(paymentRepository, never()).saveAll(any());
+        verify(paymentRepository, never()).markRefunded(any());
+        verifyNoInteractions(paymentService);
+    }
+
+    @Test
+    void refund_SeveralChunks_LocksEachChunkBeforeWriting() {
+        // Arrange
+        for (long id = 1; id <= 3; id++) {
+            booking(id, "CANCELLED");
+            payment(10 + id, id, PaymentStatus.SUCCESS, 100.0, "TX" + id);
+        }
+
+        // Act
+        batchRefundService.refund(request(3L, 1L, 2L));
+
+        // Assert
+        InOrder inOrder = inOrder(paymentRepository);
+        // Each chunk is locked in one query, in its own transaction, before anything is written
+        inOrder.verify(paymentRepository).lockByBookingIds(List.of(3L, 1L), LOCKED_STATUSES);
+        inOrder.verify(paymentRepository).saveAll(any());
+        inOrder.verify(paymentRepository).markRefunded(List.of(13L, 11L));
+        inOrder.verify(paymentRepository).lockByBookingIds(List.of(2L), LOCKED_STATUSES);
+        inOrder.verify(paymentRepository).saveAll(any());
+        inOrder.verify(paymentRepository).markRefunded(List.of(12L));
+        verify(transactionTemplate, times(2)).execute(any());
+    }
+
+    @Test
+    void refund_ChunkFails_ReportsChunkAndContinues() {
+        // Arrange
+        for (long id = 1; id <= 3; id++) {
+            booking(id, "CANCELLED");
+            payment(10 + id, id, PaymentStatus.SUCCESS, 100.0, "TX" + id);
+        }
+        when(paymentRepository.markRefunded(List.of(11L, 12L))).thenThrow(new RuntimeException("Lock wait timeout"));
+
+        // Act
+        BatchRefundResponse response = batchRefundService.refund(request(1L, 2L, 3L));
+
+        // Assert
+        assertEquals("COMPLETED", response.getStatus());
+        assertEquals(List.of("FAILED", "FAILED", "REFUNDED"),
+                response.getResults().stream().map(BatchRefundResult::getOutcome).toList());
+        assertEquals("Lock wait timeout", response.getResults().get(0).getMessage());
+    }
+
+    @Test
+    void refund_CancelBookings_CancelsConfirmedBookingsFirst() {
+        // Arrange
+        Booking confirmed = booking(1L, "CONFIRMED");
+        payment(11L, 1L, PaymentStatus.SUCCESS, 100.0, "TX11");
+        Booking completed = booking(2L, "COMPLETED");
+        BatchRefundRequest request = request(1L, 2L);
+        request.setCancelBookings(true);
+
+        // Act
+        BatchRefundResponse response = batchRefundService.refund(request);
+
+        // Assert
+        assertEquals("CANCELLED", confirmed.getStatus());
+        assertEquals("COMPLETED", completed.getStatus());
+        verify(bookingService).publishBookingEvent(OutboxService.BOOKING_CANCELLED, confirmed);
+        assertEquals(List.of("REFUNDED", "NOT_CANCELLED"),
+                response.getResults().stream().map(BatchRefundResult::getOutcome).toList());
+    }
+
+    @Test
+    void refund_TooManyBookings_Throws() {
+        Long[] ids = new Long[11];
+        Arrays.setAll(ids, i -> (long) i + 1);
+
+        assertThrows(IllegalArgumentException.class, () -> batchRefundService.refund(request(ids)));
+        assertThrows(IllegalArgumentException.class, () -> batchRefundService.refund(new BatchRefundRequest()));
+        verify(transactionTemplate, never()).execute(any());
+    }
+
+    private static BatchRefundRequest request(Long... bookingIds) {
+        BatchRefundRequest request = new BatchRefundRequest();
+        request.setBookingIds(List.of(bookingIds));
+        return request;
+    }
+
+    private Booking booking(Long id, String status) {
+        Booking booking = new Booking();
+        booking.setId(id);
+        booking.setUserId(7L);
+        booking.setStatus(status);
+        bookings.add(booking);
+        return booking;
+    }
+
+    private void payment(Long id, Long bookingId, PaymentStatus status, double amount, String transactionId) {
+        Payment payment = new Payment();
+        payment.setId(id);
+        payment.setBookingId(bookingId);
+        payment.setUserId(7L);
+        payment.setStatus(status);
+        payment.setAmount(amount);
+        payment.setTransactionId(transactionId);
+        payment.setPaymentMode("UPI");
+        payment.setTimestamp(LocalDateTime.of(2025, 5, 3, 10, 0));
+        payments.add(payment);
+    }
+}
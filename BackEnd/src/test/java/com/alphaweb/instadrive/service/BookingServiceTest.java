@@ -1,12 +1,19 @@
 package com.alphaweb.instadrive.service;
 
+import com.alphaweb.instadrive.dto.BookingStatusTotal;
+import com.alphaweb.instadrive.dto.BookingSummaryDTO;
+import com.alphaweb.instadrive.dto.BookingTotalsDTO;
+import com.alphaweb.instadrive.dto.CursorPage;
+import com.alphaweb.instadrive.exception.InvalidCursorException;
 import com.alphaweb.instadrive.model.Booking;
 import com.alphaweb.instadrive.repository.BookingRepository;
+import com.alphaweb.instadrive.util.PageCursor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Pageable;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -14,7 +21,10 @@ import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class BookingServiceTest {
@@ -22,6 +32,9 @@ class BookingServiceTest {
     @Mock
     private BookingRepository bookingRepository;
 
+    @Mock
+    private OutboxService outboxService;
+
     @InjectMocks
     private BookingService bookingService;
 
@@ -193,4 +206,83 @@ class BookingServiceTest {
         // Assert
         assertNull(result);
     }
+
+    @Test
+    void getBookingSummaries_MoreRowsThanLimit_ReturnsCursorOfLastItem() {
+        // Arrange: the repository returns one row more than the page size
+        List<BookingSummaryDTO> rows = new ArrayList<>();
+        for (long id = 30; id > 27; id--) {
+            rows.add(new BookingSummaryDTO(id, "BK" + id, 1L, 1L, null, null, 100.0, "CONFIRMED"));
+        }
+        when(bookingRepository.findSummariesBefore(eq(Long.MAX_VALUE), any(Pageable.class))).thenReturn(rows);
+
+        // Act
+        CursorPage<BookingSummaryDTO> page = bookingService.getBookingSummaries(null, 2, false);
+
+        // Assert
+        assertEquals(2, page.getItems().size());
+        assertEquals(29L, PageCursor.decode(page.getNextCursor()));
+        assertNull(page.getTotal());
+        verify(bookingRepository, never()).count();
+    }
+
+    @Test
+    void getBookingSummaries_LastPageWithTotal_HasNoCursor() {
+        // Arrange
+        List<BookingSummaryDTO> rows = List.of(new BookingSummaryDTO(5L, "BK5", 1L, 1L, null, null, 100.0, "CONFIRMED"));
+        when(bookingRepository.findSummariesBefore(eq(29L), any(Pageable.class))).thenReturn(rows);
+        when(bookingRepository.count()).thenReturn(30L);
+
+        // Act
+        CursorPage<BookingSummaryDTO> page = bookingService.getBookingSummaries(PageCursor.encode(29L), 2, true);
+
+        // Assert
+        assertEquals(1, page.getItems().size());
+        assertNull(page.getNextCursor());
+        assertEquals(30L, page.getTotal());
+    }
+
+    @Test
+    void getBookingSummaries_TamperedCursor_Throws() {
+        assertThrows(InvalidCursorException.class, () -> bookingService.getBookingSummaries("not-a-cursor", 2, false));
+    }
+
+    @Test
+    void updateExpiredBookings_OpenBooking_CompletesItAndRecordsEvent() {
+        // Arrange
+        Booking open = new Booking();
+        open.setId(7L);
+        open.setStatus("CONFIRMED");
+        Booking cancelled = new Booking();
+        cancelled.setId(8L);
+        cancelled.setStatus("CANCELLED");
+        when(bookingRepository.findExpiredBookings(any(LocalDate.class))).thenReturn(List.of(open, cancelled));
+
+        // Act
+        int updated = bookingService.updateExpiredBookings();
+
+        // Assert
+        assertEquals(1, updated);
+        assertEquals("COMPLETED", open.getStatus());
+        verify(outboxService).publish(eq(OutboxService.BOOKING_COMPLETED), eq("Booking"), eq(7L), anyMap());
+        verify(outboxService, never()).publish(any(), any(), eq(8L), anyMap());
+    }
+
+    @Test
+    void getBookingTotals_SeveralStatuses_CountsEachStatusOverAllBookings() {
+        when(bookingRepository.sumByStatus()).thenReturn(List.of(
+                new BookingStatusTotal("CONFIRMED", 70, 7000.0),
+                new BookingStatusTotal("COMPLETED", 25, 2500.0),
+                new BookingStatusTotal("CANCELLED", 5, 0.0)));
+
+        BookingTotalsDTO totals = bookingService.getBookingTotals();
+
+        // More bookings than fit on one dashboard page are counted
+        assertEquals(100, totals.getCount());
+        assertEquals(9500.0, totals.getAmount());
+        assertEquals(70L, totals.getCountsByStatus().get("CONFIRMED"));
+        assertEquals(25L, totals.getCountsByStatus().get("COMPLETED"));
+        assertEquals(5L, totals.getCountsByStatus().get("CANCELLED"));
+        assertNull(totals.getCountsByStatus().get("ACTIVE"));
+    }
 }
@@ -0,0 +1,144 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.Car;
+import com.alphaweb.instadrive.model.ImageVariant;
+import com.alphaweb.instadrive.repository.CarRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CarImageIndexTest {
+
+    @Mock
+    private CarRepository carRepository;
+
+    @Mock
+    private FileServingService fileServingService;
+
+    @Mock
+    private ImageVariantService imageVariantService;
+
+    @TempDir
+    Path uploadDir;
+
+    private CarImageIndex carImageIndex;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        carImageIndex = new CarImageIndex(carRepository, fileServingService, imageVariantService,
+                uploadDir.toString(), 60000, 2);
+    }
+
+    @Test
+    void resolve_KnownCar_IndexedUntilEvicted() throws Exception {
+        Files.write(uploadDir.resolve("a.png"), new byte[]{1, 2, 3});
+        when(carRepository.findById(1L)).thenReturn(Optional.of(car(1L, "http://localhost:8080/api/files/a.png")));
+        when(fileServingService.getMetadata(any())).thenReturn(
+                new FileServingService.FileMetadata(3, 1000, "\"3-3e8\"", "a.png"));
+
+        CarImageIndex.ResolvedImage image = carImageIndex.resolve(1L);
+        assertSame(image, carImageIndex.resolve(1L));
+        assertEquals("a.png", image.fileName());
+        verify(carRepository, times(1)).findById(1L);
+
+        carImageIndex.evict(1L);
+        carImageIndex.resolve(1L);
+
+        verify(carRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void resolve_UnknownCar_ServesPlaceholderWithoutIndexing() {
+        when(carRepository.findById(99L)).thenReturn(Optional.empty());
+
+        assertTrue(carImageIndex.resolve(99L).isPlaceholder());
+        assertTrue(carImageIndex.resolve(99L, ImageVariant.THUMBNAIL).isPlaceholder());
+
+        // Every request looks the car up again rather than leaving an entry behind
+        verify(carRepository, times(2)).findById(99L);
+    }
+
+    @Test
+    void resolve_IndexFull_DropsLeastRecentlyUsedCar() {
+        when(carRepository.findById(any())).thenAnswer(invocation ->
+                Optional.of(car(invocation.getArgument(0), null)));
+
+        carImageIndex.resolve(1L);
+        carImageIndex.resolve(2L);
+        carImageIndex.resolve(1L);
+        carImageIndex.resolve(3L);
+        carImageIndex.resolve(1L);
+        carImageIndex.resolve(2L);
+
+        verify(carRepository, times(1)).findById(1L);
+        verify(carRepository, times(2)).findById(2L);
+    }
+
+    @Test
+    void resolve_EvictedDuringLookup_DoesNotKeepWhatItFound() {
+        when(carRepository.findById(1L)).thenAnswer(invocation -> {
+            // The car's image changes while this lookup is reading the old one
+            carImageIndex.evict(1L);
+            return Optional.of(car(1L, null));
+        }).thenReturn(Optional.of(car(1L, null)));
+
+        carImageIndex.resolve(1L);
+        carImageIndex.resolve(1L);
+        carImageIndex.resolve(1L);
+
+        verify(carRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void resolve_VariantNotRendered_ServesOriginalUntilRendered() throws Exception {
+        Files.write(uploadDir.resolve("a.png"), new byte[]{1, 2, 3});
+        Path thumbnail = Files.write(uploadDir.resolve("a_thumb.png"), new byte[]{4});
+        when(carRepository.findById(1L)).thenReturn(Optional.of(car(1L, "http://localhost:8080/api/files/a.png")));
+        when(fileServingService.getMetadata(any())).thenReturn(
+                new FileServingService.FileMetadata(3, 1000, "\"3-3e8\"", "a.png"));
+        when(imageVariantService.findVariant("a.png", ImageVariant.THUMBNAIL)).thenReturn(null, thumbnail);
+
+        CarImageIndex.ResolvedImage fallback = carImageIndex.resolve(1L, ImageVariant.THUMBNAIL);
+        assertEquals("a.png", fallback.fileName());
+        assertTrue(fallback.provisional());
+        assertSame(fallback, carImageIndex.resolve(1L, ImageVariant.THUMBNAIL));
+
+        ArgumentCaptor<Runnable> onComplete = ArgumentCaptor.forClass(Runnable.class);
+        verify(imageVariantService, times(1)).generateVariantsAsync(eq(fallback.path()), onComplete.capture());
+        onComplete.getValue().run();
+
+        CarImageIndex.ResolvedImage rendered = carImageIndex.resolve(1L, ImageVariant.THUMBNAIL);
+        assertEquals("a_thumb.png", rendered.fileName());
+        assertFalse(rendered.provisional());
+    }
+
+    @Test
+    void resolve_OriginalRequested_DoesNotRenderVariants() throws Exception {
+        Files.write(uploadDir.resolve("a.png"), new byte[]{1, 2, 3});
+        when(carRepository.findById(1L)).thenReturn(Optional.of(car(1L, "http://localhost:8080/api/files/a.png")));
+
+        assertEquals("a.png", carImageIndex.resolve(1L, ImageVariant.ORIGINAL).fileName());
+
+        verifyNoInteractions(imageVariantService);
+    }
+
+    private static Car car(Long id, String imageUrl) {
+        Car car = new Car();
+        car.setId(id);
+        car.setImageUrl(imageUrl);
+        return car;
+    }
+}
@@ -0,0 +1,138 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.Car;
+import com.alphaweb.instadrive.repository.CarRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CarServiceTest {
+
+    private static final String IMAGE_A = "http://localhost:8080/api/files/a.png";
+    private static final String IMAGE_B = "http://localhost:8080/api/files/b.png";
+
+    @Mock
+    private CarRepository carRepository;
+
+    @Mock
+    private CarImageIndex carImageIndex;
+
+    @Mock
+    private ImagePackService imagePackService;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @InjectMocks
+    private CarService carService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(carRepository.save(any(Car.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void addCar_NewCarWithImage_AcquiresImage() {
+        carService.addCar(car(null, IMAGE_A));
+
+        verify(fileStorageService).replaceReference(null, "a.png");
+    }
+
+    @Test
+    void addCar_ImageReplaced_MovesReference() {
+        when(carRepository.lockById(1L)).thenReturn(Optional.of(car(1L, IMAGE_A)));
+
+        carService.addCar(car(1L, IMAGE_B));
+
+        verify(fileStorageService).replaceReference("a.png", "b.png");
+    }
+
+    @Test
+    void addCar_SameImageUploadedAgain_KeepsReference() {
+        when(carRepository.lockById(1L)).thenReturn(Optional.of(car(1L, IMAGE_A)));
+
+        carService.addCar(car(1L, IMAGE_A));
+
+        verify(fileStorageService).replaceReference("a.png", "a.png");
+    }
+
+    @Test
+    void updateCar_ImageReplaced_MovesReference() {
+        when(carRepository.lockById(1L)).thenReturn(Optional.of(car(1L, IMAGE_A)));
+
+        carService.updateCar(1L, car(null, IMAGE_B));
+
+        verify(fileStorageService).replaceReference("a.png", "b.png");
+    }
+
+    @Test
+    void deleteCar_WithImage_ReleasesImage() {
+        Car car = car(1L, IMAGE_A);
+        when(carRepository.lockById(1L)).thenReturn(Optional.of(car));
+
+        carService.deleteCar(1L);
+
+        verify(carRepository).delete(car);
+        verify(fileStorageService).releaseFile("a.png");
+        verify(carImageIndex).evict(1L);
+    }
+
+    @Test
+    void deleteCar_Missing_ReleasesNothing() {
+        when(carRepository.lockById(1L)).thenReturn(Optional.empty());
+
+        carService.deleteCar(1L);
+
+        verifyNoInteractions(fileStorageService);
+    }
+
+    @Test
+    void updateCar_InTransaction_EvictsImageOnlyAfterCommit() {
+        when(carRepository.lockById(1L)).thenReturn(Optional.of(car(1L, IMAGE_A)));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            carService.updateCar(1L, car(null, IMAGE_B));
+
+            // A request in between would otherwise cache the image from before the commit
+            verifyNoInteractions(carImageIndex, imagePackService);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(carImageIndex).evict(1L);
+        verify(imagePackService).removeIfChanged(1L, "b.png");
+    }
+
+    @Test
+    void deleteCar_RolledBack_KeepsImage() {
+        when(carRepository.lockById(1L)).thenReturn(Optional.of(car(1L, IMAGE_A)));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            carService.deleteCar(1L);
+        } finally {
+            // Rolled back: the synchronizations are dropped without afterCommit
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verifyNoInteractions(carImageIndex, imagePackService);
+    }
+
+    private static Car car(Long id, String imageUrl) {
+        Car car = new Car();
+        car.setId(id);
+        car.setImageUrl(imageUrl);
+        return car;
+    }
+}
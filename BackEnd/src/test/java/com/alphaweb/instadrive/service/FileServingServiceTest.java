@@ -0,0 +1,141 @@
+package com.alphaweb.instadrive.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileServingServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FileServingService fileServingService;
+    private HotImageCache hotImageCache;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        hotImageCache = new HotImageCache(1024, 64);
+        fileServingService = new FileServingService(100, 60000, hotImageCache);
+        file = tempDir.resolve("receipt_TEST.pdf");
+        Files.writeString(file, "0123456789", StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void serve_NoHeaders_ReturnsFullFile() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/receipts/1/download");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        fileServingService.serve(file, "receipt_TEST.pdf", true, "private, no-cache", request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("application/pdf", response.getContentType());
+        assertEquals("0123456789", response.getContentAsString());
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertNotNull(response.getHeader("ETag"));
+    }
+
+    @Test
+    void serve_RangeHeader_ReturnsPartialContent() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/receipts/1/download");
+        request.addHeader("Range", "bytes=2-5");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        fileServingService.serve(file, "receipt_TEST.pdf", true, null, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+        assertEquals("2345", response.getContentAsString());
+    }
+
+    @Test
+    void serve_UnsatisfiableRange_Returns416() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/receipts/1/download");
+        request.addHeader("Range", "bytes=20-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        fileServingService.serve(file, "receipt_TEST.pdf", true, null, request, response);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    void serve_MatchingIfNoneMatch_ReturnsNotModified() throws Exception {
+        String etag = fileServingService.getMetadata(file).etag();
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/receipts/1/download");
+        request.addHeader("If-None-Match", etag);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        fileServingService.serve(file, "receipt_TEST.pdf", true, null, request, response);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void serve_MissingFile_ThrowsNoSuchFile() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/receipts/1/download");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThrows(NoSuchFileException.class, () -> fileServingService.serve(
+                tempDir.resolve("missing.pdf"), "missing.pdf", true, null, request, response));
+    }
+
+    @Test
+    void serve_RepeatedImageRequest_ServedFromHotCache() throws Exception {
+        Path image = tempDir.resolve("car.png");
+        Files.writeString(image, "not-really-a-png", StandardCharsets.US_ASCII);
+
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/files/car.png");
+            MockHttpServletResponse response = new MockHttpServletResponse();
+
+            fileServingService.serve(image, "car.png", false, null, request, response);
+
+            assertEquals("not-really-a-png", response.getContentAsString());
+        }
+
+        assertEquals(1L, hotImageCache.getStats().get("hits"));
+        assertEquals(16L, hotImageCache.getStats().get("residentBytes"));
+    }
+
+    @Test
+    void getMetadata_FileRewrittenWithoutEviction_Revalidated() throws Exception {
+        FileServingService revalidating = new FileServingService(100, 0, hotImageCache);
+        String etag = revalidating.getMetadata(file).etag();
+
+        Files.writeString(file, "0123456789abcdef", StandardCharsets.US_ASCII);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60000));
+        FileServingService.FileMetadata metadata = revalidating.getMetadata(file);
+
+        assertEquals(16, metadata.size());
+        assertNotEquals(etag, metadata.etag());
+    }
+
+    @Test
+    void getMetadata_FileUnchanged_KeepsCachedMetadata() throws Exception {
+        FileServingService revalidating = new FileServingService(100, 0, hotImageCache);
+
+        assertSame(revalidating.getMetadata(file), revalidating.getMetadata(file));
+    }
+
+    @Test
+    void parseRange_SuffixAndOpenEnded_ResolvesOffsets() {
+        assertArrayEquals(new long[]{7, 9}, FileServingService.parseRange("bytes=-3", 10));
+        assertArrayEquals(new long[]{4, 9}, FileServingService.parseRange("bytes=4-", 10));
+        assertArrayEquals(new long[]{0, 9}, FileServingService.parseRange("bytes=0-100", 10));
+        assertNull(FileServingService.parseRange("bytes=0-1,4-5", 10));
+    }
+}
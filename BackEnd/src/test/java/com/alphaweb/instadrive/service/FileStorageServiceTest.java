@@ -0,0 +1,140 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.StoredFile;
+import com.alphaweb.instadrive.repository.StoredFileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class FileStorageServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Mock
+    private StoredFileRepository storedFileRepository;
+
+    @Mock
+    private ImageVariantService imageVariantService;
+
+    @Mock
+    private FileServingService fileServingService;
+
+    private FileStorageService fileStorageService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        fileStorageService = new FileStorageService(uploadDir.toString(), storedFileRepository, imageVariantService,
+                fileServingService, 2, 1000, 1024 * 1024, 60_000);
+    }
+
+    @Test
+    void storeStream_NewContent_RecordsFileWithoutReference() throws Exception {
+        // Arrange
+        when(storedFileRepository.findById(anyString())).thenReturn(Optional.empty());
+
+        // Act
+        FileStorageService.StoreResult result = store("car.png");
+
+        // Assert
+        assertFalse(result.duplicate());
+        assertTrue(result.fileName().endsWith(".png"));
+        assertTrue(Files.isRegularFile(uploadDir.resolve(result.fileName())));
+        ArgumentCaptor<StoredFile> saved = ArgumentCaptor.forClass(StoredFile.class);
+        verify(storedFileRepository).saveAndFlush(saved.capture());
+        assertEquals(0, saved.getValue().getReferenceCount());
+        verify(storedFileRepository, never()).incrementReferenceCountByFileName(anyString());
+    }
+
+    @Test
+    void storeStream_SameContentOtherExtension_ReusesStoredFile() throws Exception {
+        // Arrange: the first upload was stored as a .png
+        when(storedFileRepository.findById(anyString())).thenReturn(Optional.empty());
+        String first = store("car.png").fileName();
+        String sha256 = first.substring(0, first.indexOf('.'));
+        when(storedFileRepository.findById(sha256))
+                .thenReturn(Optional.of(new StoredFile(sha256, first, 5, "image/png", 1, null, null)));
+        when(storedFileRepository.touch(eq(sha256), any(LocalDateTime.class))).thenReturn(1);
+
+        // Act
+        FileStorageService.StoreResult second = store("car.jpeg");
+
+        // Assert
+        assertTrue(second.duplicate());
+        assertEquals(first, second.fileName());
+        try (Stream<Path> files = Files.list(uploadDir)) {
+            assertEquals(1, files.count());
+        }
+        verify(storedFileRepository, times(1)).saveAndFlush(any());
+    }
+
+    @Test
+    void replaceReference_SameFile_LeavesCountAlone() {
+        fileStorageService.replaceReference("a.png", "a.png");
+
+        verify(storedFileRepository, never()).incrementReferenceCountByFileName(anyString());
+        verify(storedFileRepository, never()).decrementReferenceCountByFileName(anyString());
+    }
+
+    @Test
+    void replaceReference_OtherFile_AcquiresNewAndReleasesOld() {
+        fileStorageService.replaceReference("a.png", "b.png");
+
+        verify(storedFileRepository).incrementReferenceCountByFileName("b.png");
+        verify(storedFileRepository).decrementReferenceCountByFileName("a.png");
+    }
+
+    @Test
+    void replaceReference_ImageRemoved_OnlyReleases() {
+        fileStorageService.replaceReference("a.png", null);
+
+        verify(storedFileRepository).decrementReferenceCountByFileName("a.png");
+        verify(storedFileRepository, never()).incrementReferenceCountByFileName(any());
+    }
+
+    @Test
+    void deleteUnreferencedFiles_ReferencedSinceListing_KeepsFile() throws Exception {
+        // Arrange: two orphans, one of which is attached to a car between the listing and the delete
+        Files.writeString(uploadDir.resolve("orphan.png"), "a");
+        Files.writeString(uploadDir.resolve("attached.png"), "b");
+        when(storedFileRepository.findUnreferencedBefore(any())).thenReturn(List.of(
+                new StoredFile("h1", "orphan.png", 1, "image/png", 0, null, null),
+                new StoredFile("h2", "attached.png", 1, "image/png", 0, null, null)));
+        when(storedFileRepository.deleteIfUnreferenced(eq("h1"), any())).thenReturn(1);
+        when(storedFileRepository.deleteIfUnreferenced(eq("h2"), any())).thenReturn(0);
+
+        // Act
+        fileStorageService.deleteUnreferencedFiles();
+
+        // Assert
+        assertFalse(Files.exists(uploadDir.resolve("orphan.png")));
+        assertTrue(Files.exists(uploadDir.resolve("attached.png")));
+        verify(imageVariantService).deleteVariants("orphan.png");
+        verify(imageVariantService, never()).deleteVariants("attached.png");
+        verify(fileServingService).evict(uploadDir.resolve("orphan.png").toAbsolutePath().normalize());
+    }
+
+    private FileStorageService.StoreResult store(String originalFileName) throws Exception {
+        return fileStorageService.storeStream(
+                new ByteArrayInputStream("image".getBytes(StandardCharsets.US_ASCII)), originalFileName, "image/png");
+    }
+}
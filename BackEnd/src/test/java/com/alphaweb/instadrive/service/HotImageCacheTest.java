@@ -0,0 +1,131 @@
+package com.alphaweb.instadrive.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotImageCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private HotImageCache hotImageCache;
+
+    @BeforeEach
+    void setUp() {
+        // Room for three 100-byte images
+        hotImageCache = new HotImageCache(300, 100);
+    }
+
+    @Test
+    void accepts_OnlyImagesWithinEntryLimit() {
+        assertTrue(hotImageCache.accepts(100, "image/png"));
+        assertFalse(hotImageCache.accepts(101, "image/png"));
+        assertFalse(hotImageCache.accepts(0, "image/png"));
+        assertFalse(hotImageCache.accepts(50, "application/pdf"));
+        assertFalse(hotImageCache.accepts(50, null));
+    }
+
+    @Test
+    void get_SameVersion_ServedFromMemory() throws Exception {
+        Path file = image("a.png", 1);
+        assertArrayEquals(bytes(1), content(hotImageCache.get(file, "a", "\"v1\"", 100)));
+
+        // The bytes come from the cache, not the file
+        Files.write(file, bytes(2));
+        assertArrayEquals(bytes(1), content(hotImageCache.get(file, "a", "\"v1\"", 100)));
+        assertEquals(1L, hotImageCache.getStats().get("hits"));
+
+        // A new version replaces the cached bytes
+        assertArrayEquals(bytes(2), content(hotImageCache.get(file, "a", "\"v2\"", 100)));
+        assertEquals(100L, hotImageCache.getStats().get("residentBytes"));
+    }
+
+    @Test
+    void get_BudgetFull_OneOffRequestNotAdmitted() throws Exception {
+        fill();
+
+        assertNull(hotImageCache.get(image("d.png", 4), "d", "\"v1\"", 100));
+
+        assertEquals(1L, hotImageCache.getStats().get("rejections"));
+        assertEquals(3, hotImageCache.getStats().get("entries"));
+        assertEquals(300L, hotImageCache.getStats().get("residentBytes"));
+    }
+
+    @Test
+    void get_BudgetFull_FrequentImageEvictsLeastRecentlyUsed() throws Exception {
+        fill();
+        // "a" becomes the most recently used, leaving "b" the eldest
+        hotImageCache.get(tempDir.resolve("a.png"), "a", "\"v1\"", 100);
+        Path d = image("d.png", 4);
+
+        assertNull(hotImageCache.get(d, "d", "\"v1\"", 100));
+        assertArrayEquals(bytes(4), content(hotImageCache.get(d, "d", "\"v1\"", 100)));
+
+        assertEquals(1L, hotImageCache.getStats().get("evictions"));
+        assertEquals(300L, hotImageCache.getStats().get("residentBytes"));
+        long hits = (Long) hotImageCache.getStats().get("hits");
+        hotImageCache.get(tempDir.resolve("a.png"), "a", "\"v1\"", 100);
+        hotImageCache.get(tempDir.resolve("c.png"), "c", "\"v1\"", 100);
+        assertEquals(hits + 2, hotImageCache.getStats().get("hits"));
+    }
+
+    @Test
+    void evict_CachedImage_FreesItsBytes() throws Exception {
+        fill();
+
+        hotImageCache.evict("b");
+
+        assertEquals(2, hotImageCache.getStats().get("entries"));
+        assertEquals(200L, hotImageCache.getStats().get("residentBytes"));
+    }
+
+    @Test
+    void frequencySketch_SampleSizeReached_HalvesCounts() {
+        HotImageCache.FrequencySketch sketch = new HotImageCache.FrequencySketch(64);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("hot");
+        }
+        // Counters saturate at fifteen
+        assertEquals(15, sketch.frequency("hot"));
+
+        int others = 0;
+        while (sketch.frequency("hot") == 15 && others < 10_000) {
+            sketch.increment("key-" + others++);
+        }
+
+        // Old popularity fades once enough other requests have been counted
+        assertEquals(7, sketch.frequency("hot"));
+    }
+
+    private void fill() throws Exception {
+        hotImageCache.get(image("a.png", 1), "a", "\"v1\"", 100);
+        hotImageCache.get(image("b.png", 2), "b", "\"v1\"", 100);
+        hotImageCache.get(image("c.png", 3), "c", "\"v1\"", 100);
+    }
+
+    private Path image(String name, int fill) throws Exception {
+        return Files.write(tempDir.resolve(name), bytes(fill));
+    }
+
+    private static byte[] bytes(int fill) {
+        byte[] bytes = new byte[100];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (fill * 31 + i);
+        }
+        return bytes;
+    }
+
+    private static byte[] content(ByteBuffer buffer) {
+        assertNotNull(buffer);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,177 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.IdempotencyRecord;
+import com.alphaweb.instadrive.repository.IdempotencyRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    private IdempotencyService idempotencyService;
+    private final Map<String, IdempotencyRecord> records = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new IdempotencyService(idempotencyRecordRepository, 60000, 5000, 1024);
+        lenient().when(idempotencyRecordRepository.findById(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(records.get(invocation.<String>getArgument(0))));
+        lenient().when(idempotencyRecordRepository.save(any())).thenAnswer(invocation -> {
+            IdempotencyRecord record = invocation.getArgument(0);
+            records.put(record.getId(), record);
+            return record;
+        });
+    }
+
+    private IdempotencyService.StoredResponse response(int status, String body) {
+        return new IdempotencyService.StoredResponse(status, "application/json", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void execute_RetryWithSameKey_ReplaysFirstResponse() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        IdempotencyService.Result first = idempotencyService.execute("key", "hash",
+                () -> response(200, "{\"booking\":" + calls.incrementAndGet() + "}"));
+        IdempotencyService.Result retry = idempotencyService.execute("key", "hash",
+                () -> response(200, "{\"booking\":" + calls.incrementAndGet() + "}"));
+
+        assertEquals(1, calls.get());
+        assertFalse(first.replayed());
+        assertTrue(retry.replayed());
+        assertArrayEquals(first.response().body(), retry.response().body());
+        verify(idempotencyRecordRepository, times(1)).save(any());
+    }
+
+    @Test
+    void execute_ConcurrentDuplicate_WaitsForFirstRequest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<IdempotencyService.Result> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return idempotencyService.execute("key", "hash", () -> {
+                    calls.incrementAndGet();
+                    started.countDown();
+                    release.await();
+                    return response(201, "{}");
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<IdempotencyService.Result> duplicate = CompletableFuture.supplyAsync(() -> {
+            try {
+                return idempotencyService.execute("key", "hash", () -> response(201, "{\"duplicate\":true}"));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        release.countDown();
+
+        assertEquals(1, calls.get());
+        assertFalse(first.get(5, TimeUnit.SECONDS).replayed());
+        IdempotencyService.Result replayed = duplicate.get(5, TimeUnit.SECONDS);
+        assertTrue(replayed.replayed());
+        assertEquals("{}", new String(replayed.response().body(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void execute_SameKeyDifferentRequest_Rejected() throws Exception {
+        idempotencyService.execute("key", "hash", () -> response(200, "{}"));
+
+        IdempotencyService.IdempotencyConflictException ex = assertThrows(
+                IdempotencyService.IdempotencyConflictException.class,
+                () -> idempotencyService.execute("key", "other-hash", () -> response(200, "{}")));
+
+        assertEquals(422, ex.getStatus());
+    }
+
+    @Test
+    void execute_ServerError_NotKept() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        idempotencyService.execute("key", "hash", () -> {
+            calls.incrementAndGet();
+            return response(500, "{}");
+        });
+        IdempotencyService.Result retry = idempotencyService.execute("key", "hash", () -> {
+            calls.incrementAndGet();
+            return response(200, "{}");
+        });
+
+        assertEquals(2, calls.get());
+        assertFalse(retry.replayed());
+        verify(idempotencyRecordRepository, times(1)).save(any());
+    }
+
+    @Test
+    void execute_ResponseSaved_ReplayedFromDatabaseNotMemory() throws Exception {
+        idempotencyService.execute("key", "hash", () -> response(201, "{\"booking\":1}"));
+
+        assertEquals(0, idempotencyService.getRetainedBytes());
+        IdempotencyService.Result retry = idempotencyService.execute("key", "hash",
+                () -> response(201, "{\"booking\":2}"));
+
+        assertTrue(retry.replayed());
+        assertEquals("{\"booking\":1}", new String(retry.response().body(), StandardCharsets.UTF_8));
+        verify(idempotencyRecordRepository, times(2)).findById("key");
+    }
+
+    @Test
+    void execute_SaveFails_KeptInMemoryWithinLimit() throws Exception {
+        doThrow(new RuntimeException("database down")).when(idempotencyRecordRepository).save(any());
+        AtomicInteger calls = new AtomicInteger();
+
+        idempotencyService.execute("key", "hash", () -> response(200, "{\"n\":" + calls.incrementAndGet() + "}"));
+        IdempotencyService.Result retry = idempotencyService.execute("key", "hash",
+                () -> response(200, "{\"n\":" + calls.incrementAndGet() + "}"));
+
+        assertEquals(1, calls.get());
+        assertTrue(retry.replayed());
+        assertEquals(7, idempotencyService.getRetainedBytes());
+    }
+
+    @Test
+    void execute_SaveFailsAboveMemoryLimit_NotKept() throws Exception {
+        doThrow(new RuntimeException("database down")).when(idempotencyRecordRepository).save(any());
+        String large = "x".repeat(2048);
+        AtomicInteger calls = new AtomicInteger();
+
+        idempotencyService.execute("key", "hash", () -> {
+            calls.incrementAndGet();
+            return response(200, large);
+        });
+        IdempotencyService.Result retry = idempotencyService.execute("key", "hash", () -> {
+            calls.incrementAndGet();
+            return response(200, large);
+        });
+
+        assertEquals(2, calls.get());
+        assertFalse(retry.replayed());
+        assertEquals(0, idempotencyService.getRetainedBytes());
+    }
+}
@@ -0,0 +1,200 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.ImageVariant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImagePackServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private ImagePackService imagePackService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        imagePackService = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        imagePackService.close();
+    }
+
+    @Test
+    void find_AfterReopen_ServesLatestRecords() throws Exception {
+        imagePackService.append(1L, ImageVariant.THUMBNAIL, image("a-thumb.png", 1, 100), "a.png");
+        imagePackService.append(1L, ImageVariant.FULL, image("a-full.png", 2, 300), "a.png");
+        imagePackService.append(2L, ImageVariant.ORIGINAL, image("b.png", 3, 200), "b.png");
+        imagePackService.append(1L, ImageVariant.THUMBNAIL, image("c-thumb.png", 4, 120), "c.png");
+        imagePackService.removeIfChanged(2L, null);
+
+        imagePackService.close();
+        imagePackService = open();
+
+        ImagePackService.PackedImage thumbnail = imagePackService.find(1L, ImageVariant.THUMBNAIL);
+        assertArrayEquals(bytes(4, 120), content(thumbnail));
+        assertEquals("c.png", thumbnail.entry().source());
+        assertEquals("image/png", thumbnail.entry().mediaType());
+        assertArrayEquals(bytes(2, 300), content(imagePackService.find(1L, ImageVariant.FULL)));
+        // The tombstone keeps the removal across restarts
+        assertNull(imagePackService.find(2L, ImageVariant.ORIGINAL));
+        assertEquals(2, imagePackService.getStats().get("images"));
+        assertTrue((Long) imagePackService.getStats().get("deadBytes") > 0);
+    }
+
+    @Test
+    void open_TruncatedTail_DropsPartialRecord() throws Exception {
+        imagePackService.append(1L, ImageVariant.CARD, image("a.png", 1, 100), "a.png");
+        long completeLength = (Long) imagePackService.getStats().get("packBytes");
+        imagePackService.append(2L, ImageVariant.CARD, image("b.png", 2, 100), "b.png");
+        imagePackService.close();
+
+        // Cut the second record short, as if the application stopped while writing it
+        try (FileChannel pack = FileChannel.open(packFile(), StandardOpenOption.WRITE)) {
+            pack.truncate(completeLength + 40);
+        }
+        imagePackService = open();
+
+        assertEquals(completeLength, Files.size(packFile()));
+        assertArrayEquals(bytes(1, 100), content(imagePackService.find(1L, ImageVariant.CARD)));
+        assertNull(imagePackService.find(2L, ImageVariant.CARD));
+
+        // Appends continue from the last complete record
+        imagePackService.append(2L, ImageVariant.CARD, image("b.png", 2, 100), "b.png");
+        imagePackService.close();
+        imagePackService = open();
+        assertArrayEquals(bytes(2, 100), content(imagePackService.find(2L, ImageVariant.CARD)));
+    }
+
+    @Test
+    void compact_WhileReadsInFlight_ReadersSeeCompleteImages() throws Exception {
+        for (long carId = 1; carId <= 4; carId++) {
+            for (int version = 0; version < 3; version++) {
+                imagePackService.append(carId, ImageVariant.FULL, image("car.png", (int) carId, 500), "car.png");
+            }
+        }
+        ImagePackService.PackedImage held = imagePackService.find(1L, ImageVariant.FULL);
+        long sizeBefore = (Long) imagePackService.getStats().get("packBytes");
+
+        AtomicBoolean compacted = new AtomicBoolean();
+        ExecutorService readers = Executors.newFixedThreadPool(2);
+        List<Future<Integer>> reads = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            reads.add(readers.submit(() -> {
+                int count = 0;
+                // Keep reading until a few reads have gone to the compacted pack
+                for (int after = 0; after < 100; count++) {
+                    long carId = count % 4 + 1;
+                    assertArrayEquals(bytes((int) carId, 500), content(imagePackService.find(carId, ImageVariant.FULL)));
+                    if (compacted.get()) {
+                        after++;
+                    }
+                }
+                return count;
+            }));
+        }
+        imagePackService.compact();
+        compacted.set(true);
+        for (Future<Integer> read : reads) {
+            assertTrue(read.get(10, TimeUnit.SECONDS) > 0);
+        }
+        readers.shutdown();
+
+        assertTrue((Long) imagePackService.getStats().get("packBytes") < sizeBefore);
+        assertEquals(0L, imagePackService.getStats().get("deadBytes"));
+        // A slice taken before compaction still reads the image it was taken from
+        assertArrayEquals(bytes(1, 500), content(held));
+        assertArrayEquals(bytes(3, 500), content(imagePackService.find(3L, ImageVariant.FULL)));
+    }
+
+    @Test
+    void appendIfAbsent_ServedFromDisk_PacksInBackground() throws Exception {
+        Path image = image("a.png", 1, 100);
+
+        imagePackService.appendIfAbsent(1L, ImageVariant.CARD, image, "a.png", System.currentTimeMillis());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (imagePackService.find(1L, ImageVariant.CARD) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertArrayEquals(bytes(1, 100), content(imagePackService.find(1L, ImageVariant.CARD)));
+    }
+
+    @Test
+    void append_ImageUnreadable_CutsPackBackToLastRecord() throws Exception {
+        imagePackService.append(1L, ImageVariant.CARD, image("a.png", 1, 100), "a.png");
+        long completeLength = (Long) imagePackService.getStats().get("packBytes");
+
+        // The header is written before reading a directory fails
+        imagePackService.append(2L, ImageVariant.CARD, Files.createDirectory(uploadDir.resolve("b.png")), "b.png");
+
+        assertEquals(completeLength, imagePackService.getStats().get("packBytes"));
+        assertNull(imagePackService.find(2L, ImageVariant.CARD));
+
+        // Later records start where the complete ones end
+        imagePackService.append(3L, ImageVariant.CARD, image("c.png", 3, 100), "c.png");
+        imagePackService.close();
+        imagePackService = open();
+        assertArrayEquals(bytes(1, 100), content(imagePackService.find(1L, ImageVariant.CARD)));
+        assertArrayEquals(bytes(3, 100), content(imagePackService.find(3L, ImageVariant.CARD)));
+    }
+
+    @Test
+    void append_Disabled_PacksNothing() throws Exception {
+        ImagePackService disabled = new ImagePackService(false, uploadDir.toString(), 0.3, 10);
+        disabled.open();
+
+        disabled.append(1L, ImageVariant.CARD, image("a.png", 1, 100), "a.png");
+
+        assertNull(disabled.find(1L, ImageVariant.CARD));
+    }
+
+    private ImagePackService open() throws IOException {
+        ImagePackService service = new ImagePackService(true, uploadDir.toString(), 0.3, 10);
+        service.open();
+        return service;
+    }
+
+    private Path packFile() {
+        return uploadDir.resolve("pack").resolve("car-images.pack");
+    }
+
+    private Path image(String name, int fill, int length) throws IOException {
+        return Files.write(uploadDir.resolve(name), bytes(fill, length));
+    }
+
+    private static byte[] bytes(int fill, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (fill * 31 + i);
+        }
+        return bytes;
+    }
+
+    private static byte[] content(ImagePackService.PackedImage image) {
+        assertNotNull(image);
+        ByteBuffer content = image.content().duplicate();
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return bytes;
+    }
+}
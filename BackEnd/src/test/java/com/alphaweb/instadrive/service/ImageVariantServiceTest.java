@@ -0,0 +1,117 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.ImageVariant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageVariantServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private ImageVariantService imageVariantService;
+
+    @BeforeEach
+    void setUp() {
+        imageVariantService = new ImageVariantService(uploadDir.toString(), 0.82f, 1, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        imageVariantService.shutdown();
+    }
+
+    @Test
+    void generateVariants_LargePhoto_FitsEachBoxKeepingAspectRatio() throws Exception {
+        Path original = image("car.jpg", 4000, 2000, BufferedImage.TYPE_INT_RGB, "jpg");
+
+        imageVariantService.generateVariants(original);
+
+        assertDimensions("car.jpg", ImageVariant.FULL, "car_full.jpg", 1920, 960);
+        assertDimensions("car.jpg", ImageVariant.CARD, "car_card.jpg", 800, 400);
+        assertDimensions("car.jpg", ImageVariant.THUMBNAIL, "car_thumb.jpg", 320, 160);
+        assertNull(imageVariantService.findVariant("car.jpg", ImageVariant.ORIGINAL));
+    }
+
+    @Test
+    void generateVariants_TransparentImage_StaysPng() throws Exception {
+        Path original = image("logo.png", 1000, 1000, BufferedImage.TYPE_INT_ARGB, "png");
+
+        imageVariantService.generateVariants(original);
+
+        Path thumbnail = imageVariantService.findVariant("logo.png", ImageVariant.THUMBNAIL);
+        assertEquals("logo_thumb.png", thumbnail.getFileName().toString());
+        BufferedImage rendered = ImageIO.read(thumbnail.toFile());
+        assertTrue(rendered.getColorModel().hasAlpha());
+        assertEquals(240, rendered.getWidth());
+        assertEquals(240, rendered.getHeight());
+    }
+
+    @Test
+    void generateVariants_SmallImage_NotUpscaled() throws Exception {
+        Path original = image("small.jpg", 200, 100, BufferedImage.TYPE_INT_RGB, "jpg");
+
+        imageVariantService.generateVariants(original);
+
+        assertDimensions("small.jpg", ImageVariant.FULL, "small_full.jpg", 200, 100);
+        assertDimensions("small.jpg", ImageVariant.THUMBNAIL, "small_thumb.jpg", 200, 100);
+    }
+
+    @Test
+    void generateVariants_NotAnImage_Throws() throws Exception {
+        Path original = Files.writeString(uploadDir.resolve("notes.jpg"), "not an image");
+
+        assertThrows(IOException.class, () -> imageVariantService.generateVariants(original));
+        assertNull(imageVariantService.findVariant("notes.jpg", ImageVariant.CARD));
+    }
+
+    @Test
+    void generateVariantsAsync_Rendered_CallsBackAndDeletesCleanly() throws Exception {
+        Path original = image("car.jpg", 1000, 500, BufferedImage.TYPE_INT_RGB, "jpg");
+        CountDownLatch done = new CountDownLatch(1);
+
+        imageVariantService.generateVariantsAsync(original, done::countDown);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNotNull(imageVariantService.findVariant("car.jpg", ImageVariant.CARD));
+
+        imageVariantService.deleteVariants("car.jpg");
+
+        for (ImageVariant variant : ImageVariant.values()) {
+            assertNull(imageVariantService.findVariant("car.jpg", variant));
+        }
+        // No temp files are left behind either
+        try (var files = Files.list(uploadDir.resolve("variants"))) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private Path image(String name, int width, int height, int type, String format) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Path path = uploadDir.resolve(name);
+        ImageIO.write(image, format, path.toFile());
+        return path;
+    }
+
+    private void assertDimensions(String original, ImageVariant variant, String fileName, int width, int height)
+            throws IOException {
+        Path path = imageVariantService.findVariant(original, variant);
+        assertNotNull(path);
+        assertEquals(fileName, path.getFileName().toString());
+        BufferedImage rendered = ImageIO.read(path.toFile());
+        assertEquals(width, rendered.getWidth());
+        assertEquals(height, rendered.getHeight());
+    }
+}
@@ -0,0 +1,125 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.OutboxEvent;
+import com.alphaweb.instadrive.repository.OutboxEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class OutboxRelayTest {
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private OutboxEventHandler handler;
+
+    private OutboxRelay outboxRelay;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+        when(handler.supports(OutboxService.BOOKING_CANCELLED)).thenReturn(true);
+        outboxRelay = new OutboxRelay(outboxEventRepository, List.of(handler), transactionTemplate,
+                100, 30000, 3, 1000, 604800000);
+    }
+
+    @Test
+    void relay_HandlerSucceeds_MarksEventDispatched() throws Exception {
+        // Arrange
+        OutboxEvent event = event(1L, 0);
+        when(outboxEventRepository.lockDueEvents(any(LocalDateTime.class), anyInt())).thenReturn(List.of(event));
+
+        // Act
+        outboxRelay.relay();
+
+        // Assert
+        verify(handler).handle(event);
+        verify(outboxEventRepository).markDispatched(eq(List.of(1L)), any(LocalDateTime.class));
+        // The lease keeps other relays off the event while it is delivered
+        assertTrue(event.getAvailableAt().isAfter(LocalDateTime.now().plusSeconds(20)));
+    }
+
+    @Test
+    void relay_HandlerThrows_ReschedulesWithBackoff() throws Exception {
+        // Arrange
+        OutboxEvent event = event(2L, 0);
+        when(outboxEventRepository.lockDueEvents(any(LocalDateTime.class), anyInt())).thenReturn(List.of(event));
+        doThrow(new RuntimeException("receipts directory is full")).when(handler).handle(event);
+
+        // Act
+        LocalDateTime before = LocalDateTime.now();
+        outboxRelay.relay();
+
+        // Assert
+        assertEquals(1, event.getAttempts());
+        assertEquals("PENDING", event.getStatus());
+        assertEquals("receipts directory is full", event.getLastError());
+        assertFalse(event.getAvailableAt().isBefore(before.plusSeconds(1)));
+        assertTrue(event.getAvailableAt().isBefore(before.plusSeconds(30)));
+        verify(outboxEventRepository).save(event);
+        verify(outboxEventRepository, never()).markDispatched(anyCollection(), any());
+    }
+
+    @Test
+    void relay_LastAttemptFails_GivesUp() throws Exception {
+        // Arrange
+        OutboxEvent event = event(3L, 2);
+        when(outboxEventRepository.lockDueEvents(any(LocalDateTime.class), anyInt())).thenReturn(List.of(event));
+        doThrow(new RuntimeException("boom")).when(handler).handle(event);
+
+        // Act
+        outboxRelay.relay();
+
+        // Assert
+        assertEquals("FAILED", event.getStatus());
+        assertEquals(1L, outboxRelay.getStats().get("failed"));
+    }
+
+    @Test
+    void relay_NoHandlerForType_StillMarksDispatched() throws Exception {
+        // Arrange
+        OutboxEvent event = event(4L, 0);
+        event.setEventType(OutboxService.BOOKING_CREATED);
+        when(outboxEventRepository.lockDueEvents(any(LocalDateTime.class), anyInt())).thenReturn(List.of(event));
+
+        // Act
+        outboxRelay.relay();
+
+        // Assert
+        verify(handler, never()).handle(any());
+        verify(outboxEventRepository).markDispatched(eq(List.of(4L)), any(LocalDateTime.class));
+    }
+
+    private static OutboxEvent event(Long id, int attempts) {
+        OutboxEvent event = new OutboxEvent();
+        event.setId(id);
+        event.setEventType(OutboxService.BOOKING_CANCELLED);
+        event.setAggregateType("Booking");
+        event.setAggregateId(7L);
+        event.setPayload("{}");
+        event.setStatus("PENDING");
+        event.setAttempts(attempts);
+        event.setAvailableAt(LocalDateTime.now());
+        return event;
+    }
+}
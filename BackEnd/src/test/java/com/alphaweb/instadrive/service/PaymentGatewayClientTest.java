@@ -0,0 +1,135 @@
+package com.alphaweb.instadrive.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentGatewayClientTest {
+
+    private static final String SECRET = "test-webhook-secret";
+
+    private PaymentGatewayClient client;
+
+    @AfterEach
+    void tearDown() {
+        if (client != null) {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    void submit_GatewayDoesNotAnswerInTime_LeavesChargePendingAndReleasesPermit() throws Exception {
+        client = new PaymentGatewayClient(request -> new CompletableFuture<>(), true, 100, 1, SECRET);
+        List<PaymentGateway.ChargeResult> results = new CopyOnWriteArrayList<>();
+
+        client.submit(charge("TX-1"), results::add);
+
+        awaitStat("timedOut", 1L);
+        awaitStat("inFlight", 0L);
+        // No answer is reported; the charge stays pending for its webhook
+        assertTrue(results.isEmpty());
+        assertEquals(1, client.getStats().get("availablePermits"));
+    }
+
+    @Test
+    void submit_GatewayAnswersAfterTimeout_ReportsLateAnswer() throws Exception {
+        CompletableFuture<PaymentGateway.ChargeResult> answer = new CompletableFuture<>();
+        client = new PaymentGatewayClient(request -> answer, true, 100, 1, SECRET);
+        BlockingQueue<PaymentGateway.ChargeResult> results = new LinkedBlockingQueue<>();
+
+        client.submit(charge("TX-1"), results::add);
+        awaitStat("timedOut", 1L);
+        answer.complete(new PaymentGateway.ChargeResult("TX-1", true, "REF", null));
+
+        // The gateway may have taken the money, so its late approval is still reported
+        PaymentGateway.ChargeResult result = results.poll(5, TimeUnit.SECONDS);
+        assertNotNull(result);
+        assertTrue(result.approved());
+        assertEquals(1L, client.getStats().get("lateAnswers"));
+        assertEquals(1L, client.getStats().get("approved"));
+    }
+
+    @Test
+    void submit_MoreChargesThanPermits_LimitsChargesAtTheGateway() throws Exception {
+        BlockingQueue<CompletableFuture<PaymentGateway.ChargeResult>> pending = new LinkedBlockingQueue<>();
+        AtomicInteger atGateway = new AtomicInteger();
+        AtomicInteger maxAtGateway = new AtomicInteger();
+        client = new PaymentGatewayClient(request -> {
+            maxAtGateway.accumulateAndGet(atGateway.incrementAndGet(), Math::max);
+            CompletableFuture<PaymentGateway.ChargeResult> result = new CompletableFuture<>();
+            pending.add(result);
+            return result;
+        }, true, 10000, 2, SECRET);
+        CountDownLatch answered = new CountDownLatch(6);
+
+        for (int i = 0; i < 6; i++) {
+            client.submit(charge("TX-" + i), result -> answered.countDown());
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pending.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        // The rest wait for a permit rather than reach the gateway
+        assertEquals(2, atGateway.get());
+        assertEquals(2, pending.size());
+
+        // Answer the charges one at a time; each answer lets one more through
+        for (int i = 0; i < 6; i++) {
+            CompletableFuture<PaymentGateway.ChargeResult> result = pending.poll(5, TimeUnit.SECONDS);
+            assertNotNull(result);
+            atGateway.decrementAndGet();
+            result.complete(new PaymentGateway.ChargeResult("TX", true, "REF", null));
+        }
+
+        assertTrue(answered.await(5, TimeUnit.SECONDS));
+        assertEquals(2, maxAtGateway.get());
+        assertEquals(6L, client.getStats().get("approved"));
+        assertEquals(0L, client.getStats().get("timedOut"));
+    }
+
+    @Test
+    void verifyWebhookSignature_SignedWithSecret_Accepts() throws Exception {
+        client = new PaymentGatewayClient(request -> new CompletableFuture<>(), true, 100, 1, SECRET);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        String signature = HexFormat.of().formatHex(mac.doFinal("TX-1:APPROVED".getBytes(StandardCharsets.UTF_8)));
+
+        assertTrue(client.verifyWebhookSignature("TX-1", "APPROVED", signature));
+        assertFalse(client.verifyWebhookSignature("TX-1", "DECLINED", signature));
+        assertFalse(client.verifyWebhookSignature("TX-1", "APPROVED", "zz"));
+    }
+
+    @Test
+    void constructor_NoWebhookSecret_Throws() {
+        assertThrows(IllegalStateException.class,
+                () -> new PaymentGatewayClient(request -> new CompletableFuture<>(), true, 100, 1, ""));
+    }
+
+    private static PaymentGateway.ChargeRequest charge(String transactionId) {
+        return new PaymentGateway.ChargeRequest(transactionId, "UPI", 100.0, "user@upi");
+    }
+
+    private void awaitStat(String name, Object expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!expected.equals(client.getStats().get(name)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, client.getStats().get(name));
+    }
+}
@@ -0,0 +1,357 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.dto.CardPaymentRequest;
+import com.alphaweb.instadrive.dto.PaymentContext;
+import com.alphaweb.instadrive.dto.PaymentResponse;
+import com.alphaweb.instadrive.dto.PaymentStatusDTO;
+import com.alphaweb.instadrive.dto.PaymentStatusTotal;
+import com.alphaweb.instadrive.dto.UpiPaymentRequest;
+import com.alphaweb.instadrive.exception.PaymentException;
+import com.alphaweb.instadrive.model.Booking;
+import com.alphaweb.instadrive.model.Car;
+import com.alphaweb.instadrive.model.Payment;
+import com.alphaweb.instadrive.model.PaymentStatus;
+import com.alphaweb.instadrive.model.User;
+import com.alphaweb.instadrive.repository.PaymentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PaymentServiceTest {
+
+    private static final List<PaymentStatus> LOCKED_STATUSES = List.of(PaymentStatus.SUCCESS, PaymentStatus.REFUNDED);
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    @Mock
+    private BookingService bookingService;
+
+    @Mock
+    private StatementService statementService;
+
+    @Mock
+    private PaymentGatewayClient paymentGatewayClient;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private TransactionIdGenerator transactionIdGenerator;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private PaymentService paymentService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(paymentRepository.save(any(Payment.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void processUpiPayment_GatewayEnabled_StaysPendingUntilGatewayApproves() {
+        // Arrange
+        when(paymentGatewayClient.isEnabled()).thenReturn(true);
+        when(transactionIdGenerator.next("UPI")).thenReturn("UPI-1");
+        when(bookingService.getPaymentContext(5L)).thenReturn(Optional.of(new PaymentContext(booking(5L), new User(), new Car())));
+        UpiPaymentRequest request = new UpiPaymentRequest();
+        request.setBookingId(5L);
+        request.setUserId(7L);
+        request.setAmount(100.0);
+        request.setUpiId("user@upi");
+
+        // Act
+        PaymentResponse response = paymentService.processUpiPayment(request);
+
+        // Assert: saved pending and charged, with no receipt yet
+        assertEquals("PENDING", response.getStatus());
+        ArgumentCaptor<Payment> saved = ArgumentCaptor.forClass(Payment.class);
+        verify(paymentRepository).save(saved.capture());
+        assertEquals(PaymentStatus.PENDING, saved.getValue().getStatus());
+        verify(outboxService, never()).publish(any(), any(), any(), anyMap());
+
+        // The gateway's approval completes it
+        ArgumentCaptor<Consumer<PaymentGateway.ChargeResult>> onResult = ArgumentCaptor.forClass(Consumer.class);
+        verify(paymentGatewayClient).submit(argThat(charge -> "UPI-1".equals(charge.transactionId())), onResult.capture());
+        when(paymentRepository.completePendingPayment("UPI-1", PaymentStatus.SUCCESS)).thenReturn(1);
+        when(paymentRepository.findByTransactionId("UPI-1")).thenReturn(Optional.of(saved.getValue()));
+        onResult.getValue().accept(new PaymentGateway.ChargeResult("UPI-1", true, "REF", null));
+
+        assertEquals(PaymentStatus.SUCCESS, saved.getValue().getStatus());
+        verify(outboxService).publish(eq(OutboxService.PAYMENT_SUCCEEDED), eq("Payment"), any(), anyMap());
+    }
+
+    @Test
+    void processUpiPayment_UserAndAmountMissing_FilledFromBookingLoadedInService() {
+        // Arrange
+        Booking booking = booking(5L);
+        booking.setTotalAmount(250.0);
+        booking.setReferenceId("BK-5");
+        when(bookingService.getPaymentContext(5L)).thenReturn(Optional.of(new PaymentContext(booking, new User(), new Car())));
+        when(transactionIdGenerator.next("UPI")).thenReturn("UPI-1");
+        UpiPaymentRequest request = new UpiPaymentRequest();
+        request.setBookingId(5L);
+        request.setUpiId("user@upi");
+
+        // Act
+        PaymentResponse response = paymentService.processUpiPayment(request);
+
+        // Assert
+        assertEquals("SUCCESS", response.getStatus());
+        assertEquals("BK-5", response.getReferenceId());
+        assertEquals(7L, request.getUserId());
+        assertEquals(250.0, request.getAmount());
+        assertEquals("INR", request.getCurrency());
+        ArgumentCaptor<Payment> saved = ArgumentCaptor.forClass(Payment.class);
+        verify(paymentRepository).save(saved.capture());
+        assertEquals(7L, saved.getValue().getUserId());
+        assertEquals(250.0, saved.getValue().getAmount());
+        verify(outboxService).publish(eq(OutboxService.PAYMENT_SUCCEEDED), eq("Payment"), any(), anyMap());
+    }
+
+    @Test
+    void processCardPayment_BookingNotFound_ThrowsPaymentException() {
+        when(bookingService.getPaymentContext(5L)).thenReturn(Optional.empty());
+        CardPaymentRequest request = new CardPaymentRequest();
+        request.setBookingId(5L);
+        request.setCardNumber("4111111111111111");
+
+        PaymentException e = assertThrows(PaymentException.class, () -> paymentService.processCardPayment(request));
+
+        assertTrue(e.getMessage().contains("Booking not found"));
+        verify(paymentRepository, never()).save(any());
+    }
+
+    @Test
+    void processCardPayment_NoCardNumber_ThrowsPaymentException() {
+        when(bookingService.getPaymentContext(5L)).thenReturn(Optional.of(new PaymentContext(booking(5L), new User(), new Car())));
+        CardPaymentRequest request = new CardPaymentRequest();
+        request.setBookingId(5L);
+
+        assertThrows(PaymentException.class, () -> paymentService.processCardPayment(request));
+
+        verify(paymentRepository, never()).save(any());
+    }
+
+    @Test
+    void processCardPayment_ValidCard_StoresMaskedNumber() {
+        // Arrange
+        when(bookingService.getPaymentContext(5L)).thenReturn(Optional.of(new PaymentContext(booking(5L), new User(), new Car())));
+        when(transactionIdGenerator.next("CARD")).thenReturn("CARD-1");
+        CardPaymentRequest request = new CardPaymentRequest();
+        request.setBookingId(5L);
+        request.setAmount(100.0);
+        request.setCardNumber("4111111111111111");
+
+        // Act
+        paymentService.processCardPayment(request);
+
+        // Assert
+        ArgumentCaptor<Payment> saved = ArgumentCaptor.forClass(Payment.class);
+        verify(paymentRepository).save(saved.capture());
+        assertEquals("XXXX-XXXX-XXXX-1111", saved.getValue().getCardNumber());
+        assertEquals("CARD-1", saved.getValue().getTransactionId());
+    }
+
+    @Test
+    void completePayment_AlreadyCompleted_IgnoresDuplicateAnswer() {
+        when(paymentRepository.completePendingPayment("TX1", PaymentStatus.SUCCESS)).thenReturn(0);
+        when(paymentRepository.approveExpiredPayment("TX1")).thenReturn(0);
+
+        assertFalse(paymentService.completePayment("TX1", true, null));
+
+        verify(outboxService, never()).publish(any(), any(), any(), anyMap());
+        verify(statementService, never()).invalidate(any(), any());
+    }
+
+    @Test
+    void expirePendingPayments_GatewayNeverAnswered_FailsPaymentAsExpired() {
+        // Arrange
+        Payment pending = payment(11L, 5L, PaymentStatus.PENDING, 100.0, "TX11");
+        when(paymentRepository.findByStatusAndTimestampBefore(eq(PaymentStatus.PENDING), any())).thenReturn(List.of(pending));
+        when(paymentRepository.expirePendingPayment("TX11")).thenReturn(1);
+        when(paymentRepository.findByTransactionId("TX11")).thenReturn(Optional.of(pending));
+
+        // Act
+        paymentService.expirePendingPayments();
+
+        // Assert
+        assertEquals(PaymentStatus.FAILED, pending.getStatus());
+        verify(paymentRepository, never()).completePendingPayment(any(), any());
+        verify(outboxService).publish(eq(OutboxService.PAYMENT_FAILED), eq("Payment"), any(), anyMap());
+    }
+
+    @Test
+    void completePayment_ApprovedAfterExpiry_CompletesPayment() {
+        // Arrange: the payment expired before the gateway's approval arrived
+        Payment expired = payment(11L, 5L, PaymentStatus.SUCCESS, 100.0, "TX11");
+        when(paymentRepository.completePendingPayment("TX11", PaymentStatus.SUCCESS)).thenReturn(0);
+        when(paymentRepository.approveExpiredPayment("TX11")).thenReturn(1);
+        when(paymentRepository.findByTransactionId("TX11")).thenReturn(Optional.of(expired));
+
+        // Act
+        boolean completed = paymentService.completePayment("TX11", true, null);
+
+        // Assert
+        assertTrue(completed);
+        verify(outboxService).publish(eq(OutboxService.PAYMENT_SUCCEEDED), eq("Payment"), any(), anyMap());
+        verify(statementService).invalidate(7L, YearMonth.of(2025, 5));
+    }
+
+    @Test
+    void completePayment_DeclinedAfterExpiry_LeavesPaymentFailed() {
+        when(paymentRepository.completePendingPayment("TX11", PaymentStatus.FAILED)).thenReturn(0);
+
+        assertFalse(paymentService.completePayment("TX11", false, "Declined"));
+
+        verify(paymentRepository, never()).approveExpiredPayment(any());
+        verify(outboxService, never()).publish(any(), any(), any(), anyMap());
+    }
+
+    @Test
+    void processRefund_SuccessfulPayment_RefundsUnderLock() {
+        // Arrange
+        Payment original = payment(11L, 5L, PaymentStatus.SUCCESS, 100.0, "TX11");
+        when(paymentRepository.lockByBookingIds(List.of(5L), LOCKED_STATUSES)).thenReturn(List.of(original));
+        when(transactionIdGenerator.next("REFUND")).thenReturn("REFUND-1");
+
+        // Act
+        PaymentResponse response = paymentService.processRefund(5L);
+
+        // Assert
+        assertEquals("REFUNDED", response.getStatus());
+        assertEquals("REFUND-1", response.getTransactionId());
+        ArgumentCaptor<Payment> saved = ArgumentCaptor.forClass(Payment.class);
+        verify(paymentRepository, times(2)).save(saved.capture());
+        assertEquals(-100.0, saved.getAllValues().get(0).getAmount());
+        assertEquals(PaymentStatus.REFUNDED, original.getStatus());
+        verify(outboxService).publish(eq(OutboxService.PAYMENT_REFUNDED), eq("Payment"), any(), anyMap());
+    }
+
+    @Test
+    void processRefund_RefundedMeanwhile_Throws() {
+        // Arrange: a batch refund got to the booking first
+        when(paymentRepository.lockByBookingIds(List.of(5L), LOCKED_STATUSES)).thenReturn(List.of(
+                payment(11L, 5L, PaymentStatus.REFUNDED, 100.0, "TX11"),
+                payment(12L, 5L, PaymentStatus.REFUNDED, -100.0, "REFUND12")));
+
+        // Act & Assert
+        RuntimeException e = assertThrows(RuntimeException.class, () -> paymentService.processRefund(5L));
+        assertTrue(e.getMessage().contains("already been refunded"));
+        verify(paymentRepository, never()).save(any());
+    }
+
+    @Test
+    void processRefund_NoSuccessfulPayment_Throws() {
+        when(paymentRepository.lockByBookingIds(List.of(5L), LOCKED_STATUSES)).thenReturn(List.of());
+        when(paymentRepository.existsByBookingId(5L)).thenReturn(true);
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> paymentService.processRefund(5L));
+
+        assertTrue(e.getMessage().contains("No successful payment found"));
+    }
+
+    @Test
+    void getPaymentStatus_PaidBooking_TotalsPerStatus() {
+        // Arrange
+        List<Payment> payments = List.of(payment(11L, 5L, PaymentStatus.SUCCESS, 100.0, "TX11"));
+        when(paymentRepository.sumByStatusForBooking(5L)).thenReturn(List.of(
+                new PaymentStatusTotal(PaymentStatus.SUCCESS, 2, 150.0),
+                new PaymentStatusTotal(PaymentStatus.FAILED, 1, 70.0)));
+        when(paymentRepository.findByBookingId(5L)).thenReturn(payments);
+
+        // Act
+        PaymentStatusDTO status = paymentService.getPaymentStatus(5L, false);
+
+        // Assert
+        assertTrue(status.isHasPaid());
+        assertEquals(150.0, status.getTotalPaid());
+        assertFalse(status.isHasRefund());
+        assertEquals(0.0, status.getTotalRefunded());
+        assertEquals(3, status.getPaymentCount());
+        assertEquals(payments, status.getPayments());
+    }
+
+    @Test
+    void getPaymentStatus_RefundedBooking_ReportsRefund() {
+        when(paymentRepository.sumByStatusForBooking(5L)).thenReturn(List.of(
+                new PaymentStatusTotal(PaymentStatus.REFUNDED, 2, 200.0)));
+
+        PaymentStatusDTO status = paymentService.getPaymentStatus(5L, true);
+
+        assertFalse(status.isHasPaid());
+        assertTrue(status.isHasRefund());
+        assertEquals(200.0, status.getTotalRefunded());
+        assertEquals(2, status.getPaymentCount());
+    }
+
+    @Test
+    void getPaymentStatus_NoPayments_SkipsPaymentQuery() {
+        when(paymentRepository.sumByStatusForBooking(5L)).thenReturn(List.of());
+
+        PaymentStatusDTO status = paymentService.getPaymentStatus(5L, false);
+
+        assertFalse(status.isHasPaid());
+        assertFalse(status.isHasRefund());
+        assertEquals(0, status.getPaymentCount());
+        assertTrue(status.getPayments().isEmpty());
+        verify(paymentRepository, never()).findByBookingId(any());
+    }
+
+    @Test
+    void getPaymentStatus_Summary_LeavesOutPayments() {
+        when(paymentRepository.sumByStatusForBooking(5L)).thenReturn(List.of(
+                new PaymentStatusTotal(PaymentStatus.SUCCESS, 1, 100.0)));
+
+        PaymentStatusDTO status = paymentService.getPaymentStatus(5L, true);
+
+        assertTrue(status.isHasPaid());
+        assertNull(status.getPayments());
+        verify(paymentRepository, never()).findByBookingId(any());
+    }
+
+    private static Booking booking(Long id) {
+        Booking booking = new Booking();
+        booking.setId(id);
+        booking.setUserId(7L);
+        return booking;
+    }
+
+    private static Payment payment(Long id, Long bookingId, PaymentStatus status, double amount, String transactionId) {
+        Payment payment = new Payment();
+        payment.setId(id);
+        payment.setBookingId(bookingId);
+        payment.setUserId(7L);
+        payment.setStatus(status);
+        payment.setAmount(amount);
+        payment.setTransactionId(transactionId);
+        payment.setPaymentMode("UPI");
+        payment.setTimestamp(LocalDateTime.of(2025, 5, 3, 10, 0));
+        return payment;
+    }
+}
@@ -0,0 +1,121 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.Receipt;
+import com.alphaweb.instadrive.repository.BookingRepository;
+import com.alphaweb.instadrive.repository.ReceiptRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class ReceiptArchiveServiceTest {
+
+    @Mock
+    private ReceiptRepository receiptRepository;
+
+    @Mock
+    private BookingRepository bookingRepository;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private CarService carService;
+
+    @Mock
+    private EntityManager entityManager;
+
+    private ReceiptArchiveService receiptArchiveService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReceiptQrService receiptQrService = new ReceiptQrService(new ReceiptTokenService("test-secret"), 10, 4);
+        ReceiptService receiptService = new ReceiptService(receiptRepository, bookingRepository, userService,
+                carService, receiptQrService);
+        receiptArchiveService = new ReceiptArchiveService(receiptRepository, receiptService, entityManager, 2);
+    }
+
+    @Test
+    void writeArchive_ReceiptsInSeveralChunks_StreamsOnePdfPerReceipt() throws Exception {
+        when(receiptRepository.findByUserIdAndTransactionDateBetweenAndIdGreaterThanOrderByIdAsc(
+                eq(7L), any(), any(), eq(0L), any())).thenReturn(List.of(receipt(1L, "TX-1", 11L), receipt(2L, "TX-2", 12L)));
+        when(receiptRepository.findByUserIdAndTransactionDateBetweenAndIdGreaterThanOrderByIdAsc(
+                eq(7L), any(), any(), eq(2L), any())).thenReturn(List.of(receipt(3L, "TX-3", 13L)));
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+
+        int count = receiptArchiveService.writeArchive(7L, null, null, archive);
+
+        assertEquals(3, count);
+        assertEquals(List.of("receipt_TX-1.pdf", "receipt_TX-2.pdf", "receipt_TX-3.pdf"), entryNames(archive));
+        // Each chunk's entities are let go once written
+        verify(entityManager, times(2)).clear();
+    }
+
+    @Test
+    void writeArchive_DuplicateTransactionIds_WritesDistinctEntries() throws Exception {
+        when(receiptRepository.findByUserIdAndTransactionDateBetweenAndIdGreaterThanOrderByIdAsc(
+                eq(7L), any(), any(), eq(0L), any())).thenReturn(List.of(receipt(1L, "TX-1", 11L), receipt(2L, "TX-1", 11L)));
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+
+        receiptArchiveService.writeArchive(7L, null, null, archive);
+
+        assertEquals(List.of("receipt_TX-1.pdf", "receipt_TX-1_2.pdf"), entryNames(archive));
+    }
+
+    @Test
+    void writeArchive_ReceiptWithoutBooking_RenderedFromReceiptDetails() throws Exception {
+        when(receiptRepository.findByUserIdAndTransactionDateBetweenAndIdGreaterThanOrderByIdAsc(
+                eq(7L), any(), any(), eq(0L), any())).thenReturn(List.of(receipt(1L, "TX-1", null)));
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+
+        assertEquals(1, receiptArchiveService.writeArchive(7L, null, null, archive));
+
+        assertEquals(List.of("receipt_TX-1.pdf"), entryNames(archive));
+        verify(bookingRepository, never()).findById(isNull());
+    }
+
+    private static Receipt receipt(Long id, String transactionId, Long bookingId) {
+        Receipt receipt = new Receipt();
+        receipt.setId(id);
+        receipt.setUserId(7L);
+        receipt.setBookingId(bookingId);
+        receipt.setTransactionId(transactionId);
+        receipt.setAmount(100.0);
+        receipt.setPaymentMethod("UPI");
+        receipt.setTransactionDate(LocalDateTime.of(2025, 3, 14, 10, 30));
+        return receipt;
+    }
+
+    /**
+     * Read the entry names of an archive, checking that every entry is a PDF
+     */
+    private static List<String> entryNames(ByteArrayOutputStream archive) throws Exception {
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                byte[] content = zip.readAllBytes();
+                assertTrue(new String(content, 0, 4, StandardCharsets.US_ASCII).startsWith("%PDF"));
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+}
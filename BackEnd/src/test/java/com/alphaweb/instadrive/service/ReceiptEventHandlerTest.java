@@ -0,0 +1,75 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.dto.PaymentContext;
+import com.alphaweb.instadrive.model.Booking;
+import com.alphaweb.instadrive.model.Car;
+import com.alphaweb.instadrive.model.OutboxEvent;
+import com.alphaweb.instadrive.model.Receipt;
+import com.alphaweb.instadrive.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ReceiptEventHandlerTest {
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private BookingService bookingService;
+
+    @Mock
+    private ReceiptService receiptService;
+
+    @InjectMocks
+    private ReceiptEventHandler receiptEventHandler;
+
+    private final OutboxEvent event = new OutboxEvent();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        Booking booking = new Booking();
+        booking.setId(7L);
+        when(outboxService.readPayload(event)).thenReturn(
+                Map.of("transactionId", "TX1", "bookingId", 7, "paymentMode", "UPI"));
+        when(bookingService.getPaymentContext(7L)).thenReturn(
+                Optional.of(new PaymentContext(booking, new User(), new Car())));
+    }
+
+    @Test
+    void handle_NewPayment_GeneratesReceipt() throws Exception {
+        receiptEventHandler.handle(event);
+
+        verify(receiptService).generateReceipt(any(Booking.class), any(User.class), any(Car.class), eq("TX1"), eq("UPI"));
+    }
+
+    @Test
+    void handle_ReceiptAlreadySaved_RendersNothing() {
+        when(receiptService.getReceiptByTransactionId("TX1")).thenReturn(Optional.of(new Receipt()));
+
+        receiptEventHandler.handle(event);
+
+        verify(receiptService, never()).generateReceipt(any(Booking.class), any(User.class), any(Car.class), any(), any());
+        verifyNoInteractions(bookingService);
+    }
+
+    @Test
+    void handle_RedeliveredEvent_TreatsDuplicateReceiptAsDone() {
+        when(receiptService.generateReceipt(any(Booking.class), any(User.class), any(Car.class), eq("TX1"), eq("UPI")))
+                .thenThrow(new DataIntegrityViolationException("Duplicate entry 'TX1' for key 'idx_receipt_transaction_id'"));
+
+        assertDoesNotThrow(() -> receiptEventHandler.handle(event));
+    }
+}
@@ -0,0 +1,106 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.Booking;
+import com.alphaweb.instadrive.model.Car;
+import com.alphaweb.instadrive.model.Receipt;
+import com.alphaweb.instadrive.model.User;
+import com.alphaweb.instadrive.repository.BookingRepository;
+import com.alphaweb.instadrive.repository.ReceiptRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ReceiptServiceTest {
+
+    @Mock
+    private ReceiptRepository receiptRepository;
+
+    @Mock
+    private BookingRepository bookingRepository;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private CarService carService;
+
+    @TempDir
+    Path receiptsDir;
+
+    private ReceiptService receiptService;
+    private Booking booking;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReceiptQrService receiptQrService = new ReceiptQrService(new ReceiptTokenService("test-secret"), 10, 4);
+        receiptService = new ReceiptService(receiptRepository, bookingRepository, userService,
+                carService, receiptQrService);
+        ReflectionTestUtils.setField(receiptService, "receiptsDir", receiptsDir.toString());
+
+        booking = new Booking();
+        booking.setId(7L);
+        booking.setUserId(3L);
+        booking.setCarId(5L);
+        booking.setTotalAmount(100.0);
+        when(receiptRepository.saveAndFlush(any(Receipt.class))).thenAnswer(invocation -> {
+            Receipt receipt = invocation.getArgument(0);
+            receipt.setId(1L);
+            return receipt;
+        });
+    }
+
+    @Test
+    void generateReceipt_NewPayment_SavesRowBeforeWritingPdf() {
+        // Act
+        Receipt receipt = receiptService.generateReceipt(booking, new User(), new Car(), "TX1", "UPI");
+
+        // Assert
+        assertEquals("receipt_TX1.pdf", receipt.getReceiptPath());
+        assertTrue(Files.isRegularFile(receiptsDir.resolve("receipt_TX1.pdf")));
+        verify(receiptRepository).saveAndFlush(receipt);
+        verify(receiptRepository, never()).delete(any(Receipt.class));
+    }
+
+    @Test
+    void generateReceipt_DuplicateTransaction_KeepsExistingPdf() throws Exception {
+        // Arrange
+        Path existing = Files.write(receiptsDir.resolve("receipt_TX1.pdf"), new byte[]{1, 2, 3});
+        when(receiptRepository.saveAndFlush(any(Receipt.class)))
+                .thenThrow(new DataIntegrityViolationException("Duplicate entry 'TX1' for key 'idx_receipt_transaction_id'"));
+
+        // Act
+        assertThrows(DataIntegrityViolationException.class,
+                () -> receiptService.generateReceipt(booking, new User(), new Car(), "TX1", "UPI"));
+
+        // Assert
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(existing));
+    }
+
+    @Test
+    void generateReceipt_PdfNotWritten_DropsRowForRetry() {
+        // Arrange
+        ReflectionTestUtils.setField(receiptService, "receiptsDir", receiptsDir.resolve("missing").toString());
+
+        // Act
+        assertThrows(RuntimeException.class,
+                () -> receiptService.generateReceipt(booking, new User(), new Car(), "TX1", "UPI"));
+
+        // Assert
+        InOrder inOrder = inOrder(receiptRepository);
+        inOrder.verify(receiptRepository).saveAndFlush(any(Receipt.class));
+        inOrder.verify(receiptRepository).delete(any(Receipt.class));
+    }
+}
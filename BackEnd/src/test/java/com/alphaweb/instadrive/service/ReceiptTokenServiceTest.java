@@ -0,0 +1,71 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.model.Receipt;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiptTokenServiceTest {
+
+    private ReceiptTokenService receiptTokenService;
+    private Receipt receipt;
+
+    @BeforeEach
+    void setUp() {
+        receiptTokenService = new ReceiptTokenService("test-secret");
+
+        receipt = new Receipt();
+        receipt.setTransactionId("UPI-1A2B3C4D");
+        receipt.setBookingId(42L);
+        receipt.setAmount(1234.5);
+        receipt.setTransactionDate(LocalDateTime.of(2025, 3, 14, 10, 30));
+    }
+
+    @Test
+    void verify_ValidToken_ReturnsClaims() {
+        String token = receiptTokenService.createToken(receipt);
+
+        ReceiptTokenService.ReceiptClaims claims = receiptTokenService.verify(token);
+
+        assertNotNull(claims);
+        assertEquals("UPI-1A2B3C4D", claims.transactionId());
+        assertEquals(1234.5, claims.amount());
+        assertEquals(42L, claims.bookingId());
+        assertEquals(LocalDate.of(2025, 3, 14), claims.transactionDate());
+    }
+
+    @Test
+    void verify_TamperedToken_ReturnsNull() {
+        String token = receiptTokenService.createToken(receipt);
+        // Change a character inside the booking ID
+        int index = ReceiptTokenService.PREFIX.length() + 10;
+        char replacement = token.charAt(index) == 'A' ? 'B' : 'A';
+        String tampered = token.substring(0, index) + replacement + token.substring(index + 1);
+
+        assertNull(receiptTokenService.verify(tampered));
+    }
+
+    @Test
+    void verify_TokenSignedWithOtherSecret_ReturnsNull() {
+        String token = new ReceiptTokenService("other-secret").createToken(receipt);
+
+        assertNull(receiptTokenService.verify(token));
+    }
+
+    @Test
+    void verify_MalformedToken_ReturnsNull() {
+        assertNull(receiptTokenService.verify("IDR1:!!!"));
+        assertNull(receiptTokenService.verify("IDR1:AB"));
+        assertNull(receiptTokenService.verify("not-a-token"));
+    }
+
+    @Test
+    void constructor_NoSecret_Throws() {
+        assertThrows(IllegalStateException.class, () -> new ReceiptTokenService(""));
+        assertThrows(IllegalStateException.class, () -> new ReceiptTokenService(" "));
+    }
+}
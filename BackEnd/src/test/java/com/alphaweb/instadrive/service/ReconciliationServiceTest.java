@@ -0,0 +1,183 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.dto.ReconciliationBookingRow;
+import com.alphaweb.instadrive.dto.ReconciliationPaymentRow;
+import com.alphaweb.instadrive.model.PaymentStatus;
+import com.alphaweb.instadrive.model.ReconciliationDiscrepancy;
+import com.alphaweb.instadrive.model.ReconciliationRun;
+import com.alphaweb.instadrive.repository.BookingRepository;
+import com.alphaweb.instadrive.repository.PaymentRepository;
+import com.alphaweb.instadrive.repository.ReconciliationDiscrepancyRepository;
+import com.alphaweb.instadrive.repository.ReconciliationRunRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReconciliationServiceTest {
+
+    @Mock
+    private BookingRepository bookingRepository;
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    @Mock
+    private ReconciliationRunRepository runRepository;
+
+    @Mock
+    private ReconciliationDiscrepancyRepository discrepancyRepository;
+
+    private ReconciliationService reconciliationService;
+
+    private final List<ReconciliationBookingRow> bookings = new ArrayList<>();
+    private final List<ReconciliationPaymentRow> payments = new ArrayList<>();
+    private final List<ReconciliationDiscrepancy> saved = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // A chunk size of 2 makes every stream span several pages
+        reconciliationService = new ReconciliationService(bookingRepository, paymentRepository,
+                runRepository, discrepancyRepository, 2);
+
+        when(bookingRepository.findReconciliationChunk(anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            long afterId = invocation.getArgument(0);
+            return page(bookings.stream().filter(b -> b.getId() > afterId), invocation.getArgument(1));
+        });
+        when(paymentRepository.findReconciliationChunkByBooking(anyLong(), anyLong(), any(Pageable.class)))
+                .thenAnswer(invocation -> {
+                    long bookingId = invocation.getArgument(0);
+                    long id = invocation.getArgument(1);
+                    return page(payments.stream()
+                            .filter(p -> p.getBookingId() != null)
+                            .filter(p -> p.getBookingId() > bookingId || (p.getBookingId() == bookingId && p.getId() > id))
+                            .sorted(Comparator.comparing(ReconciliationPaymentRow::getBookingId)
+                                    .thenComparing(ReconciliationPaymentRow::getId)),
+                            invocation.getArgument(2));
+                });
+        when(paymentRepository.findReconciliationChunkWithoutBooking(anyLong(), any(Pageable.class)))
+                .thenAnswer(invocation -> {
+                    long id = invocation.getArgument(0);
+                    return page(payments.stream().filter(p -> p.getBookingId() == null && p.getId() > id),
+                            invocation.getArgument(1));
+                });
+        when(paymentRepository.findReconciliationChunkByTransaction(anyString(), anyLong(), any(Pageable.class)))
+                .thenAnswer(invocation -> {
+                    String tx = invocation.getArgument(0);
+                    long id = invocation.getArgument(1);
+                    return page(payments.stream()
+                            .filter(p -> p.getTransactionId().compareTo(tx) > 0
+                                    || (p.getTransactionId().equals(tx) && p.getId() > id))
+                            .sorted(Comparator.comparing(ReconciliationPaymentRow::getTransactionId)
+                                    .thenComparing(ReconciliationPaymentRow::getId)),
+                            invocation.getArgument(2));
+                });
+        lenient().when(discrepancyRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            saved.addAll(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+    }
+
+    private static <T> List<T> page(java.util.stream.Stream<T> rows, Pageable pageable) {
+        return rows.limit(pageable.getPageSize()).collect(Collectors.toList());
+    }
+
+    private ReconciliationRun run() {
+        ReconciliationRun run = new ReconciliationRun();
+        run.setId(7L);
+        reconciliationService.reconcile(run);
+        return run;
+    }
+
+    private Map<String, List<ReconciliationDiscrepancy>> byType() {
+        return saved.stream().collect(Collectors.groupingBy(ReconciliationDiscrepancy::getType));
+    }
+
+    @Test
+    void reconcile_MatchingPaymentsAndRefunds_ReportsNothing() {
+        bookings.add(new ReconciliationBookingRow(1L, 100.0, "CONFIRMED"));
+        bookings.add(new ReconciliationBookingRow(2L, 50.0, "CANCELLED"));
+        bookings.add(new ReconciliationBookingRow(3L, 70.0, "CONFIRMED"));
+        payments.add(new ReconciliationPaymentRow(10L, 1L, "A", PaymentStatus.FAILED, 100.0));
+        payments.add(new ReconciliationPaymentRow(11L, 1L, "B", PaymentStatus.SUCCESS, 100.0));
+        payments.add(new ReconciliationPaymentRow(12L, 2L, "C", PaymentStatus.REFUNDED, 50.0));
+        payments.add(new ReconciliationPaymentRow(13L, 2L, "D", PaymentStatus.REFUNDED, -50.0));
+
+        ReconciliationRun run = run();
+
+        assertEquals("COMPLETED", run.getStatus());
+        assertEquals(3, run.getBookingsScanned());
+        assertEquals(4, run.getPaymentsScanned());
+        assertEquals(0, run.getDiscrepancies());
+        assertTrue(saved.isEmpty());
+    }
+
+    @Test
+    void reconcile_Mismatches_AreWrittenToReport() {
+        bookings.add(new ReconciliationBookingRow(1L, 100.0, "CONFIRMED"));
+        bookings.add(new ReconciliationBookingRow(3L, 50.0, "CANCELLED"));
+        bookings.add(new ReconciliationBookingRow(5L, 80.0, "COMPLETED"));
+        payments.add(new ReconciliationPaymentRow(20L, 1L, "A", PaymentStatus.SUCCESS, 90.0));
+        payments.add(new ReconciliationPaymentRow(21L, 2L, "B", PaymentStatus.SUCCESS, 40.0));
+        payments.add(new ReconciliationPaymentRow(22L, 3L, "C", PaymentStatus.SUCCESS, 50.0));
+        payments.add(new ReconciliationPaymentRow(23L, 5L, "D", PaymentStatus.SUCCESS, 80.0));
+        payments.add(new ReconciliationPaymentRow(24L, 5L, "E", PaymentStatus.SUCCESS, 80.0));
+        payments.add(new ReconciliationPaymentRow(25L, 9L, "F", PaymentStatus.SUCCESS, 10.0));
+        payments.add(new ReconciliationPaymentRow(26L, null, "F", PaymentStatus.SUCCESS, 10.0));
+
+        ReconciliationRun run = run();
+        Map<String, List<ReconciliationDiscrepancy>> found = byType();
+
+        assertEquals(1L, found.get(ReconciliationService.AMOUNT_MISMATCH).get(0).getBookingId());
+        assertEquals(3L, found.get(ReconciliationService.UNREFUNDED_CANCELLATION).get(0).getBookingId());
+        assertEquals(5L, found.get(ReconciliationService.DUPLICATE_PAYMENT).get(0).getBookingId());
+        assertEquals(List.of(21L, 25L, 26L), found.get(ReconciliationService.ORPHANED_PAYMENT).stream()
+                .map(ReconciliationDiscrepancy::getPaymentId).sorted().collect(Collectors.toList()));
+        assertEquals(26L, found.get(ReconciliationService.DUPLICATE_TRANSACTION).get(0).getPaymentId());
+        assertEquals(7, run.getDiscrepancies());
+        assertTrue(saved.stream().allMatch(d -> d.getRunId() == 7L));
+        verify(runRepository).save(run);
+    }
+
+    @Test
+    void scheduledRun_LongRun_DoesNotBlockSchedulerThread() {
+        CountDownLatch release = new CountDownLatch(1);
+        when(runRepository.save(any(ReconciliationRun.class))).thenAnswer(invocation -> {
+            ReconciliationRun run = invocation.getArgument(0);
+            if (run.getId() == null) {
+                run.setId(7L);
+            } else {
+                // Recording the result waits until the test lets the run finish
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return run;
+        });
+
+        // Returns while the run is still in progress
+        reconciliationService.scheduledRun();
+        // A second trigger while the first run is in progress is skipped
+        reconciliationService.scheduledRun();
+        release.countDown();
+
+        // Saved once when started and once when finished
+        verify(runRepository, timeout(5000).times(2)).save(any(ReconciliationRun.class));
+        verify(bookingRepository, times(1)).findReconciliationChunk(anyLong(), any(Pageable.class));
+    }
+}
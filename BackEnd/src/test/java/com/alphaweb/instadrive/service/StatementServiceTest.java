@@ -0,0 +1,128 @@
+package com.alphaweb.instadrive.service;
+
+import com.alphaweb.instadrive.dto.StatementLineDTO;
+import com.alphaweb.instadrive.model.PaymentStatus;
+import com.alphaweb.instadrive.repository.PaymentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class StatementServiceTest {
+
+    private static final YearMonth MONTH = YearMonth.of(2025, 5);
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private FileServingService fileServingService;
+
+    private StatementService statementService;
+    private AutoCloseable mocks;
+
+    @BeforeEach
+    void setUp() {
+        mocks = MockitoAnnotations.openMocks(this);
+        statementService = new StatementService(paymentRepository, userService, fileServingService,
+                tempDir.toString(), 1);
+        when(userService.getUserById(1L)).thenReturn(Optional.empty());
+        when(paymentRepository.findStatementLines(eq(1L), any(), any())).thenReturn(List.of(line("TX1")));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        statementService.shutdown();
+        mocks.close();
+    }
+
+    @Test
+    void getStatement_RenderedBefore_ReusesFile() {
+        Path first = statementService.getStatement(1L, MONTH);
+        Path second = statementService.getStatement(1L, MONTH);
+
+        assertEquals(first, second);
+        assertTrue(Files.isRegularFile(second));
+        verify(paymentRepository, times(1)).findStatementLines(eq(1L), any(), any());
+    }
+
+    @Test
+    void invalidate_RenderedStatement_DeletesFileAndEvictsServedMetadata() {
+        Path statement = statementService.getStatement(1L, MONTH);
+
+        statementService.invalidate(1L, MONTH);
+
+        assertFalse(Files.exists(statement));
+        verify(fileServingService, atLeastOnce()).evict(statement);
+        statementService.getStatement(1L, MONTH);
+        verify(paymentRepository, times(2)).findStatementLines(eq(1L), any(), any());
+    }
+
+    @Test
+    void invalidate_InTransaction_KeepsStatementUntilCommit() {
+        Path statement = statementService.getStatement(1L, MONTH);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            statementService.invalidate(1L, MONTH);
+
+            // A render before the commit would still read the old rows, so nothing is dropped yet
+            assertTrue(Files.exists(statement));
+            verify(fileServingService, never()).evict(statement);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertFalse(Files.exists(statement));
+        verify(fileServingService, atLeastOnce()).evict(statement);
+    }
+
+    @Test
+    void getStatement_InvalidatedWhileRendering_ServesRenderedFileThenRendersAgain() {
+        // A payment lands between loading the lines and writing the file
+        when(paymentRepository.findStatementLines(eq(1L), any(), any()))
+                .thenAnswer(invocation -> {
+                    statementService.invalidate(1L, MONTH);
+                    return List.of(line("TX1"));
+                })
+                .thenReturn(List.of(line("TX1"), line("TX2")));
+
+        Path raced = statementService.getStatement(1L, MONTH);
+        assertTrue(Files.isRegularFile(raced), "the caller must get a file it can serve");
+
+        statementService.getStatement(1L, MONTH);
+        statementService.getStatement(1L, MONTH);
+
+        // Rendered once for the race, once because that copy was stale, then reused
+        verify(paymentRepository, times(2)).findStatementLines(eq(1L), any(), any());
+    }
+
+    private static StatementLineDTO line(String transactionId) {
+        return new StatementLineDTO(transactionId, LocalDateTime.of(2025, 5, 10, 12, 0), "UPI",
+                PaymentStatus.SUCCESS, 300.0, 7L, "Toyota", "Corolla", "KA01AB1234");
+    }
+}
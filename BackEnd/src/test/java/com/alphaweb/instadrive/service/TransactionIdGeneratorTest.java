@@ -0,0 +1,31 @@
+package com.alphaweb.instadrive.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionIdGeneratorTest {
+
+    @Test
+    void constructor_NoNodeId_Throws() {
+        // A derived node ID can collide with another instance's
+        assertThrows(IllegalStateException.class, () -> new TransactionIdGenerator(-1, false));
+    }
+
+    @Test
+    void constructor_NoNodeIdOnSingleInstance_DerivesOne() {
+        assertTrue(new TransactionIdGenerator(-1, true).next("UPI").startsWith("UPI"));
+    }
+
+    @Test
+    void next_ExplicitNodeId_GeneratesDistinctIds() {
+        TransactionIdGenerator generator = new TransactionIdGenerator(7, false);
+
+        assertNotEquals(generator.next("CARD"), generator.next("CARD"));
+    }
+
+    @Test
+    void constructor_NodeIdOutOfRange_Throws() {
+        assertThrows(IllegalArgumentException.class, () -> new TransactionIdGenerator(1024, false));
+    }
+}
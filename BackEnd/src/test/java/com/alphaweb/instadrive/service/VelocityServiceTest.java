@@ -0,0 +1,115 @@
+package com.alphaweb.instadrive.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VelocityServiceTest {
+
+    @Test
+    void check_AboveLimit_RejectsOnlyThatKey() {
+        VelocityService velocityService = new VelocityService(true, 10, 1000,
+                List.of("ip:booking:2/60:reject"));
+
+        assertFalse(velocityService.check(VelocityService.Scope.BOOKING, null, "10.0.0.1", null).isRejected());
+        assertFalse(velocityService.check(VelocityService.Scope.BOOKING, null, "10.0.0.1", null).isRejected());
+        VelocityService.Decision decision = velocityService.check(VelocityService.Scope.BOOKING, null, "10.0.0.1", null);
+
+        assertTrue(decision.isRejected());
+        assertEquals(60, decision.retryAfterSeconds());
+        assertFalse(velocityService.check(VelocityService.Scope.BOOKING, null, "10.0.0.2", null).isRejected());
+        // Payments are counted separately from bookings
+        assertFalse(velocityService.check(VelocityService.Scope.PAYMENT, null, "10.0.0.1", null).isRejected());
+    }
+
+    @Test
+    void check_FlagRule_FlagsWithoutRejecting() {
+        VelocityService velocityService = new VelocityService(true, 10, 1000,
+                List.of("card:payment:1/300:flag"));
+
+        String card = velocityService.cardFingerprint("4111 1111 1111 4242");
+        velocityService.check(VelocityService.Scope.PAYMENT, "user@example.com", "10.0.0.1", card);
+        VelocityService.Decision decision =
+                velocityService.check(VelocityService.Scope.PAYMENT, "other@example.com", "10.0.0.2", card);
+
+        assertFalse(decision.isRejected());
+        assertTrue(decision.isFlagged());
+        assertTrue(velocityService.needsCard(VelocityService.Scope.PAYMENT));
+    }
+
+    @Test
+    void check_CardsSharingLastDigits_CountedSeparately() {
+        VelocityService velocityService = new VelocityService(true, 10, 1000,
+                List.of("card:payment:1/300:reject"));
+        String first = velocityService.cardFingerprint("4111111111114242");
+        String second = velocityService.cardFingerprint("5500000000004242");
+
+        assertFalse(velocityService.check(VelocityService.Scope.PAYMENT, null, "10.0.0.1", first).isRejected());
+        assertFalse(velocityService.check(VelocityService.Scope.PAYMENT, null, "10.0.0.1", second).isRejected());
+        assertTrue(velocityService.check(VelocityService.Scope.PAYMENT, null, "10.0.0.1",
+                velocityService.cardFingerprint("4111-1111-1111-4242")).isRejected());
+    }
+
+    @Test
+    void cardFingerprint_NotACardNumber_ReturnsNull() {
+        VelocityService velocityService = new VelocityService(true, 10, 1000,
+                List.of("card:payment:1/300:reject"));
+
+        assertNull(velocityService.cardFingerprint(null));
+        assertNull(velocityService.cardFingerprint("4242"));
+        assertEquals(32, velocityService.cardFingerprint("4111111111114242").length());
+    }
+
+    @Test
+    void check_KeyLimitReached_FailsOpen() {
+        VelocityService velocityService = new VelocityService(true, 10, 2,
+                List.of("ip:booking:0/60:reject"));
+
+        assertTrue(velocityService.check(VelocityService.Scope.BOOKING, null, "10.0.0.1", null).isRejected());
+        assertTrue(velocityService.check(VelocityService.Scope.BOOKING, null, "10.0.0.2", null).isRejected());
+        // A third key is not tracked while the first two are still active
+        assertFalse(velocityService.check(VelocityService.Scope.BOOKING, null, "10.0.0.3", null).isRejected());
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> rule = ((List<Map<String, Object>>) velocityService.getStats().get("rules")).get(0);
+        assertEquals(2, rule.get("trackedKeys"));
+        assertEquals(1L, rule.get("untracked"));
+    }
+
+    @Test
+    void check_KeyLimitReachedWithIdleKeys_EvictsInBackground() throws Exception {
+        VelocityService velocityService = new VelocityService(true, 10, 2,
+                List.of("ip:booking:0/1:reject"));
+        try {
+            velocityService.check(VelocityService.Scope.BOOKING, null, "10.0.0.1", null);
+            velocityService.check(VelocityService.Scope.BOOKING, null, "10.0.0.2", null);
+            Thread.sleep(1100);
+
+            // The full rule lets the new key through untracked and evicts the idle keys off this thread
+            assertFalse(velocityService.check(VelocityService.Scope.BOOKING, null, "10.0.0.3", null).isRejected());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (trackedKeys(velocityService) > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(0, trackedKeys(velocityService));
+            assertTrue(velocityService.check(VelocityService.Scope.BOOKING, null, "10.0.0.3", null).isRejected());
+        } finally {
+            velocityService.shutdown();
+        }
+    }
+
+    @Test
+    void constructor_InvalidRule_Throws() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new VelocityService(true, 10, 1000, List.of("ip:booking:20:reject")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int trackedKeys(VelocityService velocityService) {
+        return (int) ((List<Map<String, Object>>) velocityService.getStats().get("rules")).get(0).get("trackedKeys");
+    }
+}
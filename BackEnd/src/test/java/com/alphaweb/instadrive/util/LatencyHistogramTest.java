@@ -0,0 +1,50 @@
+package com.alphaweb.instadrive.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentileMillis_WithinBucketOfActualValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.recordMillis(2);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.recordMillis(100);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        // Percentiles are bucket upper bounds, at most twice the recorded value and never above the max
+        assertTrue(snapshot.percentileMillis(50) >= 2 && snapshot.percentileMillis(50) < 4.1);
+        assertEquals(100, snapshot.percentileMillis(99), 0.001);
+        assertEquals(11.8, snapshot.meanMillis(), 0.001);
+    }
+
+    @Test
+    void since_ReturnsOnlyLaterRecordings() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(50_000);
+        LatencyHistogram.Snapshot before = histogram.snapshot();
+        histogram.recordMillis(30);
+        histogram.recordMillis(30);
+
+        LatencyHistogram.Snapshot window = histogram.snapshot().since(before);
+
+        assertEquals(2, window.getCount());
+        assertEquals(30, window.meanMillis(), 0.001);
+        assertEquals(30, window.percentileMillis(50), 0.001);
+    }
+
+    @Test
+    void snapshot_Empty_ReportsZeros() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.percentileMillis(95));
+        assertEquals(0L, snapshot.toMap().get("count"));
+    }
+}
@@ -0,0 +1,32 @@
+package com.alphaweb.instadrive.util;
+
+import com.alphaweb.instadrive.exception.InvalidCursorException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageCursorTest {
+
+    @Test
+    void decode_EncodedId_RoundTrips() {
+        String cursor = PageCursor.encode(1_234_567_890_123L);
+
+        assertEquals(1_234_567_890_123L, PageCursor.decode(cursor));
+        // Cursors go in URLs and headers as they are
+        assertTrue(cursor.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    void decodeOr_NoCursor_StartsFromFirstPage() {
+        assertEquals(Long.MAX_VALUE, PageCursor.decodeOr(null, Long.MAX_VALUE));
+        assertEquals(0, PageCursor.decodeOr(" ", 0));
+    }
+
+    @Test
+    void decode_ForeignOrTamperedCursor_Throws() {
+        assertThrows(InvalidCursorException.class, () -> PageCursor.decode("42"));
+        assertThrows(InvalidCursorException.class, () -> PageCursor.decode("%%%"));
+        // Valid base64 of "k1:x"
+        assertThrows(InvalidCursorException.class, () -> PageCursor.decode("azE6eA"));
+    }
+}
@@ -0,0 +1,61 @@
+package com.alphaweb.instadrive.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowCounterTest {
+
+    private static final long NOW = 1_760_000_000_000L;
+
+    @Test
+    void incrementAndCount_EventsSlideOutOfWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(10_000, 10);
+
+        assertEquals(1, counter.incrementAndCount(NOW));
+        assertEquals(2, counter.incrementAndCount(NOW + 4_000));
+        assertEquals(3, counter.incrementAndCount(NOW + 9_000));
+
+        // The first event has left the window, the others have not
+        assertEquals(2, counter.count(NOW + 10_500));
+        assertEquals(0, counter.count(NOW + 30_000));
+    }
+
+    @Test
+    void incrementAndCount_SlotReusedOnNextLap_StartsFromZero() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1_000, 4);
+
+        for (int i = 0; i < 5; i++) {
+            counter.incrementAndCount(NOW);
+        }
+        // Same slot, one full lap of the ring later
+        assertEquals(1, counter.incrementAndCount(NOW + 1_000));
+    }
+
+    @Test
+    void incrementAndCount_ConcurrentCallers_NoLostUpdates() throws Exception {
+        SlidingWindowCounter counter = new SlidingWindowCounter(60_000, 10);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int t = 0; t < futures.length; t++) {
+                futures[t] = executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        counter.incrementAndCount(NOW);
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(80000, counter.count(NOW));
+    }
+}
@@ -0,0 +1,83 @@
+package com.alphaweb.instadrive.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    void nextId_ConcurrentCallers_AllUnique() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int t = 0; t < futures.length; t++) {
+                futures[t] = executor.submit(() -> {
+                    long previous = 0;
+                    for (int i = 0; i < 20000; i++) {
+                        long id = generator.nextId();
+                        // IDs from one caller always increase
+                        assertTrue(id > previous);
+                        previous = id;
+                        ids.add(id);
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(8 * 20000, ids.size());
+    }
+
+    @Test
+    void nextId_SequenceExhaustedOrClockBackwards_StaysIncreasing() {
+        AtomicLong clock = new AtomicLong(SnowflakeIdGenerator.DEFAULT_EPOCH_MILLIS + 1000);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, SnowflakeIdGenerator.DEFAULT_EPOCH_MILLIS, clock::get);
+
+        long previous = 0;
+        for (int i = 0; i < 10000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            previous = id;
+        }
+
+        clock.addAndGet(-500);
+        assertTrue(generator.nextId() > previous);
+    }
+
+    @Test
+    void nextId_EncodesTimestamp() {
+        long now = SnowflakeIdGenerator.DEFAULT_EPOCH_MILLIS + 123456789L;
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3, SnowflakeIdGenerator.DEFAULT_EPOCH_MILLIS, () -> now);
+
+        assertEquals(now, generator.timestampOf(generator.nextId()));
+    }
+
+    @Test
+    void format_FixedWidth_SortsLikeIds() {
+        String small = SnowflakeIdGenerator.format("UPI", 35);
+        String large = SnowflakeIdGenerator.format("UPI", Long.MAX_VALUE);
+
+        assertEquals("UPI-000000000000Z", small);
+        assertEquals(large.length(), small.length());
+        assertTrue(small.compareTo(large) < 0);
+    }
+
+    @Test
+    void constructor_NodeIdOutOfRange_Throws() {
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID + 1));
+    }
+}
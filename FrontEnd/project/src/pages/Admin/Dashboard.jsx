@@ -9,7 +9,9 @@ import Spinner from '../../components/UI/Spinner'
 
 const AdminDashboard = () => {
   const [bookings, setBookings] = useState([])
+  const [nextCursor, setNextCursor] = useState(null)
   const [loading, setLoading] = useState(true)
+  const [loadingMore, setLoadingMore] = useState(false)
   const [stats, setStats] = useState({
     totalBookings: 0,
     activeBookings: 0,
@@ -32,6 +34,21 @@ const AdminDashboard = () => {
     setRefreshTrigger(prev => prev + 1)
   }
 
+  // Append the next page of bookings; the stats already cover all bookings
+  const loadMoreBookings = async () => {
+    try {
+      setLoadingMore(true)
+      const dashboardData = await getDashboardData(nextCursor)
+      setBookings(prev => [...prev, ...(dashboardData.bookings || [])])
+      setNextCursor(dashboardData.nextCursor || null)
+    } catch (error) {
+      console.error('Error loading more bookings:', error)
+      toast.error('Failed to load more bookings. Please try again later.')
+    } finally {
+      setLoadingMore(false)
+    }
+  }
+
   useEffect(() => {
     const fetchDashboardData = async () => {
       try {
@@ -50,12 +67,14 @@ const AdminDashboard = () => {
           // Extract bookings from dashboard data
           const bookingsData = dashboardData.bookings || []
           setBookings(bookingsData)
+          setNextCursor(dashboardData.nextCursor || null)
 
-          // Calculate stats from the API data
-          const activeBookings = bookingsData.filter(booking => booking.status === 'ACTIVE').length
-          const upcomingBookings = bookingsData.filter(booking => booking.status === 'CONFIRMED').length
-          const completedBookings = bookingsData.filter(booking => booking.status === 'COMPLETED').length
-          const cancelledBookings = bookingsData.filter(booking => booking.status === 'CANCELLED').length
+          // Status counts come from the server, over all bookings rather than this page
+          const countsByStatus = dashboardData.bookingCountsByStatus || {}
+          const activeBookings = countsByStatus.ACTIVE ?? 0
+          const upcomingBookings = countsByStatus.CONFIRMED ?? 0
+          const completedBookings = countsByStatus.COMPLETED ?? 0
+          const cancelledBookings = countsByStatus.CANCELLED ?? 0
 
           // Sample revenue data as fallback
           const sampleRevenueData = [
@@ -98,6 +117,7 @@ const AdminDashboard = () => {
         setDashboardError(error.message || 'Failed to load dashboard data')
         toast.error('Failed to load dashboard data. Please try again later.')
         setBookings([])
+        setNextCursor(null)
 
         // Show sample data even on error for demonstration
         const sampleRevenueData = [
@@ -377,6 +397,18 @@ const AdminDashboard = () => {
                 <p className="text-gray-500">No bookings found</p>
               </div>
             )}
+
+            {nextCursor && (
+              <div className="text-center py-4 border-t border-gray-200">
+                <button
+                  onClick={loadMoreBookings}
+                  className="btn-outline-sm"
+                  disabled={loadingMore}
+                >
+                  {loadingMore ? 'Loading...' : 'Load more bookings'}
+                </button>
+              </div>
+            )}
           </div>
         )}
 
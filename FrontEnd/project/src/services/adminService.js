@@ -1,10 +1,11 @@
-import api from './api'
+import api, { getAllPages } from './api'
 
 // Admin Dashboard endpoints
-export const getDashboardData = async () => {
+// Pass the nextCursor of the previous response to get the next page of bookings
+export const getDashboardData = async (cursor = null) => {
   try {
     console.log('Fetching dashboard data from API...')
-    const response = await api.get('/admin/dashboard')
+    const response = await api.get('/admin/dashboard', { params: cursor ? { cursor } : {} })
     console.log('Dashboard data API response:', response.data)
     return response.data
   } catch (error) {
@@ -78,9 +79,9 @@ export const deleteCar = async (id) => {
 export const getAdminPayments = async () => {
   try {
     console.log('Fetching all payments from API...')
-    const response = await api.get('/admin/payments')
-    console.log('Admin payments API response:', response.data)
-    return response.data
+    const payments = await getAllPages('/admin/payments', { limit: 200 })
+    console.log('Admin payments API response:', payments)
+    return payments
   } catch (error) {
     console.error('Error fetching admin payments:', error)
     throw error
@@ -164,9 +165,9 @@ export const getAdminReceiptByTransactionId = async (transactionId) => {
 export const getAdminUsers = async () => {
   try {
     console.log('Fetching all users from API...')
-    const response = await api.get('/admin/users')
-    console.log('Admin users API response:', response.data)
-    return response.data
+    const users = await getAllPages('/users', { limit: 200 })
+    console.log('Admin users API response:', users)
+    return users
   } catch (error) {
     console.error('Error fetching admin users:', error)
     throw error
@@ -74,4 +74,16 @@ api.interceptors.response.use(
   }
 );
 
+// Fetch every page of a keyset-paginated list endpoint, following the X-Next-Cursor header
+export const getAllPages = async (url, params = {}) => {
+  const items = [];
+  let cursor = null;
+  do {
+    const response = await api.get(url, { params: cursor ? { ...params, cursor } : params });
+    items.push(...response.data);
+    cursor = response.headers['x-next-cursor'] || null;
+  } while (cursor);
+  return items;
+};
+
 export default api;
\ No newline at end of file
@@ -1,10 +1,9 @@
-import api from './api'
+import api, { getAllPages } from './api'
 
 // User endpoints
 export const getAllUsers = async () => {
   try {
-    const response = await api.get('/users')
-    return response.data
+    return await getAllPages('/users', { limit: 200 })
   } catch (error) {
     console.error('Error fetching all users:', error)
     throw error